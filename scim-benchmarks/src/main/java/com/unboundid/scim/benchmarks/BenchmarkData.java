@@ -0,0 +1,219 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.benchmarks;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.scim.data.Address;
+import com.unboundid.scim.data.Name;
+import com.unboundid.scim.data.UserResource;
+import com.unboundid.scim.schema.CoreSchema;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+
+/**
+ * This class provides the sample data used by the benchmarks.
+ */
+public final class BenchmarkData
+{
+  /**
+   * The base DN of the sample directory.
+   */
+  public static final String BASE_DN = "dc=example,dc=com";
+
+  /**
+   * The DN of the entry beneath which the sample users are created.
+   */
+  public static final String PEOPLE_DN = "ou=people," + BASE_DN;
+
+  /**
+   * The DN of the entry beneath which the sample groups are created.
+   */
+  public static final String GROUPS_DN = "ou=groups," + BASE_DN;
+
+
+
+  /**
+   * Prevent this class from being instantiated.
+   */
+  private BenchmarkData()
+  {
+    // No implementation required.
+  }
+
+
+
+  /**
+   * Create a sample user resource with the attributes that are typically
+   * provided by clients.
+   *
+   * @param index  A number that distinguishes the user from the other sample
+   *               users.
+   *
+   * @return  The sample user resource.
+   */
+  public static UserResource createUser(final int index)
+  {
+    final UserResource user = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    final String userName = "user." + index;
+
+    user.setId(getUserDN(index));
+    user.setUserName(userName);
+    user.setDisplayName("User " + index);
+    user.setTitle("Engineer");
+    user.setName(new Name("Ms. Barbara J Jensen " + index,
+        "Jensen " + index, "J", "Barbara", "Ms.", null));
+
+    final List<com.unboundid.scim.data.Entry<String>> emails =
+        new ArrayList<com.unboundid.scim.data.Entry<String>>(2);
+    emails.add(new com.unboundid.scim.data.Entry<String>(
+        userName + "@example.com", "work", true));
+    emails.add(new com.unboundid.scim.data.Entry<String>(
+        userName + "@example.org", "home", false));
+    user.setEmails(emails);
+
+    final List<Address> addresses = new ArrayList<Address>(1);
+    addresses.add(
+        new Address("100 Universal City Plaza\nHollywood, CA 91608 USA",
+            "100 Universal City Plaza", "Hollywood", "CA", "91608", "USA",
+            "work", true));
+    user.setAddresses(addresses);
+
+    final List<com.unboundid.scim.data.Entry<String>> phoneNumbers =
+        new ArrayList<com.unboundid.scim.data.Entry<String>>(2);
+    phoneNumbers.add(new com.unboundid.scim.data.Entry<String>(
+        "tel:+1-800-864-8377", "work", false));
+    phoneNumbers.add(new com.unboundid.scim.data.Entry<String>(
+        "tel:+1-818-123-4567", "mobile", false));
+    user.setPhoneNumbers(phoneNumbers);
+
+    return user;
+  }
+
+
+
+  /**
+   * Create the LDAP entry of a sample user.
+   *
+   * @param index  A number that distinguishes the user from the other sample
+   *               users.
+   *
+   * @return  The LDAP entry of the sample user.
+   */
+  public static Entry createUserEntry(final int index)
+  {
+    final String userName = "user." + index;
+    return new Entry(getUserDN(index),
+        new Attribute("objectClass", "top", "person", "organizationalPerson",
+                      "inetOrgPerson"),
+        new Attribute("uid", userName),
+        new Attribute("cn", "Ms. Barbara J Jensen " + index),
+        new Attribute("sn", "Jensen " + index),
+        new Attribute("givenName", "Barbara"),
+        new Attribute("displayName", "User " + index),
+        new Attribute("title", "Engineer"),
+        new Attribute("mail", userName + "@example.com"),
+        new Attribute("postalAddress",
+                      "100 Universal City Plaza$Hollywood, CA 91608 USA"),
+        new Attribute("street", "100 Universal City Plaza"),
+        new Attribute("l", "Hollywood"),
+        new Attribute("st", "CA"),
+        new Attribute("postalCode", "91608"),
+        new Attribute("telephoneNumber", "+1 800 864 8377"),
+        new Attribute("mobile", "+1 818 123 4567"));
+  }
+
+
+
+  /**
+   * Retrieve the DN of a sample user.
+   *
+   * @param index  A number that distinguishes the user from the other sample
+   *               users.
+   *
+   * @return  The DN of the sample user.
+   */
+  public static String getUserDN(final int index)
+  {
+    return "uid=user." + index + "," + PEOPLE_DN;
+  }
+
+
+
+  /**
+   * Create and start an in-memory directory server populated with sample
+   * users and groups. Each user is a member of two groups.
+   *
+   * @param numUsers   The number of users to create.
+   * @param numGroups  The number of groups to create.
+   *
+   * @return  The started directory server.
+   *
+   * @throws LDAPException  If the directory server could not be started.
+   */
+  public static InMemoryDirectoryServer createDirectoryServer(
+      final int numUsers, final int numGroups)
+      throws LDAPException
+  {
+    final InMemoryDirectoryServer ds = new InMemoryDirectoryServer(
+        new InMemoryDirectoryServerConfig(BASE_DN));
+    ds.add(new Entry(BASE_DN,
+        new Attribute("objectClass", "top", "domain"),
+        new Attribute("dc", "example")));
+    ds.add(new Entry(PEOPLE_DN,
+        new Attribute("objectClass", "top", "organizationalUnit"),
+        new Attribute("ou", "people")));
+    ds.add(new Entry(GROUPS_DN,
+        new Attribute("objectClass", "top", "organizationalUnit"),
+        new Attribute("ou", "groups")));
+
+    for (int i = 0; i < numUsers; i++)
+    {
+      ds.add(createUserEntry(i));
+    }
+
+    for (int g = 0; g < numGroups; g++)
+    {
+      final List<String> members = new ArrayList<String>();
+      for (int i = 0; i < numUsers; i++)
+      {
+        if (i % numGroups == g || (i + 1) % numGroups == g)
+        {
+          members.add(getUserDN(i));
+        }
+      }
+      final Entry group = new Entry("cn=group." + g + "," + GROUPS_DN);
+      group.addAttribute("objectClass", "top", "groupOfUniqueNames");
+      group.addAttribute("cn", "group." + g);
+      if (!members.isEmpty())
+      {
+        group.addAttribute("uniqueMember", members);
+      }
+      ds.add(group);
+    }
+
+    ds.startListening();
+    return ds;
+  }
+}
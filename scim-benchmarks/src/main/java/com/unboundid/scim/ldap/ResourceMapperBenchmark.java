@@ -0,0 +1,203 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.scim.benchmarks.BenchmarkData;
+import com.unboundid.scim.schema.CoreSchema;
+import com.unboundid.scim.sdk.SCIMFilter;
+import com.unboundid.scim.sdk.SCIMObject;
+import com.unboundid.scim.sdk.SCIMQueryAttributes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.unboundid.scim.sdk.SCIMConstants.RESOURCE_NAME_USER;
+
+
+
+/**
+ * This class provides benchmarks for mapping user resources to and from LDAP
+ * using the default resource mappings, against an in-memory directory server
+ * so that the derived attributes are included.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResourceMapperBenchmark
+{
+  private InMemoryDirectoryServer ds;
+  private LDAPConnection connection;
+  private LDAPRequestInterface ldapInterface;
+  private ResourceMapper mapper;
+  private SCIMObject scimObject;
+  private Entry entry;
+  private SCIMQueryAttributes queryAttributes;
+  private SCIMFilter filter;
+
+
+
+  /**
+   * Start the directory server and create the user resource mapper.
+   *
+   * @throws Exception  If the setup fails.
+   */
+  @Setup
+  public void setUp()
+      throws Exception
+  {
+    ds = BenchmarkData.createDirectoryServer(100, 10);
+    connection = ds.getConnection();
+    ldapInterface = new LDAPRequestInterface(connection);
+
+    // The resource mappings can only be parsed from a file.
+    final File file = File.createTempFile("scim-benchmark-resources-", ".xml");
+    try
+    {
+      final InputStream inputStream = getClass().getResourceAsStream(
+          "/com/unboundid/scim/ldap/resources.xml");
+      final OutputStream outputStream = new FileOutputStream(file);
+      try
+      {
+        final byte[] buffer = new byte[8192];
+        int bytesRead;
+        while ((bytesRead = inputStream.read(buffer)) != -1)
+        {
+          outputStream.write(buffer, 0, bytesRead);
+        }
+      }
+      finally
+      {
+        outputStream.close();
+        inputStream.close();
+      }
+
+      final List<ResourceMapper> mappers = ResourceMapper.parse(file);
+      for (final ResourceMapper m : mappers)
+      {
+        if (m.getResourceDescriptor().getName().equals(RESOURCE_NAME_USER))
+        {
+          mapper = m;
+        }
+      }
+    }
+    finally
+    {
+      file.delete();
+    }
+
+    scimObject = BenchmarkData.createUser(0).getScimObject();
+    entry = connection.getEntry(BenchmarkData.getUserDN(0), "*", "+");
+    queryAttributes =
+        new SCIMQueryAttributes(CoreSchema.USER_DESCRIPTOR, null);
+    filter = SCIMFilter.parse(
+        "userName eq \"user.0\" and emails co \"example.com\"");
+  }
+
+
+
+  /**
+   * Stop the directory server.
+   */
+  @TearDown
+  public void tearDown()
+  {
+    mapper.finalizeMapper();
+    connection.close();
+    ds.shutDown(true);
+  }
+
+
+
+  /**
+   * Map the user resource to an LDAP entry.
+   *
+   * @return  The LDAP entry.
+   *
+   * @throws Exception  If the resource could not be mapped.
+   */
+  @Benchmark
+  public Entry toLDAPEntry()
+      throws Exception
+  {
+    return mapper.toLDAPEntry(scimObject);
+  }
+
+
+
+  /**
+   * Map the LDAP entry of a user to a SCIM object with all attributes,
+   * including the groups derived from the directory server.
+   *
+   * @return  The SCIM object.
+   *
+   * @throws Exception  If the entry could not be mapped.
+   */
+  @Benchmark
+  public SCIMObject toSCIMObject()
+      throws Exception
+  {
+    try
+    {
+      return mapper.toSCIMObject(entry, queryAttributes, ldapInterface);
+    }
+    finally
+    {
+      // Each invocation stands for a separate request.
+      GroupsDerivedAttribute.clearRequestCache();
+      MembersDerivedAttribute.clearRequestCache();
+    }
+  }
+
+
+
+  /**
+   * Map a SCIM filter to an LDAP filter.
+   *
+   * @return  The LDAP filter.
+   *
+   * @throws Exception  If the filter could not be mapped.
+   */
+  @Benchmark
+  public Filter toLDAPFilter()
+      throws Exception
+  {
+    return mapper.toLDAPFilter(filter, ldapInterface);
+  }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.marshal;
+
+import com.unboundid.scim.benchmarks.BenchmarkData;
+import com.unboundid.scim.data.UserResource;
+import com.unboundid.scim.marshal.json.JsonStreamMarshaller;
+import com.unboundid.scim.marshal.json.JsonUnmarshaller;
+import com.unboundid.scim.marshal.xml.XmlStreamMarshaller;
+import com.unboundid.scim.marshal.xml.XmlUnmarshaller;
+import com.unboundid.scim.schema.CoreSchema;
+import com.unboundid.scim.sdk.Resources;
+import com.unboundid.scim.sdk.SCIMException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * This class provides benchmarks for marshalling and unmarshalling a list of
+ * user resources in JSON and XML.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarshalBenchmark
+{
+  /**
+   * The number of resources in the list.
+   */
+  @Param({"1", "100"})
+  public int numResources;
+
+  private Resources<UserResource> resources;
+  private byte[] jsonContent;
+  private byte[] xmlContent;
+
+
+
+  /**
+   * Create the resources and their marshalled forms.
+   *
+   * @throws SCIMException  If the resources could not be marshalled.
+   */
+  @Setup
+  public void setUp()
+      throws SCIMException
+  {
+    final List<UserResource> users = new ArrayList<UserResource>();
+    for (int i = 0; i < numResources; i++)
+    {
+      users.add(BenchmarkData.createUser(i));
+    }
+    resources = new Resources<UserResource>(users);
+    jsonContent = jsonMarshal().toByteArray();
+    xmlContent = xmlMarshal().toByteArray();
+  }
+
+
+
+  /**
+   * Marshal the resources to JSON.
+   *
+   * @return  The marshalled resources.
+   *
+   * @throws SCIMException  If the resources could not be marshalled.
+   */
+  @Benchmark
+  public ByteArrayOutputStream jsonMarshal()
+      throws SCIMException
+  {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    final JsonStreamMarshaller marshaller =
+        new JsonStreamMarshaller(outputStream);
+    try
+    {
+      marshaller.marshal(resources);
+    }
+    finally
+    {
+      marshaller.close();
+    }
+    return outputStream;
+  }
+
+
+
+  /**
+   * Unmarshal the resources from JSON.
+   *
+   * @return  The unmarshalled resources.
+   *
+   * @throws SCIMException  If the resources could not be unmarshalled.
+   */
+  @Benchmark
+  public Resources<UserResource> jsonUnmarshal()
+      throws SCIMException
+  {
+    return new JsonUnmarshaller().unmarshalResources(
+        new ByteArrayInputStream(jsonContent), CoreSchema.USER_DESCRIPTOR,
+        UserResource.USER_RESOURCE_FACTORY);
+  }
+
+
+
+  /**
+   * Marshal the resources to XML.
+   *
+   * @return  The marshalled resources.
+   *
+   * @throws SCIMException  If the resources could not be marshalled.
+   */
+  @Benchmark
+  public ByteArrayOutputStream xmlMarshal()
+      throws SCIMException
+  {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    final XmlStreamMarshaller marshaller =
+        new XmlStreamMarshaller(outputStream);
+    try
+    {
+      marshaller.marshal(resources);
+    }
+    finally
+    {
+      marshaller.close();
+    }
+    return outputStream;
+  }
+
+
+
+  /**
+   * Unmarshal the resources from XML.
+   *
+   * @return  The unmarshalled resources.
+   *
+   * @throws SCIMException  If the resources could not be unmarshalled.
+   */
+  @Benchmark
+  public Resources<UserResource> xmlUnmarshal()
+      throws SCIMException
+  {
+    return new XmlUnmarshaller().unmarshalResources(
+        new ByteArrayInputStream(xmlContent), CoreSchema.USER_DESCRIPTOR,
+        UserResource.USER_RESOURCE_FACTORY);
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.benchmarks.BenchmarkData;
+import com.unboundid.scim.data.Name;
+import com.unboundid.scim.data.UserResource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * This class provides benchmarks for generating the differences between two
+ * versions of a resource and applying them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiffBenchmark
+{
+  private UserResource source;
+  private UserResource target;
+  private Diff<UserResource> diff;
+
+
+
+  /**
+   * Create the two versions of the resource and the differences between
+   * them.
+   */
+  @Setup
+  public void setUp()
+  {
+    source = BenchmarkData.createUser(0);
+
+    // Change a singular, a complex and a multi-valued attribute, and remove
+    // another.
+    target = BenchmarkData.createUser(0);
+    target.setTitle("Manager");
+    target.setName(new Name("Ms. Barbara J Smith", "Smith", "J", "Barbara",
+                            "Ms.", null));
+    final List<com.unboundid.scim.data.Entry<String>> emails =
+        new ArrayList<com.unboundid.scim.data.Entry<String>>(1);
+    emails.add(new com.unboundid.scim.data.Entry<String>(
+        "bsmith@example.com", "work", true));
+    target.setEmails(emails);
+    target.setPhoneNumbers(null);
+
+    diff = generate();
+  }
+
+
+
+  /**
+   * Generate the differences between the two versions of the resource.
+   *
+   * @return  The differences.
+   */
+  @Benchmark
+  public Diff<UserResource> generate()
+  {
+    return Diff.generate(source, target);
+  }
+
+
+
+  /**
+   * Apply the differences to the first version of the resource.
+   *
+   * @return  The modified resource.
+   */
+  @Benchmark
+  public UserResource apply()
+  {
+    return diff.apply(source, UserResource.USER_RESOURCE_FACTORY);
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.benchmarks.BenchmarkData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * This class provides benchmarks for parsing SCIM filters and evaluating them
+ * against a resource.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterBenchmark
+{
+  /**
+   * The filter to be parsed and evaluated.
+   */
+  @Param({
+      "userName eq \"user.0\"",
+      "name.familyName sw \"Jen\" and emails co \"example.com\"",
+      "(title pr and userName eq \"user.1\") or " +
+      "(emails.type eq \"work\" and displayName co \"User\")"
+  })
+  public String filterString;
+
+  private SCIMObject scimObject;
+  private SCIMFilter filter;
+
+
+
+  /**
+   * Create the resource and parse the filter.
+   *
+   * @throws SCIMException  If the filter could not be parsed.
+   */
+  @Setup
+  public void setUp()
+      throws SCIMException
+  {
+    scimObject = BenchmarkData.createUser(0).getScimObject();
+    filter = parse();
+  }
+
+
+
+  /**
+   * Parse the filter.
+   *
+   * @return  The parsed filter.
+   *
+   * @throws SCIMException  If the filter could not be parsed.
+   */
+  @Benchmark
+  public SCIMFilter parse()
+      throws SCIMException
+  {
+    return new FilterParser(filterString, SCIMConstants.SCHEMA_URI_CORE)
+        .parse();
+  }
+
+
+
+  /**
+   * Evaluate the parsed filter against the resource.
+   *
+   * @return  Whether the resource matches the filter.
+   */
+  @Benchmark
+  public boolean matchesFilter()
+  {
+    return scimObject.matchesFilter(filter);
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.DN;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+
+/**
+ * This class provides a bounded, thread-safe cache of values keyed by DN that
+ * may be shared across requests. When the cache is full, the least recently
+ * used value is evicted. Values may optionally expire after a fixed amount of
+ * time so that changes made outside of the SCIM server are eventually
+ * observed.
+ *
+ * @param <V>  The type of the cached values.
+ */
+final class DNCache<V>
+{
+  /**
+   * The cached values, in least recently used order.
+   */
+  private final LinkedHashMap<DN, CachedValue<V>> cache;
+
+  /**
+   * The maximum number of values to cache.
+   */
+  private final int maxSize;
+
+  /**
+   * The number of milliseconds after which a cached value expires, or zero
+   * if cached values do not expire.
+   */
+  private final long timeToLiveMillis;
+
+
+
+  /**
+   * Create a new DN cache.
+   *
+   * @param maxSize           The maximum number of values to cache.
+   * @param timeToLiveMillis  The number of milliseconds after which a cached
+   *                          value expires, or zero if cached values do not
+   *                          expire.
+   */
+  DNCache(final int maxSize, final long timeToLiveMillis)
+  {
+    this.maxSize = maxSize;
+    this.timeToLiveMillis = timeToLiveMillis;
+    this.cache = new LinkedHashMap<DN, CachedValue<V>>(16, 0.75f, true)
+    {
+      private static final long serialVersionUID = -5236154937372410349L;
+
+      @Override
+      protected boolean removeEldestEntry(
+          final Map.Entry<DN, CachedValue<V>> eldest)
+      {
+        return size() > DNCache.this.maxSize;
+      }
+    };
+  }
+
+
+
+  /**
+   * Retrieve a cached value.
+   *
+   * @param dn  The DN of the value to retrieve.
+   *
+   * @return  The cached value, or {@code null} if there is no value cached for
+   *          the DN or the cached value has expired.
+   */
+  synchronized V get(final DN dn)
+  {
+    final CachedValue<V> cachedValue = cache.get(dn);
+    if (cachedValue == null)
+    {
+      return null;
+    }
+
+    if (cachedValue.expirationTime != 0 &&
+        cachedValue.expirationTime < System.currentTimeMillis())
+    {
+      cache.remove(dn);
+      return null;
+    }
+
+    return cachedValue.value;
+  }
+
+
+
+  /**
+   * Cache a value.
+   *
+   * @param dn     The DN of the value.
+   * @param value  The value to cache.
+   */
+  synchronized void put(final DN dn, final V value)
+  {
+    final long expirationTime = timeToLiveMillis > 0 ?
+        System.currentTimeMillis() + timeToLiveMillis : 0;
+    cache.put(dn, new CachedValue<V>(value, expirationTime));
+  }
+
+
+
+  /**
+   * Remove a cached value, if present.
+   *
+   * @param dn  The DN of the value to remove.
+   */
+  synchronized void remove(final DN dn)
+  {
+    cache.remove(dn);
+  }
+
+
+
+  /**
+   * Remove all cached values.
+   */
+  synchronized void clear()
+  {
+    cache.clear();
+  }
+
+
+
+  /**
+   * Retrieve the number of values currently cached, including any values that
+   * have expired but have not yet been removed.
+   *
+   * @return  The number of values currently cached.
+   */
+  synchronized int size()
+  {
+    return cache.size();
+  }
+
+
+
+  /**
+   * Create a DN cache from the arguments of a derived attribute.
+   *
+   * @param derivedAttribute  The derived attribute.
+   * @param sizeArgument      The name of the argument that provides the
+   *                          maximum number of values to cache.
+   * @param ttlArgument       The name of the argument that provides the number
+   *                          of milliseconds after which a cached value
+   *                          expires.
+   * @param <V>               The type of the cached values.
+   *
+   * @return  A new DN cache, or {@code null} if the size argument is not
+   *          provided or is less than one.
+   */
+  static <V> DNCache<V> create(final DerivedAttribute derivedAttribute,
+                               final String sizeArgument,
+                               final String ttlArgument)
+  {
+    final int size = getIntArgument(derivedAttribute, sizeArgument);
+    if (size < 1)
+    {
+      return null;
+    }
+
+    return new DNCache<V>(size,
+        Math.max(getIntArgument(derivedAttribute, ttlArgument), 0));
+  }
+
+
+
+  /**
+   * Retrieve the integer value of a derived attribute argument.
+   *
+   * @param derivedAttribute  The derived attribute.
+   * @param argument          The name of the argument.
+   *
+   * @return  The integer value of the argument, or zero if the argument is not
+   *          provided or is not a valid integer.
+   */
+  private static int getIntArgument(final DerivedAttribute derivedAttribute,
+                                    final String argument)
+  {
+    final Object o = derivedAttribute.getArguments().get(argument);
+    if (o != null)
+    {
+      try
+      {
+        return Integer.valueOf(o.toString().trim());
+      }
+      catch (NumberFormatException nfe)
+      {
+        com.unboundid.scim.sdk.Debug.debugException(nfe);
+      }
+    }
+
+    return 0;
+  }
+
+
+
+  /**
+   * A cached value and its expiration time.
+   *
+   * @param <V>  The type of the cached value.
+   */
+  private static final class CachedValue<V>
+  {
+    /**
+     * The cached value.
+     */
+    private final V value;
+
+    /**
+     * The time at which the value expires, or zero if it does not expire.
+     */
+    private final long expirationTime;
+
+
+
+    /**
+     * Create a new cached value.
+     *
+     * @param value           The cached value.
+     * @param expirationTime  The time at which the value expires, or zero if
+     *                        it does not expire.
+     */
+    private CachedValue(final V value, final long expirationTime)
+    {
+      this.value = value;
+      this.expirationTime = expirationTime;
+    }
+  }
+}
@@ -19,8 +19,10 @@ package com.unboundid.scim.ldap;
 
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.Entry;
 import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.RDN;
 import com.unboundid.ldap.sdk.SearchResultEntry;
 import com.unboundid.scim.schema.AttributeDescriptor;
 import com.unboundid.scim.sdk.AttributePath;
@@ -32,6 +34,7 @@ import com.unboundid.scim.sdk.SCIMFilter;
 import com.unboundid.scim.sdk.SCIMObject;
 import org.w3c.dom.Element;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
@@ -74,6 +77,12 @@ public abstract class DerivedAttribute
    */
   public static final String LDAP_SEARCH_REF = "LDAPSearchRef";
 
+  /**
+   * The maximum number of asynchronous searches that a derived attribute
+   * should have outstanding at any time while deriving a value.
+   */
+  protected static final int MAX_PENDING_SEARCHES = 32;
+
   /**
    * The map of arguments provided to this derived attribute. This maps the
    * element name to its value. See getArguments() for an example.
@@ -210,6 +219,59 @@ public abstract class DerivedAttribute
 
 
 
+  /**
+   * Indicates whether this derived attribute benefits from having
+   * {@link #prefetch} invoked for a batch of query results before the
+   * attribute is derived for each of them.
+   *
+   * @return  {@code true} if {@code prefetch} should be invoked.
+   */
+  public boolean supportsPrefetch()
+  {
+    return false;
+  }
+
+
+
+  /**
+   * Prepare to derive the attribute for a batch of LDAP entries, for example
+   * by retrieving the information needed for all of them with a few searches
+   * and caching it. This is invoked for the entries returned by a query when
+   * {@link #supportsPrefetch} returns {@code true}. The attribute is then
+   * derived for each entry with {@link #toSCIMAttribute}, possibly on other
+   * threads.
+   *
+   * @param entries        The LDAP entries representing the SCIM resources.
+   * @param ldapInterface  An LDAP interface that may be used to search the DIT.
+   * @param searchResolver The LDAPSearchResolver for resources containing this
+   *                       derived attribute.
+   *
+   * @throws SCIMException if an error occurs.
+   */
+  public void prefetch(final List<? extends Entry> entries,
+                       final LDAPRequestInterface ldapInterface,
+                       final LDAPSearchResolver searchResolver)
+      throws SCIMException
+  {
+    // Nothing to prefetch by default.
+  }
+
+
+
+  /**
+   * Discard any values cached across requests that were derived from the
+   * LDAP entry with the provided DN. This is invoked after the entry has been
+   * added, modified, renamed or deleted through the SCIM server.
+   *
+   * @param dn  The DN of the LDAP entry that has changed.
+   */
+  public void invalidateCachedValues(final DN dn)
+  {
+    // No cached values by default.
+  }
+
+
+
   /**
    * Derive a SCIM attribute value from the provided information.
    *
@@ -253,6 +315,42 @@ public abstract class DerivedAttribute
 
 
 
+  /**
+   * Create a filter that matches entries with the RDNs of the provided DNs.
+   * This may be used to retrieve several entries with the same parent entry
+   * with a single one-level search of the parent.
+   *
+   * @param dns  The DNs whose RDNs are to be matched.
+   *
+   * @return  The filter.
+   */
+  protected static Filter createRDNFilter(final List<DN> dns)
+  {
+    final List<Filter> filters = new ArrayList<Filter>(dns.size());
+    for (final DN dn : dns)
+    {
+      final RDN rdn = dn.getRDN();
+      final String[] names = rdn.getAttributeNames();
+      final String[] rdnValues = rdn.getAttributeValues();
+      if (names.length == 1)
+      {
+        filters.add(Filter.createEqualityFilter(names[0], rdnValues[0]));
+      }
+      else
+      {
+        final List<Filter> components = new ArrayList<Filter>(names.length);
+        for (int i = 0; i < names.length; i++)
+        {
+          components.add(Filter.createEqualityFilter(names[i], rdnValues[i]));
+        }
+        filters.add(Filter.createANDFilter(components));
+      }
+    }
+    return Filter.createORFilter(filters);
+  }
+
+
+
   /**
    * Map the SCIM attribute in the provided SCIM object to LDAP attributes.
    *
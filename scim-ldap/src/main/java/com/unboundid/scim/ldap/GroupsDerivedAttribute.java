@@ -45,6 +45,7 @@ import com.unboundid.util.StaticUtils;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -89,6 +90,24 @@ public class GroupsDerivedAttribute extends DerivedAttribute
    */
   private static final String MAX_GROUPS_CACHED = "maxGroupsCached";
 
+  /**
+   * The name of the argument that indicates whether to cache group data
+   * across HTTP requests, and how much data to cache. Values less than one
+   * will prevent shared group caching. Cached group data is shared by all
+   * clients, so this should only be enabled when every client is permitted
+   * to read the group entries.
+   */
+  private static final String MAX_SHARED_GROUPS_CACHED =
+      "maxSharedGroupsCached";
+
+  /**
+   * The name of the argument that specifies the number of milliseconds after
+   * which shared group data expires. Values less than one indicate that
+   * shared group data only expires when it is evicted or the group entry is
+   * modified through this server.
+   */
+  private static final String SHARED_GROUP_CACHE_TTL = "sharedGroupCacheTTL";
+
   /**
    * The name of the LDAP cn attribute.
    */
@@ -191,6 +210,12 @@ public class GroupsDerivedAttribute extends DerivedAttribute
    */
   private int groupsToCachePerRequest;
 
+  /**
+   * The group cache shared across requests, or {@code null} if shared group
+   * caching is not enabled.
+   */
+  private volatile DNCache<SearchResultEntry> sharedGroupCache;
+
 
 
   @Override
@@ -261,10 +286,34 @@ public class GroupsDerivedAttribute extends DerivedAttribute
             }
           }
 
-          for (final String dnString :
-              entry.getAttributeValues(ATTR_IS_MEMBER_OF))
+          // Issue the searches for groups that are not cached ahead of
+          // processing them, with a bounded number outstanding, so that the
+          // directory server processes them concurrently.
+          final String[] groupDNs = entry.getAttributeValues(ATTR_IS_MEMBER_OF);
+          final Map<String, LDAPSearchFuture> pendingSearches =
+              new HashMap<String, LDAPSearchFuture>();
+          int nextSearch = 0;
+          for (int i = 0; i < groupDNs.length; i++)
           {
+            for (; nextSearch < groupDNs.length &&
+                   nextSearch < i + MAX_PENDING_SEARCHES; nextSearch++)
+            {
+              final String groupDNString = groupDNs[nextSearch];
+              if (groupResolver.isDnInScope(groupDNString) &&
+                  !pendingSearches.containsKey(groupDNString) &&
+                  !isGroupCached(new DN(groupDNString)))
+              {
+                final SearchRequest groupSearchRequest =
+                    new SearchRequest(groupDNString, SearchScope.BASE,
+                        groupResolver.getFilterString(), attrsToGet);
+                groupSearchRequest.setSizeLimit(1);
+                pendingSearches.put(groupDNString,
+                    ldapInterface.asyncSearch(groupSearchRequest));
+              }
+            }
+
             // Make sure the group is scoped within the base DN.
+            final String dnString = groupDNs[i];
             if (groupResolver.isDnInScope(dnString))
             {
               SearchRequest searchRequest;
@@ -285,16 +334,35 @@ public class GroupsDerivedAttribute extends DerivedAttribute
                 }
               }
 
+              final DNCache<SearchResultEntry> sharedCache = sharedGroupCache;
+              if (groupEntry == null && sharedCache != null)
+              {
+                groupEntry = sharedCache.get(groupDN);
+                if (groupEntry != null && groupCache != null)
+                {
+                  groupCache.put(groupDN, groupEntry);
+                }
+              }
+
               if (groupEntry == null)
               {
                 // Retrieve the group entry and pass in the search param filter
                 // if available.
-                searchRequest =
-                    new SearchRequest(dnString, SearchScope.BASE,
-                        groupResolver.getFilterString(),
-                        attrsToGet);
-                searchRequest.setSizeLimit(1);
-                groupEntry = ldapInterface.searchForEntry(searchRequest);
+                final LDAPSearchFuture pendingSearch =
+                    pendingSearches.remove(dnString);
+                if (pendingSearch != null)
+                {
+                  groupEntry = pendingSearch.getEntry();
+                }
+                else
+                {
+                  searchRequest =
+                      new SearchRequest(dnString, SearchScope.BASE,
+                          groupResolver.getFilterString(),
+                          attrsToGet);
+                  searchRequest.setSizeLimit(1);
+                  groupEntry = ldapInterface.searchForEntry(searchRequest);
+                }
 
                 if (groupEntry != null && groupCache != null)
                 {
@@ -309,6 +377,11 @@ public class GroupsDerivedAttribute extends DerivedAttribute
                     it.remove();
                   }
                 }
+
+                if (groupEntry != null && sharedCache != null)
+                {
+                  sharedCache.put(groupDN, groupEntry);
+                }
               }
 
               if (groupEntry != null)
@@ -516,6 +589,9 @@ public class GroupsDerivedAttribute extends DerivedAttribute
         Debug.debugException(nfe);
       }
     }
+
+    sharedGroupCache = DNCache.create(this, MAX_SHARED_GROUPS_CACHED,
+                                      SHARED_GROUP_CACHE_TTL);
   }
 
 
@@ -698,6 +774,38 @@ public class GroupsDerivedAttribute extends DerivedAttribute
     return SCIMAttributeValue.createComplexValue(subAttributes);
   }
 
+  /**
+   * Determine whether a group entry is already cached.
+   *
+   * @param groupDN  The group DN.
+   *
+   * @return  {@code true} if the group entry is cached.
+   */
+  private boolean isGroupCached(final DN groupDN)
+  {
+    final Map<DN, SearchResultEntry> groupCache = GROUP_CACHES.get();
+    if (groupsToCachePerRequest > 0 && groupCache != null &&
+        groupCache.containsKey(groupDN))
+    {
+      return true;
+    }
+
+    final DNCache<SearchResultEntry> sharedCache = sharedGroupCache;
+    return sharedCache != null && sharedCache.get(groupDN) != null;
+  }
+
+
+
+  @Override
+  public void invalidateCachedValues(final DN dn)
+  {
+    final DNCache<SearchResultEntry> sharedCache = sharedGroupCache;
+    if (sharedCache != null)
+    {
+      sharedCache.remove(dn);
+    }
+  }
+
   /**
    * Clear the cache.
    */
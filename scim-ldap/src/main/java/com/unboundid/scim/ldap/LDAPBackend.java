@@ -17,14 +17,17 @@
 
 package com.unboundid.scim.ldap;
 
+import com.unboundid.asn1.ASN1OctetString;
 import com.unboundid.ldap.sdk.AddRequest;
 import com.unboundid.ldap.sdk.Attribute;
 import com.unboundid.ldap.sdk.Control;
 import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.DeleteRequest;
 import com.unboundid.ldap.sdk.Entry;
+import com.unboundid.ldap.sdk.EntrySorter;
 import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPInterface;
 import com.unboundid.ldap.sdk.LDAPResult;
 import com.unboundid.ldap.sdk.LDAPSearchException;
 import com.unboundid.ldap.sdk.Modification;
@@ -33,6 +36,7 @@ import com.unboundid.ldap.sdk.ModifyDNRequest;
 import com.unboundid.ldap.sdk.ModifyRequest;
 import com.unboundid.ldap.sdk.RDN;
 import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.RootDSE;
 import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
@@ -71,6 +75,7 @@ import com.unboundid.scim.sdk.SCIMAttribute;
 import com.unboundid.scim.sdk.PageParameters;
 import com.unboundid.scim.sdk.ServerErrorException;
 import com.unboundid.scim.sdk.SortParameters;
+import com.unboundid.scim.sdk.StreamingResources;
 import com.unboundid.scim.sdk.GetResourceRequest;
 import com.unboundid.scim.sdk.GetResourcesRequest;
 import com.unboundid.scim.sdk.PostResourceRequest;
@@ -85,14 +90,22 @@ import javax.ws.rs.core.UriBuilder;
 
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import static com.unboundid.scim.sdk.SCIMConstants.SCHEMA_URI_CORE;
@@ -117,6 +130,37 @@ public abstract class LDAPBackend
   private static final String MODIFY_TIMESTAMP_ATTR = "modifyTimestamp";
   private static final String DS_UPDATE_TIME_ATTR = "ds-update-time";
 
+  /**
+   * The base DN of the directory server configuration, which is searched for
+   * VLV index definitions.
+   */
+  private static final String CONFIG_BASE_DN = "cn=config";
+
+  /**
+   * The object classes of VLV index definitions in the directory server
+   * configuration.
+   */
+  private static final String OC_VLV_INDEX = "ds-cfg-vlv-index";
+  private static final String OC_LOCAL_DB_VLV_INDEX =
+      "ds-cfg-local-db-vlv-index";
+
+  /**
+   * The attribute holding the sort order of a VLV index definition.
+   */
+  private static final String ATTR_VLV_SORT_ORDER = "ds-cfg-sort-order";
+
+  /**
+   * The default maximum number of simple paged results cookies to cache.
+   */
+  private static final int DEFAULT_MAX_PAGED_RESULTS_CURSORS = 1000;
+
+  /**
+   * The default number of milliseconds after which an unused simple paged
+   * results cookie is discarded.
+   */
+  private static final long DEFAULT_PAGED_RESULTS_CURSOR_IDLE_TIMEOUT =
+      5L * 60L * 1000L;
+
   /**
    * The resource mappers configured for SCIM resource end-points.
    */
@@ -134,6 +178,42 @@ public abstract class LDAPBackend
    */
   private boolean supportsVLVRequestControl = false;
 
+  /**
+   * The normalized sort orders of the VLV indexes defined in the directory
+   * server, or {@code null} if they are not known, in which case any sort
+   * order is assumed to be indexed.
+   */
+  private volatile Set<String> vlvIndexSortOrders = null;
+
+  /**
+   * Indicates whether the VLV index definitions have been read from the
+   * directory server.
+   */
+  private volatile boolean vlvIndexesChecked = false;
+
+  /**
+   * Flag to indicate whether queries with several search base DNs search
+   * them concurrently.
+   */
+  private volatile boolean parallelBaseDNSearches = true;
+
+  /**
+   * The number of threads used to convert the entries returned by a query to
+   * resources.
+   */
+  private volatile int queryConversionThreads = 1;
+
+  /**
+   * The executor shared by all queries to convert entries to resources, or
+   * {@code null} if it has not been created.
+   */
+  private ExecutorService queryConversionExecutor;
+
+  /**
+   * The number of threads of the query conversion executor.
+   */
+  private int queryConversionExecutorThreads;
+
   /**
    * Flag to indicate whether this backend supports the Simple Paged Results
    * Request Control.
@@ -151,6 +231,21 @@ public abstract class LDAPBackend
    */
   private String entityTagAttribute = null;
 
+  /**
+   * The cache of simple paged results cookies used to resume a query at the
+   * next page, or {@code null} if cookies are not cached.
+   */
+  private volatile PagedResultsCursorCache pagedResultsCursorCache =
+      new PagedResultsCursorCache(DEFAULT_MAX_PAGED_RESULTS_CURSORS,
+                                  DEFAULT_PAGED_RESULTS_CURSOR_IDLE_TIMEOUT);
+
+  /**
+   * The LDAP attribute types that are requested in addition to those mapped
+   * from the requested SCIM attributes, or {@code null} if they have not yet
+   * been determined.
+   */
+  private volatile Set<String> additionalRequestAttributes = null;
+
   static
   {
     HashSet<String> attrs = new HashSet<String>(4);
@@ -240,6 +335,83 @@ public abstract class LDAPBackend
 
 
 
+  /**
+   * Read the VLV index definitions from the configuration of the directory
+   * server, so that VLV pagination is only used for queries whose sort order
+   * is indexed. VLV is disabled if the root DSE does not advertise support
+   * for the VLVRequestControl. If the configuration cannot be read, for
+   * example because the server does not expose it over LDAP, all sort orders
+   * are assumed to be indexed. A warning is logged for each resource whose
+   * VLV sort key is not indexed. If this method has not been called when
+   * the first query that could be paged with VLV is processed, it is called
+   * with the LDAP interface that the request interface of that query wraps.
+   *
+   * @param ldapInterface  An LDAP interface with permission to read the root
+   *                       DSE and, if possible, the server configuration.
+   */
+  public void checkVLVIndexes(final LDAPInterface ldapInterface)
+  {
+    vlvIndexesChecked = true;
+    try
+    {
+      final RootDSE rootDSE = ldapInterface.getRootDSE();
+      if (rootDSE != null && !rootDSE.supportsControl(
+          VirtualListViewRequestControl.VIRTUAL_LIST_VIEW_REQUEST_OID))
+      {
+        Debug.debug(Level.WARNING, DebugType.OTHER,
+            "VLV pagination is disabled because the directory server does " +
+            "not support the VLV request control");
+        supportsVLVRequestControl = false;
+      }
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+    }
+
+    final Set<String> sortOrders = new HashSet<String>();
+    try
+    {
+      final SearchResult searchResult = ldapInterface.search(
+          CONFIG_BASE_DN, SearchScope.SUB,
+          Filter.createORFilter(
+              Filter.createEqualityFilter("objectClass", OC_VLV_INDEX),
+              Filter.createEqualityFilter("objectClass",
+                                          OC_LOCAL_DB_VLV_INDEX)),
+          ATTR_VLV_SORT_ORDER);
+      for (final SearchResultEntry entry : searchResult.getSearchEntries())
+      {
+        final String sortOrder = entry.getAttributeValue(ATTR_VLV_SORT_ORDER);
+        if (sortOrder != null)
+        {
+          sortOrders.add(normalizeSortOrder(sortOrder.split("\\s+")));
+        }
+      }
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+      vlvIndexSortOrders = null;
+      return;
+    }
+    vlvIndexSortOrders = sortOrders;
+
+    for (final ResourceMapper resourceMapper : resourceMappers.values())
+    {
+      final SortKey sortKey = resourceMapper.getVLVSortKey();
+      if (sortKey != null && !isVLVIndexed(new SortKey[] { sortKey }))
+      {
+        Debug.debug(Level.WARNING, DebugType.OTHER,
+            "The VLV sort key '" + sortKey.getAttributeName() + "' of the " +
+            resourceMapper.getResourceDescriptor().getName() + " resource " +
+            "does not match any VLV index in the directory server, so " +
+            "queries for these resources will not be paged with VLV");
+      }
+    }
+  }
+
+
+
   /**
    * Configures this LDAPBackend to use or not use the
    * SimplePagedResultsControl.
@@ -266,6 +438,149 @@ public abstract class LDAPBackend
 
 
 
+  /**
+   * Configures whether a query for resources that have several search base
+   * DNs searches them concurrently rather than one after another. The
+   * entries from each base DN are collected and merged, in sort order if the
+   * query requests sorting, before the requested page is returned. Queries
+   * that are paged with the VLVRequestControl and count-only queries always
+   * search the base DNs one after another. This is enabled by default.
+   *
+   * @param parallel {@code true} if the base DNs are to be searched
+   *                 concurrently, {@code false} if not.
+   */
+  public void setParallelBaseDNSearches(final boolean parallel)
+  {
+    this.parallelBaseDNSearches = parallel;
+  }
+
+
+
+  /**
+   * Determines whether a query for resources that have several search base
+   * DNs searches them concurrently.
+   *
+   * @return {@code true} if the base DNs are searched concurrently,
+   *         {@code false} otherwise.
+   */
+  public boolean isParallelBaseDNSearches()
+  {
+    return this.parallelBaseDNSearches;
+  }
+
+
+
+  /**
+   * Configures the number of threads used to convert the entries returned by
+   * a query to resources. With more than one thread, entries are converted
+   * concurrently while the search continues, which helps when resources have
+   * derived attributes that need further searches. The threads are shared by
+   * all queries, and the LDAP interface for the request must support
+   * concurrent operations, as a connection pool does. The default of one
+   * converts each entry as it is returned.
+   *
+   * @param threads  The number of threads used to convert the entries
+   *                 returned by a query.
+   */
+  public void setQueryConversionThreads(final int threads)
+  {
+    this.queryConversionThreads = threads;
+  }
+
+
+
+  /**
+   * Retrieve the number of threads used to convert the entries returned by a
+   * query to resources.
+   *
+   * @return  The number of threads used to convert the entries returned by a
+   *          query.
+   */
+  public int getQueryConversionThreads()
+  {
+    return this.queryConversionThreads;
+  }
+
+
+
+  /**
+   * Retrieve the executor shared by all queries to convert entries to
+   * resources. It has the number of threads given by
+   * {@link #getQueryConversionThreads()}, and is replaced if that setting
+   * changes.
+   *
+   * @return  The query conversion executor, or {@code null} if entries are
+   *          to be converted as they are returned.
+   */
+  synchronized ExecutorService getQueryConversionExecutor()
+  {
+    final int threads = queryConversionThreads;
+    if (threads <= 1)
+    {
+      shutdownQueryConversionExecutor();
+      return null;
+    }
+
+    if (queryConversionExecutor == null ||
+        queryConversionExecutorThreads != threads)
+    {
+      // Conversions already submitted to a replaced executor still complete.
+      shutdownQueryConversionExecutor();
+      queryConversionExecutor = Executors.newFixedThreadPool(
+          threads, new QueryConversionThreadFactory());
+      queryConversionExecutorThreads = threads;
+    }
+
+    return queryConversionExecutor;
+  }
+
+
+
+  /**
+   * Release the threads of the query conversion executor once the
+   * conversions that have been submitted to it have completed.
+   * Implementations of {@link #finalizeBackend()} should call this method.
+   */
+  protected synchronized void shutdownQueryConversionExecutor()
+  {
+    if (queryConversionExecutor != null)
+    {
+      queryConversionExecutor.shutdown();
+      queryConversionExecutor = null;
+    }
+  }
+
+
+
+  /**
+   * Configures the caching of SimplePagedResultsControl cookies, which is used
+   * when the VLVRequestControl is not supported. When a query returns a page
+   * of results, the cookie for the rest of the results is cached so that a
+   * query by the same user for the next page can continue the search rather
+   * than having the directory server return all of the preceding entries
+   * again. The cache is enabled by default.
+   *
+   * @param maxCursors         The maximum number of cookies to cache. A value
+   *                           less than one disables the cache.
+   * @param idleTimeoutMillis  The number of milliseconds after which an unused
+   *                           cookie is discarded.
+   */
+  public void setPagedResultsCursorCache(final int maxCursors,
+                                         final long idleTimeoutMillis)
+  {
+    if (maxCursors < 1)
+    {
+      this.pagedResultsCursorCache = null;
+    }
+    else
+    {
+      this.pagedResultsCursorCache =
+          new PagedResultsCursorCache(maxCursors, idleTimeoutMillis);
+    }
+  }
+
+
+
   /**
    * Configures this LDAPBackend to use or not use the
    * PermissiveModifyRequestControl.
@@ -317,6 +632,7 @@ public abstract class LDAPBackend
   public void setEntityTagAttribute(final String entityTagAttribute)
   {
     this.entityTagAttribute = entityTagAttribute;
+    this.additionalRequestAttributes = null;
   }
 
 
@@ -399,328 +715,1043 @@ public abstract class LDAPBackend
       final ResourceMapper mapper =
           getResourceMapper(request.getResourceDescriptor());
 
-      final Set<String> requestAttributeSet = new HashSet<String>();
-      requestAttributeSet.addAll(
-          mapper.toLDAPAttributeTypes(request.getAttributes()));
-      requestAttributeSet.addAll(getLastModAttributes());
-      requestAttributeSet.add("objectclass");
+      final String[] requestAttributes =
+          getRequestAttributes(mapper, request.getAttributes());
+
+      final LDAPRequestInterface ldapInterface =
+          getLDAPRequestInterface(request.getAuthenticatedUserID());
+
+      final SearchResultEntry entry;
+      try
+      {
+        entry =
+            mapper.getReturnEntry(ldapInterface, request.getResourceID(),
+                request.getAttributes(), requestAttributes);
+      }
+      catch (ResourceNotFoundException e)
+      {
+        if (supportsVersioning())
+        {
+          request.checkPreconditions(e);
+        }
+        throw e;
+      }
+
+      final BaseResource resource =
+          new BaseResource(request.getResourceDescriptor());
+
+      EntityTag currentEtag;
       if (supportsVersioning())
       {
-        requestAttributeSet.add(entityTagAttribute);
+        currentEtag = getEntityTagValue(entry);
+        request.checkPreconditions(currentEtag);
       }
 
-      final String[] requestAttributes = new String[requestAttributeSet.size()];
-      requestAttributeSet.toArray(requestAttributes);
+      setIdAndMetaAttributes(mapper, resource, request, entry,
+          request.getAttributes());
 
-      final LDAPRequestInterface ldapInterface =
-          getLDAPRequestInterface(request.getAuthenticatedUserID());
+      final List<SCIMAttribute> attributes = mapper.toSCIMAttributes(
+          entry, request.getAttributes(), ldapInterface);
+      for (final SCIMAttribute a : attributes)
+      {
+        Validator.ensureTrue(resource.getScimObject().addAttribute(a));
+      }
+
+      return resource;
+    }
+    finally
+    {
+      clearRequestCaches();
+    }
+  }
+
+
+
+  @Override
+  public Resources<?> getResources(final GetResourcesRequest request)
+      throws SCIMException
+  {
+    try
+    {
+      final QueryContext query = prepareQuery(request);
+      if (query == null)
+      {
+        // Match nothing... Just return an empty resources set.
+        List<BaseResource> emptyList = Collections.emptyList();
+        return new Resources<BaseResource>(emptyList);
+      }
+
+      final ResourceSearchResultListener resultListener =
+          new ResourceSearchResultListener(this, request, query.ldapInterface,
+              query.getMaxResultsToReturn(), null, getConversionThreads(query));
+      try
+      {
+        final int totalResults = executeQuery(query, resultListener);
+
+        return new Resources<BaseResource>(resultListener.getResources(),
+                totalResults, query.startIndex);
+      }
+      finally
+      {
+        resultListener.close();
+      }
+    }
+    finally
+    {
+      clearRequestCaches();
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean supportsStreamingQuery()
+  {
+    return true;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The request is validated and the LDAP filter is mapped before this method
+   * returns. The LDAP search itself is performed when the response is
+   * written, and each matching entry is converted and written to the response
+   * as soon as it is returned by the directory server.
+   */
+  @Override
+  public StreamingResources getStreamingResources(
+      final GetResourcesRequest request)
+      throws SCIMException
+  {
+    final QueryContext query;
+    try
+    {
+      query = prepareQuery(request);
+    }
+    finally
+    {
+      clearRequestCaches();
+    }
+
+    final int startIndex = query == null ? 1 : query.startIndex;
+    return new StreamingResources(request.getResourceDescriptor(), startIndex)
+    {
+      @Override
+      protected long streamResources()
+          throws SCIMException
+      {
+        if (query == null)
+        {
+          return 0;
+        }
+
+        try
+        {
+          final ResourceSearchResultListener resultListener =
+              new ResourceSearchResultListener(LDAPBackend.this, request,
+                  query.ldapInterface, query.getMaxResultsToReturn(), this,
+                  getConversionThreads(query));
+          try
+          {
+            return executeQuery(query, resultListener);
+          }
+          finally
+          {
+            resultListener.close();
+          }
+        }
+        finally
+        {
+          clearRequestCaches();
+        }
+      }
+    };
+  }
+
+
+
+  /**
+   * Validate a query request and map it to the parameters of the LDAP
+   * searches that are needed to process it.
+   *
+   * @param request  The query request.
+   *
+   * @return  The parameters of the LDAP searches, or {@code null} if the
+   *          query cannot match any resources.
+   *
+   * @throws SCIMException  If the request is not valid.
+   */
+  private QueryContext prepareQuery(final GetResourcesRequest request)
+      throws SCIMException
+  {
+    final ResourceMapper resourceMapper =
+        getResourceMapper(request.getResourceDescriptor());
+    if (resourceMapper == null || !resourceMapper.supportsQuery())
+    {
+      throw new UnsupportedOperationException(
+          "The requested operation is not supported on resource end-point '" +
+              request.getResourceDescriptor().getEndpoint() + "'");
+    }
+
+    try
+    {
+      final SCIMFilter scimFilter = request.getFilter();
+
+      final Set<String> requestAttributeSet = getRequestAttributeSet(
+          request, resourceMapper);
+
+      final LDAPRequestInterface ldapInterface =
+          getLDAPRequestInterface(request.getAuthenticatedUserID());
+
+      final QueryContext query = new QueryContext(request, resourceMapper,
+          ldapInterface, getConfig().getMaxResults());
+      query.searchBaseDNs = getSearchBaseDNs(request,
+          resourceMapper, ldapInterface);
+
+      if (isOptimizedIdSearch(scimFilter, resourceMapper))
+      {
+        query.requestAttributes = new String[requestAttributeSet.size()];
+        requestAttributeSet.toArray(query.requestAttributes);
+        query.baseEntryDN = scimFilter.getFilterValue();
+      }
+      else
+      {
+        try
+        {
+          // Map the SCIM filter to an LDAP filter.
+          query.filter = resourceMapper.toLDAPFilter(scimFilter, ldapInterface);
+        }
+        catch (InvalidResourceException ire)
+        {
+          throw new InvalidResourceException("Invalid filter: " +
+              ire.getLocalizedMessage(), ire);
+        }
+        if (query.filter == null)
+        {
+          return null;
+        }
+
+        // The LDAP filter results will still need to be filtered using the
+        // SCIM filter, so we need to request all the filter attributes.
+        addFilterAttributes(requestAttributeSet, query.filter);
+
+        query.requestAttributes = new String[requestAttributeSet.size()];
+        requestAttributeSet.toArray(query.requestAttributes);
+
+        query.searchScope = getSearchScope(request);
+      }
+
+      final SortParameters sortParameters = request.getSortParameters();
+      if (sortParameters != null)
+      {
+        try
+        {
+          query.sortControl = resourceMapper.toLDAPSortControl(sortParameters);
+        }
+        catch (InvalidResourceException ire)
+        {
+          throw new InvalidResourceException("Invalid sort parameters: " +
+              ire.getLocalizedMessage(), ire);
+        }
+      }
+
+      final PageParameters pageParameters = request.getPageParameters();
+      if (pageParameters != null)
+      {
+        query.startIndex = pageParameters.getStartIndex();
+        if (pageParameters.getCount() > 0)
+        {
+          query.totalToReturn = pageParameters.getCount();
+        }
+        else if (pageParameters.isCountOnly())
+        {
+          // The entries are only counted, so they are not converted to
+          // resources and none of their attributes are needed.
+          query.countOnly = true;
+          query.totalToReturn = 0;
+          query.requestAttributes = new String[] {
+              SearchRequest.NO_ATTRIBUTES };
+        }
+      }
+
+      return query;
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+      throw ResourceMapper.toSCIMException(e);
+    }
+  }
+
+
+
+  /**
+   * Perform the LDAP searches for a query request, passing the returned
+   * entries to the provided search result listener.
+   *
+   * @param query           The parameters of the LDAP searches.
+   * @param resultListener  The search result listener that is to process the
+   *                        returned entries.
+   *
+   * @return  The total number of results matching the query.
+   *
+   * @throws SCIMException  If an error occurs while processing the searches.
+   */
+  private int executeQuery(final QueryContext query,
+                           final ResourceSearchResultListener resultListener)
+      throws SCIMException
+  {
+    final GetResourcesRequest request = query.request;
+    final ResourceMapper resourceMapper = query.resourceMapper;
+    final LDAPRequestInterface ldapInterface = query.ldapInterface;
+
+    try
+    {
+      SearchRequest searchRequest = null;
+      if (query.baseEntryDN != null)
+      {
+        searchRequest =
+            new SearchRequest(resultListener, query.baseEntryDN,
+                SearchScope.BASE,
+                Filter.createPresenceFilter("objectclass"),
+                query.requestAttributes);
+      }
+
+      SearchResult searchResult = null;
+      final int startIndex = query.startIndex;
+      int workingStartIndex = startIndex;
+      final int totalToReturn = query.totalToReturn;
+      int totalResults = 0;
+
+      final boolean useVLV =
+          request.getPageParameters() != null && canUseVLV(query);
+      // Count-only queries search the base DNs one after another so that
+      // each entry is counted by the listener as it is returned, rather than
+      // being held until its search completes.
+      if (!useVLV && !query.countOnly && query.baseEntryDN == null &&
+          query.searchBaseDNs.size() > 1 && parallelBaseDNSearches)
+      {
+        return searchBaseDNsInParallel(query, resultListener);
+      }
+
+      // Simple paged results cookies can only be used to continue a query
+      // that has a single search base DN.
+      final PagedResultsCursorCache cursorCache = pagedResultsCursorCache;
+      final String cursorKey;
+      if (cursorCache != null && !useVLV && !query.countOnly &&
+          supportsSimplePagesResultsControl &&
+          request.getPageParameters() != null &&
+          query.baseEntryDN == null && query.searchBaseDNs.size() == 1)
+      {
+        cursorKey = getCursorKey(query);
+      }
+      else
+      {
+        cursorKey = null;
+      }
+      ASN1OctetString cookie = null;
+      int entriesSkipped = 0;
+
+      for (DN baseDN : query.searchBaseDNs)
+      {
+        if (searchRequest == null)
+        {
+          searchRequest = new SearchRequest(resultListener, baseDN.toString(),
+              query.searchScope, query.filter, query.requestAttributes);
+        }
+
+        if (query.sortControl != null)
+        {
+          searchRequest.addControl(query.sortControl);
+        }
+
+        final PageParameters pageParameters = request.getPageParameters();
+        final int numLeftToReturn = query.getMaxResultsToReturn() -
+            resultListener.getTotalResults();
+        if (pageParameters != null)
+        {
+          //Use the VLV control to perform pagination if the sort order is
+          //indexed
+          if (useVLV)
+          {
+            //We cannot set a size limit when using the VLV control; it will
+            //handle that internally.
+            searchRequest.setSizeLimit(0);
+
+            searchRequest.addControl(new VirtualListViewRequestControl(
+                workingStartIndex, 0, Math.max(numLeftToReturn - 1, 0), 0,
+                null, true));
+
+            //VLV requires a sort control
+            if (!searchRequest.hasControl(
+                ServerSideSortRequestControl.SERVER_SIDE_SORT_REQUEST_OID))
+            {
+              searchRequest.addControl(
+                  new ServerSideSortRequestControl(
+                      resourceMapper.getVLVSortKey()));
+            }
+          }
+          else if (query.countOnly)
+          {
+            //Every entry has to be returned to be counted, but without any
+            //attributes.
+            searchRequest.setSizeLimit(0);
+          }
+          else if (cursorKey != null)
+          {
+            //Fall back to using the SimplePagedResults control (if available)
+            //Continue from the cookie left by the query for the previous
+            //page if there is one, otherwise page past the entries that
+            //precede the requested page.
+            cookie = cursorCache.take(cursorKey, startIndex);
+            if (cookie != null)
+            {
+              searchRequest.addControl(
+                  new SimplePagedResultsControl(numLeftToReturn, cookie));
+            }
+            else
+            {
+              entriesSkipped = startIndex - 1;
+              resultListener.skipEntries(entriesSkipped);
+              searchRequest.addControl(new SimplePagedResultsControl(
+                  getPageSize(entriesSkipped, numLeftToReturn)));
+            }
+          }
+          else if (supportsSimplePagesResultsControl)
+          {
+            //Fall back to using the SimplePagedResults control (if available)
+            //This will essentially, only limit the number of entries returned
+            //since the cookie cannot be propagated between searches.
+            searchRequest.addControl(
+                new SimplePagedResultsControl(numLeftToReturn));
+          }
+          else
+          {
+            //If nothing else, fall back to just using the LDAP size limit
+            searchRequest.setSizeLimit(numLeftToReturn);
+          }
+        }
+        else if (supportsSimplePagesResultsControl)
+        {
+          searchRequest.addControl(
+              new SimplePagedResultsControl(numLeftToReturn));
+        }
+        else
+        {
+          searchRequest.setSizeLimit(numLeftToReturn);
+        }
+
+        // Include any controls that are needed by derived attributes.
+        final List<Control> controls = new ArrayList<Control>();
+        resourceMapper.addSearchControls(controls, request.getAttributes());
+        searchRequest.addControls(
+            controls.toArray(new Control[controls.size()]));
+
+        // Invoke the search operation.
+        try
+        {
+          searchResult = search(ldapInterface, searchRequest);
+        }
+        catch (LDAPSearchException e)
+        {
+          if (cookie == null || resultListener.getTotalResults() > 0)
+          {
+            throw e;
+          }
+
+          // The server may no longer recognize the cookie, for example if it
+          // was used on a different connection, so page past the preceding
+          // entries instead.
+          Debug.debugException(e);
+          cookie = null;
+          entriesSkipped = startIndex - 1;
+          resultListener.skipEntries(entriesSkipped);
+          searchRequest.removeControl(
+              SimplePagedResultsControl.PAGED_RESULTS_OID);
+          searchRequest.addControl(new SimplePagedResultsControl(
+              getPageSize(entriesSkipped, numLeftToReturn)));
+          searchResult = search(ldapInterface, searchRequest);
+        }
+
+        resultListener.awaitConversions();
+
+        // A resource could not be written to a streamed response so there is
+        // no point in continuing.
+        if (resultListener.getStreamingException() != null)
+        {
+          throw resultListener.getStreamingException();
+        }
+
+        // When returning VLV responses, track the total results count across
+        // loops. This is handled by the resultListener for other searches.
+        final VirtualListViewResponseControl vlvResponseControl =
+                getVLVResponseControl(searchResult);
+        final SimplePagedResultsControl simplePagedResultsResponseControl =
+                SimplePagedResultsControl.get(searchResult);
+
+        if (vlvResponseControl != null)
+        {
+          totalResults += vlvResponseControl.getContentCount();
+        }
+        else if (simplePagedResultsResponseControl != null)
+        {
+          totalResults += simplePagedResultsResponseControl.getSize();
+
+          if (cursorKey != null)
+          {
+            // The total is at least the number of results up to the end of
+            // this page, and more if the server has further results.
+            final int nextStartIndex =
+                startIndex + searchResult.getEntryCount() - entriesSkipped;
+            if (simplePagedResultsResponseControl.moreResultsToReturn())
+            {
+              cursorCache.put(cursorKey, nextStartIndex,
+                  simplePagedResultsResponseControl.getCookie());
+              totalResults = Math.max(totalResults, nextStartIndex);
+            }
+            else
+            {
+              totalResults = Math.max(totalResults, nextStartIndex - 1);
+            }
+          }
+        }
+
+        if (searchRequest.getScope() == SearchScope.BASE ||
+            (!query.countOnly &&
+             resultListener.getTotalResults() >= totalToReturn))
+        {
+          break;
+        }
+        else
+        {
+          searchRequest = null;
+        }
+
+        //Update the workingStartIndex value in order to avoid skipping
+        //too many search results in subsequent baseDN searches. Note that
+        //the minimum startIndex value for a search is 1.
+        workingStartIndex = Math.max(startIndex - totalResults, 1);
+      }
+
+      return Math.max(totalResults, resultListener.getTotalResults());
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+      throw ResourceMapper.toSCIMException(e);
+    }
+  }
+
+
+
+  /**
+   * Determine the number of threads to use to convert the entries returned
+   * by a query to resources.
+   *
+   * @param query  The parameters of the LDAP searches.
+   *
+   * @return  The number of conversion threads.
+   */
+  private int getConversionThreads(final QueryContext query)
+  {
+    if (query == null || query.countOnly || query.baseEntryDN != null)
+    {
+      return 1;
+    }
+
+    return queryConversionThreads;
+  }
+
+
+
+  /**
+   * Determine whether a query can be paged with the VLV control. The query
+   * must either request a sort order or have a resource with a VLV sort key,
+   * and the sort order must match a VLV index if the indexes are known.
+   *
+   * @param query  The parameters of the LDAP searches.
+   *
+   * @return  {@code true} if the query can be paged with the VLV control.
+   */
+  private boolean canUseVLV(final QueryContext query)
+  {
+    if (!supportsVLVRequestControl || query.baseEntryDN != null)
+    {
+      return false;
+    }
+
+    if (!vlvIndexesChecked)
+    {
+      checkVLVIndexes(query.ldapInterface.getLDAPInterface());
+      if (!supportsVLVRequestControl)
+      {
+        return false;
+      }
+    }
+
+    final SortKey[] sortKeys;
+    if (query.sortControl != null)
+    {
+      sortKeys = ((ServerSideSortRequestControl) query.sortControl)
+          .getSortKeys();
+    }
+    else if (query.resourceMapper.getVLVSortKey() != null)
+    {
+      sortKeys = new SortKey[] { query.resourceMapper.getVLVSortKey() };
+    }
+    else
+    {
+      return false;
+    }
+
+    return isVLVIndexed(sortKeys);
+  }
+
+
+
+  /**
+   * Determine whether a sort order matches a VLV index in the directory
+   * server.
+   *
+   * @param sortKeys  The sort keys.
+   *
+   * @return  {@code true} if the sort order matches a VLV index or the VLV
+   *          indexes are not known.
+   */
+  private boolean isVLVIndexed(final SortKey[] sortKeys)
+  {
+    final Set<String> sortOrders = vlvIndexSortOrders;
+    if (sortOrders == null)
+    {
+      return true;
+    }
+
+    final String[] keys = new String[sortKeys.length];
+    for (int i = 0; i < sortKeys.length; i++)
+    {
+      keys[i] = (sortKeys[i].reverseOrder() ? "-" : "") +
+                sortKeys[i].getAttributeName();
+    }
+    return sortOrders.contains(normalizeSortOrder(keys));
+  }
+
+
+
+  /**
+   * Normalize a VLV sort order so that equivalent sort orders compare equal.
+   *
+   * @param keys  The sort keys, each an attribute name optionally preceded by
+   *              '+' or '-'.
+   *
+   * @return  The normalized sort order.
+   */
+  private static String normalizeSortOrder(final String[] keys)
+  {
+    final StringBuilder builder = new StringBuilder();
+    for (final String key : keys)
+    {
+      final SortKey sortKey = ResourceMapper.parseSortKey(key);
+      if (builder.length() > 0)
+      {
+        builder.append(' ');
+      }
+      builder.append(sortKey.reverseOrder() ? '-' : '+');
+      builder.append(StaticUtils.toLowerCase(sortKey.getAttributeName()));
+    }
+    return builder.toString();
+  }
+
+
+
+  /**
+   * Process a search request, treating a size limit exceeded result as a
+   * successful result with the entries returned so far.
+   *
+   * @param ldapInterface  The LDAP interface to use.
+   * @param searchRequest  The search request.
+   *
+   * @return  The search result.
+   *
+   * @throws LDAPSearchException  If the search failed.
+   */
+  private static SearchResult search(final LDAPRequestInterface ldapInterface,
+                                     final SearchRequest searchRequest)
+      throws LDAPSearchException
+  {
+    try
+    {
+      return ldapInterface.search(searchRequest);
+    }
+    catch (LDAPSearchException e)
+    {
+      if (e.getResultCode().equals(ResultCode.SIZE_LIMIT_EXCEEDED))
+      {
+        final SearchResult searchResult = e.getSearchResult();
+        if (searchResult != null)
+        {
+          return searchResult;
+        }
+      }
+      throw e;
+    }
+  }
+
+
+
+  /**
+   * Determine the SimplePagedResultsControl page size for a search that has
+   * to skip entries preceding the requested page.
+   *
+   * @param entriesToSkip    The number of entries to skip.
+   * @param numLeftToReturn  The number of entries to return.
+   *
+   * @return  The page size.
+   */
+  private static int getPageSize(final int entriesToSkip,
+                                 final int numLeftToReturn)
+  {
+    return (int) Math.min((long) entriesToSkip + numLeftToReturn,
+                          Integer.MAX_VALUE);
+  }
+
+
+
+  /**
+   * Create the key under which the simple paged results cookies for a query
+   * are cached. Cookies are only shared by queries from the same user that
+   * perform the same LDAP search.
+   *
+   * @param query  The parameters of the LDAP searches.
+   *
+   * @return  The cursor cache key.
+   */
+  private static String getCursorKey(final QueryContext query)
+  {
+    final StringBuilder builder = new StringBuilder();
+    builder.append(query.request.getAuthenticatedUserID());
+    builder.append('|');
+    builder.append(query.request.getResourceDescriptor().getEndpoint());
+    builder.append('|');
+    builder.append(query.searchBaseDNs.iterator().next());
+    builder.append('|');
+    builder.append(query.searchScope);
+    builder.append('|');
+    builder.append(query.filter);
+    builder.append('|');
+    builder.append(query.sortControl);
+    final String[] attributes = query.requestAttributes.clone();
+    Arrays.sort(attributes, String.CASE_INSENSITIVE_ORDER);
+    for (final String attribute : attributes)
+    {
+      builder.append('|');
+      builder.append(attribute);
+    }
+    return builder.toString();
+  }
+
+
+
+  /**
+   * Perform the LDAP searches for a query request that has several search
+   * base DNs by issuing a search for each base DN at once. Each search
+   * returns at most the entries up to the end of the requested page. The
+   * entries are merged, in sort order if the query requests sorting, and
+   * those in the requested page are passed to the search result listener.
+   * <p>
+   * Where the requested page does not start at the first entry, the searches
+   * only return the DN and sort attributes of each entry, so that the entries
+   * that precede the page are not retrieved in full. The entries in the page
+   * are then retrieved by DN.
+   *
+   * @param query           The parameters of the LDAP searches.
+   * @param resultListener  The search result listener that is to process the
+   *                        returned entries.
+   *
+   * @return  The total number of results matching the query.
+   *
+   * @throws LDAPException  If an error occurs while processing the searches.
+   * @throws SCIMException  If an error occurs while writing a resource to a
+   *                        streamed response.
+   */
+  private int searchBaseDNsInParallel(
+      final QueryContext query,
+      final ResourceSearchResultListener resultListener)
+      throws LDAPException, SCIMException
+  {
+    final int entriesToSkip = query.startIndex - 1;
+    final int limit =
+        getPageSize(entriesToSkip, query.getMaxResultsToReturn());
+    final boolean fetchPageByDN = entriesToSkip > 0;
+
+    // Include any controls that are needed by derived attributes.
+    final List<Control> controls = new ArrayList<Control>();
+    query.resourceMapper.addSearchControls(controls,
+                                           query.request.getAttributes());
+
+    final String[] attributes;
+    final List<Control> searchControls = new ArrayList<Control>();
+    if (fetchPageByDN)
+    {
+      attributes = getSortAttributes(query);
+    }
+    else
+    {
+      attributes = query.requestAttributes;
+      searchControls.addAll(controls);
+    }
+    if (query.sortControl != null)
+    {
+      searchControls.add(query.sortControl);
+    }
+
+    final List<LDAPSearchFuture> searches =
+        new ArrayList<LDAPSearchFuture>(query.searchBaseDNs.size());
+    for (final DN baseDN : query.searchBaseDNs)
+    {
+      final SearchRequest searchRequest = new SearchRequest(baseDN.toString(),
+          query.searchScope, query.filter, attributes);
+      searchRequest.addControls(
+          searchControls.toArray(new Control[searchControls.size()]));
+      if (supportsSimplePagesResultsControl)
+      {
+        searchRequest.addControl(new SimplePagedResultsControl(limit));
+      }
+      else
+      {
+        searchRequest.setSizeLimit(limit);
+      }
+      searches.add(query.ldapInterface.asyncSearch(searchRequest));
+    }
 
-      final SearchResultEntry entry;
+    int totalResults = 0;
+    int totalEntries = 0;
+    final List<List<SearchResultEntry>> entryLists =
+        new ArrayList<List<SearchResultEntry>>(searches.size());
+    for (final LDAPSearchFuture search : searches)
+    {
+      SearchResult searchResult;
       try
       {
-        entry =
-            mapper.getReturnEntry(ldapInterface, request.getResourceID(),
-                request.getAttributes(), requestAttributes);
+        searchResult = search.get();
       }
-      catch (ResourceNotFoundException e)
+      catch (LDAPSearchException e)
       {
-        if (supportsVersioning())
+        if (!e.getResultCode().equals(ResultCode.SIZE_LIMIT_EXCEEDED) ||
+            e.getSearchResult() == null)
         {
-          request.checkPreconditions(e);
+          throw e;
         }
-        throw e;
+        searchResult = e.getSearchResult();
       }
 
-      final BaseResource resource =
-          new BaseResource(request.getResourceDescriptor());
-
-      EntityTag currentEtag;
-      if (supportsVersioning())
+      final SimplePagedResultsControl simplePagedResultsResponseControl =
+          SimplePagedResultsControl.get(searchResult);
+      if (simplePagedResultsResponseControl != null)
       {
-        currentEtag = getEntityTagValue(entry);
-        request.checkPreconditions(currentEtag);
+        totalResults += simplePagedResultsResponseControl.getSize();
       }
+      totalEntries += searchResult.getEntryCount();
+      entryLists.add(searchResult.getSearchEntries());
+    }
 
-      setIdAndMetaAttributes(mapper, resource, request, entry,
-          request.getAttributes());
+    final List<SearchResultEntry> page;
+    if (query.sortControl == null)
+    {
+      page = concatenateEntries(entryLists, entriesToSkip, limit);
+    }
+    else
+    {
+      page = mergeSortedEntries(entryLists, new EntrySorter(false, null,
+          ((ServerSideSortRequestControl) query.sortControl).getSortKeys()),
+          entriesToSkip, limit);
+    }
+    entryLists.clear();
 
-      final List<SCIMAttribute> attributes = mapper.toSCIMAttributes(
-          entry, request.getAttributes(), ldapInterface);
-      for (final SCIMAttribute a : attributes)
+    if (fetchPageByDN)
+    {
+      fetchEntries(query, page, controls, resultListener);
+    }
+    else
+    {
+      for (final SearchResultEntry entry : page)
       {
-        Validator.ensureTrue(resource.getScimObject().addAttribute(a));
+        resultListener.searchEntryReturned(entry);
       }
-
-      return resource;
     }
-    finally
+
+    resultListener.awaitConversions();
+
+    // A resource could not be written to a streamed response.
+    if (resultListener.getStreamingException() != null)
     {
-      clearRequestCaches();
+      throw resultListener.getStreamingException();
     }
+
+    return Math.max(totalResults, totalEntries);
   }
 
 
 
-  @Override
-  public Resources<?> getResources(final GetResourcesRequest request)
-      throws SCIMException
+  /**
+   * Determine the attributes to request when only the DN and sort order of
+   * the entries matching a query are needed.
+   *
+   * @param query  The parameters of the LDAP searches.
+   *
+   * @return  The names of the sort attributes, or the special value that
+   *          requests no attributes if the query is not sorted.
+   */
+  private static String[] getSortAttributes(final QueryContext query)
   {
-    try
+    if (query.sortControl == null)
     {
-      final ResourceMapper resourceMapper =
-          getResourceMapper(request.getResourceDescriptor());
-      if (resourceMapper == null || !resourceMapper.supportsQuery())
-      {
-        throw new UnsupportedOperationException(
-            "The requested operation is not supported on resource end-point '" +
-                request.getResourceDescriptor().getEndpoint() + "'");
-      }
+      return new String[] { SearchRequest.NO_ATTRIBUTES };
+    }
 
-      try
-      {
-        final SCIMFilter scimFilter = request.getFilter();
+    final SortKey[] sortKeys =
+        ((ServerSideSortRequestControl) query.sortControl).getSortKeys();
+    final String[] attributes = new String[sortKeys.length];
+    for (int i = 0; i < sortKeys.length; i++)
+    {
+      attributes[i] = sortKeys[i].getAttributeName();
+    }
+    return attributes;
+  }
 
-        final Set<String> requestAttributeSet = getRequestAttributeSet(
-            request, resourceMapper);
 
-        final int maxResults = getConfig().getMaxResults();
 
-        final LDAPRequestInterface ldapInterface =
-            getLDAPRequestInterface(request.getAuthenticatedUserID());
+  /**
+   * Retrieve the entries in the requested page of a query by DN and pass them
+   * to a search result listener in the order of the page. Entries that no
+   * longer match the query are omitted.
+   *
+   * @param query           The parameters of the LDAP searches.
+   * @param page            The entries in the requested page, which need
+   *                        only contain the DN.
+   * @param controls        The controls needed by derived attributes.
+   * @param resultListener  The search result listener.
+   *
+   * @throws LDAPException  If an error occurs while retrieving the entries.
+   */
+  private static void fetchEntries(
+      final QueryContext query,
+      final List<SearchResultEntry> page,
+      final List<Control> controls,
+      final ResourceSearchResultListener resultListener)
+      throws LDAPException
+  {
+    final Control[] controlArray = controls.toArray(new Control[0]);
+    final LinkedList<LDAPSearchFuture> pendingSearches =
+        new LinkedList<LDAPSearchFuture>();
+    final Iterator<SearchResultEntry> iterator = page.iterator();
+    while (iterator.hasNext() || !pendingSearches.isEmpty())
+    {
+      while (iterator.hasNext() &&
+             pendingSearches.size() < DerivedAttribute.MAX_PENDING_SEARCHES)
+      {
+        final SearchRequest searchRequest =
+            new SearchRequest(iterator.next().getDN(), SearchScope.BASE,
+                              query.filter, query.requestAttributes);
+        searchRequest.addControls(controlArray);
+        pendingSearches.add(query.ldapInterface.asyncSearch(searchRequest));
+      }
 
-        final ResourceSearchResultListener resultListener =
-            new ResourceSearchResultListener(this, request, ldapInterface,
-                maxResults);
+      final SearchResultEntry entry = pendingSearches.removeFirst().getEntry();
+      if (entry != null)
+      {
+        resultListener.searchEntryReturned(entry);
+      }
+    }
+  }
 
-        Set<DN> searchBaseDNs = getSearchBaseDNs(request,
-            resourceMapper, ldapInterface);
 
-        SearchScope searchScope = null;
-        final Filter filter;
-        SearchRequest searchRequest;
-        final String[] requestAttributes;
 
-        if (isOptimizedIdSearch(scimFilter, resourceMapper))
+  /**
+   * Select the entries in the requested page from several lists of entries,
+   * taking the lists one after another.
+   *
+   * @param entryLists     The lists of entries.
+   * @param entriesToSkip  The number of entries that precede the page.
+   * @param limit          The number of entries up to the end of the page.
+   *
+   * @return  The entries in the page.
+   */
+  private static List<SearchResultEntry> concatenateEntries(
+      final List<List<SearchResultEntry>> entryLists,
+      final int entriesToSkip,
+      final int limit)
+  {
+    final List<SearchResultEntry> page = new ArrayList<SearchResultEntry>();
+    int n = 0;
+    for (final List<SearchResultEntry> entries : entryLists)
+    {
+      for (final SearchResultEntry entry : entries)
+      {
+        if (n >= limit)
         {
-          requestAttributes = new String[requestAttributeSet.size()];
-          requestAttributeSet.toArray(requestAttributes);
-          searchRequest =
-              new SearchRequest(resultListener, scimFilter.getFilterValue(),
-                  SearchScope.BASE,
-                  Filter.createPresenceFilter("objectclass"),
-                  requestAttributes);
-          filter = null;
+          return page;
         }
-        else
+        if (n++ >= entriesToSkip)
         {
-          searchRequest = null;
-          try
-          {
-            // Map the SCIM filter to an LDAP filter.
-            filter = resourceMapper.toLDAPFilter(scimFilter, ldapInterface);
-          }
-          catch (InvalidResourceException ire)
-          {
-            throw new InvalidResourceException("Invalid filter: " +
-                ire.getLocalizedMessage(), ire);
-          }
-          if (filter == null)
-          {
-            // Match nothing... Just return an empty resources set.
-            List<BaseResource> emptyList = Collections.emptyList();
-            return new Resources<BaseResource>(emptyList);
-          }
-
-          // The LDAP filter results will still need to be filtered using the
-          // SCIM filter, so we need to request all the filter attributes.
-          addFilterAttributes(requestAttributeSet, filter);
-
-          requestAttributes = new String[requestAttributeSet.size()];
-          requestAttributeSet.toArray(requestAttributes);
-
-          searchScope = getSearchScope(request);
+          page.add(entry);
         }
+      }
+    }
+    return page;
+  }
 
-        SearchResult searchResult = null;
-        int startIndex = 1;
-        int workingStartIndex = 1;
-        int totalToReturn = maxResults;
-        int totalResults = 0;
-        boolean firstBaseDN = true;
-
-        for (DN baseDN : searchBaseDNs)
-        {
-          if (searchRequest == null)
-          {
-            searchRequest = new SearchRequest(resultListener, baseDN.toString(),
-                searchScope, filter, requestAttributes);
-          }
-
-          final SortParameters sortParameters = request.getSortParameters();
-          if (sortParameters != null)
-          {
-            try
-            {
-              Control control = resourceMapper.toLDAPSortControl(
-                  sortParameters);
-              if (control != null)
-              {
-                searchRequest.addControl(control);
-              }
-            }
-            catch (InvalidResourceException ire)
-            {
-              throw new InvalidResourceException("Invalid sort parameters: " +
-                  ire.getLocalizedMessage(), ire);
-            }
-          }
-
-          final PageParameters pageParameters = request.getPageParameters();
-          int numLeftToReturn =
-              totalToReturn - resultListener.getTotalResults();
-          if (pageParameters != null)
-          {
-
-            //Store the start index parameter to return in the final result and
-            //initialize workingStartIndex to startIndex
-            if (firstBaseDN)
-            {
-              startIndex = pageParameters.getStartIndex();
-              workingStartIndex = startIndex;
-            }
-
-            if (pageParameters.getCount() > 0)
-            {
-              totalToReturn = pageParameters.getCount();
-              numLeftToReturn = Math.min(totalToReturn, maxResults) -
-                  resultListener.getTotalResults();
-            }
-
-            //Use the VLV control to perform pagination if possible
-            if (supportsVLVRequestControl)
-            {
-              //We cannot set a size limit when using the VLV control; it will
-              //handle that internally.
-              searchRequest.setSizeLimit(0);
-
-              searchRequest.addControl(new VirtualListViewRequestControl(
-                  workingStartIndex, 0, numLeftToReturn - 1, 0, null, true));
-
-              //VLV requires a sort control
-              if (!searchRequest.hasControl(
-                  ServerSideSortRequestControl.SERVER_SIDE_SORT_REQUEST_OID))
-              {
-                searchRequest.addControl(
-                    new ServerSideSortRequestControl(
-                        new SortKey("uid"))); //TODO
-              }
-            }
-            else if (supportsSimplePagesResultsControl)
-            {
-              //Fall back to using the SimplePagedResults control (if available)
-              //This will essentially, only limit the number of entries returned
-              //since we are not propagating the cookie between searches.
-              searchRequest.addControl(
-                  new SimplePagedResultsControl(numLeftToReturn));
-            }
-            else
-            {
-              //If nothing else, fall back to just using the LDAP size limit
-              searchRequest.setSizeLimit(numLeftToReturn);
-            }
-          }
-          else if (supportsSimplePagesResultsControl)
-          {
-            searchRequest.addControl(
-                new SimplePagedResultsControl(numLeftToReturn));
-          }
-          else
-          {
-            searchRequest.setSizeLimit(numLeftToReturn);
-          }
-
-          // Include any controls that are needed by derived attributes.
-          final List<Control> controls = new ArrayList<Control>();
-          resourceMapper.addSearchControls(controls, request.getAttributes());
-          searchRequest.addControls(
-              controls.toArray(new Control[controls.size()]));
-
-          // Invoke the search operation.
-          try
-          {
-            searchResult = ldapInterface.search(searchRequest);
-          }
-          catch (LDAPSearchException e)
-          {
-            if (e.getResultCode().equals(ResultCode.SIZE_LIMIT_EXCEEDED))
-            {
-              searchResult = e.getSearchResult();
-              if (searchResult == null)
-              {
-                throw e;
-              }
-            }
-            else
-            {
-              throw e;
-            }
-          }
-
-          // When returning VLV responses, track the total results count across
-          // loops. This is handled by the resultListener for other searches.
-          final VirtualListViewResponseControl vlvResponseControl =
-                  getVLVResponseControl(searchResult);
-          final SimplePagedResultsControl simplePagedResultsResponseControl =
-                  SimplePagedResultsControl.get(searchResult);
-
-          if (vlvResponseControl != null)
-          {
-            totalResults += vlvResponseControl.getContentCount();
-          }
-          else if (simplePagedResultsResponseControl != null)
-          {
-            totalResults += simplePagedResultsResponseControl.getSize();
-          }
-
-          if (searchRequest.getScope() == SearchScope.BASE ||
-              resultListener.getTotalResults() >= totalToReturn)
-          {
-            break;
-          }
-          else
-          {
-            searchRequest = null;
-          }
 
-          //Update the workingStartIndex value in order to avoid skipping
-          //too many search results in subsequent baseDN searches. Note that
-          //the minimum startIndex value for a search is 1.
-          workingStartIndex = Math.max(startIndex - totalResults, 1);
 
-          firstBaseDN = false;
+  /**
+   * Select the entries in the requested page from several lists of entries,
+   * each sorted by the directory server, in the overall sort order.
+   *
+   * @param entryLists     The sorted lists of entries.
+   * @param comparator     The comparator for the sort order.
+   * @param entriesToSkip  The number of entries that precede the page.
+   * @param limit          The number of entries up to the end of the page.
+   *
+   * @return  The entries in the page.
+   */
+  private static List<SearchResultEntry> mergeSortedEntries(
+      final List<List<SearchResultEntry>> entryLists,
+      final Comparator<Entry> comparator,
+      final int entriesToSkip,
+      final int limit)
+  {
+    final List<SearchResultEntry> page = new ArrayList<SearchResultEntry>();
+    final int[] positions = new int[entryLists.size()];
+    for (int n = 0; n < limit; n++)
+    {
+      int next = -1;
+      for (int i = 0; i < entryLists.size(); i++)
+      {
+        final List<SearchResultEntry> entries = entryLists.get(i);
+        if (positions[i] < entries.size() &&
+            (next < 0 || comparator.compare(entries.get(positions[i]),
+                entryLists.get(next).get(positions[next])) < 0))
+        {
+          next = i;
         }
-
-        // Prepare the response.
-        List<BaseResource> scimObjects = resultListener.getResources();
-
-        int toIdx = Math.min(scimObjects.size(), totalToReturn);
-        scimObjects = scimObjects.subList(0, toIdx);
-
-        totalResults = Math.max(totalResults, resultListener.getTotalResults());
-
-        return new Resources<BaseResource>(scimObjects,
-                totalResults, startIndex);
       }
-      catch (LDAPException e)
+      if (next < 0)
       {
-        Debug.debugException(e);
-        throw ResourceMapper.toSCIMException(e);
+        break;
+      }
+
+      final SearchResultEntry entry =
+          entryLists.get(next).get(positions[next]++);
+      if (n >= entriesToSkip)
+      {
+        page.add(entry);
       }
     }
-    finally
-    {
-      clearRequestCaches();
-    }
+    return page;
   }
 
 
@@ -749,18 +1780,8 @@ public abstract class LDAPBackend
       final ResourceMapper mapper =
           getResourceMapper(request.getResourceDescriptor());
 
-      final Set<String> requestAttributeSet = new HashSet<String>();
-      requestAttributeSet.addAll(
-          mapper.toLDAPAttributeTypes(request.getAttributes()));
-      requestAttributeSet.addAll(getLastModAttributes());
-      requestAttributeSet.add("objectclass");
-      if (supportsVersioning())
-      {
-        requestAttributeSet.add(entityTagAttribute);
-      }
-
-      final String[] requestAttributes = new String[requestAttributeSet.size()];
-      requestAttributeSet.toArray(requestAttributes);
+      final String[] requestAttributes =
+          getRequestAttributes(mapper, request.getAttributes());
 
       try
       {
@@ -785,6 +1806,7 @@ public abstract class LDAPBackend
         }
 
         final LDAPResult addResult = ldapInterface.add(addRequest);
+        invalidateCachedValues(entry.getParsedDN());
 
         final PostReadResponseControl c = getPostReadResponseControl(addResult);
         Entry addedEntry = entry;
@@ -896,6 +1918,7 @@ public abstract class LDAPBackend
       {
         throw new LDAPException(result.getResultCode());
       }
+      invalidateCachedValues(entry.getParsedDN());
     }
     catch (LDAPException e)
     {
@@ -988,19 +2011,8 @@ public abstract class LDAPBackend
         mods.addAll(mapper.toLDAPModificationsForPut(currentEntry,
             request.getResourceObject(), mappedAttributes, ldapInterface));
 
-        final Set<String> requestAttributeSet = new HashSet<String>();
-        requestAttributeSet.addAll(
-            mapper.toLDAPAttributeTypes(request.getAttributes()));
-        requestAttributeSet.addAll(getLastModAttributes());
-        requestAttributeSet.add("objectclass");
-        if (supportsVersioning())
-        {
-          requestAttributeSet.add(entityTagAttribute);
-        }
-
         final String[] requestAttributes =
-            new String[requestAttributeSet.size()];
-        requestAttributeSet.toArray(requestAttributes);
+            getRequestAttributes(mapper, request.getAttributes());
 
         if (!mods.isEmpty())
         {
@@ -1119,6 +2131,9 @@ public abstract class LDAPBackend
             c = getPostReadResponseControl(modifyResult);
           }
 
+          invalidateCachedValues(currentEntry.getParsedDN());
+          invalidateCachedValues(modifiedEntry.getParsedDN());
+
           if (c != null)
           {
             returnEntry = new SearchResultEntry(c.getEntry());
@@ -1250,18 +2265,8 @@ public abstract class LDAPBackend
         mods.addAll(mapper.toLDAPModificationsForPatch(currentEntry,
             request.getResourceObject(), ldapInterface));
 
-        final Set<String> requestAttributeSet = new HashSet<String>();
-        requestAttributeSet.addAll(
-            mapper.toLDAPAttributeTypes(request.getAttributes()));
-        requestAttributeSet.addAll(getLastModAttributes());
-        requestAttributeSet.add("objectclass");
-        if (supportsVersioning())
-        {
-          requestAttributeSet.add(entityTagAttribute);
-        }
-
-        String[] requestAttributes = new String[requestAttributeSet.size()];
-        requestAttributeSet.toArray(requestAttributes);
+        final String[] requestAttributes =
+            getRequestAttributes(mapper, request.getAttributes());
 
         if (!mods.isEmpty())
         {
@@ -1385,6 +2390,9 @@ public abstract class LDAPBackend
             c = getPostReadResponseControl(modifyResult);
           }
 
+          invalidateCachedValues(currentEntry.getParsedDN());
+          invalidateCachedValues(modifiedEntry.getParsedDN());
+
           if (c != null)
           {
             returnEntry = new SearchResultEntry(c.getEntry());
@@ -1891,6 +2899,39 @@ public abstract class LDAPBackend
   }
 
 
+  /**
+   * Get the LDAP attributes to request in order to return the specified
+   * query attributes. The returned array is shared and must not be modified.
+   *
+   * @param resourceMapper   The resource mapper in use.
+   * @param queryAttributes  The requested query attributes.
+   *
+   * @return  The LDAP attributes to request.
+   */
+  private String[] getRequestAttributes(
+      final ResourceMapper resourceMapper,
+      final SCIMQueryAttributes queryAttributes)
+  {
+    Set<String> additionalAttributes = additionalRequestAttributes;
+    if (additionalAttributes == null)
+    {
+      final Set<String> attributes = new HashSet<String>();
+      attributes.addAll(getLastModAttributes());
+      attributes.add("objectclass");
+      final String etagAttribute = entityTagAttribute;
+      if (etagAttribute != null)
+      {
+        attributes.add(etagAttribute);
+      }
+      additionalAttributes = Collections.unmodifiableSet(attributes);
+      additionalRequestAttributes = additionalAttributes;
+    }
+
+    return resourceMapper.getLDAPRequestAttributes(queryAttributes,
+                                                   additionalAttributes);
+  }
+
+
   /**
    * Get the set of attributes to request for the given search request and
    * attribute mapper.
@@ -2038,11 +3079,167 @@ public abstract class LDAPBackend
 
 
   /**
-   * Clears the per-request ThreadLocal caches.
+   * Discards any values cached across requests that were derived from the
+   * LDAP entry with the provided DN.
+   *
+   * @param dn  The DN of the LDAP entry that has changed.
+   */
+  private void invalidateCachedValues(final DN dn)
+  {
+    for (final ResourceMapper resourceMapper : resourceMappers.values())
+    {
+      resourceMapper.invalidateCachedValues(dn);
+    }
+  }
+
+
+
+  /**
+   * Clears the per-request ThreadLocal caches. This must also be called by
+   * the shared query conversion threads after each conversion, since those
+   * threads serve many requests.
    */
-  private static void clearRequestCaches()
+  static void clearRequestCaches()
   {
     GroupsDerivedAttribute.clearRequestCache();
     MembersDerivedAttribute.clearRequestCache();
   }
+
+
+
+  /**
+   * The parameters of the LDAP searches that are needed to process a query
+   * request.
+   */
+  private static final class QueryContext
+  {
+    /**
+     * The query request.
+     */
+    private final GetResourcesRequest request;
+
+    /**
+     * The resource mapper for the requested resources.
+     */
+    private final ResourceMapper resourceMapper;
+
+    /**
+     * The LDAP interface used to perform the searches.
+     */
+    private final LDAPRequestInterface ldapInterface;
+
+    /**
+     * The maximum number of resources that may be returned by the backend.
+     */
+    private final int maxResults;
+
+    /**
+     * The search base DNs.
+     */
+    private Set<DN> searchBaseDNs;
+
+    /**
+     * The DN of the entry to be retrieved with a base search, or {@code null}
+     * if the query is not an optimized search by ID.
+     */
+    private String baseEntryDN;
+
+    /**
+     * The search scope, or {@code null} for an optimized search by ID.
+     */
+    private SearchScope searchScope;
+
+    /**
+     * The mapped LDAP filter, or {@code null} for an optimized search by ID.
+     */
+    private Filter filter;
+
+    /**
+     * The LDAP attributes to be requested.
+     */
+    private String[] requestAttributes;
+
+    /**
+     * The server-side sort control, or {@code null} if sorting was not
+     * requested.
+     */
+    private Control sortControl;
+
+    /**
+     * The 1-based index of the first result to return.
+     */
+    private int startIndex = 1;
+
+    /**
+     * The number of resources requested by the client.
+     */
+    private int totalToReturn;
+
+    /**
+     * Whether the client requested only the total number of results.
+     */
+    private boolean countOnly;
+
+
+
+    /**
+     * Create a new query context.
+     *
+     * @param request         The query request.
+     * @param resourceMapper  The resource mapper for the requested resources.
+     * @param ldapInterface   The LDAP interface used to perform the searches.
+     * @param maxResults      The maximum number of resources that may be
+     *                        returned by the backend.
+     */
+    private QueryContext(final GetResourcesRequest request,
+                         final ResourceMapper resourceMapper,
+                         final LDAPRequestInterface ldapInterface,
+                         final int maxResults)
+    {
+      this.request = request;
+      this.resourceMapper = resourceMapper;
+      this.ldapInterface = ldapInterface;
+      this.maxResults = maxResults;
+      this.totalToReturn = maxResults;
+    }
+
+
+
+    /**
+     * Retrieve the maximum number of resources to be returned in the
+     * response.
+     *
+     * @return  The maximum number of resources to be returned in the
+     *          response.
+     */
+    private int getMaxResultsToReturn()
+    {
+      return Math.min(totalToReturn, maxResults);
+    }
+  }
+
+
+
+  /**
+   * Creates the daemon threads that convert the entries returned by queries
+   * to resources.
+   */
+  private static final class QueryConversionThreadFactory
+      implements ThreadFactory
+  {
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Thread newThread(final Runnable r)
+    {
+      final Thread thread = new Thread(r,
+          "SCIM Query Conversion Thread " + THREAD_NUMBER.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
 }
@@ -20,16 +20,25 @@ package com.unboundid.scim.ldap;
 import com.unboundid.ldap.sdk.AddRequest;
 import com.unboundid.ldap.sdk.Control;
 import com.unboundid.ldap.sdk.DeleteRequest;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPInterface;
 import com.unboundid.ldap.sdk.LDAPResult;
 import com.unboundid.ldap.sdk.LDAPSearchException;
 import com.unboundid.ldap.sdk.ModifyDNRequest;
 import com.unboundid.ldap.sdk.ModifyRequest;
+import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
 import com.unboundid.ldap.sdk.UpdatableLDAPRequest;
+import com.unboundid.scim.sdk.Debug;
+
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 
 
 
@@ -42,6 +51,25 @@ public class LDAPRequestInterface
   private final LDAPInterface ldapInterface;
   private final Control[] controls;
 
+  /**
+   * The pool connection on which new asynchronous searches are issued, or
+   * {@code null} if a connection must be obtained from the pool.
+   */
+  private LDAPConnection asyncConnection;
+
+  /**
+   * The number of outstanding asynchronous searches on each pool connection
+   * held by this interface.
+   */
+  private final Map<LDAPConnection,Integer> asyncSearchCounts =
+      new IdentityHashMap<LDAPConnection,Integer>();
+
+  /**
+   * The pool connections held by this interface that are no longer usable.
+   */
+  private final Set<LDAPConnection> defunctConnections =
+      new HashSet<LDAPConnection>();
+
 
   /**
    * Create a new instance of this LDAP request interface.
@@ -58,6 +86,18 @@ public class LDAPRequestInterface
 
 
 
+  /**
+   * Retrieve the wrapped LDAP interface.
+   *
+   * @return  The wrapped LDAP interface.
+   */
+  LDAPInterface getLDAPInterface()
+  {
+    return ldapInterface;
+  }
+
+
+
   /**
    * Add any common controls that may be required for LDAP requests.
    *
@@ -131,6 +171,140 @@ public class LDAPRequestInterface
 
 
 
+  /**
+   * Issues the provided search request without waiting for it to complete.
+   * Several searches may be issued before their results are retrieved from
+   * the returned futures, so that the directory server processes them
+   * concurrently. Asynchronous searches are only possible when the wrapped
+   * LDAP interface is an {@code LDAPConnection} or
+   * {@code LDAPConnectionPool} and the search request does not have its own
+   * search result listener. Otherwise the search is processed synchronously.
+   * All of the outstanding asynchronous searches issued through a
+   * connection pool share a single connection from the pool, which is
+   * returned once none of them are outstanding, so that a request does not
+   * hold more than one pool connection for its asynchronous searches.
+   * If the result of a search is not received within its response timeout
+   * or time limit, the search is abandoned and fails with a
+   * {@code TIMEOUT} result code.
+   *
+   * @param  searchRequest  The search request to be processed.
+   *
+   * @return  The pending result of the search. Any error is reported when
+   *          the result is retrieved.
+   */
+  public LDAPSearchFuture asyncSearch(final SearchRequest searchRequest)
+  {
+    addControls(searchRequest);
+    if (searchRequest.getSearchResultListener() == null)
+    {
+      try
+      {
+        if (ldapInterface instanceof LDAPConnection)
+        {
+          return LDAPSearchFuture.start((LDAPConnection) ldapInterface, null,
+                                        searchRequest);
+        }
+        else if (ldapInterface instanceof LDAPConnectionPool)
+        {
+          return LDAPSearchFuture.start(
+              acquireAsyncConnection((LDAPConnectionPool) ldapInterface),
+              this, searchRequest);
+        }
+      }
+      catch (LDAPException e)
+      {
+        // The connection may be in synchronous mode or the pool may be
+        // exhausted, so fall back to a synchronous search.
+        Debug.debugException(e);
+      }
+    }
+
+    try
+    {
+      return LDAPSearchFuture.completed(ldapInterface.search(searchRequest));
+    }
+    catch (LDAPSearchException e)
+    {
+      Debug.debugException(e);
+      return LDAPSearchFuture.completed(e.getSearchResult());
+    }
+  }
+
+
+
+  /**
+   * Obtain the pool connection on which to issue an asynchronous search.
+   *
+   * @param pool  The connection pool.
+   *
+   * @return  The connection, which must be released with
+   *          {@link #releaseAsyncConnection} when the search completes.
+   *
+   * @throws LDAPException  If a connection could not be obtained from the
+   *                        pool.
+   */
+  private synchronized LDAPConnection acquireAsyncConnection(
+      final LDAPConnectionPool pool)
+      throws LDAPException
+  {
+    if (asyncConnection == null)
+    {
+      asyncConnection = pool.getConnection();
+    }
+
+    final Integer count = asyncSearchCounts.get(asyncConnection);
+    asyncSearchCounts.put(asyncConnection, count == null ? 1 : count + 1);
+    return asyncConnection;
+  }
+
+
+
+  /**
+   * Indicate that an asynchronous search on a pool connection has completed.
+   * The connection is returned to the pool once no searches are outstanding
+   * on it.
+   *
+   * @param connection  The connection used to process the search.
+   * @param resultCode  The result code of the search.
+   */
+  synchronized void releaseAsyncConnection(final LDAPConnection connection,
+                                           final ResultCode resultCode)
+  {
+    if (!ResultCode.isConnectionUsable(resultCode))
+    {
+      defunctConnections.add(connection);
+      if (connection == asyncConnection)
+      {
+        asyncConnection = null;
+      }
+    }
+
+    final int count = asyncSearchCounts.get(connection) - 1;
+    if (count > 0)
+    {
+      asyncSearchCounts.put(connection, count);
+      return;
+    }
+
+    asyncSearchCounts.remove(connection);
+    if (connection == asyncConnection)
+    {
+      asyncConnection = null;
+    }
+
+    final LDAPConnectionPool pool = (LDAPConnectionPool) ldapInterface;
+    if (defunctConnections.remove(connection))
+    {
+      pool.releaseDefunctConnection(connection);
+    }
+    else
+    {
+      pool.releaseConnection(connection);
+    }
+  }
+
+
+
   /**
    * Processes the provided modify request.
    *
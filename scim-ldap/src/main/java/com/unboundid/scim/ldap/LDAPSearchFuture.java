@@ -0,0 +1,415 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.AsyncRequestID;
+import com.unboundid.ldap.sdk.AsyncSearchResultListener;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultReference;
+import com.unboundid.scim.sdk.Debug;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+
+
+/**
+ * This class represents the pending result of an LDAP search that was issued
+ * with {@link LDAPRequestInterface#asyncSearch(SearchRequest)}. Several
+ * searches may be issued before any of their results are retrieved, so that
+ * the directory server processes them concurrently.
+ */
+public final class LDAPSearchFuture
+{
+  /**
+   * The maximum time in milliseconds to wait for a search result when
+   * neither a response timeout nor a time limit is set for the search.
+   */
+  private static final long DEFAULT_MAX_WAIT_MILLIS = 300000L;
+
+  /**
+   * The time in milliseconds to allow beyond the response timeout or time
+   * limit of a search for its result to be received.
+   */
+  private static final long RESULT_GRACE_MILLIS = 5000L;
+
+  /**
+   * The entries returned by the search.
+   */
+  private final List<SearchResultEntry> entries =
+      new ArrayList<SearchResultEntry>();
+
+  /**
+   * The references returned by the search.
+   */
+  private final List<SearchResultReference> references =
+      new ArrayList<SearchResultReference>();
+
+  /**
+   * Released when the search result has been received.
+   */
+  private final CountDownLatch completed = new CountDownLatch(1);
+
+  /**
+   * Set once the search result has been provided.
+   */
+  private final AtomicBoolean resultProvided = new AtomicBoolean();
+
+  /**
+   * The request interface that shares the connection among its searches, or
+   * {@code null} if the connection does not need to be released.
+   */
+  private final LDAPRequestInterface owner;
+
+  /**
+   * The connection used to process the search, or {@code null} if the search
+   * has already completed.
+   */
+  private final LDAPConnection connection;
+
+  /**
+   * The maximum time in milliseconds to wait for the search result.
+   */
+  private final long maxWaitMillis;
+
+  /**
+   * The ID of the asynchronous search, once it has been issued.
+   */
+  private volatile AsyncRequestID requestID;
+
+  /**
+   * The search result, once it has been received.
+   */
+  private volatile SearchResult searchResult;
+
+
+
+  /**
+   * Create a new pending search result.
+   *
+   * @param connection     The connection used to process the search, or
+   *                       {@code null} if the search has already completed.
+   * @param owner          The request interface that shares the connection
+   *                       among its searches, or {@code null} if the
+   *                       connection does not need to be released.
+   * @param maxWaitMillis  The maximum time in milliseconds to wait for the
+   *                       search result.
+   */
+  private LDAPSearchFuture(final LDAPConnection connection,
+                           final LDAPRequestInterface owner,
+                           final long maxWaitMillis)
+  {
+    this.connection = connection;
+    this.owner = owner;
+    this.maxWaitMillis = maxWaitMillis;
+  }
+
+
+
+  /**
+   * Create a pending search result for a search that has already completed.
+   *
+   * @param searchResult  The result of the search.
+   *
+   * @return  The pending search result.
+   */
+  static LDAPSearchFuture completed(final SearchResult searchResult)
+  {
+    final LDAPSearchFuture future = new LDAPSearchFuture(null, null, 0L);
+    future.provideResult(searchResult);
+    return future;
+  }
+
+
+
+  /**
+   * Issue an asynchronous search on the provided connection.
+   *
+   * @param connection     The connection to use to process the search.
+   * @param owner          The request interface that shares the connection
+   *                       among its searches, or {@code null} if the
+   *                       connection does not need to be released.
+   * @param searchRequest  The search request, which must not have a search
+   *                       result listener.
+   *
+   * @return  The pending search result.
+   *
+   * @throws LDAPException  If the search could not be issued. The connection
+   *                        has been released to the owner in this case.
+   */
+  static LDAPSearchFuture start(final LDAPConnection connection,
+                                final LDAPRequestInterface owner,
+                                final SearchRequest searchRequest)
+      throws LDAPException
+  {
+    final long responseTimeoutMillis =
+        searchRequest.getResponseTimeoutMillis(connection);
+    long maxWaitMillis = Math.max(responseTimeoutMillis,
+        searchRequest.getTimeLimitSeconds() * 1000L);
+    if (maxWaitMillis <= 0L)
+    {
+      maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+    }
+    else
+    {
+      maxWaitMillis += RESULT_GRACE_MILLIS;
+    }
+
+    final LDAPSearchFuture future =
+        new LDAPSearchFuture(connection, owner, maxWaitMillis);
+    final SearchRequest asyncRequest = new SearchRequest(
+        future.new Listener(), searchRequest.getControls(),
+        searchRequest.getBaseDN(), searchRequest.getScope(),
+        searchRequest.getDereferencePolicy(), searchRequest.getSizeLimit(),
+        searchRequest.getTimeLimitSeconds(), searchRequest.typesOnly(),
+        searchRequest.getFilter(), searchRequest.getAttributes());
+    asyncRequest.setResponseTimeoutMillis(responseTimeoutMillis);
+
+    try
+    {
+      future.requestID = connection.asyncSearch(asyncRequest);
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+      future.releaseConnection(e.getResultCode());
+      throw e;
+    }
+
+    return future;
+  }
+
+
+
+  /**
+   * Wait for the search to complete and retrieve its result.
+   *
+   * @return  The search result, including the entries returned.
+   *
+   * @throws LDAPSearchException  If the search did not complete successfully,
+   *                              in the same way as
+   *                              {@link LDAPRequestInterface#search}.
+   */
+  public SearchResult get()
+      throws LDAPSearchException
+  {
+    final SearchResult result = awaitResult();
+    if (!result.getResultCode().equals(ResultCode.SUCCESS))
+    {
+      throw new LDAPSearchException(result);
+    }
+
+    return result;
+  }
+
+
+
+  /**
+   * Wait for a search that is expected to return at most one entry to
+   * complete, and retrieve the entry.
+   *
+   * @return  The entry returned by the search, or {@code null} if no entry was
+   *          returned or the base entry does not exist.
+   *
+   * @throws LDAPSearchException  If the search did not complete successfully
+   *                              or returned more than one entry, in the same
+   *                              way as
+   *                              {@link LDAPRequestInterface#searchForEntry}.
+   */
+  public SearchResultEntry getEntry()
+      throws LDAPSearchException
+  {
+    final SearchResult result = awaitResult();
+    if (result.getResultCode().equals(ResultCode.NO_SUCH_OBJECT))
+    {
+      return null;
+    }
+    else if (!result.getResultCode().equals(ResultCode.SUCCESS))
+    {
+      throw new LDAPSearchException(result);
+    }
+
+    final List<SearchResultEntry> searchEntries = result.getSearchEntries();
+    if (searchEntries.size() > 1)
+    {
+      throw new LDAPSearchException(ResultCode.SIZE_LIMIT_EXCEEDED,
+          "The search returned more than one entry");
+    }
+
+    return searchEntries.isEmpty() ? null : searchEntries.get(0);
+  }
+
+
+
+  /**
+   * Wait for the search result to be received. If it is not received within
+   * the response timeout or time limit of the search, the search is
+   * abandoned and a result with the {@code TIMEOUT} result code is provided.
+   *
+   * @return  The search result.
+   *
+   * @throws LDAPSearchException  If the thread was interrupted while waiting.
+   */
+  private SearchResult awaitResult()
+      throws LDAPSearchException
+  {
+    try
+    {
+      if (!completed.await(maxWaitMillis, TimeUnit.MILLISECONDS))
+      {
+        final AsyncRequestID id = requestID;
+        if (id != null)
+        {
+          try
+          {
+            connection.abandon(id);
+          }
+          catch (LDAPException e)
+          {
+            Debug.debugException(e);
+          }
+        }
+
+        provideResult(new SearchResult(-1, ResultCode.TIMEOUT,
+            "No search result was received within " + maxWaitMillis +
+            " milliseconds", null, null, 0, 0, null));
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Debug.debugException(e);
+      Thread.currentThread().interrupt();
+      throw new LDAPSearchException(ResultCode.LOCAL_ERROR,
+          "Interrupted while waiting for a search result", e);
+    }
+
+    return searchResult;
+  }
+
+
+
+  /**
+   * Provide the search result and release the connection, unless a result
+   * has already been provided.
+   *
+   * @param result  The search result.
+   */
+  private void provideResult(final SearchResult result)
+  {
+    if (resultProvided.compareAndSet(false, true))
+    {
+      try
+      {
+        releaseConnection(result.getResultCode());
+      }
+      finally
+      {
+        searchResult = result;
+        completed.countDown();
+      }
+    }
+  }
+
+
+
+  /**
+   * Release the connection to the request interface that shares it, if
+   * there is one.
+   *
+   * @param resultCode  The result code of the operation that used the
+   *                    connection.
+   */
+  private void releaseConnection(final ResultCode resultCode)
+  {
+    if (owner != null)
+    {
+      owner.releaseAsyncConnection(connection, resultCode);
+    }
+  }
+
+
+
+  /**
+   * The listener that collects the search results as they are received.
+   */
+  private final class Listener implements AsyncSearchResultListener
+  {
+    private static final long serialVersionUID = 6023645384232787314L;
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void searchEntryReturned(final SearchResultEntry searchEntry)
+    {
+      synchronized (entries)
+      {
+        entries.add(searchEntry);
+      }
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void searchReferenceReturned(
+        final SearchResultReference searchReference)
+    {
+      synchronized (references)
+      {
+        references.add(searchReference);
+      }
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void searchResultReceived(final AsyncRequestID requestID,
+                                     final SearchResult result)
+    {
+      final SearchResult fullResult;
+      synchronized (entries)
+      {
+        synchronized (references)
+        {
+          fullResult = new SearchResult(result.getMessageID(),
+              result.getResultCode(), result.getDiagnosticMessage(),
+              result.getMatchedDN(), result.getReferralURLs(),
+              new ArrayList<SearchResultEntry>(entries),
+              new ArrayList<SearchResultReference>(references),
+              entries.size(), references.size(),
+              result.getResponseControls());
+        }
+      }
+      provideResult(fullResult);
+    }
+  }
+}
@@ -18,8 +18,14 @@
 package com.unboundid.scim.ldap;
 
 import com.unboundid.ldap.sdk.Attribute;
+import com.unboundid.ldap.sdk.DN;
 import com.unboundid.ldap.sdk.Entry;
 import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPException;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
 import com.unboundid.scim.schema.AttributeDescriptor;
 import com.unboundid.scim.sdk.AttributePath;
 import com.unboundid.scim.sdk.Debug;
@@ -35,7 +41,10 @@ import com.unboundid.scim.sdk.SCIMObject;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 
@@ -47,6 +56,14 @@ import java.util.Set;
  * The &lt;derivation&gt; element for this derived attribute accepts a special
  * child element, &lt;LDAPSearchRef idref="exampleSearchParams"/&gt;, which
  * specifies the LDAP search parameters to use when resolving resource IDs.
+ * <p>
+ * The resource IDs of managers may be cached, in which case the managers of
+ * the entries returned by a query are searched for together. The following
+ * arguments may be provided: maxManagersCached (default 0, which disables
+ * caching), managerCacheTTL in milliseconds (default 60000), and
+ * managerSearchBatchSize (default 100). The cached resource IDs are shared
+ * by all clients, so caching should only be enabled when every client is
+ * permitted to read the manager entries.
  */
 public class ManagerDerivedAttribute extends DerivedAttribute
 {
@@ -56,8 +73,60 @@ public class ManagerDerivedAttribute extends DerivedAttribute
    */
   public static final String ATTR_MANAGER = "manager";
 
+  /**
+   * The name of the argument that specifies the maximum number of manager
+   * resource IDs to cache. Values less than one disable caching, and with it
+   * the batched searches for the managers of query results. Cached resource
+   * IDs are shared by all clients, so this should only be enabled when every
+   * client is permitted to read the manager entries.
+   */
+  private static final String MAX_MANAGERS_CACHED = "maxManagersCached";
+
+  /**
+   * The name of the argument that specifies the number of milliseconds after
+   * which a cached manager resource ID expires. Values less than one indicate
+   * that cached IDs only expire when they are evicted or the manager entry is
+   * modified through this server.
+   */
+  private static final String MANAGER_CACHE_TTL = "managerCacheTTL";
+
+  /**
+   * The name of the argument that specifies the maximum number of managers
+   * with the same parent entry to search for with a single search.
+   */
+  private static final String MANAGER_SEARCH_BATCH_SIZE =
+      "managerSearchBatchSize";
+
+  /**
+   * The default maximum number of manager resource IDs to cache.
+   */
+  private static final int DEFAULT_MAX_MANAGERS_CACHED = 0;
+
+  /**
+   * The default number of milliseconds after which a cached manager resource
+   * ID expires.
+   */
+  private static final int DEFAULT_MANAGER_CACHE_TTL = 60000;
+
+  /**
+   * The default maximum number of managers to search for with a single
+   * search.
+   */
+  private static final int DEFAULT_MANAGER_SEARCH_BATCH_SIZE = 100;
+
   private AttributeDescriptor descriptor;
 
+  /**
+   * The maximum number of managers to search for with a single search.
+   */
+  private int managerSearchBatchSize;
+
+  /**
+   * The cache of manager resource IDs by manager DN, or {@code null} if
+   * caching is disabled.
+   */
+  private volatile DNCache<String> managerIdCache;
+
 
 
   /**
@@ -67,6 +136,52 @@ public class ManagerDerivedAttribute extends DerivedAttribute
   public void initialize(final AttributeDescriptor descriptor)
   {
     this.descriptor = descriptor;
+
+    int maxManagersCached = DEFAULT_MAX_MANAGERS_CACHED;
+    Object o = getArguments().get(MAX_MANAGERS_CACHED);
+    if (o != null)
+    {
+      try
+      {
+        maxManagersCached = Integer.valueOf(o.toString());
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    int managerCacheTTL = DEFAULT_MANAGER_CACHE_TTL;
+    o = getArguments().get(MANAGER_CACHE_TTL);
+    if (o != null)
+    {
+      try
+      {
+        managerCacheTTL = Integer.valueOf(o.toString());
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    this.managerSearchBatchSize = DEFAULT_MANAGER_SEARCH_BATCH_SIZE;
+    o = getArguments().get(MANAGER_SEARCH_BATCH_SIZE);
+    if (o != null)
+    {
+      try
+      {
+        managerSearchBatchSize = Math.max(Integer.valueOf(o.toString()), 1);
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    managerIdCache = maxManagersCached > 0 ?
+        new DNCache<String>(maxManagersCached, Math.max(managerCacheTTL, 0)) :
+        null;
   }
 
 
@@ -105,7 +220,8 @@ public class ManagerDerivedAttribute extends DerivedAttribute
     if (entry.hasAttribute(ATTR_MANAGER))
     {
       final String dn = entry.getAttributeValue(ATTR_MANAGER);
-      final String resourceID = searchResolver.getIdFromDn(ldapInterface, dn);
+      final String resourceID = getManagerId(dn, ldapInterface,
+                                             searchResolver);
 
       final List<SCIMAttribute> attributes = new ArrayList<SCIMAttribute>(1);
       attributes.add(SCIMAttribute.create(
@@ -121,6 +237,211 @@ public class ManagerDerivedAttribute extends DerivedAttribute
 
 
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean supportsPrefetch()
+  {
+    return managerIdCache != null;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   * <p>
+   * The managers of the entries that are not already cached are searched for
+   * with one-level searches of their parent entries, and their resource IDs
+   * are cached so that {@link #toSCIMAttribute} does not need to search for
+   * them one at a time.
+   */
+  @Override
+  public void prefetch(final List<? extends Entry> entries,
+                       final LDAPRequestInterface ldapInterface,
+                       final LDAPSearchResolver searchResolver)
+      throws SCIMException
+  {
+    final DNCache<String> cache = managerIdCache;
+    if (cache == null || searchResolver.idMapsToDn())
+    {
+      return;
+    }
+
+    // Group the uncached managers by parent so they can be searched for
+    // together.
+    final Set<DN> managerDNs = new HashSet<DN>();
+    final Map<DN, List<DN>> managersByParent =
+        new LinkedHashMap<DN, List<DN>>();
+    for (final Entry entry : entries)
+    {
+      final String dnString = entry.getAttributeValue(ATTR_MANAGER);
+      if (dnString == null)
+      {
+        continue;
+      }
+
+      final DN managerDN;
+      try
+      {
+        managerDN = new DN(dnString);
+      }
+      catch (LDAPException e)
+      {
+        // The manager will be searched for individually.
+        Debug.debugException(e);
+        continue;
+      }
+
+      final DN parentDN = managerDN.getParent();
+      if (parentDN == null || !managerDNs.add(managerDN) ||
+          cache.get(managerDN) != null)
+      {
+        continue;
+      }
+
+      List<DN> siblings = managersByParent.get(parentDN);
+      if (siblings == null)
+      {
+        siblings = new ArrayList<DN>();
+        managersByParent.put(parentDN, siblings);
+      }
+      siblings.add(managerDN);
+    }
+
+    final List<SearchRequest> searchRequests = new ArrayList<SearchRequest>();
+    for (final Map.Entry<DN, List<DN>> e : managersByParent.entrySet())
+    {
+      final List<DN> siblings = e.getValue();
+      for (int i = 0; i < siblings.size(); i += managerSearchBatchSize)
+      {
+        final List<DN> batch = siblings.subList(
+            i, Math.min(siblings.size(), i + managerSearchBatchSize));
+        searchRequests.add(new SearchRequest(e.getKey().toString(),
+            SearchScope.ONE,
+            Filter.createANDFilter(searchResolver.getFilter(),
+                                   createRDNFilter(batch)),
+            searchResolver.getIdAttribute()));
+      }
+    }
+
+    // Keep several searches outstanding while the results are processed.
+    final List<LDAPSearchFuture> pendingSearches =
+        new ArrayList<LDAPSearchFuture>(searchRequests.size());
+    for (int i = 0; i < searchRequests.size(); i++)
+    {
+      while (pendingSearches.size() < searchRequests.size() &&
+             pendingSearches.size() < i + MAX_PENDING_SEARCHES)
+      {
+        pendingSearches.add(ldapInterface.asyncSearch(
+            searchRequests.get(pendingSearches.size())));
+      }
+
+      final List<SearchResultEntry> searchEntries;
+      try
+      {
+        searchEntries = pendingSearches.get(i).get().getSearchEntries();
+      }
+      catch (LDAPSearchException e)
+      {
+        // The managers will be searched for individually.
+        Debug.debugException(e);
+        continue;
+      }
+      finally
+      {
+        pendingSearches.set(i, null);
+      }
+
+      for (final SearchResultEntry searchEntry : searchEntries)
+      {
+        // A batch search may also return siblings that are not managers.
+        final DN managerDN;
+        try
+        {
+          managerDN = searchEntry.getParsedDN();
+        }
+        catch (LDAPException e)
+        {
+          Debug.debugException(e);
+          continue;
+        }
+
+        if (managerDNs.contains(managerDN) &&
+            searchEntry.hasAttribute(searchResolver.getIdAttribute()))
+        {
+          cache.put(managerDN, searchResolver.getIdFromEntry(searchEntry));
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public void invalidateCachedValues(final DN dn)
+  {
+    final DNCache<String> cache = managerIdCache;
+    if (cache != null)
+    {
+      cache.remove(dn);
+    }
+  }
+
+
+
+  /**
+   * Retrieve the resource ID of a manager, from the cache if possible.
+   *
+   * @param dn              The DN of the manager entry.
+   * @param ldapInterface   An LDAP interface that may be used to search the
+   *                        DIT.
+   * @param searchResolver  The LDAPSearchResolver for manager resources.
+   *
+   * @return  The resource ID of the manager.
+   *
+   * @throws SCIMException  If the manager does not exist or could not be
+   *                        searched for.
+   */
+  private String getManagerId(final String dn,
+                              final LDAPRequestInterface ldapInterface,
+                              final LDAPSearchResolver searchResolver)
+      throws SCIMException
+  {
+    final DNCache<String> cache = managerIdCache;
+    if (cache == null || searchResolver.idMapsToDn())
+    {
+      return searchResolver.getIdFromDn(ldapInterface, dn);
+    }
+
+    DN managerDN = null;
+    try
+    {
+      managerDN = new DN(dn);
+      final String resourceID = cache.get(managerDN);
+      if (resourceID != null)
+      {
+        return resourceID;
+      }
+    }
+    catch (LDAPException e)
+    {
+      Debug.debugException(e);
+    }
+
+    final String resourceID = searchResolver.getIdFromDn(ldapInterface, dn);
+    if (managerDN != null && resourceID != null)
+    {
+      cache.put(managerDN, resourceID);
+    }
+    return resourceID;
+  }
+
+
+
   /**
    * {@inheritDoc}
    */
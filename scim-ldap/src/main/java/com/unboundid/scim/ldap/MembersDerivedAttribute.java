@@ -24,9 +24,12 @@ import com.unboundid.ldap.sdk.Filter;
 import com.unboundid.ldap.sdk.LDAPException;
 import com.unboundid.ldap.sdk.LDAPSearchException;
 import com.unboundid.ldap.sdk.LDAPURL;
+import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchRequest;
 import com.unboundid.ldap.sdk.SearchResult;
 import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchResultListener;
+import com.unboundid.ldap.sdk.SearchResultReference;
 import com.unboundid.ldap.sdk.SearchScope;
 import com.unboundid.scim.schema.AttributeDescriptor;
 import com.unboundid.scim.sdk.AttributePath;
@@ -45,6 +48,7 @@ import com.unboundid.util.StaticUtils;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -97,6 +101,52 @@ public class MembersDerivedAttribute extends DerivedAttribute
    */
   private static final String MAX_MEMBERS_CACHED = "maxMembersCached";
 
+  /**
+   * The name of the argument that indicates whether to cache member data
+   * across HTTP requests, and how much data to cache. Values less than one
+   * will prevent shared member caching. Cached member data is shared by all
+   * clients, so this should only be enabled when every client is permitted
+   * to read the member entries.
+   */
+  private static final String MAX_SHARED_MEMBERS_CACHED =
+      "maxSharedMembersCached";
+
+  /**
+   * The name of the argument that specifies the number of milliseconds after
+   * which shared member data expires. Values less than one indicate that
+   * shared member data only expires when it is evicted or the member entry is
+   * modified through this server.
+   */
+  private static final String SHARED_MEMBER_CACHE_TTL = "sharedMemberCacheTTL";
+
+  /**
+   * The name of the argument that specifies the maximum number of members
+   * with the same parent entry to search for with a single search. Values
+   * less than two cause each member to be searched for individually.
+   */
+  private static final String MEMBER_SEARCH_BATCH_SIZE =
+      "memberSearchBatchSize";
+
+  /**
+   * The default maximum number of members to search for with a single search.
+   */
+  private static final int DEFAULT_MEMBER_SEARCH_BATCH_SIZE = 100;
+
+  /**
+   * The name of the argument that specifies the maximum number of entries to
+   * examine when expanding the memberURL values of a dynamic group. Values
+   * less than one mean there is no limit other than that of the server.
+   */
+  private static final String MAX_DYNAMIC_MEMBERS = "maxDynamicMembers";
+
+  /**
+   * The name of the argument that specifies the time limit in seconds for
+   * each search that expands a memberURL value. Values less than one mean
+   * there is no limit other than that of the server.
+   */
+  private static final String DYNAMIC_MEMBER_SEARCH_TIME_LIMIT =
+      "dynamicMemberSearchTimeLimit";
+
   /**
    * The per-request member caches.
    */
@@ -159,6 +209,27 @@ public class MembersDerivedAttribute extends DerivedAttribute
    */
   private int membersToCachePerRequest;
 
+  /**
+   * The maximum number of members to search for with a single search.
+   */
+  private int memberSearchBatchSize;
+
+  /**
+   * The maximum number of entries to examine when expanding a dynamic group.
+   */
+  private int maxDynamicMembers;
+
+  /**
+   * The time limit in seconds for each memberURL search.
+   */
+  private int dynamicMemberSearchTimeLimit;
+
+  /**
+   * The member cache shared across requests, or {@code null} if shared member
+   * caching is not enabled.
+   */
+  private volatile DNCache<SCIMAttributeValue> sharedMemberCache;
+
   /**
    * Indicates if the join attribute is a member, uniqueMember, or memberURL.
    */
@@ -232,38 +303,8 @@ public class MembersDerivedAttribute extends DerivedAttribute
         // resource ID.
         if(entry.hasAttribute(ATTR_MEMBER_URL))
         {
-          final String[] memberURLs = entry.getAttributeValues(ATTR_MEMBER_URL);
-          for(String url : memberURLs)
-          {
-            final LDAPURL ldapURL = new LDAPURL(url);
-            final SearchRequest searchRequest =
-                new SearchRequest(ldapURL.getBaseDN().toString(),
-                                  SearchScope.SUB, ldapURL.getFilter(),
-                                  attrsToGet);
-            final SearchResult searchResult;
-            try
-            {
-              searchResult = ldapInterface.search(searchRequest);
-            }
-            catch (final LDAPSearchException lse)
-            {
-              Debug.debugException(lse);
-              continue;
-            }
-
-            if (searchResult.getEntryCount() > 0)
-            {
-              for(SearchResultEntry rEntry : searchResult.getSearchEntries())
-              {
-                final SCIMAttributeValue v =
-                    createMemberValue(groupResolver, rEntry);
-                if (v != null)
-                {
-                  values.add(v);
-                }
-              }
-            }
-          }
+          expandMemberURLs(entry, attrsToGet, ldapInterface, groupResolver,
+                           values);
         }
       }
 
@@ -271,72 +312,8 @@ public class MembersDerivedAttribute extends DerivedAttribute
       // groups.
       if (members != null)
       {
-        Map<DN, SCIMAttributeValue> memberCache = null;
-        if (membersToCachePerRequest > 0)
-        {
-          memberCache = MEMBER_CACHES.get();
-          if (memberCache == null)
-          {
-            memberCache = new LinkedHashMap<DN, SCIMAttributeValue>();
-            MEMBER_CACHES.set(memberCache);
-          }
-        }
-        for (final String memberDNString : members)
-        {
-          if ((userResolver != null &&
-               userResolver.isDnInScope(memberDNString)) ||
-              groupResolver.isDnInScope(memberDNString))
-          {
-            DN memberDN = new DN(memberDNString);
-            if (memberCache != null)
-            {
-              SCIMAttributeValue cacheValue = memberCache.get(memberDN);
-              if (cacheValue != null)
-              {
-                values.add(cacheValue);
-                continue;
-              }
-            }
-
-            final SearchRequest searchRequest =
-                new SearchRequest(memberDNString, SearchScope.BASE,
-                    OBJECTCLASS_PRESENCE_FILTER, attrsToGet);
-            final SearchResult searchResult;
-            try
-            {
-              searchResult = ldapInterface.search(searchRequest);
-            }
-            catch (final LDAPSearchException lse)
-            {
-              Debug.debugException(lse);
-              continue;
-            }
-
-            if (searchResult.getEntryCount() == 1)
-            {
-              final SearchResultEntry rEntry =
-                  searchResult.getSearchEntries().get(0);
-              final SCIMAttributeValue v =
-                  createMemberValue(groupResolver, rEntry);
-              if (v != null)
-              {
-                if (memberCache != null)
-                {
-                  memberCache.put(memberDN, v);
-                  if (memberCache.size() > membersToCachePerRequest)
-                  {
-                    // We have cached too many members for this request, so we
-                    // remove the oldest member from the cache.
-                    Iterator<DN> it = memberCache.keySet().iterator();
-                    it.next();
-                    it.remove();
-                  }
-                }
-                values.add(v);
-              }
-            }
-          }
-        }
+        resolveMembers(members, attrsToGet, ldapInterface, groupResolver,
+                       values);
       }
     }
     catch (LDAPException e)
@@ -387,6 +364,51 @@ public class MembersDerivedAttribute extends DerivedAttribute
       }
     }
 
+    this.memberSearchBatchSize = DEFAULT_MEMBER_SEARCH_BATCH_SIZE;
+    o = getArguments().get(MEMBER_SEARCH_BATCH_SIZE);
+    if (o != null)
+    {
+      try
+      {
+        memberSearchBatchSize = Integer.valueOf(o.toString());
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    this.maxDynamicMembers = 0;
+    o = getArguments().get(MAX_DYNAMIC_MEMBERS);
+    if (o != null)
+    {
+      try
+      {
+        maxDynamicMembers = Integer.valueOf(o.toString());
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    this.dynamicMemberSearchTimeLimit = 0;
+    o = getArguments().get(DYNAMIC_MEMBER_SEARCH_TIME_LIMIT);
+    if (o != null)
+    {
+      try
+      {
+        dynamicMemberSearchTimeLimit = Integer.valueOf(o.toString());
+      }
+      catch (NumberFormatException nfe)
+      {
+        Debug.debugException(nfe);
+      }
+    }
+
+    sharedMemberCache = DNCache.create(this, MAX_SHARED_MEMBERS_CACHED,
+                                       SHARED_MEMBER_CACHE_TTL);
+
     this.joinAttribute = null;
     Object j = getArguments().get("joinAttribute");
     if (j != null)
@@ -664,6 +686,383 @@ public class MembersDerivedAttribute extends DerivedAttribute
     }
   }
 
+  /**
+   * Determine whether a member DN is within the scope of the user or group
+   * resources.
+   *
+   * @param memberDN       The member DN.
+   * @param groupResolver  The LDAPSearchResolver for group resources.
+   *
+   * @return  {@code true} if the member DN is within scope.
+   */
+  private boolean isMemberInScope(final String memberDN,
+                                  final LDAPSearchResolver groupResolver)
+  {
+    return (userResolver != null && userResolver.isDnInScope(memberDN)) ||
+           groupResolver.isDnInScope(memberDN);
+  }
+
+
+
+  /**
+   * Determine the members of a dynamic group, their 'type' and their resource
+   * ID. The entries matching each memberURL are converted to member values as
+   * they are returned by the server, rather than being collected in a search
+   * result first. If the expansion is cut short by the maxDynamicMembers
+   * limit or by a size or time limit, the values found so far are returned
+   * and a warning is logged, since the members attribute has no way to
+   * indicate that its values are incomplete.
+   *
+   * @param entry          The dynamic group entry.
+   * @param attrsToGet     The attributes to request from the member entries.
+   * @param ldapInterface  The LDAP interface to use to search for members.
+   * @param groupResolver  The LDAPSearchResolver for group resources.
+   * @param values         The list to which the member values are added.
+   *
+   * @throws LDAPException  If a memberURL value could not be parsed.
+   * @throws SCIMException  If a member value could not be created.
+   */
+  private void expandMemberURLs(final Entry entry,
+                                final String[] attrsToGet,
+                                final LDAPRequestInterface ldapInterface,
+                                final LDAPSearchResolver groupResolver,
+                                final List<SCIMAttributeValue> values)
+      throws LDAPException, SCIMException
+  {
+    final DynamicMemberListener listener =
+        new DynamicMemberListener(groupResolver, values);
+    boolean truncated = false;
+    for (final String url : entry.getAttributeValues(ATTR_MEMBER_URL))
+    {
+      final LDAPURL ldapURL = new LDAPURL(url);
+      final SearchRequest searchRequest =
+          new SearchRequest(listener, ldapURL.getBaseDN().toString(),
+                            SearchScope.SUB, ldapURL.getFilter(), attrsToGet);
+      if (maxDynamicMembers > 0)
+      {
+        final int remaining = maxDynamicMembers - listener.numEntries;
+        if (remaining <= 0)
+        {
+          truncated = true;
+          break;
+        }
+        searchRequest.setSizeLimit(remaining);
+      }
+      if (dynamicMemberSearchTimeLimit > 0)
+      {
+        searchRequest.setTimeLimitSeconds(dynamicMemberSearchTimeLimit);
+      }
+
+      try
+      {
+        ldapInterface.search(searchRequest);
+      }
+      catch (final LDAPSearchException lse)
+      {
+        Debug.debugException(lse);
+        if (lse.getResultCode().equals(ResultCode.SIZE_LIMIT_EXCEEDED) ||
+            lse.getResultCode().equals(ResultCode.TIME_LIMIT_EXCEEDED))
+        {
+          truncated = true;
+        }
+      }
+
+      if (listener.exception != null)
+      {
+        throw listener.exception;
+      }
+    }
+
+    if (truncated)
+    {
+      Debug.debug(Level.WARNING, DebugType.OTHER,
+                  "The members of dynamic group '" + entry.getDN() +
+                  "' were truncated after " + listener.numEntries +
+                  " entries.");
+    }
+  }
+
+
+
+  /**
+   * Determine the 'type' and resource ID of the members of a static or
+   * virtual static group. Members that are not cached are searched for in
+   * batches: the members with the same parent entry are fetched together
+   * with a one-level search for their RDN values, so that a large group
+   * needs one search per batch rather than one per member. The searches are
+   * issued ahead of processing their results, with a bounded number
+   * outstanding. If a batch search fails, for example because a limit was
+   * exceeded, its members are fetched individually.
+   *
+   * @param members        The member DNs.
+   * @param attrsToGet     The attributes to request from the member entries.
+   * @param ldapInterface  The LDAP interface to use to search for members.
+   * @param groupResolver  The LDAPSearchResolver for group resources.
+   * @param values         The list to which the member values are added, in
+   *                       the order of the member DNs.
+   *
+   * @throws LDAPException  If a search could not be issued.
+   * @throws SCIMException  If a member value could not be created.
+   */
+  private void resolveMembers(final String[] members,
+                              final String[] attrsToGet,
+                              final LDAPRequestInterface ldapInterface,
+                              final LDAPSearchResolver groupResolver,
+                              final List<SCIMAttributeValue> values)
+      throws LDAPException, SCIMException
+  {
+    Map<DN, SCIMAttributeValue> memberCache = null;
+    if (membersToCachePerRequest > 0)
+    {
+      memberCache = MEMBER_CACHES.get();
+      if (memberCache == null)
+      {
+        memberCache = new LinkedHashMap<DN, SCIMAttributeValue>();
+        MEMBER_CACHES.set(memberCache);
+      }
+    }
+    final DNCache<SCIMAttributeValue> sharedCache = sharedMemberCache;
+
+    // Find the members that are cached, and group the others by parent so
+    // they can be searched for together.
+    final List<DN> memberDNs = new ArrayList<DN>(members.length);
+    final Map<DN, SCIMAttributeValue> memberValues =
+        new HashMap<DN, SCIMAttributeValue>();
+    final Set<DN> uncachedDNs = new HashSet<DN>();
+    final Map<DN, List<DN>> uncachedByParent =
+        new LinkedHashMap<DN, List<DN>>();
+    final List<SearchRequest> searchRequests = new ArrayList<SearchRequest>();
+    final List<List<DN>> searchMembers = new ArrayList<List<DN>>();
+    for (final String memberDNString : members)
+    {
+      if (!isMemberInScope(memberDNString, groupResolver))
+      {
+        continue;
+      }
+
+      final DN memberDN = new DN(memberDNString);
+      memberDNs.add(memberDN);
+      if (memberValues.containsKey(memberDN) || uncachedDNs.contains(memberDN))
+      {
+        continue;
+      }
+
+      final SCIMAttributeValue cacheValue =
+          getCachedMember(memberDN, memberCache, sharedCache);
+      if (cacheValue != null)
+      {
+        memberValues.put(memberDN, cacheValue);
+        continue;
+      }
+
+      uncachedDNs.add(memberDN);
+      final DN parentDN = memberDN.getParent();
+      if (memberSearchBatchSize > 1 && parentDN != null)
+      {
+        List<DN> siblings = uncachedByParent.get(parentDN);
+        if (siblings == null)
+        {
+          siblings = new ArrayList<DN>();
+          uncachedByParent.put(parentDN, siblings);
+        }
+        siblings.add(memberDN);
+      }
+      else
+      {
+        addMemberSearch(memberDN, attrsToGet, searchRequests, searchMembers);
+      }
+    }
+
+    for (final Map.Entry<DN, List<DN>> e : uncachedByParent.entrySet())
+    {
+      final List<DN> siblings = e.getValue();
+      if (siblings.size() == 1)
+      {
+        addMemberSearch(siblings.get(0), attrsToGet, searchRequests,
+                        searchMembers);
+        continue;
+      }
+
+      for (int i = 0; i < siblings.size(); i += memberSearchBatchSize)
+      {
+        final List<DN> batch = siblings.subList(
+            i, Math.min(siblings.size(), i + memberSearchBatchSize));
+        searchRequests.add(new SearchRequest(e.getKey().toString(),
+            SearchScope.ONE, createRDNFilter(batch), attrsToGet));
+        searchMembers.add(batch);
+      }
+    }
+
+    // Process the searches in order, issuing the following searches ahead of
+    // processing each result. Failed batches append individual searches.
+    final List<LDAPSearchFuture> pendingSearches =
+        new ArrayList<LDAPSearchFuture>(searchRequests.size());
+    for (int i = 0; i < searchRequests.size(); i++)
+    {
+      while (pendingSearches.size() < searchRequests.size() &&
+             pendingSearches.size() < i + MAX_PENDING_SEARCHES)
+      {
+        pendingSearches.add(ldapInterface.asyncSearch(
+            searchRequests.get(pendingSearches.size())));
+      }
+
+      final List<DN> searchedDNs = searchMembers.get(i);
+      final SearchResult searchResult;
+      try
+      {
+        searchResult = pendingSearches.get(i).get();
+        pendingSearches.set(i, null);
+      }
+      catch (final LDAPSearchException lse)
+      {
+        Debug.debugException(lse);
+        pendingSearches.set(i, null);
+        if (searchedDNs.size() > 1)
+        {
+          for (final DN memberDN : searchedDNs)
+          {
+            addMemberSearch(memberDN, attrsToGet, searchRequests,
+                            searchMembers);
+          }
+        }
+        continue;
+      }
+
+      for (final SearchResultEntry rEntry : searchResult.getSearchEntries())
+      {
+        // A batch search may also return siblings that are not members.
+        final DN memberDN = rEntry.getParsedDN();
+        if (!searchedDNs.contains(memberDN))
+        {
+          continue;
+        }
+
+        final SCIMAttributeValue v = createMemberValue(groupResolver, rEntry);
+        if (v != null)
+        {
+          memberValues.put(memberDN, v);
+          cacheMember(memberDN, v, memberCache, sharedCache);
+        }
+      }
+    }
+
+    for (final DN memberDN : memberDNs)
+    {
+      final SCIMAttributeValue v = memberValues.get(memberDN);
+      if (v != null)
+      {
+        values.add(v);
+      }
+    }
+  }
+
+
+
+  /**
+   * Add a base-scope search for a single member entry.
+   *
+   * @param memberDN        The member DN.
+   * @param attrsToGet      The attributes to request from the member entry.
+   * @param searchRequests  The list of search requests to add to.
+   * @param searchMembers   The list of members searched for by each request.
+   *
+   * @throws LDAPException  If the search request could not be created.
+   */
+  private static void addMemberSearch(final DN memberDN,
+                                      final String[] attrsToGet,
+                                      final List<SearchRequest> searchRequests,
+                                      final List<List<DN>> searchMembers)
+      throws LDAPException
+  {
+    searchRequests.add(new SearchRequest(memberDN.toString(), SearchScope.BASE,
+        OBJECTCLASS_PRESENCE_FILTER, attrsToGet));
+    searchMembers.add(Collections.singletonList(memberDN));
+  }
+
+
+
+  /**
+   * Retrieve a cached member value.
+   *
+   * @param memberDN     The member DN.
+   * @param memberCache  The per-request member cache, or {@code null}.
+   * @param sharedCache  The shared member cache, or {@code null}.
+   *
+   * @return  The cached member value, or {@code null} if it is not cached.
+   */
+  private static SCIMAttributeValue getCachedMember(
+      final DN memberDN,
+      final Map<DN, SCIMAttributeValue> memberCache,
+      final DNCache<SCIMAttributeValue> sharedCache)
+  {
+    if (memberCache != null)
+    {
+      SCIMAttributeValue cacheValue = memberCache.get(memberDN);
+      if (cacheValue != null)
+      {
+        return cacheValue;
+      }
+    }
+    if (sharedCache != null)
+    {
+      SCIMAttributeValue cacheValue = sharedCache.get(memberDN);
+      if (cacheValue != null)
+      {
+        if (memberCache != null)
+        {
+          memberCache.put(memberDN, cacheValue);
+        }
+        return cacheValue;
+      }
+    }
+    return null;
+  }
+
+
+
+  /**
+   * Cache a member value that was searched for.
+   *
+   * @param memberDN     The member DN.
+   * @param value        The member value.
+   * @param memberCache  The per-request member cache, or {@code null}.
+   * @param sharedCache  The shared member cache, or {@code null}.
+   */
+  private void cacheMember(final DN memberDN,
+                           final SCIMAttributeValue value,
+                           final Map<DN, SCIMAttributeValue> memberCache,
+                           final DNCache<SCIMAttributeValue> sharedCache)
+  {
+    if (memberCache != null)
+    {
+      memberCache.put(memberDN, value);
+      if (memberCache.size() > membersToCachePerRequest)
+      {
+        // We have cached too many members for this request, so we
+        // remove the oldest member from the cache.
+        Iterator<DN> it = memberCache.keySet().iterator();
+        it.next();
+        it.remove();
+      }
+    }
+    if (sharedCache != null)
+    {
+      sharedCache.put(memberDN, value);
+    }
+  }
+
+
+
+  @Override
+  public void invalidateCachedValues(final DN dn)
+  {
+    final DNCache<SCIMAttributeValue> sharedCache = sharedMemberCache;
+    if (sharedCache != null)
+    {
+      sharedCache.remove(dn);
+    }
+  }
+
   /**
    * Clear the cache.
    */
@@ -671,4 +1070,93 @@ public class MembersDerivedAttribute extends DerivedAttribute
   {
     MEMBER_CACHES.remove();
   }
+
+
+
+  /**
+   * A search result listener that converts the entries matching a memberURL
+   * to member values as they are returned.
+   */
+  private final class DynamicMemberListener implements SearchResultListener
+  {
+    /**
+     * The serial version ID required for this serializable class.
+     */
+    private static final long serialVersionUID = 4720358128409562137L;
+
+    /**
+     * The LDAPSearchResolver for group resources.
+     */
+    private final LDAPSearchResolver groupResolver;
+
+    /**
+     * The list to which the member values are added.
+     */
+    private final List<SCIMAttributeValue> values;
+
+    /**
+     * The number of entries returned.
+     */
+    private int numEntries;
+
+    /**
+     * The first exception that occurred while creating a member value.
+     */
+    private SCIMException exception;
+
+
+
+    /**
+     * Create a new listener.
+     *
+     * @param groupResolver  The LDAPSearchResolver for group resources.
+     * @param values         The list to which the member values are added.
+     */
+    private DynamicMemberListener(final LDAPSearchResolver groupResolver,
+                                  final List<SCIMAttributeValue> values)
+    {
+      this.groupResolver = groupResolver;
+      this.values = values;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void searchEntryReturned(final SearchResultEntry searchEntry)
+    {
+      numEntries++;
+      if (exception != null)
+      {
+        return;
+      }
+
+      try
+      {
+        final SCIMAttributeValue v =
+            createMemberValue(groupResolver, searchEntry);
+        if (v != null)
+        {
+          values.add(v);
+        }
+      }
+      catch (SCIMException e)
+      {
+        Debug.debugException(e);
+        exception = e;
+      }
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void searchReferenceReturned(
+        final SearchResultReference searchReference)
+    {
+      // No implementation required.
+    }
+  }
 }
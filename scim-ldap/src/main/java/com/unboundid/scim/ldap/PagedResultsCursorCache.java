@@ -0,0 +1,202 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.asn1.ASN1OctetString;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+
+/**
+ * This class provides a bounded, thread-safe cache of simple paged results
+ * cookies, so that a query for the next page of a SCIM result set can resume
+ * the LDAP search where the query for the previous page finished, rather
+ * than having the directory server walk past all of the preceding entries
+ * again. A cookie is cached under the query it belongs to and the 1-based
+ * index of the next result it returns, and is removed when it is used. When
+ * the cache is full, the least recently cached cookie is evicted, and cookies
+ * that have not been used within the idle timeout are discarded.
+ */
+final class PagedResultsCursorCache
+{
+  /**
+   * The cached cookies, in the order they were cached.
+   */
+  private final LinkedHashMap<String, Cursor> cursors;
+
+  /**
+   * The maximum number of cookies to cache.
+   */
+  private final int maxSize;
+
+  /**
+   * The number of milliseconds after which an unused cookie is discarded.
+   */
+  private final long idleTimeoutMillis;
+
+
+
+  /**
+   * Create a new cursor cache.
+   *
+   * @param maxSize            The maximum number of cookies to cache.
+   * @param idleTimeoutMillis  The number of milliseconds after which an unused
+   *                           cookie is discarded.
+   */
+  PagedResultsCursorCache(final int maxSize, final long idleTimeoutMillis)
+  {
+    this.maxSize = maxSize;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+    this.cursors = new LinkedHashMap<String, Cursor>()
+    {
+      private static final long serialVersionUID = 2853087427365904217L;
+
+      @Override
+      protected boolean removeEldestEntry(
+          final Map.Entry<String, Cursor> eldest)
+      {
+        return size() > PagedResultsCursorCache.this.maxSize;
+      }
+    };
+  }
+
+
+
+  /**
+   * Remove and return the cookie that continues a query at the provided
+   * index.
+   *
+   * @param queryKey    The key identifying the query.
+   * @param startIndex  The 1-based index of the next result required.
+   *
+   * @return  The cookie, or {@code null} if there is no cookie cached for the
+   *          query at that index or it has been idle for too long.
+   */
+  synchronized ASN1OctetString take(final String queryKey,
+                                    final int startIndex)
+  {
+    final Cursor cursor = cursors.remove(getKey(queryKey, startIndex));
+    if (cursor == null ||
+        cursor.lastUsedTime + idleTimeoutMillis < System.currentTimeMillis())
+    {
+      return null;
+    }
+
+    return cursor.cookie;
+  }
+
+
+
+  /**
+   * Cache the cookie that continues a query at the provided index.
+   *
+   * @param queryKey    The key identifying the query.
+   * @param startIndex  The 1-based index of the next result the cookie
+   *                    returns.
+   * @param cookie      The cookie returned by the directory server.
+   */
+  synchronized void put(final String queryKey, final int startIndex,
+                        final ASN1OctetString cookie)
+  {
+    final long now = System.currentTimeMillis();
+    final Iterator<Cursor> iterator = cursors.values().iterator();
+    while (iterator.hasNext())
+    {
+      if (iterator.next().lastUsedTime + idleTimeoutMillis >= now)
+      {
+        break;
+      }
+      iterator.remove();
+    }
+
+    cursors.put(getKey(queryKey, startIndex), new Cursor(cookie, now));
+  }
+
+
+
+  /**
+   * Remove all cached cookies.
+   */
+  synchronized void clear()
+  {
+    cursors.clear();
+  }
+
+
+
+  /**
+   * Retrieve the number of cookies currently cached, including any that have
+   * been idle for too long but have not yet been removed.
+   *
+   * @return  The number of cookies currently cached.
+   */
+  synchronized int size()
+  {
+    return cursors.size();
+  }
+
+
+
+  /**
+   * Create the map key for a query and index.
+   *
+   * @param queryKey    The key identifying the query.
+   * @param startIndex  The 1-based index of the next result.
+   *
+   * @return  The map key.
+   */
+  private static String getKey(final String queryKey, final int startIndex)
+  {
+    return startIndex + ":" + queryKey;
+  }
+
+
+
+  /**
+   * A cached cookie and the time it was cached.
+   */
+  private static final class Cursor
+  {
+    /**
+     * The cookie returned by the directory server.
+     */
+    private final ASN1OctetString cookie;
+
+    /**
+     * The time the cookie was cached.
+     */
+    private final long lastUsedTime;
+
+
+
+    /**
+     * Create a new cursor.
+     *
+     * @param cookie        The cookie returned by the directory server.
+     * @param lastUsedTime  The time the cookie was cached.
+     */
+    private Cursor(final ASN1OctetString cookie, final long lastUsedTime)
+    {
+      this.cookie = cookie;
+      this.lastUsedTime = lastUsedTime;
+    }
+  }
+}
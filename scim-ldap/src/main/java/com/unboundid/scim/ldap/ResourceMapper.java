@@ -28,6 +28,7 @@ import com.unboundid.ldap.sdk.ModificationType;
 import com.unboundid.ldap.sdk.ResultCode;
 import com.unboundid.ldap.sdk.SearchResultEntry;
 import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.unboundid.ldap.sdk.controls.SortKey;
 import com.unboundid.scim.data.AttributeValueResolver;
 import com.unboundid.scim.schema.AttributeDescriptor;
 import com.unboundid.scim.schema.CoreSchema;
@@ -75,6 +76,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import static javax.xml.XMLConstants.W3C_XML_SCHEMA_NS_URI;
@@ -172,6 +174,32 @@ public class ResourceMapper
    */
   protected AttributeMapper passwordAttributeMapper;
 
+  /**
+   * The sort key used for VLV pagination of queries that do not request
+   * sorting if the resource does not specify one.
+   */
+  private static final SortKey DEFAULT_VLV_SORT_KEY = new SortKey("uid");
+
+  /**
+   * The sort key used for VLV pagination of queries that do not request
+   * sorting, or {@code null} if such queries are not paged with VLV.
+   */
+  private volatile SortKey vlvSortKey = DEFAULT_VLV_SORT_KEY;
+
+  /**
+   * The maximum number of distinct sets of query attributes for which the
+   * LDAP request attributes are cached.
+   */
+  private static final int MAX_CACHED_REQUEST_ATTRIBUTES = 256;
+
+  /**
+   * The LDAP request attributes previously computed for each set of query
+   * attributes.
+   */
+  private final ConcurrentHashMap<SCIMQueryAttributes,CachedRequestAttributes>
+      requestAttributesCache =
+      new ConcurrentHashMap<SCIMQueryAttributes,CachedRequestAttributes>();
+
   /**
    * Create a new instance of this resource mapper. All resource mappers must
    * provide a default constructor, but any initialization should be done
@@ -411,12 +439,53 @@ public class ResourceMapper
           attributeMappers,
           derivedAttributes);
 
+      if (resource.getVlvSortKey() != null)
+      {
+        final SortKey sortKey = parseSortKey(resource.getVlvSortKey());
+        if (ldapSchema != null &&
+            ldapSchema.getAttributeType(sortKey.getAttributeName()) == null)
+        {
+          throw new ServerErrorException(
+              "The LDAP attribute '" + sortKey.getAttributeName() +
+              "' referenced by the vlvSortKey element of the \"" +
+              resource.getName() + "\" resource is not defined in the LDAP " +
+              "schema");
+        }
+        resourceMapper.setVLVSortKey(sortKey);
+      }
+
       resourceMappers.add(resourceMapper);
     }
 
     return resourceMappers;
   }
 
+  /**
+   * Parse a sort key of the form used in VLV index definitions, which is an
+   * attribute name optionally preceded by '+' for ascending order or '-' for
+   * descending order.
+   *
+   * @param value  The sort key value.
+   *
+   * @return  The sort key.
+   */
+  static SortKey parseSortKey(final String value)
+  {
+    final String trimmed = value.trim();
+    if (trimmed.startsWith("-"))
+    {
+      return new SortKey(trimmed.substring(1).trim(), true);
+    }
+    else if (trimmed.startsWith("+"))
+    {
+      return new SortKey(trimmed.substring(1).trim(), false);
+    }
+    else
+    {
+      return new SortKey(trimmed, false);
+    }
+  }
+
   /**
    * Create an attribute descriptor from an attribute definition.
    *
@@ -643,6 +712,38 @@ public class ResourceMapper
       this.derivedAttributes.put(derivedAttribute.getAttributeDescriptor(),
                                  derivedAttribute);
     }
+
+    requestAttributesCache.clear();
+  }
+
+
+
+  /**
+   * Retrieve the sort key used for VLV pagination of queries that do not
+   * request sorting. The directory server must have a VLV index with this sort
+   * order for the resource's search base DNs and filter. Unless the resource
+   * specifies a vlvSortKey, this is uid.
+   *
+   * @return  The VLV sort key, or {@code null} if queries that do not request
+   *          sorting are not paged with VLV.
+   */
+  public SortKey getVLVSortKey()
+  {
+    return vlvSortKey;
+  }
+
+
+
+  /**
+   * Specify the sort key used for VLV pagination of queries that do not
+   * request sorting.
+   *
+   * @param vlvSortKey  The VLV sort key, or {@code null} if queries that do
+   *                    not request sorting are not to be paged with VLV.
+   */
+  public void setVLVSortKey(final SortKey vlvSortKey)
+  {
+    this.vlvSortKey = vlvSortKey;
   }
 
 
@@ -754,6 +855,50 @@ public class ResourceMapper
 
 
 
+  /**
+   * Retrieve the LDAP attribute types that should be requested in order to
+   * return the specified query attributes, together with the provided
+   * additional attribute types. The result is cached, so the returned array
+   * is shared and must not be modified by the caller.
+   *
+   * @param queryAttributes           The requested query attributes.
+   * @param additionalAttributeTypes  Additional LDAP attribute types that
+   *                                  should always be requested. This should
+   *                                  be the same set instance on every call.
+   *
+   * @return  The LDAP attribute types that should be requested.
+   */
+  public String[] getLDAPRequestAttributes(
+      final SCIMQueryAttributes queryAttributes,
+      final Set<String> additionalAttributeTypes)
+  {
+    final CachedRequestAttributes cached =
+        requestAttributesCache.get(queryAttributes);
+    if (cached != null &&
+        cached.additionalAttributeTypes.equals(additionalAttributeTypes))
+    {
+      return cached.attributes;
+    }
+
+    final Set<String> ldapAttributes = toLDAPAttributeTypes(queryAttributes);
+    ldapAttributes.addAll(additionalAttributeTypes);
+    final String[] attributes =
+        ldapAttributes.toArray(new String[ldapAttributes.size()]);
+
+    // Only cache a bounded number of distinct attribute lists since clients
+    // may request arbitrary combinations.
+    if (cached != null ||
+        requestAttributesCache.size() < MAX_CACHED_REQUEST_ATTRIBUTES)
+    {
+      requestAttributesCache.put(queryAttributes,
+          new CachedRequestAttributes(additionalAttributeTypes, attributes));
+    }
+
+    return attributes;
+  }
+
+
+
   /**
    * Retrieve the set of LDAP attribute types that are mapped from the given
    * set of SCIM attributes.
@@ -1835,6 +1980,78 @@ public class ResourceMapper
 
 
 
+  /**
+   * Determine whether any of the requested derived attributes support
+   * prefetching for a batch of query results.
+   *
+   * @param queryAttributes  The requested attributes.
+   *
+   * @return  {@code true} if {@link #prefetchDerivedAttributes} should be
+   *          invoked for batches of query results.
+   */
+  public boolean supportsPrefetch(final SCIMQueryAttributes queryAttributes)
+  {
+    for (final Map.Entry<AttributeDescriptor,DerivedAttribute> e :
+        derivedAttributes.entrySet())
+    {
+      if (queryAttributes.isAttributeRequested(e.getKey()) &&
+          e.getValue().supportsPrefetch())
+      {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+
+
+  /**
+   * Prepare to derive the requested derived attributes for a batch of query
+   * results.
+   *
+   * @param entries          The LDAP entries returned by the query.
+   * @param queryAttributes  The requested attributes.
+   * @param ldapInterface    An LDAP interface that may be used to search the
+   *                         DIT.
+   *
+   * @throws SCIMException  If an error occurs.
+   */
+  public void prefetchDerivedAttributes(
+      final List<? extends Entry> entries,
+      final SCIMQueryAttributes queryAttributes,
+      final LDAPRequestInterface ldapInterface)
+      throws SCIMException
+  {
+    for (final Map.Entry<AttributeDescriptor,DerivedAttribute> e :
+        derivedAttributes.entrySet())
+    {
+      if (queryAttributes.isAttributeRequested(e.getKey()) &&
+          e.getValue().supportsPrefetch())
+      {
+        e.getValue().prefetch(entries, ldapInterface, searchResolver);
+      }
+    }
+  }
+
+
+
+  /**
+   * Discard any derived attribute values cached across requests that were
+   * derived from the LDAP entry with the provided DN.
+   *
+   * @param dn  The DN of the LDAP entry that has changed.
+   */
+  public void invalidateCachedValues(final DN dn)
+  {
+    for (final DerivedAttribute derivedAttribute : derivedAttributes.values())
+    {
+      derivedAttribute.invalidateCachedValues(dn);
+    }
+  }
+
+
+
   /**
    * Returns the LDAP attribute that the SCIM password attribute maps to,
    * or <code>null</code> if there is no mapping for the password attribute.
@@ -1916,4 +2133,38 @@ public class ResourceMapper
         return new ServerErrorException(errorMessage, e);
     }
   }
+
+
+
+  /**
+   * The LDAP request attributes computed for a set of query attributes.
+   */
+  private static final class CachedRequestAttributes
+  {
+    /**
+     * The additional LDAP attribute types that were included.
+     */
+    private final Set<String> additionalAttributeTypes;
+
+    /**
+     * The LDAP attribute types to request.
+     */
+    private final String[] attributes;
+
+
+
+    /**
+     * Create a new set of cached request attributes.
+     *
+     * @param additionalAttributeTypes  The additional LDAP attribute types
+     *                                  that were included.
+     * @param attributes                The LDAP attribute types to request.
+     */
+    private CachedRequestAttributes(final Set<String> additionalAttributeTypes,
+                                    final String[] attributes)
+    {
+      this.additionalAttributeTypes = additionalAttributeTypes;
+      this.attributes = attributes;
+    }
+  }
 }
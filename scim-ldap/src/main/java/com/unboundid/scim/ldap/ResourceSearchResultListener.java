@@ -22,16 +22,36 @@ import com.unboundid.ldap.sdk.SearchResultListener;
 import com.unboundid.ldap.sdk.SearchResultReference;
 import com.unboundid.scim.data.BaseResource;
 import com.unboundid.scim.sdk.Debug;
+import com.unboundid.scim.sdk.DebugType;
 import com.unboundid.scim.sdk.GetResourcesRequest;
 import com.unboundid.scim.sdk.SCIMException;
+import com.unboundid.scim.sdk.ServerErrorException;
+import com.unboundid.scim.sdk.StreamingResources;
 
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
 
 
 /**
  * This class provides a search result listener to retrieve SCIM objects.
+ * The SCIM objects are either collected in a list or, if a streaming response
+ * is provided, written to the response as soon as they are returned.
+ * <p>
+ * The entries may be converted to SCIM objects by the pool of threads shared
+ * by the queries of the backend, so that the conversion of several entries,
+ * including any searches needed to derive attributes, proceeds at once while
+ * the search continues to return entries.
+ * The SCIM objects are still collected or written in the order of the
+ * entries, and the search is held up when too many conversions are pending.
+ * The {@link #awaitConversions()} method must be called when the search has
+ * completed, and {@link #close()} when the listener is no longer needed.
  */
 public class ResourceSearchResultListener extends SCIMSearchResultListener
     implements SearchResultListener
@@ -41,11 +61,50 @@ public class ResourceSearchResultListener extends SCIMSearchResultListener
    */
   private static final long serialVersionUID = -2028867840959235911L;
 
+  /**
+   * The number of entries that are passed to the requested derived
+   * attributes together for prefetching.
+   */
+  private static final int PREFETCH_BATCH_SIZE = 100;
+
   /**
    * The SCIM objects to be returned.
    */
   private final List<BaseResource> resources;
 
+  /**
+   * The streaming response to which the SCIM objects are written, or
+   * {@code null} if the SCIM objects are to be collected in a list.
+   */
+  private final StreamingResources streamingResources;
+
+  /**
+   * The number of SCIM objects that have been collected or written.
+   */
+  private int numResources;
+
+  /**
+   * The first exception that occurred while writing a SCIM object to the
+   * streaming response.
+   */
+  private volatile SCIMException streamingException;
+
+  /**
+   * The first unexpected error that occurred while converting an entry to a
+   * SCIM object on a conversion thread.
+   */
+  private SCIMException conversionException;
+
+  /**
+   * The number of entries that could not be converted to SCIM objects.
+   */
+  private int conversionFailures;
+
+  /**
+   * The number of entries still to be skipped before SCIM objects are
+   * collected or written.
+   */
+  private int entriesToSkip;
 
   /**
    * The maximum number of resources that may be returned.
@@ -59,6 +118,30 @@ public class ResourceSearchResultListener extends SCIMSearchResultListener
    */
   private final AtomicInteger totalResults;
 
+  /**
+   * The executor shared by the queries of the backend to convert entries
+   * concurrently, or {@code null} if entries are converted as they are
+   * returned.
+   */
+  private final ExecutorService executor;
+
+  /**
+   * The maximum number of conversions that may be pending.
+   */
+  private final int maxPendingConversions;
+
+  /**
+   * The conversions whose SCIM objects have not yet been collected or
+   * written, in the order of the entries.
+   */
+  private final LinkedList<Future<BaseResource>> pendingConversions;
+
+  /**
+   * The entries held until a batch can be prefetched, or {@code null} if none
+   * of the requested derived attributes support prefetching.
+   */
+  private final List<SearchResultEntry> prefetchBatch;
+
 
 
   /**
@@ -77,11 +160,93 @@ public class ResourceSearchResultListener extends SCIMSearchResultListener
                                       final LDAPRequestInterface ldapInterface,
                                       final int maxResults)
       throws SCIMException
+  {
+    this(backend, request, ldapInterface, maxResults, null);
+  }
+
+
+
+  /**
+   * Create a new search result listener to retrieve SCIM objects and write
+   * them to a streaming response.
+   *
+   * @param backend             The LDAP backend that is processing the SCIM
+   *                            request.
+   * @param request             The request that is being processed.
+   * @param ldapInterface       An LDAP interface that can be used to
+   *                            derive attributes from other entries.
+   * @param maxResults          The maximum number of resources that may be
+   *                            returned.
+   * @param streamingResources  The streaming response to which the resources
+   *                            are to be written, or {@code null} if the
+   *                            resources are to be collected in a list.
+   *
+   * @throws SCIMException  Should never be thrown.
+   */
+  public ResourceSearchResultListener(
+      final LDAPBackend backend,
+      final GetResourcesRequest request,
+      final LDAPRequestInterface ldapInterface,
+      final int maxResults,
+      final StreamingResources streamingResources)
+      throws SCIMException
+  {
+    this(backend, request, ldapInterface, maxResults, streamingResources, 1);
+  }
+
+
+
+  /**
+   * Create a new search result listener to retrieve SCIM objects, optionally
+   * converting the entries with a pool of threads.
+   *
+   * @param backend             The LDAP backend that is processing the SCIM
+   *                            request.
+   * @param request             The request that is being processed.
+   * @param ldapInterface       An LDAP interface that can be used to
+   *                            derive attributes from other entries. It must
+   *                            support concurrent operations if more than one
+   *                            thread is used.
+   * @param maxResults          The maximum number of resources that may be
+   *                            returned.
+   * @param streamingResources  The streaming response to which the resources
+   *                            are to be written, or {@code null} if the
+   *                            resources are to be collected in a list.
+   * @param conversionThreads   The number of threads used to convert entries
+   *                            to SCIM objects. A value of one converts each
+   *                            entry as it is returned. Otherwise the entries
+   *                            are converted by the executor of the backend.
+   *
+   * @throws SCIMException  Should never be thrown.
+   */
+  public ResourceSearchResultListener(
+      final LDAPBackend backend,
+      final GetResourcesRequest request,
+      final LDAPRequestInterface ldapInterface,
+      final int maxResults,
+      final StreamingResources streamingResources,
+      final int conversionThreads)
+      throws SCIMException
   {
     super(backend, request, ldapInterface);
-    this.resources      = new ArrayList<BaseResource>();
-    this.maxResults     = maxResults;
-    this.totalResults   = new AtomicInteger();
+    this.resources          = new ArrayList<BaseResource>();
+    this.streamingResources = streamingResources;
+    this.maxResults         = maxResults;
+    this.totalResults       = new AtomicInteger();
+    this.pendingConversions = new LinkedList<Future<BaseResource>>();
+    this.prefetchBatch      = supportsPrefetch() ?
+        new ArrayList<SearchResultEntry>(PREFETCH_BATCH_SIZE) : null;
+
+    executor = conversionThreads > 1 ?
+        backend.getQueryConversionExecutor() : null;
+    if (executor != null)
+    {
+      maxPendingConversions = conversionThreads * 4;
+    }
+    else
+    {
+      maxPendingConversions = 1;
+    }
   }
 
 
@@ -95,25 +260,278 @@ public class ResourceSearchResultListener extends SCIMSearchResultListener
    */
   public void searchEntryReturned(final SearchResultEntry searchEntry)
   {
-    if (resources.size() >= maxResults)
+    if (entriesToSkip > 0)
     {
-      totalResults.incrementAndGet();
+      entriesToSkip--;
       return;
     }
 
-    try
+    if (prefetchBatch != null)
     {
-      BaseResource resource = getResourceForSearchResultEntry(searchEntry);
-      if (resource != null)
+      // Hold the entries that may be returned until a batch is complete.
+      if (streamingException == null &&
+          numResources + pendingConversions.size() + prefetchBatch.size() <
+          maxResults)
       {
-        totalResults.incrementAndGet();
-        resources.add(resource);
+        prefetchBatch.add(searchEntry);
+        if (prefetchBatch.size() >= PREFETCH_BATCH_SIZE)
+        {
+          processPrefetchBatch();
+        }
+        return;
       }
+
+      processPrefetchBatch();
+    }
+
+    processEntry(searchEntry);
+  }
+
+
+
+  /**
+   * Prefetch the derived attributes for the held entries, and then convert
+   * them.
+   */
+  private void processPrefetchBatch()
+  {
+    if (prefetchBatch == null || prefetchBatch.isEmpty())
+    {
+      return;
+    }
+
+    try
+    {
+      prefetch(prefetchBatch);
+    }
+    catch (SCIMException e)
+    {
+      // The attributes are derived for each entry without prefetching.
+      Debug.debugException(e);
+    }
+
+    for (final SearchResultEntry searchEntry : prefetchBatch)
+    {
+      processEntry(searchEntry);
+    }
+    prefetchBatch.clear();
+  }
+
+
+
+  /**
+   * Convert an entry to a SCIM object, or submit it to be converted, unless
+   * the maximum number of resources has been reached.
+   *
+   * @param searchEntry The search result entry.
+   */
+  private void processEntry(final SearchResultEntry searchEntry)
+  {
+    if (executor != null)
+    {
+      submitConversion(searchEntry);
+      return;
+    }
+
+    if (numResources >= maxResults || streamingException != null)
+    {
+      totalResults.incrementAndGet();
+      return;
+    }
+
+    final BaseResource resource;
+    try
+    {
+      resource = getResourceForSearchResultEntry(searchEntry);
     }
     catch (SCIMException e)
     {
       Debug.debugException(e);
       // TODO: We should find a way to get this exception back to LDAPBackend.
+      conversionFailures++;
+      return;
+    }
+
+    addResource(resource);
+  }
+
+
+
+  /**
+   * Submit an entry to be converted to a SCIM object by the executor. The
+   * search is held up while the pending conversions could fill the remaining
+   * results, since an entry is only converted if there is room for it, or
+   * while there are too many pending conversions.
+   *
+   * @param searchEntry  The search result entry to be converted.
+   */
+  private void submitConversion(final SearchResultEntry searchEntry)
+  {
+    while (!pendingConversions.isEmpty() &&
+           (numResources + pendingConversions.size() >= maxResults ||
+            pendingConversions.size() >= maxPendingConversions))
+    {
+      completeConversion();
+    }
+
+    if (numResources >= maxResults || streamingException != null ||
+        conversionException != null)
+    {
+      totalResults.incrementAndGet();
+      return;
+    }
+
+    pendingConversions.add(executor.submit(new Callable<BaseResource>()
+    {
+      public BaseResource call()
+          throws SCIMException
+      {
+        try
+        {
+          return getResourceForSearchResultEntry(searchEntry);
+        }
+        finally
+        {
+          // The conversion threads are shared by all requests, so the
+          // per-request caches must not outlive this conversion.
+          LDAPBackend.clearRequestCaches();
+        }
+      }
+    }));
+
+    // Collect or write the SCIM objects that are ready, in order.
+    while (!pendingConversions.isEmpty() &&
+           pendingConversions.getFirst().isDone())
+    {
+      completeConversion();
+    }
+  }
+
+
+
+  /**
+   * Wait for the earliest pending conversion to complete, and collect or
+   * write its SCIM object. An entry that could not be converted is omitted,
+   * as it is when entries are converted as they are returned, unless an
+   * unexpected error occurred.
+   */
+  private void completeConversion()
+  {
+    final BaseResource resource;
+    try
+    {
+      resource = pendingConversions.removeFirst().get();
+    }
+    catch (ExecutionException e)
+    {
+      Debug.debugException(e);
+      conversionFailures++;
+      if (!(e.getCause() instanceof SCIMException) &&
+          conversionException == null)
+      {
+        conversionException = new ServerErrorException(
+            "An error occurred while converting an entry to a resource: " +
+            e.getCause());
+      }
+      return;
+    }
+    catch (InterruptedException e)
+    {
+      Debug.debugException(e);
+      Thread.currentThread().interrupt();
+      return;
+    }
+
+    addResource(resource);
+  }
+
+
+
+  /**
+   * Convert any held entries and wait for all pending conversions to
+   * complete, and collect or write their SCIM objects. This must be called
+   * when the search has completed and before the results of the listener are
+   * retrieved.
+   *
+   * @throws SCIMException  If an unexpected error occurred while converting
+   *                        an entry on a conversion thread.
+   */
+  public void awaitConversions()
+      throws SCIMException
+  {
+    processPrefetchBatch();
+    while (!pendingConversions.isEmpty())
+    {
+      completeConversion();
+    }
+
+    if (conversionException != null)
+    {
+      throw conversionException;
+    }
+  }
+
+
+
+  /**
+   * Discard any conversions that are still pending, and report any entries
+   * that could not be converted. The threads used to convert entries are
+   * shared, so they are not released.
+   */
+  public void close()
+  {
+    if (conversionFailures > 0)
+    {
+      Debug.debug(Level.WARNING, DebugType.OTHER,
+          conversionFailures + " entries returned by the search could not " +
+          "be converted to resources and were omitted");
+    }
+
+    if (prefetchBatch != null)
+    {
+      prefetchBatch.clear();
+    }
+
+    if (executor != null)
+    {
+      for (final Future<BaseResource> future : pendingConversions)
+      {
+        future.cancel(false);
+      }
+      pendingConversions.clear();
+    }
+  }
+
+
+
+  /**
+   * Collect or write a SCIM object converted from an entry.
+   *
+   * @param resource  The SCIM object, or {@code null} if the entry does not
+   *                  match the SCIM search filter.
+   */
+  private void addResource(final BaseResource resource)
+  {
+    if (resource != null)
+    {
+      totalResults.incrementAndGet();
+      numResources++;
+      if (streamingResources == null)
+      {
+        resources.add(resource);
+      }
+      else if (streamingException == null)
+      {
+        try
+        {
+          streamingResources.writeResource(resource);
+        }
+        catch (SCIMException e)
+        {
+          Debug.debugException(e);
+          streamingException = e;
+        }
+      }
     }
   }
 
@@ -135,7 +553,22 @@ public class ResourceSearchResultListener extends SCIMSearchResultListener
 
 
   /**
-   * Retrieve the SCIM objects to be returned.
+   * Specify a number of entries to be skipped without being converted to
+   * SCIM objects or counted. This is used when a search has to return the
+   * entries that precede the requested page.
+   *
+   * @param count  The number of entries to skip.
+   */
+  void skipEntries(final int count)
+  {
+    entriesToSkip = count;
+  }
+
+
+
+  /**
+   * Retrieve the SCIM objects to be returned. The list is empty if the SCIM
+   * objects were written to a streaming response.
    *
    * @return  The SCIM objects to be returned.
    */
@@ -145,6 +578,33 @@ public class ResourceSearchResultListener extends SCIMSearchResultListener
   }
 
 
+  /**
+   * Retrieve the exception that occurred while writing a SCIM object to the
+   * streaming response.
+   *
+   * @return  The first exception that occurred while writing a SCIM object to
+   *          the streaming response, or {@code null} if there was none.
+   */
+  public SCIMException getStreamingException()
+  {
+    return streamingException;
+  }
+
+
+
+  /**
+   * Retrieve the number of entries that could not be converted to SCIM
+   * objects and were omitted from the results.
+   *
+   * @return  The number of entries that could not be converted.
+   */
+  public int getConversionFailures()
+  {
+    return conversionFailures;
+  }
+
+
+
   /**
    * Retrieve the total number of LDAP entries that were returned from the
    * search.
@@ -197,6 +197,38 @@ public abstract class SCIMSearchResultListener {
 
 
 
+  /**
+   * Determine whether the entries returned by the search should be passed to
+   * {@link #prefetch} in batches before they are converted.
+   *
+   * @return  {@code true} if a requested derived attribute supports
+   *          prefetching.
+   */
+  protected boolean supportsPrefetch()
+  {
+    return resourceMapper.supportsPrefetch(attributes);
+  }
+
+
+
+  /**
+   * Prepare to convert a batch of LDAP search result entries into SCIM
+   * resources, by letting the requested derived attributes retrieve the
+   * information they need for all of the entries at once.
+   *
+   * @param searchEntries  The search result entries.
+   *
+   * @throws SCIMException if an error occurs.
+   */
+  protected void prefetch(final List<SearchResultEntry> searchEntries)
+      throws SCIMException
+  {
+    resourceMapper.prefetchDerivedAttributes(searchEntries, attributes,
+                                             ldapInterface);
+  }
+
+
+
   /**
    * Convert an LDAP search result entry into a SCIM Resource.
    *
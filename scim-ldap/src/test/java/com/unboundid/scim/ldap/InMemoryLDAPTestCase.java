@@ -0,0 +1,556 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPInterface;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResult;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.scim.SCIMTestCase;
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.GetResourcesRequest;
+import com.unboundid.scim.sdk.PageParameters;
+import com.unboundid.scim.sdk.Resources;
+import com.unboundid.scim.sdk.SCIMException;
+import com.unboundid.scim.sdk.SCIMFilter;
+import com.unboundid.scim.sdk.SCIMQueryAttributes;
+import com.unboundid.scim.sdk.SortParameters;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.unboundid.scim.sdk.StaticUtils.toLowerCase;
+
+
+
+/**
+ * This class provides an in-memory directory server and an LDAP backend
+ * using the sample resource mappings, for test cases that process SCIM
+ * requests against a directory server.
+ */
+public abstract class InMemoryLDAPTestCase
+    extends SCIMTestCase
+{
+  /**
+   * The base DN of the in-memory directory server.
+   */
+  protected static final String BASE_DN = "dc=example,dc=com";
+
+  /**
+   * The base DN of the User entries in the sample resource mappings.
+   */
+  protected static final String PEOPLE_DN = "ou=people,dc=example,dc=com";
+
+  /**
+   * The in-memory directory server.
+   */
+  protected InMemoryDirectoryServer ds;
+
+  /**
+   * A connection pool for the in-memory directory server.
+   */
+  protected LDAPConnectionPool pool;
+
+
+
+  /**
+   * Start an in-memory directory server with the base entries. The server
+   * does not check the schema, so that entries such as dynamic groups and
+   * server configuration entries may be added.
+   *
+   * @throws Exception  If the server could not be started.
+   */
+  @BeforeClass
+  public void startDirectoryServer()
+      throws Exception
+  {
+    final InMemoryDirectoryServerConfig config =
+        new InMemoryDirectoryServerConfig(getBaseDNs());
+    config.setSchema(null);
+    ds = new InMemoryDirectoryServer(config);
+    ds.add("dn: " + BASE_DN,
+           "objectClass: top",
+           "objectClass: domain",
+           "dc: example");
+    ds.add("dn: " + PEOPLE_DN,
+           "objectClass: top",
+           "objectClass: organizationalUnit",
+           "ou: people");
+    ds.startListening();
+
+    pool = new LDAPConnectionPool(ds.getConnection(), 1, 10);
+  }
+
+
+
+  /**
+   * Shut down the in-memory directory server.
+   */
+  @AfterClass
+  public void stopDirectoryServer()
+  {
+    pool.close();
+    ds.shutDown(true);
+  }
+
+
+
+  /**
+   * Retrieve the base DNs of the in-memory directory server.
+   *
+   * @return  The base DNs of the in-memory directory server.
+   */
+  protected String[] getBaseDNs()
+  {
+    return new String[] { BASE_DN };
+  }
+
+
+
+  /**
+   * Add a User entry.
+   *
+   * @param parentDN  The DN of the parent entry.
+   * @param uid       The uid of the user.
+   * @param attrs     Any additional attributes, in LDIF form.
+   *
+   * @return  The resource ID of the user.
+   *
+   * @throws Exception  If the entry could not be added.
+   */
+  protected String addUser(final String parentDN, final String uid,
+                           final String... attrs)
+      throws Exception
+  {
+    final List<String> ldif = new ArrayList<String>();
+    ldif.add("dn: uid=" + uid + "," + parentDN);
+    ldif.add("objectClass: top");
+    ldif.add("objectClass: person");
+    ldif.add("objectClass: organizationalPerson");
+    ldif.add("objectClass: inetOrgPerson");
+    ldif.add("uid: " + uid);
+    ldif.add("cn: " + uid);
+    ldif.add("sn: " + uid);
+    Collections.addAll(ldif, attrs);
+    ds.add(ldif.toArray(new String[ldif.size()]));
+
+    return getResourceID("uid=" + uid + "," + parentDN);
+  }
+
+
+
+  /**
+   * Add a static group entry.
+   *
+   * @param cn         The cn of the group.
+   * @param memberDNs  The DNs of the members.
+   *
+   * @return  The resource ID of the group.
+   *
+   * @throws Exception  If the entry could not be added.
+   */
+  protected String addGroup(final String cn, final String... memberDNs)
+      throws Exception
+  {
+    final List<String> ldif = new ArrayList<String>();
+    ldif.add("dn: cn=" + cn + "," + BASE_DN);
+    ldif.add("objectClass: top");
+    ldif.add("objectClass: groupOfUniqueNames");
+    ldif.add("cn: " + cn);
+    for (final String memberDN : memberDNs)
+    {
+      ldif.add("uniqueMember: " + memberDN);
+    }
+    ds.add(ldif.toArray(new String[ldif.size()]));
+
+    return getResourceID("cn=" + cn + "," + BASE_DN);
+  }
+
+
+
+  /**
+   * Retrieve the resource ID of an entry, which is its entryUUID in the
+   * sample resource mappings.
+   *
+   * @param dn  The DN of the entry.
+   *
+   * @return  The resource ID of the entry.
+   *
+   * @throws Exception  If the entry could not be read.
+   */
+  protected String getResourceID(final String dn)
+      throws Exception
+  {
+    return ds.getEntry(dn, "entryUUID").getAttributeValue("entryUUID");
+  }
+
+
+
+  /**
+   * Create an LDAP backend for the in-memory directory server, using the
+   * sample resource mappings.
+   *
+   * @param replacements  Pairs of strings, each a string to be replaced in
+   *                      the sample resource mappings followed by its
+   *                      replacement.
+   *
+   * @return  The LDAP backend.
+   *
+   * @throws Exception  If the resource mappings could not be parsed.
+   */
+  protected TestLDAPBackend createBackend(final String... replacements)
+      throws Exception
+  {
+    return new TestLDAPBackend(getResourceMappers(replacements), pool);
+  }
+
+
+
+  /**
+   * Parse the sample resource mappings into the form used by an LDAP
+   * backend.
+   *
+   * @param replacements  Pairs of strings, each a string to be replaced in
+   *                      the sample resource mappings followed by its
+   *                      replacement.
+   *
+   * @return  The resource mappers, keyed by their resource descriptors.
+   *
+   * @throws Exception  If the resource mappings could not be parsed.
+   */
+  protected static Map<ResourceDescriptor, ResourceMapper> getResourceMappers(
+      final String... replacements)
+      throws Exception
+  {
+    final Map<ResourceDescriptor, ResourceMapper> mappers =
+        new HashMap<ResourceDescriptor, ResourceMapper>();
+    for (final ResourceMapper mapper : parseResourceMappers(replacements))
+    {
+      mappers.put(mapper.getResourceDescriptor(), mapper);
+    }
+    return mappers;
+  }
+
+
+
+  /**
+   * Parse the sample resource mappings.
+   *
+   * @param replacements  Pairs of strings, each a string to be replaced in
+   *                      the sample resource mappings followed by its
+   *                      replacement.
+   *
+   * @return  The resource mappers.
+   *
+   * @throws Exception  If the resource mappings could not be parsed.
+   */
+  protected static List<ResourceMapper> parseResourceMappers(
+      final String... replacements)
+      throws Exception
+  {
+    final File resourcesFile =
+        getResourceFile("/com/unboundid/scim/ldap/resources.xml");
+    if (replacements.length == 0)
+    {
+      return ResourceMapper.parse(resourcesFile);
+    }
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final InputStream inputStream = new FileInputStream(resourcesFile);
+    try
+    {
+      final byte[] buffer = new byte[8192];
+      int n;
+      while ((n = inputStream.read(buffer)) != -1)
+      {
+        bytes.write(buffer, 0, n);
+      }
+    }
+    finally
+    {
+      inputStream.close();
+    }
+
+    String resources = bytes.toString("UTF-8");
+    for (int i = 0; i < replacements.length; i += 2)
+    {
+      if (!resources.contains(replacements[i]))
+      {
+        throw new IllegalArgumentException(
+            "The resource mappings do not contain " + replacements[i]);
+      }
+      resources = resources.replace(replacements[i], replacements[i + 1]);
+    }
+
+    final File file = File.createTempFile("resources", ".xml");
+    file.deleteOnExit();
+    final OutputStream outputStream = new FileOutputStream(file);
+    try
+    {
+      outputStream.write(resources.getBytes("UTF-8"));
+    }
+    finally
+    {
+      outputStream.close();
+    }
+
+    return ResourceMapper.parse(file);
+  }
+
+
+
+  /**
+   * Query the resources of an LDAP backend.
+   *
+   * @param backend         The LDAP backend.
+   * @param resourceName    The name of the resource.
+   * @param filter          The SCIM filter, or {@code null} if all resources
+   *                        are to be returned.
+   * @param attributes      The requested attributes, or {@code null} if all
+   *                        attributes are requested.
+   * @param sortParameters  The sort parameters, or {@code null} if the
+   *                        resources are not to be sorted.
+   * @param pageParameters  The page parameters, or {@code null} if all
+   *                        resources are to be returned.
+   *
+   * @return  The resources returned.
+   *
+   * @throws SCIMException  If the query fails.
+   */
+  protected static Resources<?> query(final LDAPBackend backend,
+                                      final String resourceName,
+                                      final String filter,
+                                      final String attributes,
+                                      final SortParameters sortParameters,
+                                      final PageParameters pageParameters)
+      throws SCIMException
+  {
+    final ResourceDescriptor descriptor =
+        getResourceDescriptor(backend, resourceName);
+    return backend.getResources(new GetResourcesRequest(
+        URI.create("http://localhost/"), "cn=test", descriptor,
+        filter == null ? null : SCIMFilter.parse(filter), null, null,
+        sortParameters, pageParameters,
+        new SCIMQueryAttributes(descriptor, attributes)));
+  }
+
+
+
+  /**
+   * Retrieve the descriptor of a resource of an LDAP backend.
+   *
+   * @param backend       The LDAP backend.
+   * @param resourceName  The name of the resource.
+   *
+   * @return  The resource descriptor.
+   */
+  protected static ResourceDescriptor getResourceDescriptor(
+      final LDAPBackend backend, final String resourceName)
+  {
+    for (final ResourceDescriptor descriptor :
+        backend.getResourceDescriptors())
+    {
+      if (descriptor.getName().equals(resourceName))
+      {
+        return descriptor;
+      }
+    }
+
+    throw new IllegalArgumentException("No " + resourceName + " resource");
+  }
+
+
+
+  /**
+   * Retrieve the IDs of the resources returned by a query, in order.
+   *
+   * @param resources  The resources returned by a query.
+   *
+   * @return  The resource IDs.
+   */
+  protected static List<String> getIDs(final Resources<?> resources)
+  {
+    final List<String> ids = new ArrayList<String>();
+    for (final BaseResource resource : resources)
+    {
+      ids.add(resource.getId());
+    }
+    return ids;
+  }
+
+
+
+  /**
+   * An LDAP backend for the in-memory directory server, which records the
+   * searches it issues.
+   */
+  protected static class TestLDAPBackend
+      extends LDAPBackend
+  {
+    /**
+     * The LDAP interface for the directory server.
+     */
+    private final LDAPInterface ldapInterface;
+
+    /**
+     * The searches issued, in the order they were issued.
+     */
+    private final List<SearchRequest> searchRequests =
+        Collections.synchronizedList(new ArrayList<SearchRequest>());
+
+
+
+    /**
+     * Create a new LDAP backend for the in-memory directory server.
+     *
+     * @param resourceMappers  The resource mappers.
+     * @param ldapInterface    The LDAP interface for the directory server.
+     */
+    public TestLDAPBackend(
+        final Map<ResourceDescriptor, ResourceMapper> resourceMappers,
+        final LDAPInterface ldapInterface)
+    {
+      super(resourceMappers);
+      this.ldapInterface = ldapInterface;
+    }
+
+
+
+    /**
+     * Invoked before each search is processed. By default a copy of the search
+     * is recorded, since the backend may modify the request and issue it
+     * again.
+     *
+     * @param searchRequest  The search request.
+     *
+     * @throws LDAPSearchException  To fail the search.
+     */
+    protected void searchIssued(final SearchRequest searchRequest)
+        throws LDAPSearchException
+    {
+      searchRequests.add(searchRequest.duplicate());
+    }
+
+
+
+    /**
+     * Retrieve the searches that have been issued and forget them.
+     *
+     * @return  The searches that have been issued.
+     */
+    public List<SearchRequest> takeSearchRequests()
+    {
+      synchronized (searchRequests)
+      {
+        final List<SearchRequest> requests =
+            new ArrayList<SearchRequest>(searchRequests);
+        searchRequests.clear();
+        return requests;
+      }
+    }
+
+
+
+    /**
+     * Retrieve the searches that have been issued with the provided base DN
+     * and forget all of the searches.
+     *
+     * @param baseDN  The base DN of the searches to return.
+     *
+     * @return  The searches that have been issued with the provided base DN.
+     */
+    public List<SearchRequest> takeSearchRequests(final String baseDN)
+    {
+      final List<SearchRequest> requests = new ArrayList<SearchRequest>();
+      for (final SearchRequest request : takeSearchRequests())
+      {
+        if (toLowerCase(request.getBaseDN()).equals(toLowerCase(baseDN)))
+        {
+          requests.add(request);
+        }
+      }
+      return requests;
+    }
+
+
+
+    @Override
+    protected LDAPRequestInterface getLDAPRequestInterface(
+        final String userID)
+    {
+      return new LDAPRequestInterface(ldapInterface)
+      {
+        @Override
+        public SearchResultEntry searchForEntry(
+            final SearchRequest searchRequest)
+            throws LDAPSearchException
+        {
+          searchIssued(searchRequest);
+          return super.searchForEntry(searchRequest);
+        }
+
+        @Override
+        public SearchResult search(final SearchRequest searchRequest)
+            throws LDAPSearchException
+        {
+          searchIssued(searchRequest);
+          return super.search(searchRequest);
+        }
+
+        @Override
+        public LDAPSearchFuture asyncSearch(final SearchRequest searchRequest)
+        {
+          try
+          {
+            searchIssued(searchRequest);
+          }
+          catch (LDAPSearchException e)
+          {
+            return LDAPSearchFuture.completed(e.getSearchResult());
+          }
+          return super.asyncSearch(searchRequest);
+        }
+      };
+    }
+
+
+
+    @Override
+    public void finalizeBackend()
+    {
+      shutdownQueryConversionExecutor();
+    }
+  }
+}
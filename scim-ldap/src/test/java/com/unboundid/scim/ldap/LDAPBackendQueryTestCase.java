@@ -0,0 +1,511 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.data.Entry;
+import com.unboundid.scim.data.GroupResource;
+import com.unboundid.scim.sdk.PageParameters;
+import com.unboundid.scim.sdk.Resources;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.unboundid.scim.sdk.StaticUtils.toLowerCase;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+
+/**
+ * This class provides test coverage for the processing of query requests by
+ * the {@link LDAPBackend}.
+ */
+public class LDAPBackendQueryTestCase
+    extends InMemoryLDAPTestCase
+{
+  /**
+   * The number of User entries.
+   */
+  private static final int NUM_USERS = 30;
+
+  /**
+   * The number of groups that have the same member.
+   */
+  private static final int NUM_GROUPS = 10;
+
+
+
+  /**
+   * Add the entries used by the tests.
+   *
+   * @throws Exception  If the entries could not be added.
+   */
+  @BeforeClass
+  public void addEntries()
+      throws Exception
+  {
+    for (int i = 0; i < NUM_USERS; i++)
+    {
+      addUser(PEOPLE_DN, String.format("user.%02d", i));
+    }
+
+    final String memberDN = "uid=member," + PEOPLE_DN;
+    addUser(PEOPLE_DN, "member");
+    for (int i = 0; i < NUM_GROUPS; i++)
+    {
+      addGroup("group." + i, memberDN);
+    }
+  }
+
+
+
+  /**
+   * Verify that resources converted by several threads are returned in the
+   * order of the entries, even if later entries are converted first.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testConversionOrder()
+      throws Exception
+  {
+    final TestLDAPBackend sequentialBackend = createBackend();
+    final List<String> expectedIDs = getIDs(
+        query(sequentialBackend, "User", null, "userName,groups", null, null));
+    assertEquals(expectedIDs.size(), NUM_USERS + 1);
+
+    // Delay the searches for the groups of each user by a random time.
+    final Random random = new Random();
+    final Set<String> conversionThreads =
+        Collections.synchronizedSet(new HashSet<String>());
+    final TestLDAPBackend backend = new TestLDAPBackend(
+        getResourceMappers(), pool)
+    {
+      @Override
+      protected void searchIssued(final SearchRequest searchRequest)
+          throws LDAPSearchException
+      {
+        if (isGroupSearch(searchRequest))
+        {
+          conversionThreads.add(Thread.currentThread().getName());
+          try
+          {
+            Thread.sleep(random.nextInt(10));
+          }
+          catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+    };
+    backend.setQueryConversionThreads(4);
+    try
+    {
+      assertEquals(getIDs(query(backend, "User", null, "userName,groups",
+                                null, null)),
+                   expectedIDs);
+      for (final String threadName : conversionThreads)
+      {
+        assertTrue(threadName.startsWith("SCIM Query Conversion Thread"),
+                   threadName);
+      }
+      assertTrue(conversionThreads.size() > 1);
+    }
+    finally
+    {
+      backend.finalizeBackend();
+    }
+  }
+
+
+
+  /**
+   * Verify that the search is held up while too many conversions are
+   * pending.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testConversionBackpressure()
+      throws Exception
+  {
+    final List<String> expectedIDs = getIDs(
+        query(createBackend(), "User", null, "userName,groups", null, null));
+
+    // Count the conversions submitted, and hold them up until released.
+    final AtomicInteger submitted = new AtomicInteger();
+    final ThreadPoolExecutor conversionExecutor = new ThreadPoolExecutor(
+        2, 2, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>())
+    {
+      @Override
+      public void execute(final Runnable command)
+      {
+        submitted.incrementAndGet();
+        super.execute(command);
+      }
+    };
+    final CountDownLatch release = new CountDownLatch(1);
+    final TestLDAPBackend backend = new TestLDAPBackend(
+        getResourceMappers(), pool)
+    {
+      @Override
+      ExecutorService getQueryConversionExecutor()
+      {
+        return conversionExecutor;
+      }
+
+      @Override
+      protected void searchIssued(final SearchRequest searchRequest)
+          throws LDAPSearchException
+      {
+        if (isGroupSearch(searchRequest))
+        {
+          try
+          {
+            release.await();
+          }
+          catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+          }
+        }
+      }
+    };
+    backend.setQueryConversionThreads(2);
+
+    final ExecutorService queryExecutor = Executors.newSingleThreadExecutor();
+    try
+    {
+      final Future<Resources<?>> result = queryExecutor.submit(
+          new Callable<Resources<?>>()
+          {
+            public Resources<?> call() throws Exception
+            {
+              return query(backend, "User", null, "userName,groups",
+                           null, null);
+            }
+          });
+
+      // At most four conversions per thread may be pending.
+      final long deadline = System.currentTimeMillis() + 10000;
+      while (submitted.get() < 8 && System.currentTimeMillis() < deadline)
+      {
+        Thread.sleep(10);
+      }
+      Thread.sleep(200);
+      assertEquals(submitted.get(), 8);
+      assertTrue(!result.isDone());
+
+      release.countDown();
+      assertEquals(getIDs(result.get(1, TimeUnit.MINUTES)), expectedIDs);
+      assertEquals(submitted.get(), expectedIDs.size());
+    }
+    finally
+    {
+      release.countDown();
+      queryExecutor.shutdown();
+      conversionExecutor.shutdown();
+    }
+  }
+
+
+
+  /**
+   * Verify that the per-request caches filled on the shared conversion
+   * threads are not used by later requests.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testNoCacheCarryOverOnConversionThreads()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createBackend();
+    backend.setQueryConversionThreads(2);
+    try
+    {
+      final String memberDN = "uid=member," + PEOPLE_DN;
+      final String memberID = getResourceID(memberDN);
+      assertEquals(getMemberIDs(query(backend, "Group", null, "members",
+                                      null, null)),
+                   getRepeatedList(memberID, NUM_GROUPS));
+
+      // Replace the member entry, which gives it a new entryUUID.
+      ds.delete(memberDN);
+      final String newMemberID = addUser(PEOPLE_DN, "member");
+      assertTrue(!newMemberID.equals(memberID));
+
+      assertEquals(getMemberIDs(query(backend, "Group", null, "members",
+                                      null, null)),
+                   getRepeatedList(newMemberID, NUM_GROUPS));
+    }
+    finally
+    {
+      backend.finalizeBackend();
+    }
+  }
+
+
+
+  /**
+   * Verify that a query for the page following the previous query continues
+   * from the cached simple paged results cookie.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testPagedResultsCursorHit()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createBackend();
+    backend.setSupportsSimplePagedResultsControl(true);
+    final List<String> expectedIDs = getAllUserIDs(backend);
+
+    assertEquals(getIDs(query(backend, "User", null, "userName", null,
+                              new PageParameters(1, 5))),
+                 expectedIDs.subList(0, 5));
+    List<SimplePagedResultsControl> controls = takePagedResultsControls(
+        backend);
+    assertEquals(controls.size(), 1);
+    assertEquals(controls.get(0).getCookie().getValueLength(), 0);
+    assertEquals(controls.get(0).getSize(), 5);
+
+    final Resources<?> resources = query(backend, "User", null, "userName",
+        null, new PageParameters(6, 5));
+    assertEquals(getIDs(resources), expectedIDs.subList(5, 10));
+    assertTrue(resources.getTotalResults() >= 10);
+    controls = takePagedResultsControls(backend);
+    assertEquals(controls.size(), 1);
+    assertTrue(controls.get(0).getCookie().getValueLength() > 0);
+    assertEquals(controls.get(0).getSize(), 5);
+  }
+
+
+
+  /**
+   * Verify that a query for a page without a cached cookie pages past the
+   * preceding entries.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testPagedResultsCursorMiss()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createBackend();
+    backend.setSupportsSimplePagedResultsControl(true);
+    final List<String> expectedIDs = getAllUserIDs(backend);
+
+    assertEquals(getIDs(query(backend, "User", null, "userName", null,
+                              new PageParameters(1, 5))),
+                 expectedIDs.subList(0, 5));
+    takePagedResultsControls(backend);
+
+    // The cached cookie is for the sixth entry.
+    assertEquals(getIDs(query(backend, "User", null, "userName", null,
+                              new PageParameters(11, 5))),
+                 expectedIDs.subList(10, 15));
+    final List<SimplePagedResultsControl> controls =
+        takePagedResultsControls(backend);
+    assertEquals(controls.size(), 1);
+    assertEquals(controls.get(0).getCookie().getValueLength(), 0);
+    assertEquals(controls.get(0).getSize(), 15);
+  }
+
+
+
+  /**
+   * Verify that a query whose cached cookie is rejected by the server pages
+   * past the preceding entries instead.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testPagedResultsCursorRejected()
+      throws Exception
+  {
+    final TestLDAPBackend backend = new TestLDAPBackend(
+        getResourceMappers(), pool)
+    {
+      @Override
+      protected void searchIssued(final SearchRequest searchRequest)
+          throws LDAPSearchException
+      {
+        super.searchIssued(searchRequest);
+        final SimplePagedResultsControl control =
+            (SimplePagedResultsControl) searchRequest.getControl(
+                SimplePagedResultsControl.PAGED_RESULTS_OID);
+        if (control != null && control.getCookie().getValueLength() > 0)
+        {
+          throw new LDAPSearchException(ResultCode.UNWILLING_TO_PERFORM,
+                                        "The cookie is not recognized");
+        }
+      }
+    };
+    backend.setSupportsSimplePagedResultsControl(true);
+    final List<String> expectedIDs = getAllUserIDs(backend);
+
+    assertEquals(getIDs(query(backend, "User", null, "userName", null,
+                              new PageParameters(1, 5))),
+                 expectedIDs.subList(0, 5));
+    takePagedResultsControls(backend);
+
+    assertEquals(getIDs(query(backend, "User", null, "userName", null,
+                              new PageParameters(6, 5))),
+                 expectedIDs.subList(5, 10));
+    final List<SimplePagedResultsControl> controls =
+        takePagedResultsControls(backend);
+    assertEquals(controls.size(), 2);
+    assertTrue(controls.get(0).getCookie().getValueLength() > 0);
+    assertEquals(controls.get(1).getCookie().getValueLength(), 0);
+    assertEquals(controls.get(1).getSize(), 10);
+  }
+
+
+
+  /**
+   * Retrieve the IDs of all of the users, in the order returned by the
+   * server.
+   *
+   * @param backend  The LDAP backend.
+   *
+   * @return  The IDs of all of the users.
+   *
+   * @throws Exception  If the query fails.
+   */
+  private static List<String> getAllUserIDs(final TestLDAPBackend backend)
+      throws Exception
+  {
+    final List<String> ids =
+        getIDs(query(backend, "User", null, "userName", null, null));
+    assertEquals(ids.size(), NUM_USERS + 1);
+    backend.takeSearchRequests();
+    return ids;
+  }
+
+
+
+  /**
+   * Retrieve the simple paged results controls of the searches issued since
+   * the searches were last retrieved.
+   *
+   * @param backend  The LDAP backend.
+   *
+   * @return  The simple paged results controls, in the order of the
+   *          searches.
+   */
+  private static List<SimplePagedResultsControl> takePagedResultsControls(
+      final TestLDAPBackend backend)
+  {
+    final List<SimplePagedResultsControl> controls =
+        new ArrayList<SimplePagedResultsControl>();
+    for (final SearchRequest request : backend.takeSearchRequests())
+    {
+      final SimplePagedResultsControl control =
+          (SimplePagedResultsControl) request.getControl(
+              SimplePagedResultsControl.PAGED_RESULTS_OID);
+      if (control != null)
+      {
+        controls.add(control);
+      }
+    }
+    return controls;
+  }
+
+
+
+  /**
+   * Determine whether a search is for the groups of a user.
+   *
+   * @param searchRequest  The search request.
+   *
+   * @return  {@code true} if the search is for the groups of a user.
+   */
+  private static boolean isGroupSearch(final SearchRequest searchRequest)
+  {
+    return toLowerCase(searchRequest.getBaseDN()).equals(BASE_DN) &&
+           toLowerCase(searchRequest.getFilter().toString()).contains(
+               "uniquemember");
+  }
+
+
+
+  /**
+   * Retrieve the member IDs of the groups returned by a query.
+   *
+   * @param resources  The groups returned by a query.
+   *
+   * @return  The member IDs of all of the groups.
+   */
+  private static List<String> getMemberIDs(final Resources<?> resources)
+  {
+    final List<String> memberIDs = new ArrayList<String>();
+    for (final BaseResource resource : resources)
+    {
+      final GroupResource group = new GroupResource(
+          resource.getResourceDescriptor(), resource.getScimObject());
+      for (final Entry<String> member : group.getMembers())
+      {
+        memberIDs.add(member.getValue());
+      }
+    }
+    return memberIDs;
+  }
+
+
+
+  /**
+   * Create a list with the same value repeated.
+   *
+   * @param value  The value.
+   * @param count  The number of times the value is repeated.
+   *
+   * @return  The list.
+   */
+  private static List<String> getRepeatedList(final String value,
+                                              final int count)
+  {
+    final List<String> list = new ArrayList<String>(count);
+    for (int i = 0; i < count; i++)
+    {
+      list.add(value);
+    }
+    return list;
+  }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.LDAPInterface;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.unboundid.ldap.sdk.controls.VirtualListViewRequestControl;
+import com.unboundid.scim.sdk.PageParameters;
+import com.unboundid.scim.sdk.Resources;
+import com.unboundid.scim.sdk.SortParameters;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+
+
+/**
+ * This class provides test coverage for the pagination of queries with the
+ * VLV request control by the {@link LDAPBackend}.
+ */
+public class LDAPBackendVLVTestCase
+    extends InMemoryLDAPTestCase
+{
+  /**
+   * The number of User entries.
+   */
+  private static final int NUM_USERS = 10;
+
+  /**
+   * The IDs of the users, in uid order.
+   */
+  private final List<String> userIDs = new ArrayList<String>();
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected String[] getBaseDNs()
+  {
+    return new String[] { BASE_DN, "cn=config" };
+  }
+
+
+
+  /**
+   * Add the entries used by the tests, including the definitions of VLV
+   * indexes for uid and for sn in reverse order.
+   *
+   * @throws Exception  If the entries could not be added.
+   */
+  @BeforeClass
+  public void addEntries()
+      throws Exception
+  {
+    for (int i = 0; i < NUM_USERS; i++)
+    {
+      userIDs.add(addUser(PEOPLE_DN, String.format("user.%02d", i),
+          String.format("givenName: %02d", NUM_USERS - i)));
+    }
+    addGroup("group.0", "uid=user.00," + PEOPLE_DN);
+
+    ds.add("dn: cn=config",
+           "objectClass: top",
+           "objectClass: ds-cfg-root-config",
+           "cn: config");
+    ds.add("dn: ds-cfg-name=uid,cn=config",
+           "objectClass: top",
+           "objectClass: ds-cfg-local-db-vlv-index",
+           "ds-cfg-name: uid",
+           "ds-cfg-sort-order: uid");
+    ds.add("dn: ds-cfg-name=sn,cn=config",
+           "objectClass: top",
+           "objectClass: ds-cfg-vlv-index",
+           "ds-cfg-name: sn",
+           "ds-cfg-sort-order: -sn");
+  }
+
+
+
+  /**
+   * Verify that a query that does not request sorting is paged with VLV
+   * using the VLV sort key of the resource, once the VLV indexes have been
+   * read from the server configuration on the first query.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testResourceSortKey()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createBackend();
+    backend.setSupportsVLVRequestControl(true);
+
+    final Resources<?> resources = query(backend, "User", null, "userName",
+        null, new PageParameters(3, 4));
+    assertEquals(getIDs(resources), userIDs.subList(2, 6));
+    assertEquals(resources.getTotalResults(), NUM_USERS);
+    assertVLV(backend, PEOPLE_DN, "uid");
+  }
+
+
+
+  /**
+   * Verify that a query for a resource without a VLV sort key of its own is
+   * paged with VLV using the default sort key.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testDefaultSortKey()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createBackend();
+    backend.setSupportsVLVRequestControl(true);
+
+    assertEquals(query(backend, "Group", null, "displayName", null,
+                       new PageParameters(1, 10)).getTotalResults(), 1);
+    assertVLV(backend, BASE_DN, "uid");
+  }
+
+
+
+  /**
+   * Verify that a query is only paged with VLV if its sort order is indexed.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testRequestedSortOrder()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createBackend();
+    backend.setSupportsVLVRequestControl(true);
+
+    final List<String> reversedIDs = new ArrayList<String>(userIDs);
+    Collections.reverse(reversedIDs);
+
+    assertEquals(getIDs(query(backend, "User", null, "userName",
+                              new SortParameters("name.familyName",
+                                                 "descending"),
+                              new PageParameters(1, 3))),
+                 reversedIDs.subList(0, 3));
+    assertVLV(backend, PEOPLE_DN, "sn");
+
+    // The index on sn is in reverse order only.
+    assertEquals(getIDs(query(backend, "User", null, "userName",
+                              new SortParameters("name.familyName",
+                                                 "ascending"),
+                              new PageParameters(1, 3))),
+                 userIDs.subList(0, 3));
+    assertNoVLV(backend);
+
+    assertEquals(getIDs(query(backend, "User", null, "userName",
+                              new SortParameters("name.givenName",
+                                                 "ascending"),
+                              new PageParameters(1, 3))),
+                 reversedIDs.subList(0, 3));
+    assertNoVLV(backend);
+  }
+
+
+
+  /**
+   * Verify that any sort order is assumed to be indexed if the server
+   * configuration cannot be read.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testNoConfigFallback()
+      throws Exception
+  {
+    final TestLDAPBackend backend =
+        new TestLDAPBackend(getResourceMappers(), getNoConfigInterface());
+    backend.setSupportsVLVRequestControl(true);
+
+    assertEquals(getIDs(query(backend, "User", null, "userName", null,
+                              new PageParameters(1, 3))),
+                 userIDs.subList(0, 3));
+    assertVLV(backend, PEOPLE_DN, "uid");
+
+    final List<String> reversedIDs = new ArrayList<String>(userIDs);
+    Collections.reverse(reversedIDs);
+    assertEquals(getIDs(query(backend, "User", null, "userName",
+                              new SortParameters("name.givenName",
+                                                 "ascending"),
+                              new PageParameters(1, 3))),
+                 reversedIDs.subList(0, 3));
+    assertVLV(backend, PEOPLE_DN, "givenName");
+  }
+
+
+
+  /**
+   * Verify that VLV is not used if it is not enabled.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testVLVNotEnabled()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createBackend();
+
+    assertEquals(getIDs(query(backend, "User", null, "userName", null,
+                              new PageParameters(1, 3))),
+                 userIDs.subList(0, 3));
+    assertNoVLV(backend);
+  }
+
+
+
+  /**
+   * Check that the query search was paged with VLV.
+   *
+   * @param backend  The LDAP backend that processed the query.
+   * @param baseDN   The base DN of the query search.
+   * @param sortKey  The expected sort attribute.
+   */
+  private static void assertVLV(final TestLDAPBackend backend,
+                                final String baseDN,
+                                final String sortKey)
+  {
+    final SearchRequest request = getQuerySearch(backend);
+    assertEquals(request.getBaseDN(), baseDN);
+    assertNotNull(request.getControl(
+        VirtualListViewRequestControl.VIRTUAL_LIST_VIEW_REQUEST_OID));
+    final ServerSideSortRequestControl sortControl =
+        (ServerSideSortRequestControl) request.getControl(
+            ServerSideSortRequestControl.SERVER_SIDE_SORT_REQUEST_OID);
+    assertEquals(sortControl.getSortKeys()[0].getAttributeName(), sortKey);
+  }
+
+
+
+  /**
+   * Check that the query search was not paged with VLV.
+   *
+   * @param backend  The LDAP backend that processed the query.
+   */
+  private static void assertNoVLV(final TestLDAPBackend backend)
+  {
+    assertNull(getQuerySearch(backend).getControl(
+        VirtualListViewRequestControl.VIRTUAL_LIST_VIEW_REQUEST_OID));
+  }
+
+
+
+  /**
+   * Retrieve the single search issued for the previous query.
+   *
+   * @param backend  The LDAP backend that processed the query.
+   *
+   * @return  The search issued for the query.
+   */
+  private static SearchRequest getQuerySearch(final TestLDAPBackend backend)
+  {
+    final List<SearchRequest> requests = new ArrayList<SearchRequest>();
+    for (final SearchRequest request : backend.takeSearchRequests())
+    {
+      if (request.getScope() == SearchScope.SUB)
+      {
+        requests.add(request);
+      }
+    }
+    assertEquals(requests.size(), 1);
+    assertFalse(requests.get(0).getBaseDN().startsWith("cn=config"));
+    return requests.get(0);
+  }
+
+
+
+  /**
+   * Create an LDAP interface for the directory server that does not allow
+   * the server configuration to be read.
+   *
+   * @return  The LDAP interface.
+   */
+  private LDAPInterface getNoConfigInterface()
+  {
+    return (LDAPInterface) Proxy.newProxyInstance(
+        LDAPInterface.class.getClassLoader(),
+        new Class<?>[] { LDAPInterface.class },
+        new InvocationHandler()
+        {
+          public Object invoke(final Object proxy, final Method method,
+                               final Object[] args)
+              throws Throwable
+          {
+            if (method.getName().equals("search") &&
+                "cn=config".equals(args[0]))
+            {
+              throw new LDAPSearchException(
+                  ResultCode.INSUFFICIENT_ACCESS_RIGHTS,
+                  "The server configuration may not be read");
+            }
+
+            try
+            {
+              return method.invoke(pool, args);
+            }
+            catch (InvocationTargetException e)
+            {
+              throw e.getCause();
+            }
+          }
+        });
+  }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.LDAPConnection;
+import com.unboundid.ldap.sdk.LDAPConnectionPool;
+import com.unboundid.ldap.sdk.LDAPInterface;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.scim.SCIMTestCase;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+
+
+/**
+ * This class provides test coverage for the asynchronous searches of the
+ * {@link LDAPRequestInterface}.
+ */
+public class LDAPRequestInterfaceTestCase
+    extends SCIMTestCase
+{
+  private InMemoryDirectoryServer ds;
+  private LDAPConnection connection;
+  private LDAPConnectionPool pool;
+
+
+
+  /**
+   * Start an in-memory directory server with a few entries.
+   *
+   * @throws Exception  If the server could not be started.
+   */
+  @BeforeClass
+  public void setUp()
+      throws Exception
+  {
+    final InMemoryDirectoryServerConfig config =
+        new InMemoryDirectoryServerConfig("dc=example,dc=com");
+    ds = new InMemoryDirectoryServer(config);
+    ds.add("dn: dc=example,dc=com",
+           "objectClass: top",
+           "objectClass: domain",
+           "dc: example");
+    ds.add("dn: ou=people,dc=example,dc=com",
+           "objectClass: top",
+           "objectClass: organizationalUnit",
+           "ou: people");
+    for (int i = 0; i < 5; i++)
+    {
+      ds.add("dn: uid=user." + i + ",ou=people,dc=example,dc=com",
+             "objectClass: top",
+             "objectClass: person",
+             "objectClass: organizationalPerson",
+             "objectClass: inetOrgPerson",
+             "uid: user." + i,
+             "cn: User " + i,
+             "sn: " + i);
+    }
+    ds.startListening();
+
+    connection = ds.getConnection();
+    pool = new LDAPConnectionPool(ds.getConnection(), 1, 2);
+  }
+
+
+
+  /**
+   * Shut down the in-memory directory server.
+   */
+  @AfterClass
+  public void tearDown()
+  {
+    pool.close();
+    connection.close();
+    ds.shutDown(true);
+  }
+
+
+
+  /**
+   * Provides the LDAP interfaces to issue searches on.
+   *
+   * @return  The LDAP interfaces to issue searches on.
+   */
+  @DataProvider(name = "ldapInterfaces")
+  public Object[][] getLDAPInterfaces()
+  {
+    return new Object[][]
+        {
+            { connection },
+            { pool },
+            { ds },
+        };
+  }
+
+
+
+  /**
+   * Verify that several searches may be outstanding at once and that each
+   * result is returned to the right caller.
+   *
+   * @param ldapInterface  The LDAP interface to issue searches on.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test(dataProvider = "ldapInterfaces")
+  public void testAsyncSearch(final LDAPInterface ldapInterface)
+      throws Exception
+  {
+    final LDAPRequestInterface requestInterface =
+        new LDAPRequestInterface(ldapInterface);
+
+    final LDAPSearchFuture[] futures = new LDAPSearchFuture[5];
+    for (int i = 0; i < futures.length; i++)
+    {
+      futures[i] = requestInterface.asyncSearch(
+          new SearchRequest("uid=user." + i + ",ou=people,dc=example,dc=com",
+                            SearchScope.BASE, "(objectClass=*)", "cn"));
+    }
+
+    final LDAPSearchFuture subtree = requestInterface.asyncSearch(
+        new SearchRequest("ou=people,dc=example,dc=com", SearchScope.ONE,
+                          "(objectClass=person)", "1.1"));
+
+    for (int i = futures.length - 1; i >= 0; i--)
+    {
+      assertEquals(futures[i].getEntry().getAttributeValue("cn"),
+                   "User " + i);
+    }
+    assertEquals(subtree.get().getEntryCount(), 5);
+  }
+
+
+
+  /**
+   * Verify that errors are reported in the same way as the synchronous
+   * search methods.
+   *
+   * @param ldapInterface  The LDAP interface to issue searches on.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test(dataProvider = "ldapInterfaces")
+  public void testAsyncSearchErrors(final LDAPInterface ldapInterface)
+      throws Exception
+  {
+    final LDAPRequestInterface requestInterface =
+        new LDAPRequestInterface(ldapInterface);
+
+    final SearchRequest missing =
+        new SearchRequest("uid=missing,ou=people,dc=example,dc=com",
+                          SearchScope.BASE, "(objectClass=*)");
+    assertNull(requestInterface.asyncSearch(missing).getEntry());
+
+    try
+    {
+      requestInterface.asyncSearch(missing.duplicate()).get();
+      fail("Expected a no such object result");
+    }
+    catch (LDAPSearchException e)
+    {
+      assertEquals(e.getResultCode(), ResultCode.NO_SUCH_OBJECT);
+    }
+
+    try
+    {
+      requestInterface.asyncSearch(
+          new SearchRequest("ou=people,dc=example,dc=com", SearchScope.ONE,
+                            "(objectClass=person)")).getEntry();
+      fail("Expected more than one entry to be rejected");
+    }
+    catch (LDAPSearchException e)
+    {
+      assertEquals(e.getResultCode(), ResultCode.SIZE_LIMIT_EXCEEDED);
+    }
+  }
+
+
+
+  /**
+   * Verify that the asynchronous searches issued through a connection pool
+   * share a single pool connection, which is returned to the pool once they
+   * have completed.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testAsyncSearchSharesPoolConnection()
+      throws Exception
+  {
+    final LDAPConnectionPool singlePool =
+        new LDAPConnectionPool(ds.getConnection(), 1, 1);
+    singlePool.setCreateIfNecessary(false);
+    try
+    {
+      final LDAPRequestInterface requestInterface =
+          new LDAPRequestInterface(singlePool);
+
+      final LDAPSearchFuture[] futures = new LDAPSearchFuture[20];
+      for (int i = 0; i < futures.length; i++)
+      {
+        futures[i] = requestInterface.asyncSearch(
+            new SearchRequest("uid=user." + (i % 5) +
+                              ",ou=people,dc=example,dc=com",
+                              SearchScope.BASE, "(objectClass=*)", "cn"));
+      }
+
+      for (int i = 0; i < futures.length; i++)
+      {
+        assertEquals(futures[i].getEntry().getAttributeValue("cn"),
+                     "User " + (i % 5));
+      }
+
+      assertEquals(singlePool.getConnectionPoolStatistics()
+                       .getNumFailedCheckouts(), 0L);
+      assertEquals(singlePool.getCurrentAvailableConnections(), 1);
+    }
+    finally
+    {
+      singlePool.close();
+    }
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.scim.data.AttributeValueResolver;
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.data.Manager;
+import com.unboundid.scim.sdk.DeleteResourceRequest;
+import com.unboundid.scim.sdk.Resources;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.unboundid.scim.sdk.SCIMConstants.SCHEMA_URI_CORE;
+import static com.unboundid.scim.sdk.SCIMConstants.
+    SCHEMA_URI_ENTERPRISE_EXTENSION;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+
+/**
+ * This class provides test coverage for the {@link ManagerDerivedAttribute}.
+ */
+public class ManagerDerivedAttributeTestCase
+    extends InMemoryLDAPTestCase
+{
+  /**
+   * The number of User entries that have a manager.
+   */
+  private static final int NUM_USERS = 12;
+
+  /**
+   * The number of managers.
+   */
+  private static final int NUM_MANAGERS = 3;
+
+  /**
+   * The manager derivation in the sample resource mappings.
+   */
+  private static final String MANAGER_DERIVATION =
+      "<derivation javaClass=\"com.unboundid.scim.ldap." +
+      "ManagerDerivedAttribute\">";
+
+  /**
+   * The manager resource IDs by the uid of each user.
+   */
+  private final Map<String, String> managerIDs =
+      new HashMap<String, String>();
+
+
+
+  /**
+   * Add the entries used by the tests.
+   *
+   * @throws Exception  If the entries could not be added.
+   */
+  @BeforeClass
+  public void addEntries()
+      throws Exception
+  {
+    for (int i = 0; i < NUM_MANAGERS; i++)
+    {
+      addUser(PEOPLE_DN, "manager." + i);
+    }
+
+    for (int i = 0; i < NUM_USERS; i++)
+    {
+      final String managerDN = "uid=manager." + (i % NUM_MANAGERS) + "," +
+                               PEOPLE_DN;
+      addUser(PEOPLE_DN, "user." + i, "manager: " + managerDN);
+      managerIDs.put("user." + i, getResourceID(managerDN));
+    }
+  }
+
+
+
+  /**
+   * Verify that the manager of each entry is resolved individually and not
+   * cached by default.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testNotCachedByDefault()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createBackend();
+
+    for (int i = 0; i < 2; i++)
+    {
+      assertEquals(getManagerIDs(queryUsers(backend, "user.")), managerIDs);
+      final List<SearchRequest> searches = backend.takeSearchRequests();
+      assertEquals(count(searches, SearchScope.BASE), NUM_USERS);
+      assertEquals(count(searches, SearchScope.ONE), 0);
+    }
+  }
+
+
+
+  /**
+   * Verify that the managers of a page of query results are resolved with
+   * batched searches, and cached for later queries.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testBatchedResolution()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createBackend(
+        MANAGER_DERIVATION,
+        MANAGER_DERIVATION + "<maxManagersCached>100</maxManagersCached>" +
+        "<managerSearchBatchSize>2</managerSearchBatchSize>");
+
+    assertEquals(getManagerIDs(queryUsers(backend, "user.")), managerIDs);
+    List<SearchRequest> searches = backend.takeSearchRequests();
+    assertEquals(count(searches, SearchScope.BASE), 0);
+    assertEquals(count(searches, SearchScope.ONE), 2);
+
+    // The managers are now cached.
+    assertEquals(getManagerIDs(queryUsers(backend, "user.")), managerIDs);
+    searches = backend.takeSearchRequests();
+    assertEquals(count(searches, SearchScope.BASE), 0);
+    assertEquals(count(searches, SearchScope.ONE), 0);
+  }
+
+
+
+  /**
+   * Verify that a cached manager is no longer used once it is deleted
+   * through the backend.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testCacheInvalidation()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createBackend(
+        MANAGER_DERIVATION,
+        MANAGER_DERIVATION + "<maxManagersCached>100</maxManagersCached>");
+
+    final String managerID = addUser(PEOPLE_DN, "replaced");
+    addUser(PEOPLE_DN, "report", "manager: uid=replaced," + PEOPLE_DN);
+    assertEquals(getManagerIDs(queryUsers(backend, "report")).get("report"),
+                 managerID);
+
+    // Replace the manager entry, which gives it a new entryUUID.
+    backend.deleteResource(new DeleteResourceRequest(
+        URI.create("http://localhost/"), "cn=test",
+        getResourceDescriptor(backend, "User"), managerID));
+    final String newManagerID = addUser(PEOPLE_DN, "replaced");
+    assertTrue(!newManagerID.equals(managerID));
+
+    assertEquals(getManagerIDs(queryUsers(backend, "report")).get("report"),
+                 newManagerID);
+  }
+
+
+
+  /**
+   * Query the users whose userName starts with the provided prefix.
+   *
+   * @param backend  The LDAP backend.
+   * @param prefix   The prefix of the userName of the users.
+   *
+   * @return  The users returned by the query.
+   *
+   * @throws Exception  If the query fails.
+   */
+  private static Resources<?> queryUsers(final TestLDAPBackend backend,
+                                         final String prefix)
+      throws Exception
+  {
+    backend.takeSearchRequests();
+    return query(backend, "User", "userName sw \"" + prefix + "\"",
+                 "userName," + SCHEMA_URI_ENTERPRISE_EXTENSION + ":manager",
+                 null, null);
+  }
+
+
+
+  /**
+   * Retrieve the manager resource IDs of the users returned by a query.
+   *
+   * @param resources  The users returned by a query.
+   *
+   * @return  The manager resource IDs by the userName of each user.
+   */
+  private static Map<String, String> getManagerIDs(
+      final Resources<?> resources)
+  {
+    final Map<String, String> ids = new HashMap<String, String>();
+    for (final BaseResource resource : resources)
+    {
+      final Manager manager = resource.getSingularAttributeValue(
+          SCHEMA_URI_ENTERPRISE_EXTENSION, "manager",
+          Manager.MANAGER_RESOLVER);
+      ids.put(resource.getSingularAttributeValue(
+                  SCHEMA_URI_CORE, "userName",
+                  AttributeValueResolver.STRING_RESOLVER),
+              manager == null ? null : manager.getManagerId());
+    }
+    return ids;
+  }
+
+
+
+  /**
+   * Count the searches with the provided scope. The query searches have the
+   * whole subtree scope, while a manager is searched for with the base scope
+   * or, in batches, with the one-level scope.
+   *
+   * @param searches  The searches.
+   * @param scope     The scope of the searches to count.
+   *
+   * @return  The number of searches with the provided scope.
+   */
+  private static int count(final List<SearchRequest> searches,
+                           final SearchScope scope)
+  {
+    int count = 0;
+    for (final SearchRequest request : searches)
+    {
+      if (request.getScope() == scope)
+      {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,431 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.Control;
+import com.unboundid.ldap.sdk.Filter;
+import com.unboundid.ldap.sdk.LDAPSearchException;
+import com.unboundid.ldap.sdk.ResultCode;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchResultEntry;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.data.Entry;
+import com.unboundid.scim.data.GroupResource;
+import com.unboundid.scim.sdk.Resources;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.unboundid.scim.sdk.StaticUtils.toLowerCase;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+
+/**
+ * This class provides test coverage for the {@link MembersDerivedAttribute}.
+ */
+public class MembersDerivedAttributeTestCase
+    extends InMemoryLDAPTestCase
+{
+  /**
+   * The number of User entries.
+   */
+  private static final int NUM_USERS = 10;
+
+  /**
+   * The members derivation arguments in the sample resource mappings.
+   */
+  private static final String MAX_MEMBERS_CACHED =
+      "<maxMembersCached>1000</maxMembersCached>";
+
+  /**
+   * The IDs of the users, in uid order.
+   */
+  private final List<String> userIDs = new ArrayList<String>();
+
+
+
+  /**
+   * Add the entries used by the tests.
+   *
+   * @throws Exception  If the entries could not be added.
+   */
+  @BeforeClass
+  public void addEntries()
+      throws Exception
+  {
+    for (int i = 0; i < NUM_USERS; i++)
+    {
+      userIDs.add(addUser(PEOPLE_DN, "user." + i));
+    }
+
+    ds.add("dn: cn=dynamic," + BASE_DN,
+           "objectClass: top",
+           "objectClass: groupOfURLs",
+           "cn: dynamic",
+           "memberURL: ldap:///" + PEOPLE_DN + "??sub?(uid=user.*)");
+
+    // The members of the static group are in the reverse order of the users.
+    final String[] memberDNs = new String[NUM_USERS];
+    for (int i = 0; i < NUM_USERS; i++)
+    {
+      memberDNs[i] = "uid=user." + (NUM_USERS - 1 - i) + "," + PEOPLE_DN;
+    }
+    addGroup("static", memberDNs);
+  }
+
+
+
+  /**
+   * Verify that all of the entries matching the memberURL of a dynamic group
+   * are members by default.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testDynamicMembers()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createBackend();
+
+    assertEquals(getMemberIDs(queryGroup(backend, "dynamic")), userIDs);
+  }
+
+
+
+  /**
+   * Verify that the members of a dynamic group are limited by the
+   * maxDynamicMembers argument, without any indication in the values.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testMaxDynamicMembers()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createBackend(
+        MAX_MEMBERS_CACHED,
+        MAX_MEMBERS_CACHED + "<maxDynamicMembers>4</maxDynamicMembers>");
+
+    assertEquals(getMemberIDs(queryGroup(backend, "dynamic")),
+                 userIDs.subList(0, 4));
+    assertEquals(getMemberURLSearch(backend).getSizeLimit(), 4);
+  }
+
+
+
+  /**
+   * Verify that the members of a dynamic group found before the time limit
+   * of the expansion is exceeded are returned.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testSearchTimeLimit()
+      throws Exception
+  {
+    // Return two entries before the time limit is exceeded.
+    final TestLDAPBackend backend = new TestLDAPBackend(
+        getResourceMappers(
+            MAX_MEMBERS_CACHED,
+            MAX_MEMBERS_CACHED +
+            "<dynamicMemberSearchTimeLimit>5</dynamicMemberSearchTimeLimit>"),
+        pool)
+    {
+      @Override
+      protected void searchIssued(final SearchRequest searchRequest)
+          throws LDAPSearchException
+      {
+        super.searchIssued(searchRequest);
+        if (isMemberURLSearch(searchRequest))
+        {
+          try
+          {
+            for (int i = 0; i < 2; i++)
+            {
+              searchRequest.getSearchResultListener().searchEntryReturned(
+                  new SearchResultEntry(
+                      ds.getEntry("uid=user." + i + "," + PEOPLE_DN, "*",
+                                  "entryUUID"),
+                      new Control[0]));
+            }
+          }
+          catch (Exception e)
+          {
+            throw new RuntimeException(e);
+          }
+          throw new LDAPSearchException(ResultCode.TIME_LIMIT_EXCEEDED,
+                                        "Time limit exceeded");
+        }
+      }
+    };
+
+    assertEquals(getMemberIDs(queryGroup(backend, "dynamic")),
+                 userIDs.subList(0, 2));
+    assertEquals(getMemberURLSearch(backend).getTimeLimitSeconds(), 5);
+  }
+
+
+
+  /**
+   * Verify that the members of a static group with the same parent entry are
+   * searched for together, in batches of the size given by the
+   * memberSearchBatchSize argument, and that the member values are in the
+   * order of the group's members.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testBatchedMemberSearches()
+      throws Exception
+  {
+    final List<String> memberIDs = new ArrayList<String>(userIDs);
+    Collections.reverse(memberIDs);
+
+    TestLDAPBackend backend = createBackend();
+    assertEquals(getMemberIDs(queryGroup(backend, "static")), memberIDs);
+    List<SearchRequest> searches = backend.takeSearchRequests();
+    assertEquals(getBatchSizes(searches), Arrays.asList(NUM_USERS));
+    assertEquals(getMemberBaseSearches(searches).size(), 0);
+
+    backend = createBackend(
+        MAX_MEMBERS_CACHED,
+        MAX_MEMBERS_CACHED +
+        "<memberSearchBatchSize>4</memberSearchBatchSize>");
+    assertEquals(getMemberIDs(queryGroup(backend, "static")), memberIDs);
+    searches = backend.takeSearchRequests();
+    assertEquals(getBatchSizes(searches), Arrays.asList(4, 4, 2));
+    assertEquals(getMemberBaseSearches(searches).size(), 0);
+
+    // A batch size less than two searches for each member individually.
+    backend = createBackend(
+        MAX_MEMBERS_CACHED,
+        MAX_MEMBERS_CACHED +
+        "<memberSearchBatchSize>1</memberSearchBatchSize>");
+    assertEquals(getMemberIDs(queryGroup(backend, "static")), memberIDs);
+    searches = backend.takeSearchRequests();
+    assertEquals(getBatchSizes(searches).size(), 0);
+    assertEquals(getMemberBaseSearches(searches).size(), NUM_USERS);
+  }
+
+
+
+  /**
+   * Verify that the members of a batch search that fails are searched for
+   * individually.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testFailedBatchMemberSearch()
+      throws Exception
+  {
+    final TestLDAPBackend backend = new TestLDAPBackend(
+        getResourceMappers(
+            MAX_MEMBERS_CACHED,
+            MAX_MEMBERS_CACHED +
+            "<memberSearchBatchSize>4</memberSearchBatchSize>"),
+        pool)
+    {
+      @Override
+      protected void searchIssued(final SearchRequest searchRequest)
+          throws LDAPSearchException
+      {
+        super.searchIssued(searchRequest);
+        if (searchRequest.getScope() == SearchScope.ONE)
+        {
+          throw new LDAPSearchException(ResultCode.SIZE_LIMIT_EXCEEDED,
+                                        "Size limit exceeded");
+        }
+      }
+    };
+
+    final List<String> memberIDs = new ArrayList<String>(userIDs);
+    Collections.reverse(memberIDs);
+    assertEquals(getMemberIDs(queryGroup(backend, "static")), memberIDs);
+
+    final List<SearchRequest> searches = backend.takeSearchRequests();
+    assertEquals(getBatchSizes(searches), Arrays.asList(4, 4, 2));
+    final List<String> baseDNs = new ArrayList<String>();
+    for (final SearchRequest request : getMemberBaseSearches(searches))
+    {
+      baseDNs.add(toLowerCase(request.getBaseDN()));
+    }
+    for (int i = 0; i < NUM_USERS; i++)
+    {
+      assertTrue(baseDNs.contains("uid=user." + i + "," + PEOPLE_DN));
+    }
+    assertEquals(baseDNs.size(), NUM_USERS);
+  }
+
+
+
+  /**
+   * Query a group by name.
+   *
+   * @param backend  The LDAP backend.
+   * @param name     The name of the group.
+   *
+   * @return  The query results.
+   *
+   * @throws Exception  If the query fails.
+   */
+  private static Resources<?> queryGroup(final TestLDAPBackend backend,
+                                         final String name)
+      throws Exception
+  {
+    final Resources<?> resources = query(backend, "Group",
+        "displayName eq \"" + name + "\"", "members", null, null);
+    assertEquals(resources.getTotalResults(), 1);
+    return resources;
+  }
+
+
+
+  /**
+   * Retrieve the member IDs of a group returned by a query. Every value must
+   * be a User member.
+   *
+   * @param resources  The query results.
+   *
+   * @return  The member IDs of the group.
+   */
+  private static List<String> getMemberIDs(final Resources<?> resources)
+  {
+    final List<String> memberIDs = new ArrayList<String>();
+    for (final BaseResource resource : resources)
+    {
+      final GroupResource group = new GroupResource(
+          resource.getResourceDescriptor(), resource.getScimObject());
+      if (group.getMembers() == null)
+      {
+        continue;
+      }
+      for (final Entry<String> member : group.getMembers())
+      {
+        assertEquals(member.getType(), "User");
+        assertTrue(member.getValue() != null);
+        memberIDs.add(member.getValue());
+      }
+    }
+    return memberIDs;
+  }
+
+
+
+  /**
+   * Retrieve the number of members searched for by each one-level search for
+   * the members of a static group.
+   *
+   * @param searches  The searches issued by the backend.
+   *
+   * @return  The number of members searched for by each batch search, in the
+   *          order the searches were issued.
+   */
+  private static List<Integer> getBatchSizes(
+      final List<SearchRequest> searches)
+  {
+    final List<Integer> batchSizes = new ArrayList<Integer>();
+    for (final SearchRequest request : searches)
+    {
+      if (request.getScope() == SearchScope.ONE &&
+          toLowerCase(request.getBaseDN()).equals(PEOPLE_DN))
+      {
+        final Filter filter = request.getFilter();
+        assertEquals(filter.getFilterType(), Filter.FILTER_TYPE_OR);
+        for (final Filter component : filter.getComponents())
+        {
+          assertEquals(component.getAttributeName(), "uid");
+        }
+        batchSizes.add(filter.getComponents().length);
+      }
+    }
+    return batchSizes;
+  }
+
+
+
+  /**
+   * Retrieve the base-scope searches for individual members of a static
+   * group.
+   *
+   * @param searches  The searches issued by the backend.
+   *
+   * @return  The base-scope searches for member entries.
+   */
+  private static List<SearchRequest> getMemberBaseSearches(
+      final List<SearchRequest> searches)
+  {
+    final List<SearchRequest> baseSearches = new ArrayList<SearchRequest>();
+    for (final SearchRequest request : searches)
+    {
+      if (request.getScope() == SearchScope.BASE &&
+          toLowerCase(request.getBaseDN()).endsWith("," + PEOPLE_DN))
+      {
+        baseSearches.add(request);
+      }
+    }
+    return baseSearches;
+  }
+
+
+
+  /**
+   * Retrieve the single search that expanded the memberURL of the dynamic
+   * group.
+   *
+   * @param backend  The LDAP backend.
+   *
+   * @return  The memberURL search.
+   */
+  private static SearchRequest getMemberURLSearch(
+      final TestLDAPBackend backend)
+  {
+    final List<SearchRequest> searches = new ArrayList<SearchRequest>();
+    for (final SearchRequest request : backend.takeSearchRequests())
+    {
+      if (isMemberURLSearch(request))
+      {
+        searches.add(request);
+      }
+    }
+    assertEquals(searches.size(), 1);
+    return searches.get(0);
+  }
+
+
+
+  /**
+   * Determine whether a search expands the memberURL of the dynamic group.
+   *
+   * @param searchRequest  The search request.
+   *
+   * @return  {@code true} if the search expands the memberURL.
+   */
+  private static boolean isMemberURLSearch(final SearchRequest searchRequest)
+  {
+    return searchRequest.getSearchResultListener() != null &&
+           toLowerCase(searchRequest.getBaseDN()).equals(PEOPLE_DN);
+  }
+}
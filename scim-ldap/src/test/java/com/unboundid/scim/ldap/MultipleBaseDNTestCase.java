@@ -0,0 +1,367 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.ldap.sdk.controls.ServerSideSortRequestControl;
+import com.unboundid.ldap.sdk.controls.SimplePagedResultsControl;
+import com.unboundid.scim.sdk.PageParameters;
+import com.unboundid.scim.sdk.Resources;
+import com.unboundid.scim.sdk.SortParameters;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+
+
+/**
+ * This class provides test coverage for queries on a resource that has
+ * several search base DNs, whose searches are issued concurrently by the
+ * {@link LDAPBackend} unless only the number of results is requested.
+ */
+public class MultipleBaseDNTestCase
+    extends InMemoryLDAPTestCase
+{
+  /**
+   * The second base DN of the User entries.
+   */
+  private static final String CONTRACTORS_DN =
+      "ou=contractors,dc=example,dc=com";
+
+  /**
+   * The number of User entries under each base DN.
+   */
+  private static final int NUM_USERS = 10;
+
+  /**
+   * The resource IDs of the users, in order of their uid. The users with an
+   * even number are under the people base DN, and the others under the
+   * contractors base DN.
+   */
+  private final List<String> userIDs = new ArrayList<String>();
+
+
+
+  /**
+   * Add the entries used by the tests.
+   *
+   * @throws Exception  If the entries could not be added.
+   */
+  @BeforeClass
+  public void addEntries()
+      throws Exception
+  {
+    ds.add("dn: " + CONTRACTORS_DN,
+           "objectClass: top",
+           "objectClass: organizationalUnit",
+           "ou: contractors");
+
+    for (int i = 0; i < 2 * NUM_USERS; i++)
+    {
+      userIDs.add(addUser(i % 2 == 0 ? PEOPLE_DN : CONTRACTORS_DN,
+                          String.format("user.%02d", i)));
+    }
+  }
+
+
+
+  /**
+   * Verify that the entries under each base DN are merged in sort order.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testSortedMerge()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createMultipleBaseDNBackend();
+
+    assertEquals(getIDs(query(backend, "User", null, "userName",
+                              new SortParameters("userName", "ascending"),
+                              null)),
+                 userIDs);
+    for (final SearchRequest request : getQuerySearches(backend))
+    {
+      assertNotNull(request.getControl(
+          ServerSideSortRequestControl.SERVER_SIDE_SORT_REQUEST_OID));
+    }
+
+    final List<String> reversedIDs = new ArrayList<String>(userIDs);
+    Collections.reverse(reversedIDs);
+    assertEquals(getIDs(query(backend, "User", null, "userName",
+                              new SortParameters("userName", "descending"),
+                              new PageParameters(1, 5))),
+                 reversedIDs.subList(0, 5));
+    for (final SearchRequest request : getQuerySearches(backend))
+    {
+      assertEquals(request.getSizeLimit(), 5);
+    }
+  }
+
+
+
+  /**
+   * Verify that only the entries in the requested page of a sorted query are
+   * retrieved in full.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testSortedPage()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createMultipleBaseDNBackend();
+
+    assertEquals(getIDs(query(backend, "User", null, "userName",
+                              new SortParameters("userName", "ascending"),
+                              new PageParameters(6, 5))),
+                 userIDs.subList(5, 10));
+
+    final List<SearchRequest> requests = backend.takeSearchRequests();
+    final List<SearchRequest> querySearches = getQuerySearches(requests);
+    for (final SearchRequest request : querySearches)
+    {
+      // The entries up to the end of the page are needed for the merge, but
+      // only their sort attributes.
+      assertEquals(request.getSizeLimit(), 10);
+      assertEquals(request.getAttributeList(), Arrays.asList("uid"));
+    }
+    assertEquals(count(requests, SearchScope.BASE), 5);
+  }
+
+
+
+  /**
+   * Verify that the entries under each base DN of a query that is not
+   * sorted are taken one base DN after another.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testUnsortedPage()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createMultipleBaseDNBackend();
+
+    final List<String> expectedIDs = new ArrayList<String>();
+    for (int i = 0; i < 2 * NUM_USERS; i += 2)
+    {
+      expectedIDs.add(userIDs.get(i));
+    }
+    for (int i = 1; i < 2 * NUM_USERS; i += 2)
+    {
+      expectedIDs.add(userIDs.get(i));
+    }
+
+    assertEquals(getIDs(query(backend, "User", null, "userName", null,
+                              new PageParameters(1, 5))),
+                 expectedIDs.subList(0, 5));
+    List<SearchRequest> requests = backend.takeSearchRequests();
+    assertEquals(getQuerySearches(requests).size(), 2);
+    assertEquals(count(requests, SearchScope.BASE), 0);
+
+    // The page spans both base DNs.
+    assertEquals(getIDs(query(backend, "User", null, "userName", null,
+                              new PageParameters(8, 5))),
+                 expectedIDs.subList(7, 12));
+    requests = backend.takeSearchRequests();
+    for (final SearchRequest request : getQuerySearches(requests))
+    {
+      assertEquals(request.getSizeLimit(), 12);
+      assertEquals(request.getAttributeList(),
+                   Arrays.asList(SearchRequest.NO_ATTRIBUTES));
+    }
+    assertEquals(count(requests, SearchScope.BASE), 5);
+
+    assertEquals(getIDs(query(backend, "User", null, "userName", null,
+                              new PageParameters(19, 5))),
+                 expectedIDs.subList(18, 20));
+    backend.takeSearchRequests();
+  }
+
+
+
+  /**
+   * Verify that the base DNs of a query are searched one after another if
+   * parallel searches are disabled.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testSequentialSearches()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createMultipleBaseDNBackend();
+    backend.setParallelBaseDNSearches(false);
+
+    assertEquals(getIDs(query(backend, "User", "userName sw \"user.1\"",
+                              "userName", null, null)),
+                 Arrays.asList(userIDs.get(10), userIDs.get(12),
+                               userIDs.get(14), userIDs.get(16),
+                               userIDs.get(18), userIDs.get(11),
+                               userIDs.get(13), userIDs.get(15),
+                               userIDs.get(17), userIDs.get(19)));
+    final List<SearchRequest> querySearches = getQuerySearches(backend);
+    assertEquals(querySearches.get(0).getBaseDN(), PEOPLE_DN);
+    assertEquals(querySearches.get(1).getBaseDN(), CONTRACTORS_DN);
+    for (final SearchRequest request : querySearches)
+    {
+      assertNull(request.getControl(
+          ServerSideSortRequestControl.SERVER_SIDE_SORT_REQUEST_OID));
+    }
+  }
+
+
+
+  /**
+   * Verify that a count-only query counts the entries under every base DN
+   * without retrieving their attributes or converting them to resources.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testCountOnly()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createMultipleBaseDNBackend();
+    backend.setSupportsSimplePagedResultsControl(true);
+
+    final Resources<?> resources = query(backend, "User",
+        "userName sw \"user.0\"", "userName", null,
+        PageParameters.createCountOnly(1));
+    assertEquals(resources.getTotalResults(), 10);
+    assertTrue(getIDs(resources).isEmpty());
+
+    final List<SearchRequest> requests = backend.takeSearchRequests();
+    for (final SearchRequest request : getQuerySearches(requests))
+    {
+      assertEquals(request.getAttributeList(),
+                   Arrays.asList(SearchRequest.NO_ATTRIBUTES));
+      assertEquals(request.getSizeLimit(), 0);
+      assertNull(request.getControl(
+          SimplePagedResultsControl.PAGED_RESULTS_OID));
+    }
+    assertEquals(requests.size(), 2);
+
+    assertEquals(query(backend, "User", null, "userName", null,
+                       PageParameters.createCountOnly(1)).getTotalResults(),
+                 2 * NUM_USERS);
+    backend.takeSearchRequests();
+  }
+
+
+
+  /**
+   * Create an LDAP backend whose User resource has the people and the
+   * contractors base DNs.
+   *
+   * @return  The LDAP backend.
+   *
+   * @throws Exception  If the backend could not be created.
+   */
+  private TestLDAPBackend createMultipleBaseDNBackend()
+      throws Exception
+  {
+    return createBackend(
+        "<baseDN>" + PEOPLE_DN + "</baseDN>",
+        "<baseDN>" + PEOPLE_DN + "</baseDN>" +
+        "<baseDN>" + CONTRACTORS_DN + "</baseDN>");
+  }
+
+
+
+  /**
+   * Retrieve the searches issued for the previous query under the base DNs of
+   * the User resource.
+   *
+   * @param backend  The LDAP backend that processed the query.
+   *
+   * @return  The searches under the base DNs of the User resource.
+   */
+  private static List<SearchRequest> getQuerySearches(
+      final TestLDAPBackend backend)
+  {
+    return getQuerySearches(backend.takeSearchRequests());
+  }
+
+
+
+  /**
+   * Select the searches under the base DNs of the User resource.
+   *
+   * @param requests  The searches issued for a query.
+   *
+   * @return  The searches under the base DNs of the User resource.
+   */
+  private static List<SearchRequest> getQuerySearches(
+      final List<SearchRequest> requests)
+  {
+    final List<SearchRequest> querySearches = new ArrayList<SearchRequest>();
+    for (final SearchRequest request : requests)
+    {
+      if (request.getScope() == SearchScope.SUB)
+      {
+        querySearches.add(request);
+      }
+    }
+
+    assertEquals(querySearches.size(), 2);
+    final List<String> baseDNs = new ArrayList<String>();
+    for (final SearchRequest request : querySearches)
+    {
+      baseDNs.add(request.getBaseDN());
+    }
+    Collections.sort(baseDNs);
+    assertEquals(baseDNs, Arrays.asList(CONTRACTORS_DN, PEOPLE_DN));
+    return querySearches;
+  }
+
+
+
+  /**
+   * Count the searches with a given scope.
+   *
+   * @param requests  The searches.
+   * @param scope     The scope of the searches to count.
+   *
+   * @return  The number of searches with the scope.
+   */
+  private static int count(final List<SearchRequest> requests,
+                           final SearchScope scope)
+  {
+    int n = 0;
+    for (final SearchRequest request : requests)
+    {
+      if (request.getScope() == scope)
+      {
+        n++;
+      }
+    }
+    return n;
+  }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.asn1.ASN1OctetString;
+import com.unboundid.scim.SCIMTestCase;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+
+
+/**
+ * This class provides test coverage for the {@link PagedResultsCursorCache}.
+ */
+public class PagedResultsCursorCacheTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Tests that a cookie is only returned for the query and index it was
+   * cached for, and only once.
+   */
+  @Test
+  public void testTake()
+  {
+    final PagedResultsCursorCache cache =
+        new PagedResultsCursorCache(10, 60000L);
+    final ASN1OctetString cookie = new ASN1OctetString("cookie");
+    cache.put("query", 11, cookie);
+
+    assertNull(cache.take("query", 21));
+    assertNull(cache.take("other", 11));
+    assertEquals(cache.take("query", 11), cookie);
+    assertNull(cache.take("query", 11));
+    assertEquals(cache.size(), 0);
+  }
+
+
+
+  /**
+   * Tests that the oldest cookies are evicted when the cache is full, and
+   * that idle cookies are discarded.
+   */
+  @Test
+  public void testEviction()
+  {
+    final PagedResultsCursorCache cache =
+        new PagedResultsCursorCache(2, 60000L);
+    cache.put("query", 11, new ASN1OctetString("1"));
+    cache.put("query", 21, new ASN1OctetString("2"));
+    cache.put("query", 31, new ASN1OctetString("3"));
+
+    assertEquals(cache.size(), 2);
+    assertNull(cache.take("query", 11));
+    assertEquals(cache.take("query", 31).stringValue(), "3");
+
+    final PagedResultsCursorCache idleCache =
+        new PagedResultsCursorCache(2, -1L);
+    idleCache.put("query", 11, new ASN1OctetString("1"));
+    assertNull(idleCache.take("query", 11));
+  }
+}
@@ -0,0 +1,401 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.ldap;
+
+import com.unboundid.ldap.sdk.DN;
+import com.unboundid.ldap.sdk.SearchRequest;
+import com.unboundid.ldap.sdk.SearchScope;
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.data.Entry;
+import com.unboundid.scim.data.GroupResource;
+import com.unboundid.scim.data.UserResource;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.DeleteResourceRequest;
+import com.unboundid.scim.sdk.GetResourceRequest;
+import com.unboundid.scim.sdk.PatchResourceRequest;
+import com.unboundid.scim.sdk.PostResourceRequest;
+import com.unboundid.scim.sdk.PutResourceRequest;
+import com.unboundid.scim.sdk.Resources;
+import com.unboundid.scim.sdk.SCIMObject;
+import com.unboundid.scim.sdk.SCIMQueryAttributes;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+
+
+/**
+ * This class provides test coverage for the group and member caches that are
+ * shared across requests, and their invalidation by writes through the
+ * {@link LDAPBackend}.
+ */
+public class SharedCacheTestCase
+    extends InMemoryLDAPTestCase
+{
+  /**
+   * The base URL of the requests.
+   */
+  private static final URI BASE_URL = URI.create("http://localhost/");
+
+  /**
+   * The authenticated user of the requests.
+   */
+  private static final String AUTH_ID = "cn=test";
+
+
+
+  /**
+   * Verify that the members of a group are resolved from the shared member
+   * cache, and resolved again once they are written through the backend.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testMemberCache()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createBackend(
+        "<maxMembersCached>1000</maxMembersCached>",
+        "<maxMembersCached>1000</maxMembersCached>" +
+        "<maxSharedMembersCached>100</maxSharedMembersCached>");
+
+    final String aliceID = addUser(PEOPLE_DN, "members.alice");
+    final String bobID = addUser(PEOPLE_DN, "members.bob");
+    addGroup("members", "uid=members.alice," + PEOPLE_DN,
+             "uid=members.bob," + PEOPLE_DN);
+
+    assertEquals(getMemberIDs(backend), set(aliceID, bobID));
+    assertTrue(countMemberSearches(backend) > 0);
+
+    // The members are cached across requests.
+    assertEquals(getMemberIDs(backend), set(aliceID, bobID));
+    assertEquals(countMemberSearches(backend), 0);
+
+    final UserResource alice = new UserResource(getUserDescriptor(backend));
+    alice.setUserName("members.alice");
+    alice.setTitle("Engineer");
+    backend.putResource(new PutResourceRequest(BASE_URL, AUTH_ID,
+        getUserDescriptor(backend), aliceID, alice.getScimObject(),
+        getQueryAttributes(backend, "User")));
+    assertEquals(getMemberIDs(backend), set(aliceID, bobID));
+    assertTrue(countMemberSearches(backend) > 0);
+    assertEquals(getMemberIDs(backend), set(aliceID, bobID));
+    assertEquals(countMemberSearches(backend), 0);
+
+    final UserResource aliceTitle =
+        new UserResource(getUserDescriptor(backend));
+    aliceTitle.setTitle("Manager");
+    backend.patchResource(new PatchResourceRequest(BASE_URL, AUTH_ID,
+        getUserDescriptor(backend), aliceID, aliceTitle.getScimObject(),
+        getQueryAttributes(backend, "User")));
+    assertEquals(getMemberIDs(backend), set(aliceID, bobID));
+    assertTrue(countMemberSearches(backend) > 0);
+
+    // Replace bob behind the backend's back, which is not observed, then
+    // through the backend, which is.
+    ds.delete("uid=members.bob," + PEOPLE_DN);
+    assertEquals(getMemberIDs(backend), set(aliceID, bobID));
+    final UserResource bob = new UserResource(getUserDescriptor(backend));
+    bob.setUserName("members.bob");
+    final String newBobID = backend.postResource(new PostResourceRequest(
+        BASE_URL, AUTH_ID, getUserDescriptor(backend), bob.getScimObject(),
+        getQueryAttributes(backend, "User"))).getId();
+    assertFalse(newBobID.equals(bobID));
+    assertEquals(getMemberIDs(backend), set(aliceID, newBobID));
+
+    backend.deleteResource(new DeleteResourceRequest(BASE_URL, AUTH_ID,
+        getUserDescriptor(backend), newBobID));
+    assertEquals(getMemberIDs(backend), set(aliceID));
+  }
+
+
+
+  /**
+   * Verify that the groups of a user are resolved from the shared group
+   * cache, and resolved again once they are written through the backend.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testGroupCache()
+      throws Exception
+  {
+    final TestLDAPBackend backend = createBackend(
+        "<haveIsMemberOf>false</haveIsMemberOf>",
+        "<haveIsMemberOf>true</haveIsMemberOf>",
+        "<maxGroupsCached>1000</maxGroupsCached>",
+        "<maxGroupsCached>1000</maxGroupsCached>" +
+        "<maxSharedGroupsCached>100</maxSharedGroupsCached>",
+        "<maxMembersCached>1000</maxMembersCached>",
+        "<maxMembersCached>1000</maxMembersCached>" +
+        "<joinAttribute>uniqueMember</joinAttribute>");
+
+    final String groupDN = "cn=groups," + BASE_DN;
+    final String memberDN = "uid=groups.member," + PEOPLE_DN;
+    addUser(PEOPLE_DN, "groups.member", "isMemberOf: " + groupDN);
+    final String groupID = addGroup("groups", memberDN);
+
+    assertEquals(getGroupIDs(backend), set(groupID));
+    assertEquals(countGroupSearches(backend, groupDN), 1);
+
+    // The group is cached across requests.
+    assertEquals(getGroupIDs(backend), set(groupID));
+    assertEquals(countGroupSearches(backend, groupDN), 0);
+
+    final GroupResource group = new GroupResource(getGroupDescriptor(backend),
+        backend.getResource(new GetResourceRequest(BASE_URL, AUTH_ID,
+            getGroupDescriptor(backend), groupID,
+            getQueryAttributes(backend, "Group"))).getScimObject());
+    group.setMembers(Collections.<Entry<String>>emptyList());
+    backend.putResource(new PutResourceRequest(BASE_URL, AUTH_ID,
+        getGroupDescriptor(backend), groupID, group.getScimObject(),
+        getQueryAttributes(backend, "Group")));
+    assertEquals(getGroupIDs(backend), set(groupID));
+    assertEquals(countGroupSearches(backend, groupDN), 1);
+    assertEquals(getGroupIDs(backend), set(groupID));
+    assertEquals(countGroupSearches(backend, groupDN), 0);
+
+    final String memberID = getResourceID(memberDN);
+    final GroupResource groupMembers =
+        new GroupResource(getGroupDescriptor(backend));
+    groupMembers.setMembers(Arrays.asList(
+        new Entry<String>(memberID, "User")));
+    backend.patchResource(new PatchResourceRequest(BASE_URL, AUTH_ID,
+        getGroupDescriptor(backend), groupID, groupMembers.getScimObject(),
+        getQueryAttributes(backend, "Group")));
+    assertEquals(getGroupIDs(backend), set(groupID));
+    assertEquals(countGroupSearches(backend, groupDN), 1);
+
+    // Replace the group behind the backend's back, which is not observed,
+    // then through the backend, which is.
+    ds.delete(groupDN);
+    assertEquals(getGroupIDs(backend), set(groupID));
+    final GroupResource newGroup =
+        new GroupResource(getGroupDescriptor(backend));
+    newGroup.setDisplayName("groups");
+    newGroup.setMembers(Arrays.asList(new Entry<String>(memberID, "User")));
+    final String newGroupID = backend.postResource(new PostResourceRequest(
+        BASE_URL, AUTH_ID, getGroupDescriptor(backend),
+        newGroup.getScimObject(),
+        getQueryAttributes(backend, "Group"))).getId();
+    assertFalse(newGroupID.equals(groupID));
+    assertEquals(getGroupIDs(backend), set(newGroupID));
+
+    backend.deleteResource(new DeleteResourceRequest(BASE_URL, AUTH_ID,
+        getGroupDescriptor(backend), newGroupID));
+    assertEquals(getGroupIDs(backend), Collections.<String>emptySet());
+  }
+
+
+
+  /**
+   * Query the members of the group used by the member cache test.
+   *
+   * @param backend  The LDAP backend.
+   *
+   * @return  The member IDs of the group.
+   *
+   * @throws Exception  If the query fails.
+   */
+  private static Set<String> getMemberIDs(final TestLDAPBackend backend)
+      throws Exception
+  {
+    backend.takeSearchRequests();
+    final Resources<?> resources = query(backend, "Group",
+        "displayName eq \"members\"", "members", null, null);
+    assertEquals(resources.getTotalResults(), 1);
+
+    final Set<String> memberIDs = new HashSet<String>();
+    for (final BaseResource resource : resources)
+    {
+      final GroupResource group = new GroupResource(
+          resource.getResourceDescriptor(), resource.getScimObject());
+      if (group.getMembers() != null)
+      {
+        for (final Entry<String> member : group.getMembers())
+        {
+          assertEquals(member.getType(), "User");
+          memberIDs.add(member.getValue());
+        }
+      }
+    }
+    return memberIDs;
+  }
+
+
+
+  /**
+   * Query the groups of the user used by the group cache test.
+   *
+   * @param backend  The LDAP backend.
+   *
+   * @return  The group IDs of the user.
+   *
+   * @throws Exception  If the query fails.
+   */
+  private static Set<String> getGroupIDs(final TestLDAPBackend backend)
+      throws Exception
+  {
+    backend.takeSearchRequests();
+    final Resources<?> resources = query(backend, "User",
+        "userName eq \"groups.member\"", "userName,groups", null, null);
+    assertEquals(resources.getTotalResults(), 1);
+
+    final Set<String> groupIDs = new HashSet<String>();
+    for (final BaseResource resource : resources)
+    {
+      final UserResource user = new UserResource(
+          resource.getResourceDescriptor(), resource.getScimObject());
+      if (user.getGroups() != null)
+      {
+        for (final Entry<String> group : user.getGroups())
+        {
+          groupIDs.add(group.getValue());
+        }
+      }
+    }
+    return groupIDs;
+  }
+
+
+
+  /**
+   * Count the searches for member entries issued for the previous query.
+   *
+   * @param backend  The LDAP backend.
+   *
+   * @return  The number of searches under the base DN of the User entries.
+   *
+   * @throws Exception  If a search base DN cannot be parsed.
+   */
+  private static int countMemberSearches(final TestLDAPBackend backend)
+      throws Exception
+  {
+    int n = 0;
+    for (final SearchRequest request : backend.takeSearchRequests())
+    {
+      if (new DN(request.getBaseDN()).isDescendantOf(PEOPLE_DN, true))
+      {
+        n++;
+      }
+    }
+    return n;
+  }
+
+
+
+  /**
+   * Count the searches that retrieved a group entry for the previous query,
+   * not including those that only check whether the user is a direct member.
+   *
+   * @param backend  The LDAP backend.
+   * @param groupDN  The DN of the group entry.
+   *
+   * @return  The number of searches that retrieved the group entry.
+   */
+  private static int countGroupSearches(final TestLDAPBackend backend,
+                                        final String groupDN)
+  {
+    int n = 0;
+    for (final SearchRequest request : backend.takeSearchRequests())
+    {
+      if (request.getScope() == SearchScope.BASE &&
+          request.getBaseDN().equals(groupDN) &&
+          !request.getAttributeList().contains(SearchRequest.NO_ATTRIBUTES))
+      {
+        n++;
+      }
+    }
+    return n;
+  }
+
+
+
+  /**
+   * Retrieve the User resource descriptor of a backend.
+   *
+   * @param backend  The LDAP backend.
+   *
+   * @return  The User resource descriptor.
+   */
+  private static ResourceDescriptor getUserDescriptor(
+      final TestLDAPBackend backend)
+  {
+    return getResourceDescriptor(backend, "User");
+  }
+
+
+
+  /**
+   * Retrieve the Group resource descriptor of a backend.
+   *
+   * @param backend  The LDAP backend.
+   *
+   * @return  The Group resource descriptor.
+   */
+  private static ResourceDescriptor getGroupDescriptor(
+      final TestLDAPBackend backend)
+  {
+    return getResourceDescriptor(backend, "Group");
+  }
+
+
+
+  /**
+   * Retrieve the query attributes that request every attribute of a
+   * resource.
+   *
+   * @param backend       The LDAP backend.
+   * @param resourceName  The name of the resource.
+   *
+   * @return  The query attributes.
+   *
+   * @throws Exception  If the query attributes could not be created.
+   */
+  private static SCIMQueryAttributes getQueryAttributes(
+      final TestLDAPBackend backend, final String resourceName)
+      throws Exception
+  {
+    return new SCIMQueryAttributes(
+        getResourceDescriptor(backend, resourceName), null);
+  }
+
+
+
+  /**
+   * Create a set of strings.
+   *
+   * @param values  The strings.
+   *
+   * @return  The set of strings.
+   */
+  private static Set<String> set(final String... values)
+  {
+    return new HashSet<String>(Arrays.asList(values));
+  }
+}
@@ -31,6 +31,7 @@ import com.unboundid.scim.marshal.Marshaller;
 import com.unboundid.scim.marshal.Unmarshaller;
 import com.unboundid.scim.marshal.xml.XmlMarshaller;
 import com.unboundid.scim.marshal.xml.XmlUnmarshaller;
+import com.unboundid.scim.schema.AttributeDescriptor;
 import com.unboundid.scim.schema.CoreSchema;
 import com.unboundid.scim.schema.ResourceDescriptor;
 import com.unboundid.scim.sdk.InvalidResourceException;
@@ -50,7 +51,9 @@ import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 import static com.unboundid.util.LDAPTestUtils.generateUserEntry;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.fail;
@@ -59,8 +62,11 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 
 
@@ -296,6 +302,89 @@ public class UserResourceMapperTestCase
     Assert.assertEquals(DN.compare(entryDNString, expectedDN), 0,
         "Entry DN:" + entryDNString + " expectedDN:" + expectedDN);
   }
+  /**
+   * Verify that the LDAP request attributes for a set of query attributes
+   * are computed once and shared by later requests for the same attributes.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testLDAPRequestAttributes()
+      throws Exception
+  {
+    final ResourceMapper mapper = getUserResourceMapper();
+    final ResourceDescriptor descriptor = mapper.getResourceDescriptor();
+    final Set<String> additional =
+        new HashSet<String>(Arrays.asList("modifyTimestamp", "entryUUID"));
+
+    final String[] all = mapper.getLDAPRequestAttributes(
+        new SCIMQueryAttributes(descriptor, null), additional);
+    assertSame(mapper.getLDAPRequestAttributes(
+        new SCIMQueryAttributes(descriptor, null), additional), all);
+    final Set<String> expected = mapper.toLDAPAttributeTypes(
+        new SCIMQueryAttributes(descriptor, null));
+    expected.addAll(additional);
+    assertEquals(new HashSet<String>(Arrays.asList(all)), expected);
+
+    final String[] userName = mapper.getLDAPRequestAttributes(
+        new SCIMQueryAttributes(descriptor, "userName"), additional);
+    assertSame(mapper.getLDAPRequestAttributes(
+        new SCIMQueryAttributes(descriptor, "userName"), additional),
+        userName);
+    assertTrue(Arrays.asList(userName).contains("uid"));
+    assertFalse(Arrays.asList(userName).contains("mail"));
+    assertTrue(Arrays.asList(userName).containsAll(additional));
+
+    // A different set of additional attributes is not served from the
+    // cache.
+    final Set<String> otherAdditional =
+        new HashSet<String>(Arrays.asList("ds-entry-checksum"));
+    final String[] otherUserName = mapper.getLDAPRequestAttributes(
+        new SCIMQueryAttributes(descriptor, "userName"), otherAdditional);
+    assertNotSame(otherUserName, userName);
+    assertTrue(Arrays.asList(otherUserName).contains("ds-entry-checksum"));
+    assertFalse(Arrays.asList(otherUserName).contains("modifyTimestamp"));
+    assertSame(mapper.getLDAPRequestAttributes(
+        new SCIMQueryAttributes(descriptor, "userName"), otherAdditional),
+        otherUserName);
+
+    // Only a bounded number of distinct sets of query attributes are cached.
+    final List<String> names = new ArrayList<String>();
+    for (final AttributeDescriptor attribute : descriptor.getAttributes())
+    {
+      names.add(attribute.getSchema() + ":" + attribute.getName());
+    }
+    final Set<SCIMQueryAttributes> distinct =
+        new HashSet<SCIMQueryAttributes>();
+    distinct.add(new SCIMQueryAttributes(descriptor, null));
+    distinct.add(new SCIMQueryAttributes(descriptor, "userName"));
+    SCIMQueryAttributes last = null;
+    for (int i = 0; i < names.size() && distinct.size() < 300; i++)
+    {
+      for (int j = i + 1; j < names.size() && distinct.size() < 300; j++)
+      {
+        for (int k = j + 1; k < names.size() && distinct.size() < 300; k++)
+        {
+          last = new SCIMQueryAttributes(descriptor, names.get(i) + "," +
+                                         names.get(j) + "," + names.get(k));
+          if (distinct.add(last))
+          {
+            mapper.getLDAPRequestAttributes(last, additional);
+          }
+        }
+      }
+    }
+    assertEquals(distinct.size(), 300);
+    assertNotSame(mapper.getLDAPRequestAttributes(last, additional),
+                  mapper.getLDAPRequestAttributes(last, additional));
+    assertSame(mapper.getLDAPRequestAttributes(
+        new SCIMQueryAttributes(descriptor, null), additional), all);
+
+    mapper.finalizeMapper();
+  }
+
+
+
   /**
    * Verify that filter mapping is working correctly.
    *
@@ -78,6 +78,19 @@ public class ClientResponse
     return entity;
   }
 
+  /**
+   * Wink compatibility layer class.
+   * This method provides the entity as a stream that is read from the
+   * connection as it is consumed, rather than buffered in memory as by
+   * {@link #getEntity(Class)}. The stream is closed when this
+   * ClientResponse is closed.
+   * @return The entity stream.
+   */
+  public InputStream getEntityStream()
+  {
+    return response.readEntity(InputStream.class);
+  }
+
   /**
    *  Wink compatibility layer class - see Wink docs.
    * @return Wink compatibility layer class - see Wink docs.
@@ -22,6 +22,7 @@ import com.unboundid.scim.data.BaseResource;
 import com.unboundid.scim.sdk.BulkOperation;
 import com.unboundid.scim.sdk.Resources;
 import com.unboundid.scim.sdk.SCIMException;
+import com.unboundid.scim.sdk.StreamingResources;
 
 import java.io.OutputStream;
 import java.util.List;
@@ -61,6 +62,20 @@ public interface Marshaller
     throws SCIMException;
 
 
+  /**
+   * Write a SCIM listing response whose resources are produced while the
+   * response is being written to an output stream.
+   *
+   * @param response      The SCIM response to be written.
+   * @param outputStream  The output stream to which the SCIM response should
+   *                      be written.
+   *
+   * @throws SCIMException  If the data could not be written.
+   */
+  void marshal(StreamingResources response, OutputStream outputStream)
+    throws SCIMException;
+
+
   /**
    * Write a SCIM error response to an output stream.
    *
@@ -98,6 +98,49 @@ public interface StreamMarshaller
 
 
 
+  /**
+   * Write the start of a SCIM query response whose resources are to be
+   * written one at a time. The totalResults, itemsPerPage and startIndex
+   * values are written at the end of the response since they might not be
+   * known until all the resources have been written.
+   *
+   * @param schemaURIs    The set of schema URIs used by the resources.
+   *
+   * @throws SCIMException  If the data could not be written.
+   */
+  void writeResourcesStart(final Set<String> schemaURIs)
+      throws SCIMException;
+
+
+
+  /**
+   * Write a resource to a SCIM query response.
+   *
+   * @param resource  The SCIM resource to write.
+   *
+   * @throws SCIMException  If the data could not be written.
+   */
+  void writeResource(final BaseResource resource)
+      throws SCIMException;
+
+
+
+  /**
+   * Write the end of a SCIM query response.
+   *
+   * @param totalResults  The total number of results matching the query.
+   * @param itemsPerPage  The number of resources that were written.
+   * @param startIndex    The 1-based index of the first resource written.
+   *
+   * @throws SCIMException  If the data could not be written.
+   */
+  void writeResourcesFinish(final long totalResults,
+                            final int itemsPerPage,
+                            final long startIndex)
+      throws SCIMException;
+
+
+
   /**
    * Write the start of a bulk request or response.
    *
@@ -34,10 +34,11 @@ import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.Status;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
 import java.io.InputStream;
 
+import static com.unboundid.scim.sdk.StaticUtils.toLowerCase;
+
 
 
 /**
@@ -49,7 +50,7 @@ public class JsonBulkParser extends JsonParser
   private final BulkConfig bulkConfig;
   private final BulkContentHandler handler;
   private int operationIndex = 0;
-  private JSONTokener tokener;
+  private JsonStreamParser parser;
   private boolean skipOperations;
 
   /**
@@ -95,44 +96,20 @@ public class JsonBulkParser extends JsonParser
   {
     try
     {
-      tokener = new JSONTokener(bulkInputStream);
+      parser = new JsonStreamParser(bulkInputStream);
 
-      if (tokener.nextClean() != '{')
+      if (parser.nextToken() != JsonStreamParser.Token.START_OBJECT)
       {
-          throw tokener.syntaxError("A JSONObject text must begin with '{'");
+          throw parser.syntaxError("A JSONObject text must begin with '{'");
       }
-      for (;;)
+      while (parser.nextToken() == JsonStreamParser.Token.FIELD_NAME)
       {
-        String key;
-        char c = tokener.nextClean();
-        switch (c)
-        {
-          case 0:
-            throw tokener.syntaxError("A JSONObject text must end with '}'");
-          case '}':
-            return;
-          default:
-            tokener.back();
-            key = tokener.nextValue().toString();
-        }
-
-        // The key is followed by ':'. We will also tolerate '=' or '=>'.
-
-        c = tokener.nextClean();
-        if (c == '=')
-        {
-          if (tokener.next() != '>')
-          {
-            tokener.back();
-          }
-        } else if (c != ':')
-        {
-          throw tokener.syntaxError("Expected a ':' after a key");
-        }
+        final String key = parser.getText();
+        parser.nextToken();
 
         if (key.equals("failOnErrors"))
         {
-          handler.handleFailOnErrors((Integer)tokener.nextValue());
+          handler.handleFailOnErrors((Integer)parser.readTree());
         }
         else if (key.equals("Operations"))
         {
@@ -141,25 +118,7 @@ public class JsonBulkParser extends JsonParser
         else
         {
           // Skip.
-          tokener.nextValue();
-        }
-
-        // Pairs are separated by ','. We will also tolerate ';'.
-
-        switch (tokener.nextClean())
-        {
-          case ';':
-          case ',':
-            if (tokener.nextClean() == '}')
-            {
-              return;
-            }
-            tokener.back();
-            break;
-          case '}':
-            return;
-          default:
-            throw tokener.syntaxError("Expected a ',' or '}'");
+          parser.skipChildren();
         }
       }
     }
@@ -186,68 +145,48 @@ public class JsonBulkParser extends JsonParser
   private void parseOperations()
       throws JSONException, SCIMException
   {
-    if (tokener.nextClean() != '[')
+    if (parser.getCurrentToken() != JsonStreamParser.Token.START_ARRAY)
     {
-        throw this.tokener.syntaxError("A JSONArray text must start with '['");
+        throw parser.syntaxError("A JSONArray text must start with '['");
     }
-    if (tokener.nextClean() != ']')
+    while (parser.nextToken() != JsonStreamParser.Token.END_ARRAY)
     {
-      tokener.back();
-      for (;;)
+      if (operationIndex >= bulkConfig.getMaxOperations())
       {
-        if (tokener.nextClean() != ',')
-        {
-          tokener.back();
-          if (operationIndex >= bulkConfig.getMaxOperations())
-          {
-            throw SCIMException.createException(
-                413,
-                "The number of operations in the bulk operation exceeds " +
-                "maxOperations (" + bulkConfig.getMaxOperations() + ")");
-          }
+        throw SCIMException.createException(
+            413,
+            "The number of operations in the bulk operation exceeds " +
+            "maxOperations (" + bulkConfig.getMaxOperations() + ")");
+      }
 
-          if (bulkInputStream.getBytesRead() > bulkConfig.getMaxPayloadSize())
-          {
-            throw SCIMException.createException(
-                413,
-                "The size of the bulk operation exceeds the maxPayloadSize " +
-                "(" + bulkConfig.getMaxPayloadSize() + ")");
-          }
-          if (skipOperations)
-          {
-            tokener.nextValue();
-          }
-          else
-          {
-            JSONObject o = makeCaseInsensitive((JSONObject)tokener.nextValue());
-            try
-            {
-              handler.handleOperation(operationIndex, parseBulkOperation(o));
-            }
-            catch (BulkException e)
-            {
-              handler.handleException(operationIndex, e);
-            }
-          }
-          operationIndex++;
+      if (bulkInputStream.getBytesRead() > bulkConfig.getMaxPayloadSize())
+      {
+        throw SCIMException.createException(
+            413,
+            "The size of the bulk operation exceeds the maxPayloadSize " +
+            "(" + bulkConfig.getMaxPayloadSize() + ")");
+      }
+      if (skipOperations)
+      {
+        parser.skipChildren();
+      }
+      else
+      {
+        if (parser.getCurrentToken() != JsonStreamParser.Token.START_OBJECT)
+        {
+          throw new JSONException(
+              "JSONArray[" + operationIndex + "] is not a JSONObject.");
         }
-
-        switch (tokener.nextClean())
+        try
+        {
+          handler.handleOperation(operationIndex, parseBulkOperation());
+        }
+        catch (BulkException e)
         {
-          case ';':
-          case ',':
-            if (tokener.nextClean() == ']')
-            {
-              return;
-            }
-            tokener.back();
-            break;
-          case ']':
-            return;
-          default:
-            throw tokener.syntaxError("Expected a ',' or ']'");
+          handler.handleException(operationIndex, e);
         }
       }
+      operationIndex++;
     }
   }
 
@@ -255,22 +194,99 @@ public class JsonBulkParser extends JsonParser
 
   /**
    * Parse an individual operation in a bulk operation request or response.
-   *
-   * @param o            The JSON object representing the operation.
+   * The data of the operation is read as it is parsed if the path precedes
+   * it, otherwise the data is read as a JSON object and unmarshalled once
+   * the path is known.
    *
    * @return  The parsed bulk operation.
    *
+   * @throws JSONException  If the JSON could not be parsed.
    * @throws BulkException  If the operation cannot be parsed for some other
    *                        reason.
    */
-  private BulkOperation parseBulkOperation(final JSONObject o)
-      throws BulkException
+  private BulkOperation parseBulkOperation()
+      throws JSONException, BulkException
   {
-    final String method = o.optString("method");
-    final String bulkId = o.optString("bulkid", null);
-    final String version = o.optString("version", null);
-    final String path = o.optString("path", null);
-    final String location = o.optString("location", null);
+    String method = "";
+    String bulkId = null;
+    String version = null;
+    String path = null;
+    String location = null;
+    JSONObject statusObj = null;
+    boolean hasData = false;
+    JSONObject data = null;
+    ResourceDescriptor descriptor = null;
+    BaseResource resource = null;
+    InvalidResourceException dataException = null;
+
+    while (parser.nextToken() == JsonStreamParser.Token.FIELD_NAME)
+    {
+      final String key = toLowerCase(parser.getText());
+      final JsonStreamParser.Token token = parser.nextToken();
+
+      if (key.equals("method"))
+      {
+        method = parser.readTree().toString();
+      }
+      else if (key.equals("bulkid"))
+      {
+        bulkId = parser.readTree().toString();
+      }
+      else if (key.equals("version"))
+      {
+        version = parser.readTree().toString();
+      }
+      else if (key.equals("path"))
+      {
+        path = parser.readTree().toString();
+      }
+      else if (key.equals("location"))
+      {
+        location = parser.readTree().toString();
+      }
+      else if (key.equals("status"))
+      {
+        final Object value = parser.readTree();
+        statusObj = value instanceof JSONObject ?
+                    makeCaseInsensitive((JSONObject) value) : null;
+      }
+      else if (key.equals("data") &&
+               token == JsonStreamParser.Token.START_OBJECT)
+      {
+        hasData = true;
+        data = null;
+        resource = null;
+        dataException = null;
+        if (path == null)
+        {
+          data = makeCaseInsensitive((JSONObject) parser.readTree());
+          continue;
+        }
+
+        descriptor = handler.getResourceDescriptor(getEndpoint(path));
+        if (descriptor == null)
+        {
+          parser.skipChildren();
+          continue;
+        }
+
+        final int depth = parser.getDepth();
+        try
+        {
+          resource = unmarshal(parser, descriptor,
+                               BaseResource.BASE_RESOURCE_FACTORY, null);
+        }
+        catch (InvalidResourceException e)
+        {
+          dataException = e;
+          parser.skipToDepth(depth - 1);
+        }
+      }
+      else
+      {
+        parser.skipChildren();
+      }
+    }
 
     Method httpMethod = null;
     try
@@ -286,10 +302,6 @@ public class JsonBulkParser extends JsonParser
         //BulkContentHandler.handleOperation().
       }
 
-      final JSONObject data = makeCaseInsensitive(o.optJSONObject("data"));
-      final JSONObject statusObj =
-          makeCaseInsensitive(o.optJSONObject("status"));
-
       final Status status;
       if (statusObj != null)
       {
@@ -302,8 +314,7 @@ public class JsonBulkParser extends JsonParser
         status = null;
       }
 
-      BaseResource resource = null;
-      if (data != null)
+      if (hasData)
       {
         if (path == null)
         {
@@ -312,22 +323,11 @@ public class JsonBulkParser extends JsonParser
               httpMethod, bulkId, path);
         }
 
-        int startPos = 0;
-        if (path.charAt(startPos) == '/')
-        {
-          startPos++;
-        }
-
-        int endPos = path.indexOf('/', startPos);
-        if (endPos == -1)
+        final String endpoint = getEndpoint(path);
+        if (descriptor == null)
         {
-          endPos = path.length();
+          descriptor = handler.getResourceDescriptor(endpoint);
         }
-
-        String endpoint = path.substring(startPos, endPos);
-
-        final ResourceDescriptor descriptor =
-            handler.getResourceDescriptor(endpoint);
         if (descriptor == null)
         {
           throw new BulkException(new InvalidResourceException(
@@ -338,8 +338,15 @@ public class JsonBulkParser extends JsonParser
 
         try
         {
-          resource = unmarshal(data, descriptor,
-              BaseResource.BASE_RESOURCE_FACTORY, null);
+          if (data != null)
+          {
+            resource = unmarshal(data, descriptor,
+                BaseResource.BASE_RESOURCE_FACTORY, null);
+          }
+          else if (dataException != null)
+          {
+            throw dataException;
+          }
         }
         catch (InvalidResourceException e)
         {
@@ -361,6 +368,32 @@ public class JsonBulkParser extends JsonParser
 
 
 
+  /**
+   * Get the resource endpoint from the path of a bulk operation.
+   *
+   * @param path  The path of the bulk operation.
+   *
+   * @return  The resource endpoint.
+   */
+  private static String getEndpoint(final String path)
+  {
+    int startPos = 0;
+    if (path.charAt(startPos) == '/')
+    {
+      startPos++;
+    }
+
+    int endPos = path.indexOf('/', startPos);
+    if (endPos == -1)
+    {
+      endPos = path.length();
+    }
+
+    return path.substring(startPos, endPos);
+  }
+
+
+
   /**
    * Parse a simple attribute from its representation as a JSON Object.
    *
@@ -22,6 +22,7 @@ import com.unboundid.scim.marshal.Marshaller;
 import com.unboundid.scim.sdk.BulkOperation;
 import com.unboundid.scim.sdk.Resources;
 import com.unboundid.scim.sdk.SCIMException;
+import com.unboundid.scim.sdk.StreamingResources;
 
 import java.io.OutputStream;
 import java.util.HashSet;
@@ -77,6 +78,27 @@ public class JsonMarshaller implements Marshaller
   }
 
 
+  /**
+   * {@inheritDoc}
+   */
+  public void marshal(final StreamingResources response,
+                      final OutputStream outputStream)
+      throws SCIMException
+  {
+    final JsonStreamMarshaller jsonStreamMarshaller =
+        new JsonStreamMarshaller(outputStream);
+    try
+    {
+      response.marshal(jsonStreamMarshaller);
+    }
+    finally
+    {
+      jsonStreamMarshaller.close();
+    }
+  }
+
+
+
   /**
    * {@inheritDoc}
    */
@@ -75,8 +75,6 @@ public class JsonParser
     try
     {
       final SCIMObject scimObject = new SCIMObject();
-      final boolean implicitSchemaChecking = Boolean.getBoolean(
-              SCIMConstants.IMPLICIT_SCHEMA_CHECKING_PROPERTY);
 
       // The first keyed object ought to be a schemas array, but it may not be
       // present if 1) the attrs are all core and 2) the client decided to omit
@@ -86,26 +84,11 @@ public class JsonParser
       {
         schemas = jsonObject.getJSONArray(SCIMConstants.SCHEMAS_ATTRIBUTE_NAME);
       }
-      else if (defaultSchemas != null)
-      {
-        schemas = defaultSchemas;
-      }
       else
       {
-        String[] schemaArray = new String[1];
-        schemaArray[0] = resourceDescriptor.getSchema();
-        schemas = new JSONArray(schemaArray);
-      }
-
-      final Set<String> schemaSet = new HashSet<String>(schemas.length());
-      if (implicitSchemaChecking)
-      {
-        schemaSet.addAll(resourceDescriptor.getAttributeSchemas());
-      }
-      for (int i = 0; i < schemas.length(); i++)
-      {
-        schemaSet.add(toLowerCase(schemas.getString(i)));
+        schemas = defaultSchemas;
       }
+      final Set<String> schemaSet = getSchemaSet(schemas, resourceDescriptor);
 
       final Iterator k = jsonObject.keys();
       while (k.hasNext())
@@ -118,114 +101,124 @@ public class JsonParser
           continue;
         }
 
-        if (schemaSet.contains(attributeKeyLower))
+        addMember(scimObject, resourceDescriptor, schemaSet, attributeKey,
+                  jsonObject.get(attributeKey));
+      }
+
+      return resourceFactory.createResource(resourceDescriptor, scimObject);
+    }
+    catch (Exception e)
+    {
+      throw new InvalidResourceException(
+          "Resource '" + resourceDescriptor.getName() + "' is malformed: " +
+          e.getMessage(), e);
+    }
+  }
+
+
+
+  /**
+   * Read a SCIM resource from a JSON object as it is parsed. The members of
+   * the object are mapped as they are read, except that members which may be
+   * containers for extended schemas are held until the schemas member has
+   * been read, or until the end of the object if there is no schemas member.
+   * The member names at the top level of the object are case-insensitive.
+   *
+   * @param <R> The type of resource instance.
+   * @param parser  The JSON parser, positioned at the start of the object.
+   *                On return the parser is positioned at the end of the
+   *                object.
+   * @param resourceDescriptor The descriptor of the SCIM resource to be read.
+   * @param resourceFactory The resource factory to use to create the resource
+   *                        instance.
+   * @param defaultSchemas  The set of schemas used by attributes of the
+   *                        resource, or {@code null} if the schemas must be
+   *                        provided in the resource object.
+   *
+   * @return  The SCIM resource that was read.
+   *
+   * @throws JSONException If the JSON text is malformed.
+   * @throws InvalidResourceException if a schema error occurs.
+   */
+  protected <R extends BaseResource> R unmarshal(
+      final JsonStreamParser parser,
+      final ResourceDescriptor resourceDescriptor,
+      final ResourceFactory<R> resourceFactory,
+      final JSONArray defaultSchemas)
+      throws JSONException, InvalidResourceException
+  {
+    try
+    {
+      final SCIMObject scimObject = new SCIMObject();
+      Set<String> schemaSet = null;
+      JSONObject pendingMembers = null;
+      boolean coreAttributeRead = false;
+
+      while (parser.nextToken() == JsonStreamParser.Token.FIELD_NAME)
+      {
+        final String attributeKey = toLowerCase(parser.getText());
+        parser.nextToken();
+
+        if (SCIMConstants.SCHEMAS_ATTRIBUTE_NAME.equals(attributeKey))
         {
-          //This key is a container for some extended schema
-          JSONObject schemaAttrs = jsonObject.getJSONObject(attributeKey);
-          final Iterator keys = schemaAttrs.keys();
-          while (keys.hasNext())
+          final Object schemas = parser.readTree();
+          if (!(schemas instanceof JSONArray))
           {
-            final String attributeName = (String) keys.next();
-            final AttributeDescriptor attributeDescriptor =
-                   resourceDescriptor.getAttribute(attributeKey, attributeName);
-            final Object jsonAttribute = schemaAttrs.get(attributeName);
-            final SCIMAttribute a = create(attributeDescriptor, jsonAttribute);
-            if (a != null)
-            {
-              scimObject.addAttribute(a);
-            }
+            throw new JSONException("JSONObject[" +
+                JSONObject.quote(attributeKey) + "] is not a JSONArray.");
           }
+          schemaSet = getSchemaSet((JSONArray) schemas, resourceDescriptor);
+          pendingMembers = addMembers(scimObject, resourceDescriptor,
+                                      schemaSet, pendingMembers);
         }
-        else
+        else if (schemaSet != null)
         {
-          final Object jsonAttribute = jsonObject.get(attributeKey);
-          if (implicitSchemaChecking)
-          {
-            //Try to determine the schema for this attribute
-            final String attributeName = attributeKey;
-            final String schema =
-                    resourceDescriptor.findAttributeSchema(attributeName);
-            final AttributeDescriptor attributeDescriptor =
-                    resourceDescriptor.getAttribute(schema, attributeName);
-            if (CoreSchema.META_DESCRIPTOR.equals(attributeDescriptor))
-            {
-              try
-              {
-                // Special implicit schema processing for meta.attributes
-                // which contains the names of the attributes to remove from
-                // the Resource during a PATCH operation.  These each should be
-                // fully qualified with schema urn by the client, but if they
-                // are not we can try to determine the schema here.
-                JSONObject jsonMetaObj = ((JSONObject)jsonAttribute);
-                JSONArray metaAttrs = null;
-                final Iterator keys = jsonMetaObj.keys();
-                while (keys.hasNext())
-                {
-                  final String key = (String) keys.next();
-                  if ("attributes".equals(key.toLowerCase()))
-                  {
-                    Object attrObj = jsonMetaObj.get(key);
-                    if (attrObj instanceof JSONArray)
-                    {
-                      metaAttrs = (JSONArray) attrObj;
-                    }
-                    break;
-                  }
-                }
-                if (metaAttrs != null)
-                {
-                  JSONArray newMetaAttrs = new JSONArray();
-                  for (int i=0; i < metaAttrs.length(); i++)
-                  {
-                    String metaAttr = (String) metaAttrs.get(i);
-                    String metaSchema = resourceDescriptor.findAttributeSchema(
-                            metaAttr);
-                    // The schema returned will be null if attribute value was
-                    // already fully qualified.
-                    if (metaSchema != null)
-                    {
-                      metaAttr = metaSchema +
-                              SCIMConstants.SEPARATOR_CHAR_QUALIFIED_ATTRIBUTE +
-                              metaAttr;
-                    }
-                    newMetaAttrs.put(metaAttr);
-                  }
-                  jsonMetaObj.put("attributes", newMetaAttrs);
-                }
-              }
-              catch (Exception ignore)
-              {
-                // Don't fail because of implicit schema checking
-              }
-            }
-            final SCIMAttribute a = create(attributeDescriptor, jsonAttribute);
-            if (a != null)
-            {
-              scimObject.addAttribute(a);
-            }
-          }
-          else
+          readMember(parser, scimObject, resourceDescriptor, schemaSet,
+                     attributeKey);
+        }
+        else if (attributeKey.indexOf(
+            SCIMConstants.SEPARATOR_CHAR_QUALIFIED_ATTRIBUTE) >= 0)
+        {
+          // This may be a container for some extended schema, which can not
+          // be known until the schemas have been read.
+          if (pendingMembers == null)
           {
-            if (!schemaSet.contains(SCIMConstants.SCHEMA_URI_CORE))
-            {
-              throw new Exception("'" + SCIMConstants.SCHEMA_URI_CORE +
-                      "' must be declared in the schemas attribute.");
-            }
-            final AttributeDescriptor attributeDescriptor =
-                      resourceDescriptor.getAttribute(
-                              SCIMConstants.SCHEMA_URI_CORE,
-                              attributeKey);
-            final SCIMAttribute a = create(attributeDescriptor, jsonAttribute);
-            if (a != null)
-            {
-              scimObject.addAttribute(a);
-            }
+            pendingMembers = new JSONObject();
           }
+          pendingMembers.put(attributeKey, parser.readTree());
+        }
+        else
+        {
+          // Whether the core schema has been declared is checked once the
+          // schemas are known.
+          readMember(parser, scimObject, resourceDescriptor, null,
+                     attributeKey);
+          coreAttributeRead = true;
         }
       }
 
+      if (schemaSet == null)
+      {
+        schemaSet = getSchemaSet(defaultSchemas, resourceDescriptor);
+        addMembers(scimObject, resourceDescriptor, schemaSet, pendingMembers);
+      }
+      if (coreAttributeRead && !implicitSchemaChecking())
+      {
+        checkCoreSchema(schemaSet);
+      }
+
       return resourceFactory.createResource(resourceDescriptor, scimObject);
     }
+    catch (JSONException e)
+    {
+      if (parser.isSyntaxErrorRaised())
+      {
+        throw e;
+      }
+      throw new InvalidResourceException(
+          "Resource '" + resourceDescriptor.getName() + "' is malformed: " +
+          e.getMessage(), e);
+    }
     catch (Exception e)
     {
       throw new InvalidResourceException(
@@ -236,6 +229,334 @@ public class JsonParser
 
 
 
+  /**
+   * Determine whether implicit schema checking is enabled.
+   *
+   * @return  {@code true} if implicit schema checking is enabled.
+   */
+  private static boolean implicitSchemaChecking()
+  {
+    return Boolean.getBoolean(SCIMConstants.IMPLICIT_SCHEMA_CHECKING_PROPERTY);
+  }
+
+
+
+  /**
+   * Get the set of schemas that may be used by the attributes of a resource.
+   *
+   * @param schemas             The schemas declared for the resource, or
+   *                            {@code null} if none were declared.
+   * @param resourceDescriptor  The descriptor of the SCIM resource.
+   *
+   * @return  The set of lower-cased schema URNs.
+   *
+   * @throws JSONException  If the schemas are not valid.
+   */
+  private static Set<String> getSchemaSet(
+      final JSONArray schemas,
+      final ResourceDescriptor resourceDescriptor)
+      throws JSONException
+  {
+    final Set<String> schemaSet = new HashSet<String>();
+    if (implicitSchemaChecking())
+    {
+      schemaSet.addAll(resourceDescriptor.getAttributeSchemas());
+    }
+    if (schemas == null)
+    {
+      schemaSet.add(toLowerCase(resourceDescriptor.getSchema()));
+    }
+    else
+    {
+      for (int i = 0; i < schemas.length(); i++)
+      {
+        schemaSet.add(toLowerCase(schemas.getString(i)));
+      }
+    }
+    return schemaSet;
+  }
+
+
+
+  /**
+   * Add a member of a JSON resource object to a SCIM object.
+   *
+   * @param scimObject          The SCIM object.
+   * @param resourceDescriptor  The descriptor of the SCIM resource.
+   * @param schemaSet           The set of schemas used by the resource.
+   * @param attributeKey        The name of the member.
+   * @param jsonAttribute       The value of the member.
+   *
+   * @throws Exception  If the member is not valid.
+   */
+  private void addMember(final SCIMObject scimObject,
+                         final ResourceDescriptor resourceDescriptor,
+                         final Set<String> schemaSet,
+                         final String attributeKey,
+                         final Object jsonAttribute)
+      throws Exception
+  {
+    if (schemaSet.contains(toLowerCase(attributeKey)))
+    {
+      //This key is a container for some extended schema
+      if (!(jsonAttribute instanceof JSONObject))
+      {
+        throw new JSONException("JSONObject[" +
+            JSONObject.quote(attributeKey) + "] is not a JSONObject.");
+      }
+      final JSONObject schemaAttrs = (JSONObject) jsonAttribute;
+      final Iterator keys = schemaAttrs.keys();
+      while (keys.hasNext())
+      {
+        final String attributeName = (String) keys.next();
+        final AttributeDescriptor attributeDescriptor =
+               resourceDescriptor.getAttribute(attributeKey, attributeName);
+        addAttribute(scimObject,
+            create(attributeDescriptor, schemaAttrs.get(attributeName)));
+      }
+    }
+    else
+    {
+      final AttributeDescriptor attributeDescriptor =
+          getMemberDescriptor(resourceDescriptor, schemaSet, attributeKey);
+      if (implicitSchemaChecking() &&
+          CoreSchema.META_DESCRIPTOR.equals(attributeDescriptor))
+      {
+        qualifyMetaAttributes(resourceDescriptor, jsonAttribute);
+      }
+      addAttribute(scimObject, create(attributeDescriptor, jsonAttribute));
+    }
+  }
+
+
+
+  /**
+   * Add the members of a JSON object that were held until the schemas of the
+   * resource were known.
+   *
+   * @param scimObject          The SCIM object.
+   * @param resourceDescriptor  The descriptor of the SCIM resource.
+   * @param schemaSet           The set of schemas used by the resource.
+   * @param pendingMembers      The members to be added, or {@code null}.
+   *
+   * @return  {@code null}, as there are no longer any pending members.
+   *
+   * @throws Exception  If a member is not valid.
+   */
+  private JSONObject addMembers(final SCIMObject scimObject,
+                                final ResourceDescriptor resourceDescriptor,
+                                final Set<String> schemaSet,
+                                final JSONObject pendingMembers)
+      throws Exception
+  {
+    if (pendingMembers != null)
+    {
+      final Iterator k = pendingMembers.keys();
+      while (k.hasNext())
+      {
+        final String attributeKey = (String) k.next();
+        addMember(scimObject, resourceDescriptor, schemaSet, attributeKey,
+                  pendingMembers.get(attributeKey));
+      }
+    }
+    return null;
+  }
+
+
+
+  /**
+   * Read a member of a JSON resource object into a SCIM object. The parser
+   * must be positioned at the start of the member value.
+   *
+   * @param parser              The JSON parser.
+   * @param scimObject          The SCIM object.
+   * @param resourceDescriptor  The descriptor of the SCIM resource.
+   * @param schemaSet           The set of schemas used by the resource, or
+   *                            {@code null} if they are not yet known and
+   *                            the member is not a schema container.
+   * @param attributeKey        The name of the member.
+   *
+   * @throws Exception  If the member is not valid.
+   */
+  private void readMember(final JsonStreamParser parser,
+                          final SCIMObject scimObject,
+                          final ResourceDescriptor resourceDescriptor,
+                          final Set<String> schemaSet,
+                          final String attributeKey)
+      throws Exception
+  {
+    if (schemaSet != null && schemaSet.contains(attributeKey))
+    {
+      //This key is a container for some extended schema
+      if (parser.getCurrentToken() != JsonStreamParser.Token.START_OBJECT)
+      {
+        throw new JSONException("JSONObject[" +
+            JSONObject.quote(attributeKey) + "] is not a JSONObject.");
+      }
+      while (parser.nextToken() == JsonStreamParser.Token.FIELD_NAME)
+      {
+        final String attributeName = parser.getText();
+        parser.nextToken();
+        final AttributeDescriptor attributeDescriptor =
+               resourceDescriptor.getAttribute(attributeKey, attributeName);
+        addAttribute(scimObject, readAttribute(parser, attributeDescriptor));
+      }
+    }
+    else
+    {
+      final AttributeDescriptor attributeDescriptor =
+          getMemberDescriptor(resourceDescriptor, schemaSet, attributeKey);
+      if (implicitSchemaChecking() &&
+          CoreSchema.META_DESCRIPTOR.equals(attributeDescriptor))
+      {
+        final Object jsonAttribute = parser.readTree();
+        qualifyMetaAttributes(resourceDescriptor, jsonAttribute);
+        addAttribute(scimObject, create(attributeDescriptor, jsonAttribute));
+      }
+      else
+      {
+        addAttribute(scimObject, readAttribute(parser, attributeDescriptor));
+      }
+    }
+  }
+
+
+
+  /**
+   * Get the descriptor of an attribute that is a member of a resource object
+   * and is not within an extended schema container.
+   *
+   * @param resourceDescriptor  The descriptor of the SCIM resource.
+   * @param schemaSet           The set of schemas used by the resource, or
+   *                            {@code null} if the declaration of the core
+   *                            schema is checked later.
+   * @param attributeName       The name of the member.
+   *
+   * @return  The attribute descriptor.
+   *
+   * @throws Exception  If the attribute is not valid.
+   */
+  private static AttributeDescriptor getMemberDescriptor(
+      final ResourceDescriptor resourceDescriptor,
+      final Set<String> schemaSet,
+      final String attributeName)
+      throws Exception
+  {
+    if (implicitSchemaChecking())
+    {
+      //Try to determine the schema for this attribute
+      final String schema =
+              resourceDescriptor.findAttributeSchema(attributeName);
+      return resourceDescriptor.getAttribute(schema, attributeName);
+    }
+
+    if (schemaSet != null)
+    {
+      checkCoreSchema(schemaSet);
+    }
+    return resourceDescriptor.getAttribute(SCIMConstants.SCHEMA_URI_CORE,
+                                           attributeName);
+  }
+
+
+
+  /**
+   * Check that the core schema has been declared for a resource that has
+   * core attributes.
+   *
+   * @param schemaSet  The set of schemas used by the resource.
+   *
+   * @throws Exception  If the core schema has not been declared.
+   */
+  private static void checkCoreSchema(final Set<String> schemaSet)
+      throws Exception
+  {
+    if (!schemaSet.contains(SCIMConstants.SCHEMA_URI_CORE))
+    {
+      throw new Exception("'" + SCIMConstants.SCHEMA_URI_CORE +
+              "' must be declared in the schemas attribute.");
+    }
+  }
+
+
+
+  /**
+   * Special implicit schema processing for meta.attributes which contains
+   * the names of the attributes to remove from the Resource during a PATCH
+   * operation.  These each should be fully qualified with schema urn by the
+   * client, but if they are not we can try to determine the schema here.
+   *
+   * @param resourceDescriptor  The descriptor of the SCIM resource.
+   * @param jsonAttribute       The JSON value of the meta attribute.
+   */
+  private static void qualifyMetaAttributes(
+      final ResourceDescriptor resourceDescriptor,
+      final Object jsonAttribute)
+  {
+    try
+    {
+      JSONObject jsonMetaObj = ((JSONObject)jsonAttribute);
+      JSONArray metaAttrs = null;
+      final Iterator keys = jsonMetaObj.keys();
+      while (keys.hasNext())
+      {
+        final String key = (String) keys.next();
+        if ("attributes".equals(key.toLowerCase()))
+        {
+          Object attrObj = jsonMetaObj.get(key);
+          if (attrObj instanceof JSONArray)
+          {
+            metaAttrs = (JSONArray) attrObj;
+          }
+          break;
+        }
+      }
+      if (metaAttrs != null)
+      {
+        JSONArray newMetaAttrs = new JSONArray();
+        for (int i=0; i < metaAttrs.length(); i++)
+        {
+          String metaAttr = (String) metaAttrs.get(i);
+          String metaSchema = resourceDescriptor.findAttributeSchema(
+                  metaAttr);
+          // The schema returned will be null if attribute value was
+          // already fully qualified.
+          if (metaSchema != null)
+          {
+            metaAttr = metaSchema +
+                    SCIMConstants.SEPARATOR_CHAR_QUALIFIED_ATTRIBUTE +
+                    metaAttr;
+          }
+          newMetaAttrs.put(metaAttr);
+        }
+        jsonMetaObj.put("attributes", newMetaAttrs);
+      }
+    }
+    catch (Exception ignore)
+    {
+      // Don't fail because of implicit schema checking
+    }
+  }
+
+
+
+  /**
+   * Add an attribute to a SCIM object if it is not {@code null}.
+   *
+   * @param scimObject  The SCIM object.
+   * @param attribute   The attribute to be added, or {@code null}.
+   */
+  private static void addAttribute(final SCIMObject scimObject,
+                                   final SCIMAttribute attribute)
+  {
+    if (attribute != null)
+    {
+      scimObject.addAttribute(attribute);
+    }
+  }
+
+
+
   /**
    * Parse a simple attribute from its representation as a JSON Object.
    *
@@ -421,6 +742,154 @@ public class JsonParser
 
 
 
+  /**
+   * Read a SCIM attribute from a JSON value as it is parsed. The parser must
+   * be positioned at the start of the value, and on return it is positioned
+   * at the end of the value. Multi-valued and complex attributes are mapped
+   * as they are read, and any other values are read as JSON objects and
+   * created as they would be by {@link #create}.
+   *
+   * @param parser      The JSON parser.
+   * @param descriptor  The attribute descriptor.
+   *
+   * @return  The created SCIM attribute, or {@code null} if the value is null.
+   *
+   * @throws JSONException If the JSON value is not valid.
+   * @throws InvalidResourceException If a schema error occurs.
+   */
+  protected SCIMAttribute readAttribute(
+      final JsonStreamParser parser, final AttributeDescriptor descriptor)
+      throws JSONException, InvalidResourceException
+  {
+    final JsonStreamParser.Token token = parser.getCurrentToken();
+    if (descriptor.isMultiValued() &&
+        token == JsonStreamParser.Token.START_ARRAY)
+    {
+      return readMultiValuedAttribute(parser, descriptor);
+    }
+    else if (!descriptor.isMultiValued() &&
+             descriptor.getDataType() == AttributeDescriptor.DataType.COMPLEX &&
+             token == JsonStreamParser.Token.START_OBJECT)
+    {
+      return SCIMAttribute.create(descriptor,
+                                  readComplexValue(parser, descriptor));
+    }
+    else
+    {
+      return create(descriptor, parser.readTree());
+    }
+  }
+
+
+
+  /**
+   * Read a multi-valued attribute from a JSON array as it is parsed.
+   *
+   * @param parser      The JSON parser, positioned at the start of the array.
+   * @param descriptor  The attribute descriptor.
+   *
+   * @return The parsed attribute, or {@code null} if there are no non-null
+   *         values in the array.
+   *
+   * @throws JSONException If the JSON array is not valid.
+   * @throws InvalidResourceException if a schema error occurs.
+   */
+  private SCIMAttribute readMultiValuedAttribute(
+      final JsonStreamParser parser, final AttributeDescriptor descriptor)
+      throws JSONException, InvalidResourceException
+  {
+    final List<SCIMAttributeValue> values = new ArrayList<SCIMAttributeValue>();
+
+    JsonStreamParser.Token token;
+    while ((token = parser.nextToken()) != JsonStreamParser.Token.END_ARRAY)
+    {
+      if (token == JsonStreamParser.Token.VALUE_NULL)
+      {
+        continue;
+      }
+
+      SCIMAttributeValue value;
+      if (token == JsonStreamParser.Token.START_OBJECT)
+      {
+        value = readComplexValue(parser, descriptor);
+      }
+      else
+      {
+        SCIMAttribute subAttr = SCIMAttribute.create(
+            descriptor.getSubAttribute("value"),
+            SCIMAttributeValue.createValue(descriptor.getDataType(),
+                                           parser.readTree().toString()));
+        value = SCIMAttributeValue.createComplexValue(subAttr);
+      }
+      values.add(value);
+    }
+
+    if (values.isEmpty())
+    {
+      return null;
+    }
+
+    SCIMAttributeValue[] vals =
+        new SCIMAttributeValue[values.size()];
+    vals = values.toArray(vals);
+    return SCIMAttribute.create(descriptor, vals);
+  }
+
+
+
+  /**
+   * Read a complex attribute value from a JSON object as it is parsed.
+   *
+   * @param parser      The JSON parser, positioned at the start of the object.
+   * @param descriptor  The attribute descriptor.
+   *
+   * @return The parsed attribute value.
+   *
+   * @throws JSONException If the JSON object is not valid.
+   * @throws InvalidResourceException if a schema error occurs.
+   */
+  private SCIMAttributeValue readComplexValue(
+      final JsonStreamParser parser, final AttributeDescriptor descriptor)
+      throws JSONException, InvalidResourceException
+  {
+    final List<SCIMAttribute> complexAttrs = new ArrayList<SCIMAttribute>();
+    while (parser.nextToken() == JsonStreamParser.Token.FIELD_NAME)
+    {
+      final String key = parser.getText();
+      final JsonStreamParser.Token token = parser.nextToken();
+      final AttributeDescriptor subAttribute = descriptor.getSubAttribute(key);
+      if (subAttribute == null)
+      {
+        parser.skipChildren();
+        continue;
+      }
+
+      SCIMAttribute childAttr = null;
+      // Allow multi-valued sub-attribute as the resource schema needs this.
+      if (subAttribute.isMultiValued())
+      {
+        if (token != JsonStreamParser.Token.START_ARRAY)
+        {
+          throw new JSONException("JSONObject[" + JSONObject.quote(key) +
+                                  "] is not a JSONArray.");
+        }
+        childAttr = readMultiValuedAttribute(parser, subAttribute);
+      }
+      else if (token != JsonStreamParser.Token.VALUE_NULL)
+      {
+        childAttr = createSimpleAttribute(parser.readTree(), subAttribute);
+      }
+      if (childAttr != null)
+      {
+        complexAttrs.add(childAttr);
+      }
+    }
+
+    return SCIMAttributeValue.createComplexValue(complexAttrs);
+  }
+
+
+
   /**
    * Returns a copy of the specified JSONObject with all the keys lower-cased.
    * This makes it much easier to use methods like JSONObject.opt() to find a
@@ -305,6 +305,92 @@ public class JsonStreamMarshaller implements StreamMarshaller
 
 
 
+  /**
+   * {@inheritDoc}
+   */
+  public void writeResourcesStart(final Set<String> schemaURIs)
+      throws SCIMException
+  {
+    try
+    {
+      jsonWriter.object();
+
+      // Write the schemas.
+      jsonWriter.key(SCIMConstants.SCHEMAS_ATTRIBUTE_NAME);
+      jsonWriter.array();
+      for (final String schemaURI : schemaURIs)
+      {
+        jsonWriter.value(schemaURI);
+      }
+      jsonWriter.endArray();
+
+      // Write the resources.
+      jsonWriter.key("Resources");
+      jsonWriter.array();
+    }
+    catch (JSONException e)
+    {
+      Debug.debugException(e);
+      throw new ServerErrorException(
+          "Cannot write start of resources response: " + e.getMessage());
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public void writeResource(final BaseResource resource)
+      throws SCIMException
+  {
+    try
+    {
+      marshal(resource, false);
+    }
+    catch (JSONException e)
+    {
+      Debug.debugException(e);
+      throw new ServerErrorException(
+          "Cannot write resource: " + e.getMessage());
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public void writeResourcesFinish(final long totalResults,
+                                   final int itemsPerPage,
+                                   final long startIndex)
+      throws SCIMException
+  {
+    try
+    {
+      jsonWriter.endArray();
+
+      jsonWriter.key("totalResults");
+      jsonWriter.value(totalResults);
+
+      jsonWriter.key("itemsPerPage");
+      jsonWriter.value(itemsPerPage);
+
+      jsonWriter.key("startIndex");
+      jsonWriter.value(startIndex);
+
+      jsonWriter.endObject();
+    }
+    catch (JSONException e)
+    {
+      Debug.debugException(e);
+      throw new ServerErrorException(
+          "Cannot write end of resources response: " + e.getMessage());
+    }
+  }
+
+
+
   /**
    * {@inheritDoc}
    */
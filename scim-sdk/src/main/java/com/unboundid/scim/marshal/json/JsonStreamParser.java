@@ -0,0 +1,740 @@
+/*
+ * Copyright 2012-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.marshal.json;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+
+
+/**
+ * This class is a pull parser that reads JSON text as a sequence of tokens,
+ * so that a document can be mapped as it is read rather than being
+ * materialized as a tree of JSON objects first. It accepts the same relaxed
+ * syntax as the org.json tokener: unquoted and single-quoted strings, '=' or
+ * '=>' after keys, ';' between values, and trailing separators.
+ */
+public final class JsonStreamParser
+{
+  /**
+   * The types of token that may be read.
+   */
+  public enum Token
+  {
+    /**
+     * The start of a JSON object.
+     */
+    START_OBJECT,
+
+    /**
+     * The end of a JSON object.
+     */
+    END_OBJECT,
+
+    /**
+     * The start of a JSON array.
+     */
+    START_ARRAY,
+
+    /**
+     * The end of a JSON array.
+     */
+    END_ARRAY,
+
+    /**
+     * The name of a member of a JSON object.
+     */
+    FIELD_NAME,
+
+    /**
+     * A string value.
+     */
+    VALUE_STRING,
+
+    /**
+     * A numeric value.
+     */
+    VALUE_NUMBER,
+
+    /**
+     * The literal value true.
+     */
+    VALUE_TRUE,
+
+    /**
+     * The literal value false.
+     */
+    VALUE_FALSE,
+
+    /**
+     * The literal value null.
+     */
+    VALUE_NULL
+  }
+
+  // The parser states, describing what may follow the current token.
+  private static final int EXPECT_VALUE = 0;
+  private static final int EXPECT_FIRST_VALUE = 1;
+  private static final int EXPECT_KEY = 2;
+  private static final int EXPECT_FIRST_KEY = 3;
+  private static final int EXPECT_SEPARATOR = 4;
+  private static final int EXPECT_END = 5;
+
+  private final Reader reader;
+  private final char[] buffer = new char[8192];
+  private int bufferPos = 0;
+  private int bufferLimit = 0;
+  private long position = 0;
+  private int pushedBack = -2;
+
+  private final StringBuilder textBuilder = new StringBuilder();
+  private boolean[] containerIsObject = new boolean[16];
+  private int depth = 0;
+  private int state = EXPECT_VALUE;
+  private Token currentToken;
+  private String text;
+  private boolean syntaxErrorRaised;
+
+
+
+  /**
+   * Create a new parser to read JSON text from the provided input stream.
+   *
+   * @param inputStream  The input stream containing the JSON text.
+   */
+  public JsonStreamParser(final InputStream inputStream)
+  {
+    this.reader = new InputStreamReader(inputStream);
+  }
+
+
+
+  /**
+   * Create a new parser to read JSON text from the provided reader.
+   *
+   * @param reader  The reader containing the JSON text.
+   */
+  public JsonStreamParser(final Reader reader)
+  {
+    this.reader = reader;
+  }
+
+
+
+  /**
+   * Read the next token.
+   *
+   * @return  The next token, or {@code null} if the complete JSON text has
+   *          been read.
+   *
+   * @throws JSONException  If the JSON text is malformed or could not be read.
+   */
+  public Token nextToken()
+      throws JSONException
+  {
+    text = null;
+    for (;;)
+    {
+      int c;
+      switch (state)
+      {
+        case EXPECT_END:
+          currentToken = null;
+          return null;
+
+        case EXPECT_SEPARATOR:
+          c = nextClean();
+          if (c == ',' || c == ';')
+          {
+            state = isInObject() ? EXPECT_KEY : EXPECT_VALUE;
+            continue;
+          }
+          if (c == '}' && isInObject())
+          {
+            return endContainer(Token.END_OBJECT);
+          }
+          if (c == ']' && isInArray())
+          {
+            return endContainer(Token.END_ARRAY);
+          }
+          throw syntaxError(isInObject() ? "Expected a ',' or '}'" :
+                                           "Expected a ',' or ']'");
+
+        case EXPECT_FIRST_KEY:
+        case EXPECT_KEY:
+          c = nextClean();
+          if (c == '}')
+          {
+            return endContainer(Token.END_OBJECT);
+          }
+          if (c == -1)
+          {
+            throw syntaxError("A JSONObject text must end with '}'");
+          }
+          if (c == '{' || c == '[')
+          {
+            throw syntaxError("Expected a key");
+          }
+          text = readScalar(c);
+
+          // The key is followed by ':'. We will also tolerate '=' or '=>'.
+          c = nextClean();
+          if (c == '=')
+          {
+            c = read();
+            if (c != '>')
+            {
+              unread(c);
+            }
+          }
+          else if (c != ':')
+          {
+            throw syntaxError("Expected a ':' after a key");
+          }
+          state = EXPECT_VALUE;
+          currentToken = Token.FIELD_NAME;
+          return currentToken;
+
+        default:
+          c = nextClean();
+          if (c == ']' && isInArray())
+          {
+            return endContainer(Token.END_ARRAY);
+          }
+          return readValue(c);
+      }
+    }
+  }
+
+
+
+  /**
+   * Retrieve the current token.
+   *
+   * @return  The current token, or {@code null} if no token has been read or
+   *          the complete JSON text has been read.
+   */
+  public Token getCurrentToken()
+  {
+    return currentToken;
+  }
+
+
+
+  /**
+   * Retrieve the text of the current token, if it is a field name or a
+   * scalar value. The literal values are returned as "true", "false" and
+   * "null".
+   *
+   * @return  The text of the current token, or {@code null} if the current
+   *          token is the start or end of a container.
+   */
+  public String getText()
+  {
+    return text;
+  }
+
+
+
+  /**
+   * Retrieve the number of objects and arrays that enclose the current
+   * position, including the current token if it is the start of a
+   * container.
+   *
+   * @return  The current nesting depth.
+   */
+  public int getDepth()
+  {
+    return depth;
+  }
+
+
+
+  /**
+   * Determine whether this parser has reported a syntax error, after which
+   * no further tokens can be read.
+   *
+   * @return  {@code true} if this parser has reported a syntax error.
+   */
+  public boolean isSyntaxErrorRaised()
+  {
+    return syntaxErrorRaised;
+  }
+
+
+
+  /**
+   * Skip the remainder of the current value. If the current token is the
+   * start of an object or an array, the tokens up to and including the
+   * matching end token are skipped. Otherwise nothing is skipped.
+   *
+   * @throws JSONException  If the JSON text is malformed or could not be read.
+   */
+  public void skipChildren()
+      throws JSONException
+  {
+    if (currentToken == Token.START_OBJECT || currentToken == Token.START_ARRAY)
+    {
+      skipToDepth(depth - 1);
+    }
+  }
+
+
+
+  /**
+   * Skip tokens until the nesting depth is no greater than the provided
+   * depth. This may be used to skip the rest of a container after an error
+   * was encountered while mapping its content.
+   *
+   * @param targetDepth  The nesting depth to skip to.
+   *
+   * @throws JSONException  If the JSON text is malformed or could not be read.
+   */
+  public void skipToDepth(final int targetDepth)
+      throws JSONException
+  {
+    while (depth > targetDepth)
+    {
+      if (nextToken() == null)
+      {
+        throw syntaxError("Unexpected end of JSON text");
+      }
+    }
+  }
+
+
+
+  /**
+   * Read the current value as an org.json value. The current token must be
+   * the start of a value, and the tokens up to the end of the value are read.
+   *
+   * @return  A {@code JSONObject}, {@code JSONArray}, {@code String},
+   *          {@code Number}, {@code Boolean} or {@code JSONObject.NULL}.
+   *
+   * @throws JSONException  If the JSON text is malformed or could not be read.
+   */
+  public Object readTree()
+      throws JSONException
+  {
+    if (currentToken == null)
+    {
+      throw syntaxError("Expected a value");
+    }
+
+    switch (currentToken)
+    {
+      case START_OBJECT:
+        final JSONObject jsonObject = new JSONObject();
+        while (nextToken() == Token.FIELD_NAME)
+        {
+          final String key = text;
+          nextToken();
+          if (jsonObject.has(key))
+          {
+            throw new JSONException("Duplicate key \"" + key + "\"");
+          }
+          jsonObject.put(key, readTree());
+        }
+        return jsonObject;
+
+      case START_ARRAY:
+        final JSONArray jsonArray = new JSONArray();
+        while (nextToken() != Token.END_ARRAY)
+        {
+          jsonArray.put(readTree());
+        }
+        return jsonArray;
+
+      case VALUE_STRING:
+        return text;
+
+      case VALUE_NUMBER:
+        return JSONObject.stringToValue(text);
+
+      case VALUE_TRUE:
+        return Boolean.TRUE;
+
+      case VALUE_FALSE:
+        return Boolean.FALSE;
+
+      case VALUE_NULL:
+        return JSONObject.NULL;
+
+      default:
+        throw syntaxError("Expected a value");
+    }
+  }
+
+
+
+  /**
+   * Create an exception describing a syntax error at the current position.
+   *
+   * @param message  The description of the error.
+   *
+   * @return  The exception to be thrown.
+   */
+  public JSONException syntaxError(final String message)
+  {
+    syntaxErrorRaised = true;
+    return new JSONException(message + " at character " + position);
+  }
+
+
+
+  /**
+   * Read a value starting with the provided character.
+   *
+   * @param c  The first character of the value.
+   *
+   * @return  The token that was read.
+   *
+   * @throws JSONException  If the JSON text is malformed or could not be read.
+   */
+  private Token readValue(final int c)
+      throws JSONException
+  {
+    switch (c)
+    {
+      case -1:
+        throw syntaxError("Unexpected end of JSON text");
+
+      case '{':
+        push(true);
+        state = EXPECT_FIRST_KEY;
+        currentToken = Token.START_OBJECT;
+        return currentToken;
+
+      case '[':
+        push(false);
+        state = EXPECT_FIRST_VALUE;
+        currentToken = Token.START_ARRAY;
+        return currentToken;
+
+      case '"':
+      case '\'':
+        text = readQuoted((char) c);
+        currentToken = Token.VALUE_STRING;
+        break;
+
+      default:
+        text = readUnquoted(c);
+        if (text.length() == 0)
+        {
+          throw syntaxError("Missing value");
+        }
+        if (text.equalsIgnoreCase("true"))
+        {
+          text = "true";
+          currentToken = Token.VALUE_TRUE;
+        }
+        else if (text.equalsIgnoreCase("false"))
+        {
+          text = "false";
+          currentToken = Token.VALUE_FALSE;
+        }
+        else if (text.equalsIgnoreCase("null"))
+        {
+          text = "null";
+          currentToken = Token.VALUE_NULL;
+        }
+        else
+        {
+          final char first = text.charAt(0);
+          currentToken = (first >= '0' && first <= '9') ||
+                         first == '-' || first == '.' || first == '+' ?
+                         Token.VALUE_NUMBER : Token.VALUE_STRING;
+        }
+    }
+
+    state = depth == 0 ? EXPECT_END : EXPECT_SEPARATOR;
+    return currentToken;
+  }
+
+
+
+  /**
+   * Read a key starting with the provided character.
+   *
+   * @param c  The first character of the key.
+   *
+   * @return  The key.
+   *
+   * @throws JSONException  If the JSON text is malformed or could not be read.
+   */
+  private String readScalar(final int c)
+      throws JSONException
+  {
+    if (c == '"' || c == '\'')
+    {
+      return readQuoted((char) c);
+    }
+
+    final String s = readUnquoted(c);
+    if (s.length() == 0)
+    {
+      throw syntaxError("Missing value");
+    }
+    return s;
+  }
+
+
+
+  /**
+   * Read the remainder of a quoted string.
+   *
+   * @param quote  The quote character that started the string.
+   *
+   * @return  The string.
+   *
+   * @throws JSONException  If the JSON text is malformed or could not be read.
+   */
+  private String readQuoted(final char quote)
+      throws JSONException
+  {
+    textBuilder.setLength(0);
+    for (;;)
+    {
+      int c = read();
+      switch (c)
+      {
+        case -1:
+        case '\n':
+        case '\r':
+          throw syntaxError("Unterminated string");
+
+        case '\\':
+          c = read();
+          switch (c)
+          {
+            case 'b':
+              textBuilder.append('\b');
+              break;
+            case 't':
+              textBuilder.append('\t');
+              break;
+            case 'n':
+              textBuilder.append('\n');
+              break;
+            case 'f':
+              textBuilder.append('\f');
+              break;
+            case 'r':
+              textBuilder.append('\r');
+              break;
+            case 'u':
+              int u = 0;
+              for (int i = 0; i < 4; i++)
+              {
+                final int digit = Character.digit(read(), 16);
+                if (digit < 0)
+                {
+                  throw syntaxError("Illegal escape.");
+                }
+                u = (u << 4) | digit;
+              }
+              textBuilder.append((char) u);
+              break;
+            case '"':
+            case '\'':
+            case '\\':
+            case '/':
+              textBuilder.append((char) c);
+              break;
+            default:
+              throw syntaxError("Illegal escape.");
+          }
+          break;
+
+        default:
+          if (c == quote)
+          {
+            return textBuilder.toString();
+          }
+          textBuilder.append((char) c);
+      }
+    }
+  }
+
+
+
+  /**
+   * Read an unquoted string, which ends at the first delimiter or control
+   * character.
+   *
+   * @param first  The first character of the string.
+   *
+   * @return  The trimmed string.
+   *
+   * @throws JSONException  If the JSON text could not be read.
+   */
+  private String readUnquoted(final int first)
+      throws JSONException
+  {
+    textBuilder.setLength(0);
+    int c = first;
+    while (c >= ' ' && ",:]}/\\\"[{;=#".indexOf(c) < 0)
+    {
+      textBuilder.append((char) c);
+      c = read();
+    }
+    unread(c);
+    return textBuilder.toString().trim();
+  }
+
+
+
+  /**
+   * Complete the current container.
+   *
+   * @param token  The token that ends the container.
+   *
+   * @return  The token.
+   */
+  private Token endContainer(final Token token)
+  {
+    depth--;
+    state = depth == 0 ? EXPECT_END : EXPECT_SEPARATOR;
+    currentToken = token;
+    return token;
+  }
+
+
+
+  /**
+   * Start a new container.
+   *
+   * @param isObject  {@code true} if the container is an object, or
+   *                  {@code false} if it is an array.
+   */
+  private void push(final boolean isObject)
+  {
+    if (depth == containerIsObject.length)
+    {
+      final boolean[] newStack = new boolean[depth * 2];
+      System.arraycopy(containerIsObject, 0, newStack, 0, depth);
+      containerIsObject = newStack;
+    }
+    containerIsObject[depth++] = isObject;
+  }
+
+
+
+  /**
+   * Determine whether the innermost container is an object.
+   *
+   * @return  {@code true} if the innermost container is an object.
+   */
+  private boolean isInObject()
+  {
+    return depth > 0 && containerIsObject[depth - 1];
+  }
+
+
+
+  /**
+   * Determine whether the innermost container is an array.
+   *
+   * @return  {@code true} if the innermost container is an array.
+   */
+  private boolean isInArray()
+  {
+    return depth > 0 && !containerIsObject[depth - 1];
+  }
+
+
+
+  /**
+   * Read the next character that is not whitespace.
+   *
+   * @return  The character, or -1 at the end of the input.
+   *
+   * @throws JSONException  If the JSON text could not be read.
+   */
+  private int nextClean()
+      throws JSONException
+  {
+    for (;;)
+    {
+      final int c = read();
+      if (c == -1 || c > ' ')
+      {
+        return c;
+      }
+    }
+  }
+
+
+
+  /**
+   * Read the next character.
+   *
+   * @return  The character, or -1 at the end of the input.
+   *
+   * @throws JSONException  If the JSON text could not be read.
+   */
+  private int read()
+      throws JSONException
+  {
+    if (pushedBack != -2)
+    {
+      final int c = pushedBack;
+      pushedBack = -2;
+      return c;
+    }
+
+    if (bufferPos == bufferLimit)
+    {
+      try
+      {
+        bufferLimit = reader.read(buffer, 0, buffer.length);
+      }
+      catch (IOException e)
+      {
+        throw new JSONException(e);
+      }
+      bufferPos = 0;
+      if (bufferLimit <= 0)
+      {
+        bufferLimit = 0;
+        return -1;
+      }
+    }
+
+    position++;
+    return buffer[bufferPos++];
+  }
+
+
+
+  /**
+   * Push back a character so that it is returned by the next read.
+   *
+   * @param c  The character, or -1 at the end of the input.
+   */
+  private void unread(final int c)
+  {
+    pushedBack = c;
+  }
+}
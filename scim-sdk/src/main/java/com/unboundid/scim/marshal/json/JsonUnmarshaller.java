@@ -32,7 +32,6 @@ import com.unboundid.scim.sdk.ServerErrorException;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
 import java.io.BufferedInputStream;
 import java.io.File;
@@ -46,6 +45,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import static com.unboundid.scim.marshal.json.JsonParser.makeCaseInsensitive;
+import static com.unboundid.scim.sdk.StaticUtils.toLowerCase;
 
 
 
@@ -65,12 +65,11 @@ public class JsonUnmarshaller implements Unmarshaller
   {
     try
     {
-      final JSONObject jsonObject =
-            makeCaseInsensitive(new JSONObject(new JSONTokener(inputStream)));
+      final JsonStreamParser streamParser = startObject(inputStream);
 
       final JsonParser parser = new JsonParser();
-      return parser.unmarshal(jsonObject, resourceDescriptor, resourceFactory,
-                              null);
+      return parser.unmarshal(streamParser, resourceDescriptor,
+                              resourceFactory, null);
     }
     catch(JSONException e)
     {
@@ -90,8 +89,67 @@ public class JsonUnmarshaller implements Unmarshaller
     try
     {
       final JsonParser parser = new JsonParser();
-      final JSONObject jsonObject =
-              makeCaseInsensitive(new JSONObject(new JSONTokener(inputStream)));
+      final JsonStreamParser streamParser = startObject(inputStream);
+
+      // The members other than the resources are kept with lower-cased keys
+      // in case this is not a list response.
+      final JSONObject jsonObject = new JSONObject();
+      JSONArray schemas = null;
+      boolean schemasRead = false;
+      JSONArray resourcesArray = null;
+      List<R> resources = Collections.emptyList();
+
+      while (streamParser.nextToken() == JsonStreamParser.Token.FIELD_NAME)
+      {
+        final String key = toLowerCase(streamParser.getText());
+        streamParser.nextToken();
+
+        if (key.equals("resources") && schemasRead)
+        {
+          // The resources can be read as they are parsed once the schemas
+          // are known.
+          if (streamParser.getCurrentToken() !=
+              JsonStreamParser.Token.START_ARRAY)
+          {
+            throw new JSONException(
+                "JSONObject[\"resources\"] is not a JSONArray.");
+          }
+          resources = new ArrayList<R>();
+          resourcesArray = null;
+          while (streamParser.nextToken() != JsonStreamParser.Token.END_ARRAY)
+          {
+            if (streamParser.getCurrentToken() !=
+                JsonStreamParser.Token.START_OBJECT)
+            {
+              throw new JSONException("JSONArray[" + resources.size() +
+                                      "] is not a JSONObject.");
+            }
+            resources.add(parser.unmarshal(streamParser, resourceDescriptor,
+                                           resourceFactory, schemas));
+          }
+          jsonObject.put(key, new JSONArray());
+        }
+        else if (key.equals("resources"))
+        {
+          final Object value = streamParser.readTree();
+          if (!(value instanceof JSONArray))
+          {
+            throw new JSONException(
+                "JSONObject[\"resources\"] is not a JSONArray.");
+          }
+          resourcesArray = (JSONArray) value;
+          jsonObject.put(key, resourcesArray);
+        }
+        else
+        {
+          jsonObject.put(key, streamParser.readTree());
+          if (key.equals("schemas"))
+          {
+            schemas = jsonObject.optJSONArray("schemas");
+            schemasRead = true;
+          }
+        }
+      }
 
       int totalResults = 0;
       if(jsonObject.has("totalresults"))
@@ -105,12 +163,8 @@ public class JsonUnmarshaller implements Unmarshaller
         startIndex = jsonObject.getInt("startindex");
       }
 
-      final JSONArray schemas = jsonObject.optJSONArray("schemas");
-
-      List<R> resources = Collections.emptyList();
-      if(jsonObject.has("resources"))
+      if(resourcesArray != null)
       {
-        JSONArray resourcesArray = jsonObject.getJSONArray("resources");
         resources = new ArrayList<R>(resourcesArray.length());
         for(int i = 0; i < resourcesArray.length(); i++)
         {
@@ -171,19 +225,36 @@ public class JsonUnmarshaller implements Unmarshaller
   {
     try
     {
-      final JSONObject jsonObject =
-          makeCaseInsensitive(new JSONObject(new JSONTokener(inputStream)));
+      final JsonStreamParser streamParser = startObject(inputStream);
 
-      if(jsonObject.has("errors"))
+      while (streamParser.nextToken() == JsonStreamParser.Token.FIELD_NAME)
       {
-        JSONArray errors = jsonObject.getJSONArray("errors");
-        if(errors.length() >= 1)
+        final String key = toLowerCase(streamParser.getText());
+        streamParser.nextToken();
+        if (!key.equals("errors"))
+        {
+          streamParser.skipChildren();
+          continue;
+        }
+
+        if (streamParser.getCurrentToken() !=
+            JsonStreamParser.Token.START_ARRAY)
+        {
+          throw new JSONException(
+              "JSONObject[\"errors\"] is not a JSONArray.");
+        }
+        if (streamParser.nextToken() != JsonStreamParser.Token.END_ARRAY)
         {
-          JSONObject error = errors.getJSONObject(0);
-          int code = error.optInt("code");
-          String description = error.optString("description");
+          final Object error = streamParser.readTree();
+          if (!(error instanceof JSONObject))
+          {
+            throw new JSONException("JSONArray[0] is not a JSONObject.");
+          }
+          int code = ((JSONObject) error).optInt("code");
+          String description = ((JSONObject) error).optString("description");
           return SCIMException.createException(code, description);
         }
+        return null;
       }
       return null;
     }
@@ -196,6 +267,29 @@ public class JsonUnmarshaller implements Unmarshaller
 
 
 
+  /**
+   * Create a JSON parser to read a JSON object from an input stream, and read
+   * the start of the object.
+   *
+   * @param inputStream  The input stream containing the JSON object.
+   *
+   * @return  The JSON parser, positioned at the start of the object.
+   *
+   * @throws JSONException  If the input does not begin with a JSON object.
+   */
+  private static JsonStreamParser startObject(final InputStream inputStream)
+      throws JSONException
+  {
+    final JsonStreamParser streamParser = new JsonStreamParser(inputStream);
+    if (streamParser.nextToken() != JsonStreamParser.Token.START_OBJECT)
+    {
+      throw streamParser.syntaxError("A JSONObject text must begin with '{'");
+    }
+    return streamParser;
+  }
+
+
+
   /**
    * {@inheritDoc}
    */
@@ -232,27 +326,19 @@ public class JsonUnmarshaller implements Unmarshaller
     };
     try
     {
-      final FileInputStream fileInputStream = new FileInputStream(file);
+      final InputStream inputStream =
+          new BufferedInputStream(new FileInputStream(file));
       try
       {
-        final BufferedInputStream bufferedInputStream =
-            new BufferedInputStream(fileInputStream);
-        try
-        {
-          final JsonBulkParser jsonBulkParser =
-              new JsonBulkParser(bufferedInputStream, bulkConfig,
-                                 preProcessHandler);
-          jsonBulkParser.setSkipOperations(true);
-          jsonBulkParser.unmarshal();
-        }
-        finally
-        {
-          bufferedInputStream.close();
-        }
+        final JsonBulkParser jsonBulkParser =
+            new JsonBulkParser(inputStream, bulkConfig,
+                               preProcessHandler);
+        jsonBulkParser.setSkipOperations(true);
+        jsonBulkParser.unmarshal();
       }
       finally
       {
-        fileInputStream.close();
+        inputStream.close();
       }
     }
     catch (IOException e)
@@ -271,25 +357,17 @@ public class JsonUnmarshaller implements Unmarshaller
     // Second pass: Parse fully.
     try
     {
-      final FileInputStream fileInputStream = new FileInputStream(file);
+      final InputStream inputStream =
+          new BufferedInputStream(new FileInputStream(file));
       try
       {
-        final BufferedInputStream bufferedInputStream =
-            new BufferedInputStream(fileInputStream);
-        try
-        {
-          final JsonBulkParser jsonBulkParser =
-              new JsonBulkParser(bufferedInputStream, bulkConfig, handler);
-          jsonBulkParser.unmarshal();
-        }
-        finally
-        {
-          bufferedInputStream.close();
-        }
+        final JsonBulkParser jsonBulkParser =
+            new JsonBulkParser(inputStream, bulkConfig, handler);
+        jsonBulkParser.unmarshal();
       }
       finally
       {
-        fileInputStream.close();
+        inputStream.close();
       }
     }
     catch (IOException e)
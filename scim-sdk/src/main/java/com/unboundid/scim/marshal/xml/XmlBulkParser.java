@@ -35,7 +35,6 @@ import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.SCIMObject;
 import com.unboundid.scim.sdk.Status;
 
-import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import java.io.InputStream;
@@ -103,14 +102,10 @@ public class XmlBulkParser
   public void unmarshal()
       throws SCIMException
   {
-    final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
     try
     {
-      // Increase protection against XML bombs (DS-8081).
-      xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
-
       xmlStreamReader =
-          xmlInputFactory.createXMLStreamReader(bulkInputStream, "UTF-8");
+          XmlUnmarshaller.createXMLStreamReader(bulkInputStream, "UTF-8");
       try
       {
         xmlStreamReader.require(START_DOCUMENT, null, null);
@@ -20,6 +20,7 @@ package com.unboundid.scim.marshal.xml;
 import com.unboundid.scim.data.BaseResource;
 import com.unboundid.scim.marshal.Marshaller;
 import com.unboundid.scim.sdk.SCIMException;
+import com.unboundid.scim.sdk.StreamingResources;
 import com.unboundid.scim.sdk.Resources;
 import com.unboundid.scim.sdk.BulkOperation;
 
@@ -54,6 +55,27 @@ public class XmlMarshaller implements Marshaller
   }
 
 
+  /**
+   * {@inheritDoc}
+   */
+  public void marshal(final StreamingResources response,
+                      final OutputStream outputStream)
+      throws SCIMException
+  {
+    final XmlStreamMarshaller streamMarshaller =
+        new XmlStreamMarshaller(outputStream);
+    try
+    {
+      response.marshal(streamMarshaller);
+    }
+    finally
+    {
+      streamMarshaller.close();
+    }
+  }
+
+
+
   /**
    * {@inheritDoc}
    */
@@ -261,6 +261,96 @@ public class XmlStreamMarshaller implements StreamMarshaller
   }
 
 
+  /**
+   * {@inheritDoc}
+   */
+  public void writeResourcesStart(final Set<String> schemaURIs)
+      throws SCIMException
+  {
+    try
+    {
+      xmlStreamWriter.writeStartDocument("UTF-8", "1.0");
+
+      xmlStreamWriter.setPrefix(SCIMConstants.DEFAULT_SCHEMA_PREFIX,
+          SCIMConstants.SCHEMA_URI_CORE);
+      xmlStreamWriter.setPrefix("xsi", xsiURI);
+      xmlStreamWriter.writeStartElement(SCIMConstants.SCHEMA_URI_CORE,
+          "Response");
+      xmlStreamWriter.writeNamespace(SCIMConstants.DEFAULT_SCHEMA_PREFIX,
+          SCIMConstants.SCHEMA_URI_CORE);
+      xmlStreamWriter.writeNamespace("xsi", xsiURI);
+
+      xmlStreamWriter.writeStartElement("Resources");
+    }
+    catch (XMLStreamException e)
+    {
+      Debug.debugException(e);
+      throw new ServerErrorException(
+          "Cannot write start of resources: " + e.getMessage());
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public void writeResource(final BaseResource resource)
+      throws SCIMException
+  {
+    try
+    {
+      xmlStreamWriter.writeStartElement("Resource");
+      marshal(resource, xmlStreamWriter, xsiURI);
+      xmlStreamWriter.writeEndElement();
+    }
+    catch (XMLStreamException e)
+    {
+      Debug.debugException(e);
+      throw new ServerErrorException(
+          "Cannot write resource: " + e.getMessage());
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public void writeResourcesFinish(final long totalResults,
+                                   final int itemsPerPage,
+                                   final long startIndex)
+      throws SCIMException
+  {
+    try
+    {
+      xmlStreamWriter.writeEndElement();
+
+      xmlStreamWriter.writeStartElement("totalResults");
+      xmlStreamWriter.writeCharacters(Long.toString(totalResults));
+      xmlStreamWriter.writeEndElement();
+
+      xmlStreamWriter.writeStartElement("itemsPerPage");
+      xmlStreamWriter.writeCharacters(Integer.toString(itemsPerPage));
+      xmlStreamWriter.writeEndElement();
+
+      xmlStreamWriter.writeStartElement("startIndex");
+      xmlStreamWriter.writeCharacters(Long.toString(startIndex));
+      xmlStreamWriter.writeEndElement();
+
+      xmlStreamWriter.writeEndElement();
+      xmlStreamWriter.writeEndDocument();
+    }
+    catch (XMLStreamException e)
+    {
+      Debug.debugException(e);
+      throw new ServerErrorException(
+          "Cannot write end of resources: " + e.getMessage());
+    }
+  }
+
+
+
   /**
    * {@inheritDoc}
    */
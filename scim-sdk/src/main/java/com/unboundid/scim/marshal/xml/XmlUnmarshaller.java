@@ -32,14 +32,11 @@ import com.unboundid.scim.sdk.SCIMAttributeValue;
 import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.SCIMObject;
 import com.unboundid.scim.sdk.ServerErrorException;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 import javax.xml.bind.DatatypeConverter;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -50,39 +47,73 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import static javax.xml.stream.XMLStreamConstants.CDATA;
+import static javax.xml.stream.XMLStreamConstants.CHARACTERS;
+import static javax.xml.stream.XMLStreamConstants.DTD;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.ENTITY_REFERENCE;
+import static javax.xml.stream.XMLStreamConstants.SPACE;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
 
 
 /**
  * This class provides a SCIM object un-marshaller implementation to read SCIM
- * objects from their XML representation.
+ * objects from their XML representation. Resources are read with a streaming
+ * XML reader and mapped to SCIM objects as the elements are read.
  */
 public class XmlUnmarshaller implements Unmarshaller
 {
   /**
-   * Create a document builder that is better protected against attacks from
+   * The factory used to create XML stream readers. It is configured once and
+   * shared, since looking up and configuring a factory for each document is
+   * relatively expensive.
+   */
+  private static final XMLInputFactory XML_INPUT_FACTORY =
+      createXMLInputFactory();
+
+
+
+  /**
+   * Create an XML input factory that is better protected against attacks from
    * XML bombs.
    *
-   * @return  A document builder.
-   *
-   * @throws javax.xml.parsers.ParserConfigurationException
-   *         If the document builder could not be created.
+   * @return  An XML input factory.
    */
-  private DocumentBuilder createDocumentBuilder()
-      throws javax.xml.parsers.ParserConfigurationException
+  private static XMLInputFactory createXMLInputFactory()
   {
-    final DocumentBuilderFactory dbFactory =
-        DocumentBuilderFactory.newInstance();
+    final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
 
     // Increase protection against XML bombs (DS-8081).
-    dbFactory.setFeature(
-        "http://apache.org/xml/features/disallow-doctype-decl",
-        true);
+    xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+
+    return xmlInputFactory;
+  }
 
-    dbFactory.setNamespaceAware(true);
-    dbFactory.setIgnoringElementContentWhitespace(true);
-    dbFactory.setValidating(false);
 
-    return dbFactory.newDocumentBuilder();
+
+  /**
+   * Create an XML stream reader to read from the provided input stream.
+   *
+   * @param inputStream  The input stream containing the XML document.
+   * @param encoding     The character encoding of the document, or
+   *                     {@code null} if it should be determined from the
+   *                     document.
+   *
+   * @return  An XML stream reader.
+   *
+   * @throws XMLStreamException  If the reader could not be created.
+   */
+  static XMLStreamReader createXMLStreamReader(final InputStream inputStream,
+                                               final String encoding)
+      throws XMLStreamException
+  {
+    if (encoding == null)
+    {
+      return XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+    }
+    return XML_INPUT_FACTORY.createXMLStreamReader(inputStream, encoding);
   }
 
 
@@ -96,95 +127,110 @@ public class XmlUnmarshaller implements Unmarshaller
       final ResourceFactory<R> resourceFactory)
       throws InvalidResourceException
   {
-    final Document doc;
     try
     {
-      doc = createDocumentBuilder().parse(inputStream);
-      doc.getDocumentElement().normalize();
+      final XMLStreamReader reader = createXMLStreamReader(inputStream, null);
+      try
+      {
+        readDocumentElement(reader);
+
+        // TODO: Should we check to make sure the doc name matches the
+        // resource name?
+        //documentElement.getLocalName());
+        if (resourceDescriptor == null)
+        {
+          throw new RuntimeException("No resource descriptor found for " +
+              reader.getLocalName());
+        }
+
+        final String documentNamespaceURI = getNamespaceURI(reader);
+        return unmarshal(reader, documentNamespaceURI, resourceDescriptor,
+                         resourceFactory);
+      }
+      finally
+      {
+        reader.close();
+      }
     }
-    catch (Exception e)
+    catch (XMLStreamException e)
     {
       throw new InvalidResourceException("Error reading XML: " +
           e.getMessage(), e);
     }
-
-    final Element documentElement = doc.getDocumentElement();
-
-    // TODO: Should we check to make sure the doc name matches the
-    // resource name?
-    //documentElement.getLocalName());
-    if (resourceDescriptor == null)
-    {
-      throw new RuntimeException("No resource descriptor found for " +
-          documentElement.getLocalName());
-    }
-
-    final String documentNamespaceURI = documentElement.getNamespaceURI();
-    return unmarshal(documentNamespaceURI, documentElement.getChildNodes(),
-        resourceDescriptor, resourceFactory);
   }
 
   /**
-   * Read an SCIM resource from the specified node.
+   * Read an SCIM resource from the child elements of the current element,
+   * and leave the reader positioned on the END_ELEMENT.
    *
+   * @param reader The XML stream reader, positioned on the START_ELEMENT of
+   *               the resource.
    * @param documentNamespaceURI The namespace URI of XML document.
    * @param <R> The type of resource instance.
-   * @param nodeList  The attribute nodes to be read.
    * @param resourceDescriptor The descriptor of the SCIM resource to be read.
    * @param resourceFactory The resource factory to use to create the resource
    *                        instance.
    *
    * @return  The SCIM resource that was read.
+   * @throws XMLStreamException If the XML could not be parsed.
    * @throws com.unboundid.scim.sdk.InvalidResourceException if an error occurs.
    */
   private <R extends BaseResource> R unmarshal(
+      final XMLStreamReader reader,
       final String documentNamespaceURI,
-      final NodeList nodeList, final ResourceDescriptor resourceDescriptor,
-      final ResourceFactory<R> resourceFactory) throws InvalidResourceException
+      final ResourceDescriptor resourceDescriptor,
+      final ResourceFactory<R> resourceFactory)
+      throws XMLStreamException, InvalidResourceException
   {
     SCIMObject scimObject = new SCIMObject();
-    for (int i = 0; i < nodeList.getLength(); i++)
-    {
-      final Node element = nodeList.item(i);
-      if(element.getNodeType() != Node.ELEMENT_NODE)
-      {
-        continue;
-      }
 
-      String namespaceURI = element.getNamespaceURI();
-      if (namespaceURI == null)
+    loop:
+    while (reader.hasNext())
+    {
+      switch (reader.next())
       {
-        // Try to find the appropriate schema
-        namespaceURI =
-                resourceDescriptor.findAttributeSchema(element.getLocalName(),
+        case START_ELEMENT:
+          String namespaceURI = getNamespaceURI(reader);
+          if (namespaceURI == null)
+          {
+            // Try to find the appropriate schema
+            namespaceURI =
+                resourceDescriptor.findAttributeSchema(reader.getLocalName(),
                                                        documentNamespaceURI);
-        if (namespaceURI == null)
-        {
-          // Fall back to this if we couldn't find it above
-          namespaceURI = documentNamespaceURI;
-        }
-      }
+            if (namespaceURI == null)
+            {
+              // Fall back to this if we couldn't find it above
+              namespaceURI = documentNamespaceURI;
+            }
+          }
 
-      final AttributeDescriptor attributeDescriptor =
-          resourceDescriptor.getAttribute(namespaceURI, element.getLocalName());
+          final AttributeDescriptor attributeDescriptor =
+              resourceDescriptor.getAttribute(namespaceURI,
+                                              reader.getLocalName());
 
-      final SCIMAttribute attr;
-      if (attributeDescriptor.isMultiValued())
-      {
-        attr = createMultiValuedAttribute(element, attributeDescriptor);
-      }
-      else if (attributeDescriptor.getDataType() ==
-          AttributeDescriptor.DataType.COMPLEX)
-      {
-        attr = SCIMAttribute.create(attributeDescriptor,
-            createComplexAttribute(element, attributeDescriptor));
-      }
-      else
-      {
-        attr = createSimpleAttribute(element, attributeDescriptor);
-      }
+          final SCIMAttribute attr;
+          if (attributeDescriptor.isMultiValued())
+          {
+            attr = createMultiValuedAttribute(reader, attributeDescriptor);
+          }
+          else if (attributeDescriptor.getDataType() ==
+              AttributeDescriptor.DataType.COMPLEX)
+          {
+            attr = SCIMAttribute.create(attributeDescriptor,
+                createComplexAttribute(reader, attributeDescriptor,
+                    new ArrayList<SCIMAttribute>()));
+          }
+          else
+          {
+            attr = createSimpleAttribute(reader, attributeDescriptor);
+          }
+
+          scimObject.addAttribute(attr);
+          break;
 
-      scimObject.addAttribute(attr);
+        case END_ELEMENT:
+          break loop;
+      }
     }
     return resourceFactory.createResource(resourceDescriptor, scimObject);
   }
@@ -197,54 +243,81 @@ public class XmlUnmarshaller implements Unmarshaller
       final ResourceDescriptor resourceDescriptor,
       final ResourceFactory<R> resourceFactory) throws InvalidResourceException
   {
-    final Document doc;
     try
     {
-      doc = createDocumentBuilder().parse(inputStream);
-      doc.getDocumentElement().normalize();
-    }
-    catch (Exception e)
-    {
-      throw new InvalidResourceException("Error reading XML: " +
-          e.getMessage(), e);
-    }
+      final XMLStreamReader reader = createXMLStreamReader(inputStream, null);
+      try
+      {
+        readDocumentElement(reader);
+        final String documentNamespaceURI = getNamespaceURI(reader);
 
-    final String documentNamespaceURI =
-        doc.getDocumentElement().getNamespaceURI();
-    final NodeList nodeList = doc.getElementsByTagName("*");
+        int totalResults = 0;
+        int startIndex = 1;
+        List<R> objects = Collections.emptyList();
 
-    int totalResults = 0;
-    int startIndex = 1;
-    List<R> objects = Collections.emptyList();
-    for (int i = 0; i < nodeList.getLength(); i++)
-    {
-      final Node element = nodeList.item(i);
-      if(element.getLocalName().equals("totalResults"))
-      {
-        totalResults = Integer.valueOf(element.getTextContent());
-      }
-      else if(element.getLocalName().equals("startIndex"))
-      {
-        startIndex = Integer.valueOf(element.getTextContent());
-      }
-      else if(element.getLocalName().equals("Resources"))
-      {
-        NodeList resources = element.getChildNodes();
-        objects = new ArrayList<R>(resources.getLength());
-        for(int j = 0; j < resources.getLength(); j++)
+        loop:
+        while (reader.hasNext())
         {
-          Node resource = resources.item(j);
-          if(resource.getLocalName().equals("Resource"))
+          switch (reader.next())
           {
-            objects.add(
-                unmarshal(documentNamespaceURI, resource.getChildNodes(),
-                    resourceDescriptor, resourceFactory));
+            case START_ELEMENT:
+              if(reader.getLocalName().equals("totalResults"))
+              {
+                totalResults = Integer.valueOf(readText(reader));
+              }
+              else if(reader.getLocalName().equals("startIndex"))
+              {
+                startIndex = Integer.valueOf(readText(reader));
+              }
+              else if(reader.getLocalName().equals("Resources"))
+              {
+                objects = new ArrayList<R>();
+                resources:
+                while (reader.hasNext())
+                {
+                  switch (reader.next())
+                  {
+                    case START_ELEMENT:
+                      if(reader.getLocalName().equals("Resource"))
+                      {
+                        objects.add(
+                            unmarshal(reader, documentNamespaceURI,
+                                      resourceDescriptor, resourceFactory));
+                      }
+                      else
+                      {
+                        skipElement(reader);
+                      }
+                      break;
+
+                    case END_ELEMENT:
+                      break resources;
+                  }
+                }
+              }
+              else
+              {
+                skipElement(reader);
+              }
+              break;
+
+            case END_ELEMENT:
+              break loop;
           }
         }
+
+        return new Resources<R>(objects, totalResults, startIndex);
+      }
+      finally
+      {
+        reader.close();
       }
     }
-
-    return new Resources<R>(objects, totalResults, startIndex);
+    catch (XMLStreamException e)
+    {
+      throw new InvalidResourceException("Error reading XML: " +
+          e.getMessage(), e);
+    }
   }
 
 
@@ -254,44 +327,50 @@ public class XmlUnmarshaller implements Unmarshaller
   public SCIMException unmarshalError(final InputStream inputStream)
       throws InvalidResourceException
   {
-    final Document doc;
     try
     {
-      doc = createDocumentBuilder().parse(inputStream);
-      doc.getDocumentElement().normalize();
-    }
-    catch (Exception e)
-    {
-      throw new InvalidResourceException("Error reading XML: " +
-          e.getMessage(), e);
-    }
-
-    final NodeList nodeList =
-        doc.getDocumentElement().getFirstChild().getChildNodes();
-
-    if(nodeList.getLength() >= 1)
-    {
-      String code = null;
-      String description = null;
-      NodeList nodes = nodeList.item(0).getChildNodes();
-      for(int j = 0; j < nodes.getLength(); j++)
+      final XMLStreamReader reader = createXMLStreamReader(inputStream, null);
+      try
       {
-        Node attr = nodes.item(j);
-        if(attr.getLocalName().equals("code"))
+        readDocumentElement(reader);
+
+        // The document element contains the errors element, which contains
+        // the error elements.
+        if (!readChildElement(reader) || !readChildElement(reader))
         {
-          code = attr.getTextContent();
+          return null;
         }
-        else if(attr.getLocalName().equals("description"))
+
+        String code = null;
+        String description = null;
+        while (readChildElement(reader))
         {
-          description = attr.getTextContent();
+          if(reader.getLocalName().equals("code"))
+          {
+            code = readText(reader);
+          }
+          else if(reader.getLocalName().equals("description"))
+          {
+            description = readText(reader);
+          }
+          else
+          {
+            skipElement(reader);
+          }
         }
+        return SCIMException.createException(Integer.valueOf(code),
+            description);
+      }
+      finally
+      {
+        reader.close();
       }
-      return SCIMException.createException(Integer.valueOf(code),
-          description);
     }
-
-    return null;
-
+    catch (XMLStreamException e)
+    {
+      throw new InvalidResourceException("Error reading XML: " +
+          e.getMessage(), e);
+    }
   }
 
 
@@ -323,27 +402,19 @@ public class XmlUnmarshaller implements Unmarshaller
     final BulkContentHandler preProcessHandler = new BulkContentHandler() {};
     try
     {
-      final FileInputStream fileInputStream = new FileInputStream(file);
+      final InputStream inputStream =
+          new BufferedInputStream(new FileInputStream(file));
       try
       {
-        final BufferedInputStream bufferedInputStream =
-            new BufferedInputStream(fileInputStream);
-        try
-        {
-          final XmlBulkParser xmlBulkParser =
-              new XmlBulkParser(bufferedInputStream, bulkConfig,
-                                preProcessHandler);
-          xmlBulkParser.setSkipOperations(true);
-          xmlBulkParser.unmarshal();
-        }
-        finally
-        {
-          bufferedInputStream.close();
-        }
+        final XmlBulkParser xmlBulkParser =
+            new XmlBulkParser(inputStream, bulkConfig,
+                              preProcessHandler);
+        xmlBulkParser.setSkipOperations(true);
+        xmlBulkParser.unmarshal();
       }
       finally
       {
-        fileInputStream.close();
+        inputStream.close();
       }
     }
     catch (IOException e)
@@ -356,25 +427,17 @@ public class XmlUnmarshaller implements Unmarshaller
     // Second pass: Parse fully.
     try
     {
-      final FileInputStream fileInputStream = new FileInputStream(file);
+      final InputStream inputStream =
+          new BufferedInputStream(new FileInputStream(file));
       try
       {
-        final BufferedInputStream bufferedInputStream =
-            new BufferedInputStream(fileInputStream);
-        try
-        {
-          final XmlBulkParser xmlBulkParser =
-              new XmlBulkParser(bufferedInputStream, bulkConfig, handler);
-          xmlBulkParser.unmarshal();
-        }
-        finally
-        {
-          bufferedInputStream.close();
-        }
+        final XmlBulkParser xmlBulkParser =
+            new XmlBulkParser(inputStream, bulkConfig, handler);
+        xmlBulkParser.unmarshal();
       }
       finally
       {
-        fileInputStream.close();
+        inputStream.close();
       }
     }
     catch (IOException e)
@@ -386,96 +449,102 @@ public class XmlUnmarshaller implements Unmarshaller
   }
 
 
+
   /**
-   * Parse a simple attribute from its representation as a DOM node.
+   * Parse a simple attribute from its representation as an XML element, and
+   * leave the reader positioned on the END_ELEMENT.
    *
-   * @param node                The DOM node representing the attribute.
+   * @param reader              The XML stream reader, positioned on the
+   *                            START_ELEMENT of the attribute.
    * @param attributeDescriptor The attribute descriptor.
    *
    * @return The parsed attribute.
+   *
+   * @throws XMLStreamException If the XML could not be parsed.
    */
   private SCIMAttribute createSimpleAttribute(
-      final Node node,
+      final XMLStreamReader reader,
       final AttributeDescriptor attributeDescriptor)
+      throws XMLStreamException
   {
-    Node b64Node = node.getAttributes().getNamedItem("base64Encoded");
-    String textContent = node.getTextContent();
-    if(b64Node != null && Boolean.parseBoolean(b64Node.getTextContent()))
-    {
-      byte[] bytes = DatatypeConverter.parseBase64Binary(node.getTextContent());
-      try
-      {
-        textContent = new String(bytes, "UTF-8");
-      }
-      catch (UnsupportedEncodingException e)
-      {
-        //This should never happen with UTF-8.
-        Debug.debugException(e);
-      }
-    }
+    final boolean base64Encoded = isBase64Encoded(reader);
+    final String textContent = readText(reader);
     return SCIMAttribute.create(attributeDescriptor,
             SCIMAttributeValue.createValue(attributeDescriptor.getDataType(),
-                    textContent));
+                    base64Encoded ? decodeBase64(textContent) : textContent));
   }
 
 
 
   /**
-   * Parse a multi-valued attribute from its representation as a DOM node.
+   * Parse a multi-valued attribute from its representation as an XML
+   * element, and leave the reader positioned on the END_ELEMENT.
    *
-   * @param node                The DOM node representing the attribute.
+   * @param reader              The XML stream reader, positioned on the
+   *                            START_ELEMENT of the attribute.
    * @param attributeDescriptor The attribute descriptor.
    *
    * @return The parsed attribute.
+   * @throws XMLStreamException If the XML could not be parsed.
    * @throws InvalidResourceException if an error occurs.
    */
   private SCIMAttribute createMultiValuedAttribute(
-      final Node node, final AttributeDescriptor attributeDescriptor)
-      throws InvalidResourceException
+      final XMLStreamReader reader,
+      final AttributeDescriptor attributeDescriptor)
+      throws XMLStreamException, InvalidResourceException
   {
-    final NodeList attributes = node.getChildNodes();
-    final List<SCIMAttributeValue> values =
-        new ArrayList<SCIMAttributeValue>(attributes.getLength());
-    for (int i = 0; i < attributes.getLength(); i++)
+    final List<SCIMAttributeValue> values = new ArrayList<SCIMAttributeValue>();
+    while (readChildElement(reader))
     {
-      final Node attribute = attributes.item(i);
-      if (attribute.getNodeType() != Node.ELEMENT_NODE ||
-          !attribute.getLocalName().equals(
+      if (!reader.getLocalName().equals(
               attributeDescriptor.getMultiValuedChildName()))
       {
+        skipElement(reader);
         continue;
       }
-      if(attribute.getChildNodes().getLength() > 1 ||
-          attribute.getFirstChild().getNodeType() != Node.TEXT_NODE)
-      {
-        values.add(
-            createComplexAttribute(attribute, attributeDescriptor));
-      }
-      else
+
+      // A value is complex if it has child elements, otherwise its text is
+      // the value sub-attribute.
+      final boolean base64Encoded = isBase64Encoded(reader);
+      final StringBuilder textContent = new StringBuilder();
+      SCIMAttributeValue value = null;
+
+      loop:
+      while (reader.hasNext())
       {
-        Node b64Node = attribute.getAttributes().getNamedItem("base64Encoded");
-        String textContent = attribute.getTextContent();
-        if(b64Node != null && Boolean.parseBoolean(b64Node.getTextContent()))
+        switch (reader.next())
         {
-          byte[] bytes = DatatypeConverter.parseBase64Binary(
-                            attribute.getTextContent());
-          try
-          {
-            textContent = new String(bytes, "UTF-8");
-          }
-          catch(UnsupportedEncodingException e)
-          {
-            //This should never happen with UTF-8.
-            Debug.debugException(e);
-          }
+          case CHARACTERS:
+          case CDATA:
+          case SPACE:
+          case ENTITY_REFERENCE:
+            textContent.append(reader.getText());
+            break;
+
+          case START_ELEMENT:
+            final List<SCIMAttribute> complexAttrs =
+                new ArrayList<SCIMAttribute>();
+            addSubAttribute(reader, attributeDescriptor, complexAttrs);
+            value = createComplexAttribute(reader, attributeDescriptor,
+                                           complexAttrs);
+            break loop;
+
+          case END_ELEMENT:
+            break loop;
         }
+      }
 
+      if (value == null)
+      {
+        final String text = textContent.toString();
         SCIMAttribute subAttr = SCIMAttribute.create(
             attributeDescriptor.getSubAttribute("value"),
                 SCIMAttributeValue.createValue(
-                        attributeDescriptor.getDataType(), textContent));
-        values.add(SCIMAttributeValue.createComplexValue(subAttr));
+                        attributeDescriptor.getDataType(),
+                        base64Encoded ? decodeBase64(text) : text));
+        value = SCIMAttributeValue.createComplexValue(subAttr);
       }
+      values.add(value);
     }
     SCIMAttributeValue[] vals = new SCIMAttributeValue[values.size()];
     vals = values.toArray(vals);
@@ -485,52 +554,267 @@ public class XmlUnmarshaller implements Unmarshaller
 
 
   /**
-   * Parse a complex attribute from its representation as a DOM node.
+   * Parse a complex attribute from its representation as an XML element, and
+   * leave the reader positioned on the END_ELEMENT.
    *
-   * @param node                The DOM node representing the attribute.
+   * @param reader              The XML stream reader, positioned within the
+   *                            element of the attribute.
    * @param attributeDescriptor The attribute descriptor.
+   * @param complexAttrs        The sub-attributes that have already been read.
    *
    * @return The parsed attribute.
+   * @throws XMLStreamException If the XML could not be parsed.
    * @throws InvalidResourceException if an error occurs.
    */
   private SCIMAttributeValue createComplexAttribute(
-      final Node node, final AttributeDescriptor attributeDescriptor)
-      throws InvalidResourceException
+      final XMLStreamReader reader,
+      final AttributeDescriptor attributeDescriptor,
+      final List<SCIMAttribute> complexAttrs)
+      throws XMLStreamException, InvalidResourceException
+  {
+    while (readChildElement(reader))
+    {
+      addSubAttribute(reader, attributeDescriptor, complexAttrs);
+    }
+
+    return SCIMAttributeValue.createComplexValue(complexAttrs);
+  }
+
+
+
+  /**
+   * Parse a sub-attribute of a complex attribute, and leave the reader
+   * positioned on the END_ELEMENT.
+   *
+   * @param reader              The XML stream reader, positioned on the
+   *                            START_ELEMENT of the sub-attribute.
+   * @param attributeDescriptor The descriptor of the complex attribute.
+   * @param complexAttrs        The list to which the sub-attribute is added.
+   *
+   * @throws XMLStreamException If the XML could not be parsed.
+   * @throws InvalidResourceException if an error occurs.
+   */
+  private void addSubAttribute(
+      final XMLStreamReader reader,
+      final AttributeDescriptor attributeDescriptor,
+      final List<SCIMAttribute> complexAttrs)
+      throws XMLStreamException, InvalidResourceException
+  {
+    final String namespaceURI = getNamespaceURI(reader);
+    if(namespaceURI != null &&
+        !namespaceURI.equalsIgnoreCase(attributeDescriptor.getSchema()))
+    {
+      // Sub-attributes should have the same namespace URI as the complex
+      // attribute.
+      throw new InvalidResourceException("Sub-attribute " +
+          reader.getLocalName() + " does not use the same namespace as the " +
+          "containing complex attribute " + attributeDescriptor.getName());
+    }
+    SCIMAttribute childAttr;
+    AttributeDescriptor subAttribute =
+        attributeDescriptor.getSubAttribute(reader.getLocalName());
+    // Allow multi-valued sub-attribute as the resource schema needs this.
+    if(subAttribute.isMultiValued())
+    {
+      childAttr = createMultiValuedAttribute(reader, subAttribute);
+    }
+    else
+    {
+      childAttr = createSimpleAttribute(reader, subAttribute);
+    }
+    complexAttrs.add(childAttr);
+  }
+
+
+
+  /**
+   * Advance the reader to the START_ELEMENT of the document element.
+   *
+   * @param reader  The XML stream reader.
+   *
+   * @throws XMLStreamException  If the XML could not be parsed, or it contains
+   *                             a document type declaration.
+   */
+  private static void readDocumentElement(final XMLStreamReader reader)
+      throws XMLStreamException
   {
-    NodeList childNodes = node.getChildNodes();
-    List<SCIMAttribute> complexAttrs =
-        new ArrayList<SCIMAttribute>(childNodes.getLength());
-    for (int i = 0; i < childNodes.getLength(); i++)
+    while (reader.hasNext())
     {
-      Node item1 = childNodes.item(i);
-      if (item1.getNodeType() == Node.ELEMENT_NODE)
+      switch (reader.next())
       {
-        if(item1.getNamespaceURI() != null &&
-            !item1.getNamespaceURI().equalsIgnoreCase(
-            attributeDescriptor.getSchema()))
-        {
-          // Sub-attributes should have the same namespace URI as the complex
-          // attribute.
-          throw new InvalidResourceException("Sub-attribute " +
-              item1.getNodeName() + " does not use the same namespace as the " +
-              "containing complex attribute " + attributeDescriptor.getName());
-        }
-        SCIMAttribute childAttr;
-        AttributeDescriptor subAttribute =
-            attributeDescriptor.getSubAttribute(item1.getLocalName());
-        // Allow multi-valued sub-attribute as the resource schema needs this.
-        if(subAttribute.isMultiValued())
-        {
-          childAttr = createMultiValuedAttribute(item1, subAttribute);
-        }
-        else
-        {
-          childAttr = createSimpleAttribute(item1, subAttribute);
-        }
-        complexAttrs.add(childAttr);
+        case DTD:
+          throw new XMLStreamException(
+              "DOCTYPE is disallowed", reader.getLocation());
+
+        case START_ELEMENT:
+          return;
       }
     }
+    throw new XMLStreamException("The document has no document element",
+                                 reader.getLocation());
+  }
 
-    return SCIMAttributeValue.createComplexValue(complexAttrs);
+
+
+  /**
+   * Advance the reader to the START_ELEMENT of the next child of the current
+   * element, skipping any other content.
+   *
+   * @param reader  The XML stream reader.
+   *
+   * @return  {@code true} if the reader is positioned on the START_ELEMENT of
+   *          a child element, or {@code false} if it is positioned on the
+   *          END_ELEMENT of the current element.
+   *
+   * @throws XMLStreamException  If the XML could not be parsed.
+   */
+  private static boolean readChildElement(final XMLStreamReader reader)
+      throws XMLStreamException
+  {
+    while (reader.hasNext())
+    {
+      switch (reader.next())
+      {
+        case START_ELEMENT:
+          return true;
+
+        case END_ELEMENT:
+          return false;
+      }
+    }
+    return false;
+  }
+
+
+
+  /**
+   * Read the text content of the current element and any elements it
+   * contains, and leave the reader positioned on the END_ELEMENT.
+   *
+   * @param reader  The XML stream reader, positioned on a START_ELEMENT.
+   *
+   * @return  The text content.
+   *
+   * @throws XMLStreamException  If the XML could not be parsed.
+   */
+  private static String readText(final XMLStreamReader reader)
+      throws XMLStreamException
+  {
+    final StringBuilder builder = new StringBuilder();
+    int nesting = 1;
+
+    while (reader.hasNext())
+    {
+      switch (reader.next())
+      {
+        case CHARACTERS:
+        case CDATA:
+        case SPACE:
+        case ENTITY_REFERENCE:
+          builder.append(reader.getText());
+          break;
+        case START_ELEMENT:
+          nesting++;
+          break;
+        case END_ELEMENT:
+          if (--nesting == 0)
+          {
+            return builder.toString();
+          }
+          break;
+      }
+    }
+    return builder.toString();
+  }
+
+
+
+  /**
+   * Skip over the current element, and leave the reader positioned on the
+   * END_ELEMENT.
+   *
+   * @param reader  The XML stream reader, positioned on a START_ELEMENT.
+   *
+   * @throws XMLStreamException  If the XML could not be parsed.
+   */
+  private static void skipElement(final XMLStreamReader reader)
+      throws XMLStreamException
+  {
+    int nesting = 1;
+
+    while (reader.hasNext())
+    {
+      switch (reader.next())
+      {
+        case START_ELEMENT:
+          nesting++;
+          break;
+        case END_ELEMENT:
+          if (--nesting == 0)
+          {
+            return;
+          }
+          break;
+      }
+    }
+  }
+
+
+
+  /**
+   * Get the namespace URI of the current element.
+   *
+   * @param reader  The XML stream reader, positioned on a START_ELEMENT.
+   *
+   * @return  The namespace URI, or {@code null} if the element is not in a
+   *          namespace.
+   */
+  private static String getNamespaceURI(final XMLStreamReader reader)
+  {
+    final String namespaceURI = reader.getNamespaceURI();
+    if (namespaceURI == null || namespaceURI.length() == 0)
+    {
+      return null;
+    }
+    return namespaceURI;
+  }
+
+
+
+  /**
+   * Determine whether the value of the current element is base64 encoded.
+   *
+   * @param reader  The XML stream reader, positioned on a START_ELEMENT.
+   *
+   * @return  {@code true} if the value of the element is base64 encoded.
+   */
+  private static boolean isBase64Encoded(final XMLStreamReader reader)
+  {
+    return Boolean.parseBoolean(
+        reader.getAttributeValue(null, "base64Encoded"));
+  }
+
+
+
+  /**
+   * Decode a base64 encoded UTF-8 string.
+   *
+   * @param value  The base64 encoded value.
+   *
+   * @return  The decoded string.
+   */
+  private static String decodeBase64(final String value)
+  {
+    byte[] bytes = DatatypeConverter.parseBase64Binary(value);
+    try
+    {
+      return new String(bytes, "UTF-8");
+    }
+    catch (UnsupportedEncodingException e)
+    {
+      //This should never happen with UTF-8.
+      Debug.debugException(e);
+      return value;
+    }
   }
 }
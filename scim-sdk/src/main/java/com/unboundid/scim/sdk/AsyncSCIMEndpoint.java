@@ -0,0 +1,405 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.data.BaseResource;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+
+/**
+ * This class issues requests to a SCIM endpoint without blocking the calling
+ * thread. Each method returns a {@link SCIMFuture} that provides the result,
+ * or the same {@link SCIMException} that the corresponding blocking method of
+ * {@link SCIMEndpoint} would have thrown, once the request completes.
+ * <p>
+ * At most {@code maxConcurrentRequests} requests are processed at once, by a
+ * pool of that many threads. When four times that many requests are pending,
+ * the methods of this class block until one completes, so that callers
+ * cannot queue requests faster than the service provider processes them. The
+ * HTTP connection pool of the SCIMService should allow at least
+ * {@code maxConcurrentRequests} connections (see {@link SCIMServiceBuilder}).
+ * {@link #close()} must be called to release the threads.
+ *
+ * @param <R> The type of resource instances handled by this endpoint.
+ */
+public class AsyncSCIMEndpoint<R extends BaseResource>
+{
+  private final SCIMEndpoint<R> endpoint;
+  private final ExecutorService executor;
+  private final Semaphore pendingRequests;
+
+
+
+  /**
+   * Create a new asynchronous endpoint.
+   *
+   * @param endpoint              The endpoint used to process the requests.
+   * @param maxConcurrentRequests The maximum number of requests to process at
+   *                              once.
+   */
+  public AsyncSCIMEndpoint(final SCIMEndpoint<R> endpoint,
+                           final int maxConcurrentRequests)
+  {
+    if (maxConcurrentRequests < 1)
+    {
+      throw new IllegalArgumentException(
+          "maxConcurrentRequests must be at least 1");
+    }
+
+    this.endpoint = endpoint;
+    this.executor = Executors.newFixedThreadPool(maxConcurrentRequests,
+                                                 new RequestThreadFactory());
+    this.pendingRequests = new Semaphore(maxConcurrentRequests * 4);
+  }
+
+
+
+  /**
+   * Retrieves the endpoint used to process the requests.
+   *
+   * @return The endpoint used to process the requests.
+   */
+  public SCIMEndpoint<R> getEndpoint()
+  {
+    return endpoint;
+  }
+
+
+
+  /**
+   * Retrieves a resource.
+   *
+   * @param id The ID of the resource to retrieve.
+   * @return The pending result of {@link SCIMEndpoint#get(String)}.
+   */
+  public SCIMFuture<R> get(final String id)
+  {
+    return submit(new Callable<R>()
+    {
+      public R call() throws SCIMException
+      {
+        return endpoint.get(id);
+      }
+    });
+  }
+
+
+
+  /**
+   * Retrieves a resource.
+   *
+   * @param id The ID of the resource to retrieve.
+   * @param etag The entity tag that indicates the entry should be returned
+   *             only if the entity tag of the current resource is different
+   *             from the provided value. A value of {@code null} indicates
+   *             unconditional return.
+   * @param requestedAttributes The attributes of the resource to retrieve.
+   * @return The pending result of
+   *         {@link SCIMEndpoint#get(String, String, String...)}.
+   */
+  public SCIMFuture<R> get(final String id, final String etag,
+                           final String... requestedAttributes)
+  {
+    return submit(new Callable<R>()
+    {
+      public R call() throws SCIMException
+      {
+        return endpoint.get(id, etag, requestedAttributes);
+      }
+    });
+  }
+
+
+
+  /**
+   * Retrieves all resources that match the provided filter.
+   *
+   * @param filter The filter that should be used.
+   * @return The pending result of {@link SCIMEndpoint#query(String)}.
+   */
+  public SCIMFuture<Resources<R>> query(final String filter)
+  {
+    return submit(new Callable<Resources<R>>()
+    {
+      public Resources<R> call() throws SCIMException
+      {
+        return endpoint.query(filter);
+      }
+    });
+  }
+
+
+
+  /**
+   * Retrieves all resources that match the provided filter.
+   *
+   * @param filter The filter that should be used.
+   * @param sortParameters The sort parameters that should be used.
+   * @param pageParameters The page parameters that should be used.
+   * @param requestedAttributes The attributes of the resources to retrieve.
+   * @return The pending result of {@link SCIMEndpoint#query(String,
+   *         SortParameters, PageParameters, String...)}.
+   */
+  public SCIMFuture<Resources<R>> query(final String filter,
+                                        final SortParameters sortParameters,
+                                        final PageParameters pageParameters,
+                                        final String... requestedAttributes)
+  {
+    return submit(new Callable<Resources<R>>()
+    {
+      public Resources<R> call() throws SCIMException
+      {
+        return endpoint.query(filter, sortParameters, pageParameters,
+                              requestedAttributes);
+      }
+    });
+  }
+
+
+
+  /**
+   * Creates a resource.
+   *
+   * @param resource The resource to create.
+   * @param requestedAttributes The attributes of the created resource to
+   *                            return.
+   * @return The pending result of
+   *         {@link SCIMEndpoint#create(BaseResource, String...)}.
+   */
+  public SCIMFuture<R> create(final R resource,
+                              final String... requestedAttributes)
+  {
+    return submit(new Callable<R>()
+    {
+      public R call() throws SCIMException
+      {
+        return endpoint.create(resource, requestedAttributes);
+      }
+    });
+  }
+
+
+
+  /**
+   * Replaces the contents of a resource.
+   *
+   * @param resource The resource to replace.
+   * @return The pending result of
+   *         {@link SCIMEndpoint#update(BaseResource)}.
+   */
+  public SCIMFuture<R> update(final R resource)
+  {
+    return submit(new Callable<R>()
+    {
+      public R call() throws SCIMException
+      {
+        return endpoint.update(resource);
+      }
+    });
+  }
+
+
+
+  /**
+   * Replaces the contents of a resource.
+   *
+   * @param resource The resource to replace.
+   * @param etag The entity tag that indicates the resource should be
+   *             replaced only if the entity tag of the current resource
+   *             matches the provided value. A value of {@code null} indicates
+   *             an unconditional update.
+   * @param requestedAttributes The attributes of the updated resource to
+   *                            return.
+   * @return The pending result of
+   *         {@link SCIMEndpoint#update(BaseResource, String, String...)}.
+   */
+  public SCIMFuture<R> update(final R resource, final String etag,
+                              final String... requestedAttributes)
+  {
+    return submit(new Callable<R>()
+    {
+      public R call() throws SCIMException
+      {
+        return endpoint.update(resource, etag, requestedAttributes);
+      }
+    });
+  }
+
+
+
+  /**
+   * Updates the specified attributes of a resource.
+   *
+   * @param id The ID of the resource to update.
+   * @param etag The entity tag that indicates the resource should be updated
+   *             only if the entity tag of the current resource matches the
+   *             provided value. A value of {@code null} indicates an
+   *             unconditional update.
+   * @param attributesToUpdate The attributes to update.
+   * @param attributesToDelete The attributes to delete.
+   * @param requestedAttributes The attributes of the updated resource to
+   *                            return.
+   * @return The pending result of {@link SCIMEndpoint#update(String, String,
+   *         List, List, String...)}.
+   */
+  public SCIMFuture<R> update(final String id, final String etag,
+                              final List<SCIMAttribute> attributesToUpdate,
+                              final List<String> attributesToDelete,
+                              final String... requestedAttributes)
+  {
+    return submit(new Callable<R>()
+    {
+      public R call() throws SCIMException
+      {
+        return endpoint.update(id, etag, attributesToUpdate,
+                               attributesToDelete, requestedAttributes);
+      }
+    });
+  }
+
+
+
+  /**
+   * Deletes a resource.
+   *
+   * @param id The ID of the resource to delete.
+   * @return The pending result of {@link SCIMEndpoint#delete(String)}.
+   */
+  public SCIMFuture<Void> delete(final String id)
+  {
+    return delete(id, null);
+  }
+
+
+
+  /**
+   * Deletes a resource.
+   *
+   * @param id The ID of the resource to delete.
+   * @param etag The entity tag that indicates the resource should be deleted
+   *             only if the entity tag of the current resource matches the
+   *             provided value. A value of {@code null} indicates an
+   *             unconditional delete.
+   * @return The pending result of
+   *         {@link SCIMEndpoint#delete(String, String)}.
+   */
+  public SCIMFuture<Void> delete(final String id, final String etag)
+  {
+    return submit(new Callable<Void>()
+    {
+      public Void call() throws SCIMException
+      {
+        endpoint.delete(id, etag);
+        return null;
+      }
+    });
+  }
+
+
+
+  /**
+   * Releases the threads used to process requests. Requests that are still
+   * pending are completed first.
+   */
+  public void close()
+  {
+    executor.shutdown();
+  }
+
+
+
+  /**
+   * Submit a request to be processed, waiting until there is room for it.
+   *
+   * @param request The request to be processed.
+   * @param <T> The type of the result of the request.
+   * @return The pending result of the request.
+   */
+  private <T> SCIMFuture<T> submit(final Callable<T> request)
+  {
+    final SCIMFuture<T> future = new SCIMFuture<T>(request);
+    try
+    {
+      pendingRequests.acquire();
+    }
+    catch (InterruptedException e)
+    {
+      Debug.debugException(e);
+      Thread.currentThread().interrupt();
+      future.cancel(false);
+      return future;
+    }
+
+    future.addCallback(new SCIMCallback<T>()
+    {
+      public void completed(final T result)
+      {
+        pendingRequests.release();
+      }
+
+      public void failed(final SCIMException e)
+      {
+        pendingRequests.release();
+      }
+    });
+
+    try
+    {
+      executor.execute(future);
+    }
+    catch (RejectedExecutionException e)
+    {
+      // The endpoint has been closed.
+      Debug.debugException(e);
+      future.cancel(false);
+    }
+    return future;
+  }
+
+
+
+  /**
+   * Creates the daemon threads that process requests.
+   */
+  private static final class RequestThreadFactory implements ThreadFactory
+  {
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Thread newThread(final Runnable r)
+    {
+      final Thread thread = new Thread(r,
+          "SCIM Async Request Thread " + THREAD_NUMBER.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -92,7 +92,10 @@ public class BulkEndpoint
 
   /**
    * Retrieves the response to the bulk request. This should only be called
-   * after all operations to be performed have been provided.
+   * after all operations to be performed have been provided. All of the
+   * operation responses are held in memory; use
+   * {@link #processRequest(BulkContentHandler, List, int)} to process each
+   * one as it is read instead.
    *
    * @param operations    The bulk operations to be performed.
    * @param failOnErrors  The number of errors that the service provider will
@@ -120,8 +123,11 @@ public class BulkEndpoint
 
 
   /**
-   * Processes the bulk request. This should only be called
-   * after all operations to be performed have been provided.
+   * Processes the bulk request, providing each operation response to the
+   * handler as it is read from the bulk response rather than collecting them
+   * into a {@link BulkResponse}. The handler may throw a SCIMException to
+   * stop reading the bulk response. This should only be called after all
+   * operations to be performed have been provided.
    *
    * @param handler       The bulk content handler that is to be used to process
    *                      each operation response in the bulk response.
@@ -135,9 +141,9 @@ public class BulkEndpoint
    *
    * @throws SCIMException  If the request fails.
    */
-  private void processRequest(final BulkContentHandler handler,
-                              final List<BulkOperation> operations,
-                              final int failOnErrors)
+  public void processRequest(final BulkContentHandler handler,
+                             final List<BulkOperation> operations,
+                             final int failOnErrors)
       throws SCIMException
   {
     final URI uri =
@@ -166,7 +172,9 @@ public class BulkEndpoint
     try
     {
       response = clientResource.post(output);
-      InputStream entity = response.getEntity(InputStream.class);
+      // Read the entity as it arrives so that each operation response is
+      // provided to the handler without the whole response being buffered.
+      final InputStream entity = response.getEntityStream();
 
       if(response.getStatusType() == Response.Status.OK)
       {
@@ -199,6 +207,29 @@ public class BulkEndpoint
 
 
 
+  /**
+   * Determines the number of bytes in the body of a bulk request, without
+   * keeping the marshalled content.
+   *
+   * @param operations    The bulk operations to be performed.
+   * @param failOnErrors  The number of errors that the service provider will
+   *                      accept before the operation is terminated.
+   *
+   * @return  The number of bytes in the body of the bulk request.
+   *
+   * @throws SCIMException  If the operations could not be marshalled.
+   */
+  long getPayloadSize(final List<BulkOperation> operations,
+                      final int failOnErrors)
+      throws SCIMException
+  {
+    final CountingOutputStream outputStream = new CountingOutputStream();
+    marshaller.bulkMarshal(outputStream, failOnErrors, operations);
+    return outputStream.getCount();
+  }
+
+
+
   /**
    * Returns a SCIM exception representing the error response.
    *
@@ -237,4 +268,49 @@ public class BulkEndpoint
 
     return scimException;
   }
+
+
+
+  /**
+   * An output stream that discards its content and only counts the bytes
+   * written to it.
+   */
+  private static final class CountingOutputStream extends OutputStream
+  {
+    private long count;
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final int b)
+    {
+      count++;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+    {
+      count += len;
+    }
+
+
+
+    /**
+     * Retrieves the number of bytes written to this stream.
+     *
+     * @return  The number of bytes written to this stream.
+     */
+    long getCount()
+    {
+      return count;
+    }
+  }
 }
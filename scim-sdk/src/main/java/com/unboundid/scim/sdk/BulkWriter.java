@@ -0,0 +1,484 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.data.BulkConfig;
+import com.unboundid.scim.schema.ResourceDescriptor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+
+/**
+ * This class sends bulk operations to a SCIM service provider as they are
+ * added, rather than requiring all of the operations to be provided at once.
+ * Operations are collected into batches that respect the maxOperations and
+ * maxPayloadSize limits of the service provider, and each batch is sent in
+ * its own bulk request while further operations are added. At most
+ * {@code maxConcurrentBatches} requests are outstanding at once; when that
+ * many are pending, {@link #add(BulkOperation)} blocks until one completes,
+ * so memory use does not grow with the total number of operations.
+ * <p>
+ * The response to each operation is provided to a {@link BulkContentHandler}
+ * as the bulk responses are read. The operation index given to the handler
+ * is the position of the operation among all of the operations added to
+ * this writer. The handler is never called by more than one thread at a
+ * time, but responses from different batches may arrive out of order.
+ * <p>
+ * The failOnErrors value is applied to each bulk request individually, and
+ * bulkId references are only resolved by the service provider within a
+ * single bulk request. If a bulk request fails as a whole, the exception is
+ * thrown by the next call to {@link #add(BulkOperation)}, {@link #flush()}
+ * or {@link #close()}, and no further operations are sent.
+ * {@link #close()} must be called to send the last batch and to release the
+ * threads. Operations may not be added once the writer has been closed.
+ */
+public class BulkWriter
+{
+  private final BulkEndpoint endpoint;
+  private final BulkContentHandler handler;
+  private final int failOnErrors;
+  private final long maxOperations;
+  private final long maxPayloadSize;
+  private final long envelopeSize;
+  private final int maxConcurrentBatches;
+  private final ExecutorService executor;
+  private final Semaphore pendingBatches;
+
+  /**
+   * The first exception that caused a bulk request to fail.
+   */
+  private final AtomicReference<SCIMException> failure =
+      new AtomicReference<SCIMException>();
+
+  /**
+   * The operations that have not yet been sent.
+   */
+  private List<BulkOperation> batch = new ArrayList<BulkOperation>();
+
+  /**
+   * The estimated size in bytes of the operations that have not yet been
+   * sent.
+   */
+  private long batchSize;
+
+  /**
+   * The operation index of the first operation that has not yet been sent.
+   */
+  private int batchIndex;
+
+  /**
+   * Indicates whether {@link #close()} has been called.
+   */
+  private boolean closed;
+
+
+
+  /**
+   * Create a new bulk writer.
+   *
+   * @param endpoint              The bulk endpoint used to send requests.
+   * @param bulkConfig            The bulk configuration of the service
+   *                              provider. Limits that are zero or less are
+   *                              not enforced.
+   * @param handler               The bulk content handler that is to be
+   *                              used to process each operation response.
+   * @param failOnErrors          The number of errors that the service
+   *                              provider will accept before a bulk request
+   *                              is terminated. A value of -1 indicates that
+   *                              there is no limit.
+   * @param maxConcurrentBatches  The maximum number of bulk requests to
+   *                              have outstanding at once.
+   *
+   * @throws SCIMException  If the size of a bulk request could not be
+   *                        determined.
+   */
+  BulkWriter(final BulkEndpoint endpoint,
+             final BulkConfig bulkConfig,
+             final BulkContentHandler handler,
+             final int failOnErrors,
+             final int maxConcurrentBatches)
+      throws SCIMException
+  {
+    if (maxConcurrentBatches < 1)
+    {
+      throw new IllegalArgumentException(
+          "maxConcurrentBatches must be at least 1");
+    }
+
+    this.endpoint = endpoint;
+    this.handler = handler;
+    this.failOnErrors = failOnErrors;
+    this.maxOperations = bulkConfig.getMaxOperations() > 0 ?
+        bulkConfig.getMaxOperations() : Long.MAX_VALUE;
+    this.maxPayloadSize = bulkConfig.getMaxPayloadSize() > 0 ?
+        bulkConfig.getMaxPayloadSize() : Long.MAX_VALUE;
+    this.maxConcurrentBatches = maxConcurrentBatches;
+    this.executor = Executors.newFixedThreadPool(maxConcurrentBatches,
+                                                 new BatchThreadFactory());
+    this.pendingBatches = new Semaphore(maxConcurrentBatches);
+
+    if (maxPayloadSize < Long.MAX_VALUE)
+    {
+      envelopeSize = endpoint.getPayloadSize(
+          Collections.<BulkOperation>emptyList(), failOnErrors);
+    }
+    else
+    {
+      envelopeSize = 0;
+    }
+  }
+
+
+
+  /**
+   * Add an operation to be sent to the service provider. The current batch
+   * is sent first if the operation would take it over the limits of the
+   * service provider.
+   *
+   * @param operation  The operation to be sent.
+   *
+   * @throws SCIMException  If the operation could not be marshalled, if a
+   *                        previous bulk request failed, or if the writer
+   *                        has been closed.
+   */
+  public synchronized void add(final BulkOperation operation)
+      throws SCIMException
+  {
+    checkOpen();
+    checkFailure();
+
+    long size = 0;
+    if (maxPayloadSize < Long.MAX_VALUE)
+    {
+      // Allow one extra byte for the separator between operations.
+      size = endpoint.getPayloadSize(Collections.singletonList(operation),
+                                     failOnErrors) - envelopeSize + 1;
+    }
+
+    if (!batch.isEmpty() &&
+        envelopeSize + batchSize + size > maxPayloadSize)
+    {
+      sendBatch();
+    }
+
+    batch.add(operation);
+    batchSize += size;
+
+    if (batch.size() >= maxOperations)
+    {
+      sendBatch();
+    }
+  }
+
+
+
+  /**
+   * Send the operations that have been added and wait for the responses to
+   * all of the outstanding bulk requests.
+   *
+   * @throws SCIMException  If a bulk request failed, or if the writer has
+   *                        been closed.
+   */
+  public synchronized void flush()
+      throws SCIMException
+  {
+    checkOpen();
+    sendAndWait();
+  }
+
+
+
+  /**
+   * Send the operations that have been added, wait for the responses to all
+   * of the outstanding bulk requests, and release the threads used to send
+   * them. Closing a writer that has already been closed has no effect.
+   *
+   * @throws SCIMException  If a bulk request failed.
+   */
+  public synchronized void close()
+      throws SCIMException
+  {
+    if (closed)
+    {
+      return;
+    }
+
+    closed = true;
+    try
+    {
+      sendAndWait();
+    }
+    finally
+    {
+      executor.shutdown();
+    }
+  }
+
+
+
+  /**
+   * Send the operations that have been added and wait for the responses to
+   * all of the outstanding bulk requests.
+   *
+   * @throws SCIMException  If a bulk request failed.
+   */
+  private void sendAndWait()
+      throws SCIMException
+  {
+    checkFailure();
+
+    if (!batch.isEmpty())
+    {
+      sendBatch();
+    }
+
+    try
+    {
+      pendingBatches.acquire(maxConcurrentBatches);
+      pendingBatches.release(maxConcurrentBatches);
+    }
+    catch (InterruptedException e)
+    {
+      Debug.debugException(e);
+      Thread.currentThread().interrupt();
+      throw new ServerErrorException(
+          "Interrupted while waiting for the bulk responses", e);
+    }
+
+    checkFailure();
+  }
+
+
+
+  /**
+   * Throw an exception if the writer has been closed.
+   *
+   * @throws SCIMException  If the writer has been closed.
+   */
+  private void checkOpen()
+      throws SCIMException
+  {
+    if (closed)
+    {
+      throw new ServerErrorException("The bulk writer has been closed");
+    }
+  }
+
+
+
+  /**
+   * Throw the exception that caused a previous bulk request to fail, if
+   * any.
+   *
+   * @throws SCIMException  If a previous bulk request failed.
+   */
+  private void checkFailure()
+      throws SCIMException
+  {
+    final SCIMException e = failure.get();
+    if (e != null)
+    {
+      throw e;
+    }
+  }
+
+
+
+  /**
+   * Send the current batch of operations in a bulk request, waiting until
+   * there is room for it.
+   *
+   * @throws SCIMException  If the thread was interrupted while waiting, or if
+   *                        the writer has been closed.
+   */
+  private void sendBatch()
+      throws SCIMException
+  {
+    final List<BulkOperation> operations = batch;
+    final BulkContentHandler batchHandler =
+        new BatchContentHandler(batchIndex);
+    batch = new ArrayList<BulkOperation>();
+    batchIndex += operations.size();
+    batchSize = 0;
+
+    try
+    {
+      pendingBatches.acquire();
+    }
+    catch (InterruptedException e)
+    {
+      Debug.debugException(e);
+      Thread.currentThread().interrupt();
+      throw new ServerErrorException(
+          "Interrupted while waiting to send a bulk request", e);
+    }
+
+    final SCIMFuture<Void> future = new SCIMFuture<Void>(new Callable<Void>()
+    {
+      public Void call() throws SCIMException
+      {
+        endpoint.processRequest(batchHandler, operations, failOnErrors);
+        return null;
+      }
+    });
+
+    future.addCallback(new SCIMCallback<Void>()
+    {
+      public void completed(final Void result)
+      {
+        pendingBatches.release();
+      }
+
+      public void failed(final SCIMException e)
+      {
+        failure.compareAndSet(null, e);
+        pendingBatches.release();
+      }
+    });
+
+    try
+    {
+      executor.execute(future);
+    }
+    catch (RejectedExecutionException e)
+    {
+      Debug.debugException(e);
+      pendingBatches.release();
+      throw new ServerErrorException("The bulk writer has been closed", e);
+    }
+  }
+
+
+
+  /**
+   * Passes the operation responses of one bulk request to the handler of
+   * the writer, with operation indexes relative to all of the operations
+   * added to the writer.
+   */
+  private final class BatchContentHandler extends BulkContentHandler
+  {
+    private final int firstIndex;
+
+
+
+    /**
+     * Create a new handler for the responses of a bulk request.
+     *
+     * @param firstIndex  The operation index of the first operation in the
+     *                    bulk request.
+     */
+    private BatchContentHandler(final int firstIndex)
+    {
+      this.firstIndex = firstIndex;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handleOperation(final int opIndex,
+                                final BulkOperation bulkOperation)
+        throws BulkException, SCIMException
+    {
+      synchronized (handler)
+      {
+        handler.handleOperation(firstIndex + opIndex, bulkOperation);
+      }
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean handleException(final int opIndex,
+                                   final BulkException bulkException)
+        throws SCIMException
+    {
+      synchronized (handler)
+      {
+        return handler.handleException(firstIndex + opIndex, bulkException);
+      }
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResourceDescriptor getResourceDescriptor(final String endpoint)
+    {
+      synchronized (handler)
+      {
+        return handler.getResourceDescriptor(endpoint);
+      }
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String transformValue(final int opIndex, final String value)
+    {
+      synchronized (handler)
+      {
+        return handler.transformValue(firstIndex + opIndex, value);
+      }
+    }
+  }
+
+
+
+  /**
+   * Creates the daemon threads that send bulk requests.
+   */
+  private static final class BatchThreadFactory implements ThreadFactory
+  {
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Thread newThread(final Runnable r)
+    {
+      final Thread thread = new Thread(r,
+          "SCIM Bulk Writer Thread " + THREAD_NUMBER.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,747 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.schema.AttributeDescriptor;
+
+import javax.xml.bind.DatatypeConverter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.unboundid.scim.sdk.StaticUtils.toLowerCase;
+
+
+
+/**
+ * This class represents a SCIM filter that has been compiled so that it can be
+ * evaluated efficiently against many SCIM objects. The filter value of each
+ * comparison is converted to every data type it may be compared with when the
+ * filter is compiled rather than for every comparison, and the components of
+ * 'and' and 'or' filters are evaluated cheapest first.
+ * <p>
+ * A compiled filter is obtained with {@link SCIMFilter#compile()}, and is
+ * safe to use from several threads at once.
+ */
+public abstract class CompiledSCIMFilter
+{
+  /**
+   * Orders filter components from the cheapest to the most expensive to
+   * evaluate.
+   */
+  private static final Comparator<CompiledSCIMFilter> COST_COMPARATOR =
+      new Comparator<CompiledSCIMFilter>()
+      {
+        public int compare(final CompiledSCIMFilter f1,
+                           final CompiledSCIMFilter f2)
+        {
+          return f1.getCost() < f2.getCost() ? -1 :
+                 (f1.getCost() == f2.getCost() ? 0 : 1);
+        }
+      };
+
+
+
+  /**
+   * Create a new compiled filter.
+   */
+  CompiledSCIMFilter()
+  {
+    // No implementation required.
+  }
+
+
+
+  /**
+   * Compile the provided filter.
+   *
+   * @param filter  The filter to be compiled.
+   *
+   * @return  The compiled filter.
+   */
+  static CompiledSCIMFilter compile(final SCIMFilter filter)
+  {
+    switch (filter.getFilterType())
+    {
+      case AND:
+      case OR:
+        final List<CompiledSCIMFilter> components =
+            new ArrayList<CompiledSCIMFilter>(
+                filter.getFilterComponents().size());
+        for (final SCIMFilter component : filter.getFilterComponents())
+        {
+          components.add(compile(component));
+        }
+        Collections.sort(components, COST_COMPARATOR);
+
+        final CompiledSCIMFilter[] array =
+            components.toArray(new CompiledSCIMFilter[components.size()]);
+        if (filter.getFilterType() == SCIMFilterType.AND)
+        {
+          return new AndFilter(array);
+        }
+        else
+        {
+          return new OrFilter(array);
+        }
+
+      default:
+        return new ComparisonFilter(filter);
+    }
+  }
+
+
+
+  /**
+   * Determine whether the provided object matches this filter.
+   *
+   * @param scimObject  The object to compare against this filter.
+   *
+   * @return  {@code true} if the object matches this filter, and
+   *          {@code false} otherwise.
+   */
+  public abstract boolean matches(final SCIMObject scimObject);
+
+
+
+  /**
+   * Determine whether the provided attribute matches this filter.
+   *
+   * @param attribute  The attribute to compare against this filter.
+   *
+   * @return  {@code true} if the attribute matches this filter, and
+   *          {@code false} otherwise.
+   */
+  public abstract boolean matches(final SCIMAttribute attribute);
+
+
+
+  /**
+   * Retrieve the relative cost of evaluating this filter, which is used to
+   * order the components of 'and' and 'or' filters.
+   *
+   * @return  The relative cost of evaluating this filter.
+   */
+  abstract int getCost();
+
+
+
+  /**
+   * A compiled 'and' filter.
+   */
+  private static final class AndFilter extends CompiledSCIMFilter
+  {
+    private final CompiledSCIMFilter[] components;
+    private final int cost;
+
+
+
+    /**
+     * Create a new compiled 'and' filter.
+     *
+     * @param components  The compiled filter components, cheapest first.
+     */
+    AndFilter(final CompiledSCIMFilter[] components)
+    {
+      this.components = components;
+      this.cost = getTotalCost(components);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean matches(final SCIMObject scimObject)
+    {
+      for (final CompiledSCIMFilter component : components)
+      {
+        if (!component.matches(scimObject))
+        {
+          return false;
+        }
+      }
+      return true;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean matches(final SCIMAttribute attribute)
+    {
+      for (final CompiledSCIMFilter component : components)
+      {
+        if (!component.matches(attribute))
+        {
+          return false;
+        }
+      }
+      return true;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    int getCost()
+    {
+      return cost;
+    }
+  }
+
+
+
+  /**
+   * A compiled 'or' filter.
+   */
+  private static final class OrFilter extends CompiledSCIMFilter
+  {
+    private final CompiledSCIMFilter[] components;
+    private final int cost;
+
+
+
+    /**
+     * Create a new compiled 'or' filter.
+     *
+     * @param components  The compiled filter components, cheapest first.
+     */
+    OrFilter(final CompiledSCIMFilter[] components)
+    {
+      this.components = components;
+      this.cost = getTotalCost(components);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean matches(final SCIMObject scimObject)
+    {
+      for (final CompiledSCIMFilter component : components)
+      {
+        if (component.matches(scimObject))
+        {
+          return true;
+        }
+      }
+      return false;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean matches(final SCIMAttribute attribute)
+    {
+      for (final CompiledSCIMFilter component : components)
+      {
+        if (component.matches(attribute))
+        {
+          return true;
+        }
+      }
+      return false;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    int getCost()
+    {
+      return cost;
+    }
+  }
+
+
+
+  /**
+   * Retrieve the total cost of evaluating a set of filter components.
+   *
+   * @param components  The compiled filter components.
+   *
+   * @return  The total cost of evaluating the filter components.
+   */
+  private static int getTotalCost(final CompiledSCIMFilter[] components)
+  {
+    int cost = 0;
+    for (final CompiledSCIMFilter component : components)
+    {
+      cost += component.getCost();
+    }
+    return cost;
+  }
+
+
+
+  /**
+   * A compiled presence or comparison filter.
+   */
+  private static final class ComparisonFilter extends CompiledSCIMFilter
+  {
+    /**
+     * The filter type.
+     */
+    private final SCIMFilterType filterType;
+
+    /**
+     * The schema of the filter attribute.
+     */
+    private final String schema;
+
+    /**
+     * The normalized schema of the filter attribute, used to look up the
+     * attribute in a SCIM object.
+     */
+    private final String normalizedSchema;
+
+    /**
+     * The name of the filter attribute.
+     */
+    private final String attributeName;
+
+    /**
+     * The normalized name of the filter attribute, used to look up the
+     * attribute in a SCIM object.
+     */
+    private final String normalizedAttributeName;
+
+    /**
+     * The name of the filter sub-attribute, or {@code null} if none was
+     * specified.
+     */
+    private final String subAttributeName;
+
+    /**
+     * The filter value as provided, used for string comparisons.
+     */
+    private final String stringValue;
+
+    /**
+     * The filter value in lower case, used for substring comparisons.
+     */
+    private final String lowerCaseValue;
+
+    /**
+     * The filter value as a decimal, or {@code null} if it is not one.
+     */
+    private final Double decimalValue;
+
+    /**
+     * The filter value as an integer, or {@code null} if it is not one.
+     */
+    private final Long integerValue;
+
+    /**
+     * The filter value as a boolean.
+     */
+    private final boolean booleanValue;
+
+    /**
+     * The filter value as a date in milliseconds since the epoch, or
+     * {@code null} if it is not a date.
+     */
+    private final Long dateMillis;
+
+    /**
+     * The filter value as base64-decoded bytes, or {@code null} if it is not
+     * valid base64.
+     */
+    private final byte[] binaryValue;
+
+
+
+    /**
+     * Compile a presence or comparison filter.
+     *
+     * @param filter  The filter to be compiled.
+     */
+    ComparisonFilter(final SCIMFilter filter)
+    {
+      final AttributePath path = filter.getFilterAttribute();
+      filterType              = filter.getFilterType();
+      schema                  = path.getAttributeSchema();
+      normalizedSchema        = toLowerCase(schema);
+      attributeName           = path.getAttributeName();
+      normalizedAttributeName = toLowerCase(attributeName);
+      subAttributeName        = path.getSubAttributeName();
+
+      final String value = filter.getFilterValue();
+      stringValue = value;
+      if (value == null)
+      {
+        lowerCaseValue = null;
+        decimalValue = null;
+        integerValue = null;
+        booleanValue = false;
+        dateMillis = null;
+        binaryValue = null;
+        return;
+      }
+
+      lowerCaseValue = toLowerCase(value);
+      booleanValue = Boolean.parseBoolean(value);
+
+      Double d;
+      try
+      {
+        d = Double.parseDouble(value);
+      }
+      catch (NumberFormatException e)
+      {
+        d = null;
+      }
+      decimalValue = d;
+
+      Long l;
+      try
+      {
+        l = Long.parseLong(value);
+      }
+      catch (NumberFormatException e)
+      {
+        l = null;
+      }
+      integerValue = l;
+
+      Long millis;
+      try
+      {
+        millis = DatatypeConverter.parseDateTime(value).getTimeInMillis();
+      }
+      catch (IllegalArgumentException e)
+      {
+        millis = null;
+      }
+      dateMillis = millis;
+
+      byte[] bytes;
+      try
+      {
+        bytes = DatatypeConverter.parseBase64Binary(value);
+      }
+      catch (IllegalArgumentException e)
+      {
+        bytes = null;
+      }
+      binaryValue = bytes;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean matches(final SCIMObject scimObject)
+    {
+      final SCIMAttribute attribute =
+          scimObject.getNormalizedAttribute(normalizedSchema,
+                                            normalizedAttributeName);
+      return attribute != null && matches(attribute);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean matches(final SCIMAttribute attribute)
+    {
+      return matches(attribute, attributeName, subAttributeName);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    int getCost()
+    {
+      switch (filterType)
+      {
+        case PRESENCE:
+          return 1;
+        case EQUALITY:
+          return 2;
+        case CONTAINS:
+          return 4;
+        default:
+          return 3;
+      }
+    }
+
+
+
+    /**
+     * Determine whether the provided attribute or sub-attribute matches this
+     * filter. The values of a complex attribute match if any of their
+     * sub-attributes match, unless the attribute is singular and a
+     * sub-attribute is named.
+     *
+     * @param attribute         The attribute or sub-attribute.
+     * @param name              The name the attribute must have.
+     * @param subAttributeName  The name of the sub-attribute to compare within
+     *                          complex values, or {@code null} to compare the
+     *                          "value" sub-attribute.
+     *
+     * @return  {@code true} if the attribute matches this filter, and
+     *          {@code false} otherwise.
+     */
+    private boolean matches(final SCIMAttribute attribute, final String name,
+                            final String subAttributeName)
+    {
+      if (!schema.equalsIgnoreCase(attribute.getSchema()) ||
+          !name.equalsIgnoreCase(attribute.getName()))
+      {
+        return false;
+      }
+
+      final String subName =
+          subAttributeName == null ? "value" : subAttributeName;
+      final AttributeDescriptor descriptor =
+          attribute.getAttributeDescriptor();
+      if (descriptor.isMultiValued())
+      {
+        for (final SCIMAttributeValue v : attribute.getValues())
+        {
+          if (v.isComplex())
+          {
+            for (final AttributeDescriptor subDescriptor :
+                descriptor.getSubAttributes())
+            {
+              final SCIMAttribute a = v.getAttribute(subDescriptor.getName());
+              if (a != null && matches(a, a.getName(), subName))
+              {
+                return true;
+              }
+            }
+          }
+          else if (matchesValue(v, descriptor.getDataType()))
+          {
+            return true;
+          }
+        }
+        return false;
+      }
+
+      final SCIMAttributeValue v = attribute.getValue();
+      if (v.isComplex())
+      {
+        final SCIMAttribute a = v.getAttribute(subName);
+        return a != null && matches(a, subName, null);
+      }
+
+      return matchesValue(v, descriptor.getDataType());
+    }
+
+
+
+    /**
+     * Determine whether the provided simple value matches this filter.
+     *
+     * @param v         The simple value.
+     * @param dataType  The data type of the value.
+     *
+     * @return  {@code true} if the value matches this filter, and
+     *          {@code false} otherwise.
+     */
+    private boolean matchesValue(final SCIMAttributeValue v,
+                                 final AttributeDescriptor.DataType dataType)
+    {
+      if (filterType == SCIMFilterType.PRESENCE)
+      {
+        return true;
+      }
+
+      // TODO support caseExact attributes
+      switch (dataType)
+      {
+        case STRING:
+          final String s = v.getStringValue();
+          return s != null && matchesString(s);
+        case DECIMAL:
+          final Double d = v.getDecimalValue();
+          if (d == null || decimalValue == null ||
+              d.isNaN() || decimalValue.isNaN())
+          {
+            return false;
+          }
+          return matchesComparison(
+              d.doubleValue() < decimalValue.doubleValue() ? -1 :
+              (d.doubleValue() > decimalValue.doubleValue() ? 1 : 0), true);
+        case INTEGER:
+          final Long l = v.getIntegerValue();
+          return l != null && integerValue != null &&
+              matchesComparison(l.compareTo(integerValue), true);
+        case BOOLEAN:
+          final Boolean b = v.getBooleanValue();
+          return b != null && matchesComparison(
+              b.booleanValue() == booleanValue ? 0 : 1, false);
+        case DATETIME:
+          final SimpleValue date = v.getValue();
+          if (date == null || dateMillis == null)
+          {
+            return false;
+          }
+          final long millis = date.getDateMillis();
+          return matchesComparison(millis < dateMillis.longValue() ? -1 :
+              (millis > dateMillis.longValue() ? 1 : 0), true);
+        case BINARY:
+          final byte[] bytes = v.getBinaryValue();
+          return bytes != null && binaryValue != null && matchesBinary(bytes);
+        default:
+          throw new RuntimeException(
+              "Invalid attribute data type: " + dataType);
+      }
+    }
+
+
+
+    /**
+     * Determine whether a string value matches this filter. Strings are
+     * compared ignoring case.
+     *
+     * @param s  The string value.
+     *
+     * @return  {@code true} if the value matches this filter, and
+     *          {@code false} otherwise.
+     */
+    private boolean matchesString(final String s)
+    {
+      switch (filterType)
+      {
+        case EQUALITY:
+          return s.equalsIgnoreCase(stringValue);
+        case CONTAINS:
+          return toLowerCase(s).contains(lowerCaseValue);
+        case STARTS_WITH:
+          return toLowerCase(s).startsWith(lowerCaseValue);
+        default:
+          return matchesComparison(s.compareToIgnoreCase(stringValue), true);
+      }
+    }
+
+
+
+    /**
+     * Determine whether the result of comparing a value with the filter
+     * value matches this filter. A value contains the filter value if they
+     * are equal, and never starts with it.
+     *
+     * @param comparison  The result of comparing the value with the filter
+     *                    value.
+     * @param ordered     Indicates whether the values may be ordered.
+     *
+     * @return  {@code true} if the value matches this filter, and
+     *          {@code false} otherwise.
+     */
+    private boolean matchesComparison(final int comparison,
+                                      final boolean ordered)
+    {
+      switch (filterType)
+      {
+        case EQUALITY:
+        case CONTAINS:
+          return comparison == 0;
+        case GREATER_THAN:
+          return ordered && comparison > 0;
+        case GREATER_OR_EQUAL:
+          return ordered && comparison >= 0;
+        case LESS_THAN:
+          return ordered && comparison < 0;
+        case LESS_OR_EQUAL:
+          return ordered && comparison <= 0;
+        default:
+          return false;
+      }
+    }
+
+
+
+    /**
+     * Determine whether a binary value matches this filter.
+     *
+     * @param bytes  The binary value.
+     *
+     * @return  {@code true} if the value matches this filter, and
+     *          {@code false} otherwise.
+     */
+    private boolean matchesBinary(final byte[] bytes)
+    {
+      switch (filterType)
+      {
+        case EQUALITY:
+          return Arrays.equals(bytes, binaryValue);
+        case CONTAINS:
+          for (int i = 0; i + binaryValue.length <= bytes.length; i++)
+          {
+            if (regionMatches(bytes, i))
+            {
+              return true;
+            }
+          }
+          return false;
+        case STARTS_WITH:
+          return binaryValue.length <= bytes.length && regionMatches(bytes, 0);
+        default:
+          return false;
+      }
+    }
+
+
+
+    /**
+     * Determine whether the filter value occurs in a binary value at the
+     * provided offset, which must leave enough room for it.
+     *
+     * @param bytes   The binary value.
+     * @param offset  The offset in the binary value.
+     *
+     * @return  {@code true} if the filter value occurs at the offset.
+     */
+    private boolean regionMatches(final byte[] bytes, final int offset)
+    {
+      for (int i = 0; i < binaryValue.length; i++)
+      {
+        if (bytes[offset + i] != binaryValue[i])
+        {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
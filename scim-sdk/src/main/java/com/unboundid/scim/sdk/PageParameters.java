@@ -35,6 +35,11 @@ public final class PageParameters
    */
   private final int count;
 
+  /**
+   * Whether only the total number of results is requested.
+   */
+  private final boolean countOnly;
+
 
 
   /**
@@ -49,6 +54,41 @@ public final class PageParameters
   {
     this.startIndex = startIndex;
     this.count = count;
+    this.countOnly = false;
+  }
+
+
+
+  /**
+   * Create a new instance of pagination parameters.
+   *
+   * @param startIndex The offset of the first resource to be returned.
+   * @param count      The maximum number of resources to return in a single
+   *                   page.
+   * @param countOnly  Whether only the total number of results is requested.
+   */
+  private PageParameters(final int startIndex, final int count,
+                         final boolean countOnly)
+  {
+    this.startIndex = startIndex;
+    this.count = count;
+    this.countOnly = countOnly;
+  }
+
+
+
+  /**
+   * Create pagination parameters that request only the total number of
+   * results and no resources. This is expressed as a count of zero in a
+   * query request.
+   *
+   * @param startIndex The offset of the first resource.
+   *
+   * @return The pagination parameters.
+   */
+  public static PageParameters createCountOnly(final int startIndex)
+  {
+    return new PageParameters(startIndex, 0, true);
   }
 
 
@@ -76,4 +116,17 @@ public final class PageParameters
   {
     return count;
   }
+
+
+
+  /**
+   * Whether only the total number of results is requested, in which case no
+   * resources are returned.
+   *
+   * @return {@code true} if only the total number of results is requested.
+   */
+  public boolean isCountOnly()
+  {
+    return countOnly;
+  }
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.data.BaseResource;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+
+
+
+/**
+ * This class iterates over all the resources that match a query, retrieving
+ * them one page at a time. The next page is retrieved in the background while
+ * the current page is consumed, so at most two pages are held in memory.
+ * Instances are obtained from
+ * {@link SCIMEndpoint#queryAll(String, SortParameters, int, String...)}.
+ * <p>
+ * Since the {@code Iterator} methods may not throw checked exceptions, a
+ * failure to retrieve a page is reported by throwing an
+ * {@link IterationException} whose cause is the {@link SCIMException} that
+ * {@link SCIMEndpoint#query} would have thrown. Resources that are added or
+ * removed while the query is being iterated may be skipped or returned twice,
+ * unless the service provider keeps the result set consistent between pages.
+ *
+ * @param <R> The type of resource instances returned by the query.
+ */
+public class QueryIterator<R extends BaseResource> implements Iterator<R>
+{
+  private final SCIMEndpoint<R> endpoint;
+  private final String filter;
+  private final SortParameters sortParameters;
+  private final int pageSize;
+  private final String[] requestedAttributes;
+
+  /**
+   * The resources of the current page that have not been returned yet.
+   */
+  private Iterator<R> currentPage;
+
+  /**
+   * The pending result for the next page, or {@code null} if there are no
+   * more pages.
+   */
+  private SCIMFuture<Resources<R>> nextPage;
+
+  /**
+   * The 1-based index of the first resource of the next page.
+   */
+  private int nextStartIndex;
+
+
+
+  /**
+   * Create a new query iterator and start retrieving the first page.
+   *
+   * @param endpoint            The endpoint to query.
+   * @param filter              The filter that should be used, or
+   *                            {@code null} to return all resources.
+   * @param sortParameters      The sort parameters that should be used, or
+   *                            {@code null} if the results need not be
+   *                            sorted.
+   * @param pageSize            The number of resources to retrieve with each
+   *                            request.
+   * @param requestedAttributes The attributes of the resources to retrieve.
+   */
+  QueryIterator(final SCIMEndpoint<R> endpoint, final String filter,
+                final SortParameters sortParameters, final int pageSize,
+                final String... requestedAttributes)
+  {
+    this.endpoint = endpoint;
+    this.filter = filter;
+    this.sortParameters = sortParameters;
+    this.pageSize = pageSize;
+    this.requestedAttributes = requestedAttributes;
+    this.nextStartIndex = 1;
+    this.nextPage = fetchPage(nextStartIndex);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IterationException If a page could not be retrieved.
+   */
+  public boolean hasNext()
+      throws IterationException
+  {
+    while (currentPage == null || !currentPage.hasNext())
+    {
+      if (nextPage == null)
+      {
+        return false;
+      }
+      advance();
+    }
+    return true;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IterationException If a page could not be retrieved.
+   */
+  public R next()
+      throws IterationException
+  {
+    if (!hasNext())
+    {
+      throw new NoSuchElementException();
+    }
+    return currentPage.next();
+  }
+
+
+
+  /**
+   * Resources may not be removed through this iterator.
+   *
+   * @throws java.lang.UnsupportedOperationException Always.
+   */
+  public void remove()
+      throws java.lang.UnsupportedOperationException
+  {
+    throw new java.lang.UnsupportedOperationException();
+  }
+
+
+
+  /**
+   * Wait for the next page, make it the current page, and start retrieving
+   * the page after it unless this was the last one.
+   */
+  private void advance()
+  {
+    final Resources<R> page;
+    try
+    {
+      page = nextPage.getResult();
+    }
+    catch (SCIMException e)
+    {
+      Debug.debugException(e);
+      nextPage = null;
+      throw new IterationException(e);
+    }
+
+    currentPage = page.iterator();
+    final int itemsReturned = page.getItemsPerPage();
+    nextStartIndex += itemsReturned;
+
+    // The service provider may return fewer resources than were requested,
+    // so the query is complete only when a page is empty or the total has
+    // been reached.
+    if (itemsReturned == 0 || nextStartIndex > page.getTotalResults())
+    {
+      nextPage = null;
+    }
+    else
+    {
+      nextPage = fetchPage(nextStartIndex);
+    }
+  }
+
+
+
+  /**
+   * Start retrieving a page in the background.
+   *
+   * @param startIndex The 1-based index of the first resource of the page.
+   * @return The pending result for the page.
+   */
+  private SCIMFuture<Resources<R>> fetchPage(final int startIndex)
+  {
+    final SCIMFuture<Resources<R>> future =
+        new SCIMFuture<Resources<R>>(new Callable<Resources<R>>()
+        {
+          public Resources<R> call() throws SCIMException
+          {
+            return endpoint.query(filter, sortParameters,
+                                  new PageParameters(startIndex, pageSize),
+                                  requestedAttributes);
+          }
+        });
+
+    final Thread thread = new Thread(future, "SCIM Query Page Thread");
+    thread.setDaemon(true);
+    thread.start();
+    return future;
+  }
+
+
+
+  /**
+   * This exception is thrown by the methods of a {@link QueryIterator} when a
+   * page of resources could not be retrieved.
+   */
+  public static class IterationException extends RuntimeException
+  {
+    private static final long serialVersionUID = -3519476212806238845L;
+
+
+
+    /**
+     * Create a new iteration exception.
+     *
+     * @param cause The exception that caused the page to not be retrieved.
+     */
+    public IterationException(final SCIMException cause)
+    {
+      super(cause.getMessage(), cause);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized SCIMException getCause()
+    {
+      return (SCIMException) super.getCause();
+    }
+  }
+}
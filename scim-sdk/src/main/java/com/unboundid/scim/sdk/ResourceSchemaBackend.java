@@ -53,7 +53,7 @@ public class ResourceSchemaBackend extends SCIMBackend
    */
   @Override
   public void finalizeBackend() {
-    // Nothing to do.
+    shutdownBulkOperationExecutor();
   }
 
   /**
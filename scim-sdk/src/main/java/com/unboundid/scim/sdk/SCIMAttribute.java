@@ -21,14 +21,10 @@ package com.unboundid.scim.sdk;
 import com.unboundid.scim.schema.AttributeDescriptor;
 
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
-import javax.xml.bind.DatatypeConverter;
 
 
 /**
@@ -227,593 +223,7 @@ public final class SCIMAttribute
    */
   public boolean matchesFilter(final SCIMFilter filter)
   {
-    final SCIMFilterType type = filter.getFilterType();
-    final List<SCIMFilter> components = filter.getFilterComponents();
-
-    switch(type)
-    {
-      case AND:
-        for(SCIMFilter component : components)
-        {
-          if(!matchesFilter(component))
-          {
-            return false;
-          }
-        }
-        return true;
-      case OR:
-        for(SCIMFilter component : components)
-        {
-          if(matchesFilter(component))
-          {
-            return true;
-          }
-        }
-        return false;
-    }
-
-    final String schema = filter.getFilterAttribute().getAttributeSchema();
-    if (!schema.equalsIgnoreCase(getSchema()))
-    {
-      return false;
-    }
-
-    final String attributeName = filter.getFilterAttribute().getAttributeName();
-    String subAttributeName =
-        filter.getFilterAttribute().getSubAttributeName();
-    if (subAttributeName == null)
-    {
-      subAttributeName = "value";
-    }
-
-    if (!attributeName.equalsIgnoreCase(getName()))
-    {
-      return false;
-    }
-
-    if (attributeDescriptor.isMultiValued())
-    {
-      for (final SCIMAttributeValue v : getValues())
-      {
-        if (v.isComplex())
-        {
-          final Collection<AttributeDescriptor> descriptors =
-              attributeDescriptor.getSubAttributes();
-          for (AttributeDescriptor descriptor : descriptors)
-          {
-            final SCIMAttribute a = v.getAttribute(descriptor.getName());
-
-            if (a != null)
-            {
-              // This is done because the client specifies 'emails' rather
-              // than 'emails.email'.
-              final AttributePath childPath =
-                  new AttributePath(schema, a.getName(), subAttributeName);
-              if (a.matchesFilter(new SCIMFilter(type,
-                                                 childPath,
-                                                 filter.getFilterValue(),
-                                                 filter.isQuoteFilterValue(),
-                                                 filter.getFilterComponents())))
-              {
-                return true;
-              }
-            }
-          }
-        }
-        else
-        {
-          AttributeDescriptor singularDescriptor =
-                  AttributeDescriptor.createAttribute(getName(),
-                          attributeDescriptor.getDataType(),
-                          attributeDescriptor.getDescription(), getSchema(),
-                          attributeDescriptor.isReadOnly(),
-                          attributeDescriptor.isRequired(),
-                          attributeDescriptor.isCaseExact());
-
-          final SCIMAttribute singularAttr = create(singularDescriptor, v);
-          if (singularAttr.matchesFilter(filter))
-          {
-            return true;
-          }
-        }
-      }
-    }
-    else
-    {
-      final SCIMAttributeValue v = getValue();
-      if (v.isComplex())
-      {
-        if (subAttributeName != null)
-        {
-          final SCIMAttribute a = v.getAttribute(subAttributeName);
-          if (a != null)
-          {
-            final AttributePath childPath =
-                new AttributePath(schema, subAttributeName, null);
-            return a.matchesFilter(
-                new SCIMFilter(type,
-                               childPath,
-                               filter.getFilterValue(),
-                               filter.isQuoteFilterValue(),
-                               filter.getFilterComponents()));
-          }
-        }
-      }
-      else
-      {
-        if (type == SCIMFilterType.PRESENCE)
-        {
-          return true;
-        }
-
-        final AttributeDescriptor.DataType dataType =
-                  attributeDescriptor.getDataType();
-
-        String stringValue = null;
-        Double doubleValue = null;
-        Long longValue = null;
-        Date dateValue = null;
-        Boolean boolValue = null;
-        byte[] binValue = null;
-
-        switch(dataType)
-        {
-          case BINARY:
-            binValue = v.getBinaryValue();
-            if(binValue == null)
-            {
-              return false;
-            }
-            break;
-          case BOOLEAN:
-            boolValue = v.getBooleanValue();
-            if(boolValue == null)
-            {
-              return false;
-            }
-            break;
-          case DATETIME:
-            dateValue = v.getDateValue();
-            if(dateValue == null)
-            {
-              return false;
-            }
-            break;
-          case DECIMAL:
-            doubleValue = v.getDecimalValue();
-            if(doubleValue == null)
-            {
-              return false;
-            }
-            break;
-          case INTEGER:
-            longValue = v.getIntegerValue();
-            if(longValue == null)
-            {
-              return false;
-            }
-            break;
-          case STRING:
-            stringValue = v.getStringValue();
-            if(stringValue == null)
-            {
-              return false;
-            }
-            break;
-          default:
-            throw new RuntimeException(
-                    "Invalid attribute data type: " + dataType);
-        }
-
-        final String filterValue = filter.getFilterValue();
-
-        // TODO support caseExact attributes
-
-        //Note: The code below explicitly unboxes the objects before comparing
-        //      to avoid auto-unboxing and make it clear that it is just
-        //      primitives being compared.
-        switch (type)
-        {
-          case EQUALITY:
-            if(stringValue != null)
-            {
-              return stringValue.equalsIgnoreCase(filterValue);
-            }
-            else if(doubleValue != null)
-            {
-              try
-              {
-                double filterValueDouble = Double.parseDouble(filterValue);
-                return doubleValue.doubleValue() == filterValueDouble;
-              }
-              catch(NumberFormatException e)
-              {
-                return false;
-              }
-            }
-            else if(longValue != null)
-            {
-              try
-              {
-                long filterValueLong = Long.parseLong(filterValue);
-                return longValue.longValue() == filterValueLong;
-              }
-              catch(NumberFormatException e)
-              {
-                return false;
-              }
-            }
-            else if(boolValue != null)
-            {
-              return boolValue.booleanValue() ==
-                            Boolean.parseBoolean(filterValue);
-            }
-            else if(dateValue != null)
-            {
-              try
-              {
-                SimpleValue filterValueDate = new SimpleValue(filterValue);
-                return dateValue.equals(filterValueDate.getDateValue());
-              }
-              catch(IllegalArgumentException e)
-              {
-                return false;
-              }
-            }
-            else if(binValue != null)
-            {
-              //TODO: It's debatable whether this ought to just check whether
-              //      the base-64 encoded string is equal, rather than checking
-              //      if the bytes are equal. This seems more correct.
-              try
-              {
-                byte[] filterValueBytes =
-                            DatatypeConverter.parseBase64Binary(filterValue);
-                return Arrays.equals(binValue, filterValueBytes);
-              }
-              catch(IllegalArgumentException e)
-              {
-                return false;
-              }
-            }
-            return false;
-          case CONTAINS:
-            if(stringValue != null)
-            {
-              return StaticUtils.toLowerCase(stringValue).contains(
-                        StaticUtils.toLowerCase(filterValue));
-            }
-            else if(doubleValue != null)
-            {
-              try
-              {
-                double filterValueDouble = Double.parseDouble(filterValue);
-                return doubleValue.doubleValue() == filterValueDouble;
-              }
-              catch(NumberFormatException e)
-              {
-                return false;
-              }
-            }
-            else if(longValue != null)
-            {
-              try
-              {
-                long filterValueLong = Long.parseLong(filterValue);
-                return longValue.longValue() == filterValueLong;
-              }
-              catch(NumberFormatException e)
-              {
-                return false;
-              }
-            }
-            else if(boolValue != null)
-            {
-              return boolValue.booleanValue() ==
-                            Boolean.parseBoolean(filterValue);
-            }
-            else if(dateValue != null)
-            {
-              try
-              {
-                SimpleValue filterValueDate = new SimpleValue(filterValue);
-                return dateValue.equals(filterValueDate.getDateValue());
-              }
-              catch(IllegalArgumentException e)
-              {
-                return false;
-              }
-            }
-            else if(binValue != null)
-            {
-              try
-              {
-                byte[] filterValueBytes =
-                          DatatypeConverter.parseBase64Binary(filterValue);
-
-                boolean contains = false;
-                for(int i = 0; i < binValue.length; i++)
-                {
-                  if(binValue[i] == filterValueBytes[0])
-                  {
-                    contains = true;
-                    for(int j = 1; j < filterValueBytes.length; j++)
-                    {
-                      if(i+j >= binValue.length ||
-                          binValue[i+j] != filterValueBytes[j])
-                      {
-                        contains = false;
-                        break;
-                      }
-                    }
-
-                    if(contains)
-                    {
-                      break;
-                    }
-
-                  }
-                }
-
-                return contains;
-              }
-              catch(IllegalArgumentException e)
-              {
-                return false;
-              }
-            }
-            return false;
-          case STARTS_WITH:
-            if(stringValue != null)
-            {
-              return StaticUtils.toLowerCase(stringValue).startsWith(
-                        StaticUtils.toLowerCase(filterValue));
-            }
-            else if(doubleValue != null)
-            {
-              return false;
-            }
-            else if(longValue != null)
-            {
-              return false;
-            }
-            else if(boolValue != null)
-            {
-              return false;
-            }
-            else if(dateValue != null)
-            {
-              return false;
-            }
-            else if(binValue != null)
-            {
-              try
-              {
-                byte[] filterValueBytes =
-                          DatatypeConverter.parseBase64Binary(filterValue);
-
-                for(int i = 0; i < filterValueBytes.length; i++)
-                {
-                  if(binValue[i] != filterValueBytes[i])
-                  {
-                    return false;
-                  }
-                }
-                return true;
-              }
-              catch(IllegalArgumentException e)
-              {
-                return false;
-              }
-            }
-            return false;
-          case GREATER_THAN:
-            if(stringValue != null)
-            {
-              return stringValue.compareToIgnoreCase(filterValue) > 0;
-            }
-            else if(doubleValue != null)
-            {
-              try
-              {
-                double filterValueDouble = Double.parseDouble(filterValue);
-                return doubleValue.doubleValue() > filterValueDouble;
-              }
-              catch(NumberFormatException e)
-              {
-                return false;
-              }
-            }
-            else if(longValue != null)
-            {
-              try
-              {
-                long filterValueLong = Long.parseLong(filterValue);
-                return longValue.longValue() > filterValueLong;
-              }
-              catch(NumberFormatException e)
-              {
-                return false;
-              }
-            }
-            else if(boolValue != null)
-            {
-              return false;
-            }
-            else if(dateValue != null)
-            {
-              try
-              {
-                SimpleValue filterValueDate = new SimpleValue(filterValue);
-                return dateValue.after(filterValueDate.getDateValue());
-              }
-              catch(IllegalArgumentException e)
-              {
-                return false;
-              }
-            }
-            else if(binValue != null)
-            {
-              return false;
-            }
-            return false;
-          case GREATER_OR_EQUAL:
-            if(stringValue != null)
-            {
-              return stringValue.compareToIgnoreCase(filterValue) >= 0;
-            }
-            else if(doubleValue != null)
-            {
-              try
-              {
-                double filterValueDouble = Double.parseDouble(filterValue);
-                return doubleValue.doubleValue() >= filterValueDouble;
-              }
-              catch(NumberFormatException e)
-              {
-                return false;
-              }
-            }
-            else if(longValue != null)
-            {
-              try
-              {
-                long filterValueLong = Long.parseLong(filterValue);
-                return longValue.longValue() >= filterValueLong;
-              }
-              catch(NumberFormatException e)
-              {
-                return false;
-              }
-            }
-            else if(boolValue != null)
-            {
-              return false;
-            }
-            else if(dateValue != null)
-            {
-              try
-              {
-                SimpleValue filterValueDate = new SimpleValue(filterValue);
-                return dateValue.after(filterValueDate.getDateValue()) ||
-                         dateValue.equals(filterValueDate.getDateValue());
-              }
-              catch(IllegalArgumentException e)
-              {
-                return false;
-              }
-            }
-            else if(binValue != null)
-            {
-              return false;
-            }
-            return false;
-          case LESS_THAN:
-            if(stringValue != null)
-            {
-              return stringValue.compareToIgnoreCase(filterValue) < 0;
-            }
-            else if(doubleValue != null)
-            {
-              try
-              {
-                double filterValueDouble = Double.parseDouble(filterValue);
-                return doubleValue.doubleValue() < filterValueDouble;
-              }
-              catch(NumberFormatException e)
-              {
-                return false;
-              }
-            }
-            else if(longValue != null)
-            {
-              try
-              {
-                long filterValueLong = Long.parseLong(filterValue);
-                return longValue.longValue() < filterValueLong;
-              }
-              catch(NumberFormatException e)
-              {
-                return false;
-              }
-            }
-            else if(boolValue != null)
-            {
-              return false;
-            }
-            else if(dateValue != null)
-            {
-              try
-              {
-                SimpleValue filterValueDate = new SimpleValue(filterValue);
-                return dateValue.before(filterValueDate.getDateValue());
-              }
-              catch(IllegalArgumentException e)
-              {
-                return false;
-              }
-            }
-            else if(binValue != null)
-            {
-              return false;
-            }
-            return false;
-          case LESS_OR_EQUAL:
-            if(stringValue != null)
-            {
-              return stringValue.compareToIgnoreCase(filterValue) <= 0;
-            }
-            else if(doubleValue != null)
-            {
-              try
-              {
-                double filterValueDouble = Double.parseDouble(filterValue);
-                return doubleValue.doubleValue() <= filterValueDouble;
-              }
-              catch(NumberFormatException e)
-              {
-                return false;
-              }
-            }
-            else if(longValue != null)
-            {
-              try
-              {
-                long filterValueLong = Long.parseLong(filterValue);
-                return longValue.longValue() <= filterValueLong;
-              }
-              catch(NumberFormatException e)
-              {
-                return false;
-              }
-            }
-            else if(boolValue != null)
-            {
-              return false;
-            }
-            else if(dateValue != null)
-            {
-              try
-              {
-                SimpleValue filterValueDate = new SimpleValue(filterValue);
-                return dateValue.before(filterValueDate.getDateValue()) ||
-                         dateValue.equals(filterValueDate.getDateValue());
-              }
-              catch(IllegalArgumentException e)
-              {
-                return false;
-              }
-            }
-            else if(binValue != null)
-            {
-              return false;
-            }
-            return false;
-        }
-      }
-    }
-
-    return false;
+    return filter.compile().matches(this);
   }
 
   @Override
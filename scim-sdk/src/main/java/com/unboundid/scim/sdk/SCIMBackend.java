@@ -23,6 +23,10 @@ import com.unboundid.scim.schema.ResourceDescriptor;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class defines an API for a backend that can be plugged into the SCIM
@@ -35,16 +39,76 @@ public abstract class SCIMBackend
    */
   private final SCIMBackendConfig config = new SCIMBackendConfig();
 
+  /**
+   * The executor shared by all bulk requests to process their operations
+   * concurrently, or {@code null} if it has not been created.
+   */
+  private ExecutorService bulkOperationExecutor;
+
+  /**
+   * The number of threads of the bulk operation executor.
+   */
+  private int bulkOperationExecutorThreads;
+
 
 
   /**
    * Performs any cleanup which may be necessary when this backend is to be
-   * taken out of service.
+   * taken out of service. Implementations should call
+   * {@link #shutdownBulkOperationExecutor()}.
    */
   public abstract void finalizeBackend();
 
 
 
+  /**
+   * Retrieve the executor shared by all bulk requests to process their
+   * operations concurrently. It has the number of threads given by
+   * {@link SCIMBackendConfig#getBulkOperationThreads()}, and is replaced if
+   * that setting changes.
+   *
+   * @return  The bulk operation executor, or {@code null} if operations are
+   *          to be processed one at a time.
+   */
+  public synchronized ExecutorService getBulkOperationExecutor()
+  {
+    final int threads = config.getBulkOperationThreads();
+    if (threads <= 1)
+    {
+      shutdownBulkOperationExecutor();
+      return null;
+    }
+
+    if (bulkOperationExecutor == null ||
+        bulkOperationExecutorThreads != threads)
+    {
+      // Operations already submitted to a replaced executor still complete.
+      shutdownBulkOperationExecutor();
+      bulkOperationExecutor = Executors.newFixedThreadPool(
+          threads, new BulkOperationThreadFactory());
+      bulkOperationExecutorThreads = threads;
+    }
+
+    return bulkOperationExecutor;
+  }
+
+
+
+  /**
+   * Release the threads of the bulk operation executor once the operations
+   * that have been submitted to it have completed.
+   */
+  protected synchronized void shutdownBulkOperationExecutor()
+  {
+    if (bulkOperationExecutor != null)
+    {
+      bulkOperationExecutor.shutdown();
+      bulkOperationExecutor = null;
+    }
+  }
+
+
+
   /**
    * Retrieve the mutable configuration settings for the backend.
    * @return  The mutable configuration settings for the backend.
@@ -84,6 +148,41 @@ public abstract class SCIMBackend
 
 
 
+  /**
+   * Indicates whether this backend is able to stream query results using
+   * {@link #getStreamingResources(GetResourcesRequest)}.
+   *
+   * @return {@code true} if streaming queries are supported or {@code false}
+   *         otherwise.
+   */
+  public boolean supportsStreamingQuery()
+  {
+    return false;
+  }
+
+
+
+  /**
+   * Retrieve selected resources, writing each resource to the response as
+   * soon as it is available. Any errors in the request should be detected
+   * before this method returns, since the response status cannot be changed
+   * once the resources are being streamed.
+   *
+   * @param request  The Get Resources request.
+   *
+   * @return  The response to the request.
+   *
+   * @throws SCIMException if an error occurs while processing the request.
+   */
+  public StreamingResources getStreamingResources(
+      final GetResourcesRequest request) throws SCIMException
+  {
+    throw new UnsupportedOperationException(
+        "Streaming queries are not supported by this backend");
+  }
+
+
+
   /**
    * Create a new resource.
    *
@@ -205,4 +304,28 @@ public abstract class SCIMBackend
 
     return null;
   }
+
+
+
+  /**
+   * Creates the daemon threads that process bulk operations.
+   */
+  private static final class BulkOperationThreadFactory
+      implements ThreadFactory
+  {
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public Thread newThread(final Runnable r)
+    {
+      final Thread thread = new Thread(r,
+          "SCIM Bulk Operation Thread " + THREAD_NUMBER.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
 }
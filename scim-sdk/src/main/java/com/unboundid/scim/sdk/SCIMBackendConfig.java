@@ -37,6 +37,21 @@ public class SCIMBackendConfig
    */
   private final AtomicBoolean checkSchema = new AtomicBoolean(true);
 
+  /**
+   * Whether query results are streamed to the client as they are retrieved.
+   */
+  private final AtomicBoolean streamQueryResults = new AtomicBoolean(false);
+
+  /**
+   * The number of threads used to process the operations of a bulk request.
+   */
+  private final AtomicInteger bulkOperationThreads = new AtomicInteger(1);
+
+  /**
+   * Whether bulk requests are parsed as they are received.
+   */
+  private final AtomicBoolean streamBulkRequests = new AtomicBoolean(false);
+
 
 
   /**
@@ -85,4 +100,100 @@ public class SCIMBackendConfig
   {
     this.checkSchema.set(checkSchema);
   }
+
+
+
+  /**
+   * Whether query results are streamed to the client as they are retrieved
+   * by the backend rather than being collected before the response is
+   * written. This only has an effect for backends that support streaming
+   * queries. Note that the totalResults, itemsPerPage and startIndex values
+   * follow the resources in a streamed response.
+   *
+   * @return {@code true} to stream query results and
+   *         {@code false} otherwise.
+   */
+  public boolean isStreamQueryResults()
+  {
+    return streamQueryResults.get();
+  }
+
+
+
+  /**
+   * Specify whether query results are streamed to the client as they are
+   * retrieved by the backend.
+   *
+   * @param streamQueryResults {@code true} to stream query results and
+   *                           {@code false} otherwise.
+   */
+  public void setStreamQueryResults(final boolean streamQueryResults)
+  {
+    this.streamQueryResults.set(streamQueryResults);
+  }
+
+
+
+  /**
+   * Retrieve the number of threads used to process the operations of a bulk
+   * request. Operations that do not reference each other's bulkIds may be
+   * processed concurrently when this is greater than one. The operation
+   * responses are always returned in the order of the request.
+   *
+   * @return The number of threads used to process the operations of a bulk
+   *         request.
+   */
+  public int getBulkOperationThreads()
+  {
+    return bulkOperationThreads.get();
+  }
+
+
+
+  /**
+   * Specify the number of threads used to process the operations of a bulk
+   * request.
+   *
+   * @param bulkOperationThreads The number of threads used to process the
+   *                             operations of a bulk request. A value of one
+   *                             processes the operations one at a time.
+   */
+  public void setBulkOperationThreads(final int bulkOperationThreads)
+  {
+    this.bulkOperationThreads.set(bulkOperationThreads);
+  }
+
+
+
+  /**
+   * Whether bulk requests are parsed in a single pass as they are received
+   * rather than being written to a temporary file and parsed twice. In this
+   * mode, an operation is processed before the rest of the request has been
+   * read, so a request that turns out to be malformed or to exceed the
+   * maxOperations or maxPayloadSize limits is rejected after the preceding
+   * operations have been processed. If the failOnErrors value follows the
+   * operations, it does not apply to them, since they have already been
+   * processed when it is read.
+   *
+   * @return {@code true} to parse bulk requests in a single pass and
+   *         {@code false} to use a temporary file.
+   */
+  public boolean isStreamBulkRequests()
+  {
+    return streamBulkRequests.get();
+  }
+
+
+
+  /**
+   * Specify whether bulk requests are parsed in a single pass as they are
+   * received.
+   *
+   * @param streamBulkRequests {@code true} to parse bulk requests in a single
+   *                           pass and {@code false} to use a temporary file.
+   */
+  public void setStreamBulkRequests(final boolean streamBulkRequests)
+  {
+    this.streamBulkRequests.set(streamBulkRequests);
+  }
 }
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+
+
+/**
+ * This interface is implemented by clients to be notified when a request
+ * issued with an {@link AsyncSCIMEndpoint} completes. The callback is invoked
+ * on the thread that processed the request, or on the thread that registered
+ * the callback if the request had already completed, so it should not block.
+ *
+ * @param <T> The type of the result of the request.
+ */
+public interface SCIMCallback<T>
+{
+  /**
+   * Invoked when the request completes successfully.
+   *
+   * @param result The result of the request, which is {@code null} for
+   *               requests that do not return a result.
+   */
+  void completed(final T result);
+
+
+
+  /**
+   * Invoked when the request fails or is cancelled.
+   *
+   * @param e The exception that describes the failure.
+   */
+  void failed(final SCIMException e);
+}
@@ -20,6 +20,7 @@ package com.unboundid.scim.sdk;
 import com.unboundid.scim.data.Meta;
 import com.unboundid.scim.data.ResourceFactory;
 import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.data.FilterConfig;
 import com.unboundid.scim.facade.org.apache.wink.client.Resource;
 import com.unboundid.scim.marshal.Marshaller;
 import com.unboundid.scim.marshal.Unmarshaller;
@@ -57,6 +58,7 @@ import java.io.OutputStream;
 import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -333,7 +335,7 @@ public class SCIMEndpoint<R extends BaseResource>
     {
       clientResource.queryParam(QUERY_PARAMETER_PAGE_START_INDEX,
           String.valueOf(pageParameters.getStartIndex()));
-      if (pageParameters.getCount() > 0)
+      if (pageParameters.getCount() > 0 || pageParameters.isCountOnly())
       {
         clientResource.queryParam(QUERY_PARAMETER_PAGE_SIZE,
                                   String.valueOf(pageParameters.getCount()));
@@ -381,6 +383,55 @@ public class SCIMEndpoint<R extends BaseResource>
   }
 
 
+  /**
+   * Retrieves all resource instances that match the provided filter, one page
+   * at a time. The pages are requested as the returned resources are
+   * iterated, and the next page is requested in the background while the
+   * current page is consumed. The page size is limited to the maximum number
+   * of results advertised in the service provider configuration.
+   *
+   * @param filter The filter that should be used.
+   * @param sortParameters The sort parameters that should be used.
+   * @param pageSize The number of resources to request with each query.
+   * @param requestedAttributes The attributes of the resource to retrieve.
+   * @return The resource instances that match the provided filter. Each
+   *         iteration issues the query again, and may throw a
+   *         {@link QueryIterator.IterationException} if a page could not be
+   *         retrieved.
+   * @throws SCIMException If the service provider configuration could not be
+   *                       retrieved.
+   */
+  public Iterable<R> queryAll(final String filter,
+                              final SortParameters sortParameters,
+                              final int pageSize,
+                              final String... requestedAttributes)
+      throws SCIMException
+  {
+    if (pageSize < 1)
+    {
+      throw new IllegalArgumentException("pageSize must be at least 1");
+    }
+
+    int count = pageSize;
+    final FilterConfig filterConfig =
+        scimService.getServiceProviderConfig().getFilterConfig();
+    if (filterConfig != null && filterConfig.getMaxResults() > 0)
+    {
+      count = (int) Math.min(count, filterConfig.getMaxResults());
+    }
+
+    final int effectivePageSize = count;
+    return new Iterable<R>()
+    {
+      public Iterator<R> iterator()
+      {
+        return new QueryIterator<R>(SCIMEndpoint.this, filter, sortParameters,
+                                    effectivePageSize, requestedAttributes);
+      }
+    };
+  }
+
+
   /**
    * Create the specified resource instance at the service provider and return
    * only the specified attributes from the newly inserted resource.
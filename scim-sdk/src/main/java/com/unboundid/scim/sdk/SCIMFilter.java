@@ -59,6 +59,12 @@ public class SCIMFilter
    */
   private final List<SCIMFilter> filterComponents;
 
+  /**
+   * The compiled form of this filter, or {@code null} if it has not been
+   * compiled yet.
+   */
+  private volatile CompiledSCIMFilter compiledFilter;
+
 
 
   /**
@@ -361,6 +367,26 @@ public class SCIMFilter
 
 
 
+  /**
+   * Retrieve the compiled form of this filter, which can be evaluated
+   * efficiently against many SCIM objects. The filter is compiled the first
+   * time this method is called.
+   *
+   * @return  The compiled form of this filter.
+   */
+  public CompiledSCIMFilter compile()
+  {
+    CompiledSCIMFilter compiled = compiledFilter;
+    if (compiled == null)
+    {
+      compiled = CompiledSCIMFilter.compile(this);
+      compiledFilter = compiled;
+    }
+    return compiled;
+  }
+
+
+
   /**
    * {@inheritDoc}
    */
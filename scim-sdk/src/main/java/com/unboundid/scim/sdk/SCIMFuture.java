@@ -0,0 +1,166 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+
+
+/**
+ * This class represents the pending result of a request issued with an
+ * {@link AsyncSCIMEndpoint}. Callbacks may be added to be notified when the
+ * request completes, and {@link #getResult()} waits for the result and
+ * reports failures with the same exceptions as the blocking methods of
+ * {@link SCIMEndpoint}.
+ *
+ * @param <T> The type of the result of the request.
+ */
+public class SCIMFuture<T> extends FutureTask<T>
+{
+  /**
+   * The callbacks to invoke when the request completes, or {@code null} once
+   * they have been invoked.
+   */
+  private List<SCIMCallback<T>> callbacks = new ArrayList<SCIMCallback<T>>(1);
+
+
+
+  /**
+   * Create a new pending result for a request.
+   *
+   * @param request The request to be processed.
+   */
+  SCIMFuture(final Callable<T> request)
+  {
+    super(request);
+  }
+
+
+
+  /**
+   * Add a callback to be notified when the request completes. The callback is
+   * invoked immediately if the request has already completed.
+   *
+   * @param callback The callback to be notified.
+   * @return This pending result.
+   */
+  public SCIMFuture<T> addCallback(final SCIMCallback<T> callback)
+  {
+    synchronized (this)
+    {
+      if (callbacks != null)
+      {
+        callbacks.add(callback);
+        return this;
+      }
+    }
+
+    notifyCallback(callback);
+    return this;
+  }
+
+
+
+  /**
+   * Wait for the request to complete and retrieve its result.
+   *
+   * @return The result of the request, which is {@code null} for requests
+   *         that do not return a result.
+   * @throws SCIMException If the request failed, was cancelled, or the
+   *                       thread was interrupted while waiting.
+   */
+  public T getResult()
+      throws SCIMException
+  {
+    try
+    {
+      return get();
+    }
+    catch (InterruptedException e)
+    {
+      Debug.debugException(e);
+      Thread.currentThread().interrupt();
+      throw new ServerErrorException(
+          "Interrupted while waiting for the response", e);
+    }
+    catch (CancellationException e)
+    {
+      Debug.debugException(e);
+      throw new ServerErrorException("The request was cancelled", e);
+    }
+    catch (ExecutionException e)
+    {
+      Debug.debugException(e);
+      final Throwable cause = e.getCause();
+      if (cause instanceof SCIMException)
+      {
+        throw (SCIMException) cause;
+      }
+      throw new ServerErrorException(
+          SCIMEndpoint.getExceptionMessage(cause), cause);
+    }
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  protected void done()
+  {
+    final List<SCIMCallback<T>> toNotify;
+    synchronized (this)
+    {
+      toNotify = callbacks;
+      callbacks = null;
+    }
+
+    for (final SCIMCallback<T> callback : toNotify)
+    {
+      notifyCallback(callback);
+    }
+  }
+
+
+
+  /**
+   * Notify a callback of the outcome of the completed request.
+   *
+   * @param callback The callback to be notified.
+   */
+  private void notifyCallback(final SCIMCallback<T> callback)
+  {
+    final T result;
+    try
+    {
+      result = getResult();
+    }
+    catch (SCIMException e)
+    {
+      callback.failed(e);
+      return;
+    }
+    callback.completed(result);
+  }
+}
@@ -145,6 +145,33 @@ public class SCIMObject
 
 
 
+  /**
+   * Retrieves the attribute with the provided normalized schema and name.
+   *
+   * @param normalizedSchema  The schema URI of the attribute in lower case.
+   * @param normalizedName    The name of the attribute in lower case.
+   *
+   * @return  The requested attribute from this object, or {@code null} if the
+   *          specified attribute is not present in this object.
+   */
+  SCIMAttribute getNormalizedAttribute(final String normalizedSchema,
+                                       final String normalizedName)
+  {
+    final LinkedHashMap<String,SCIMAttribute> attrs =
+        attributes.get(normalizedSchema);
+
+    if (attrs == null)
+    {
+      return null;
+    }
+    else
+    {
+      return attrs.get(normalizedName);
+    }
+  }
+
+
+
   /**
    * Retrieves the set of attributes in this object from the specified schema.
    *
@@ -403,37 +430,7 @@ public class SCIMObject
    */
   public boolean matchesFilter(final SCIMFilter filter)
   {
-    final SCIMFilterType type = filter.getFilterType();
-    final List<SCIMFilter> components = filter.getFilterComponents();
-
-    switch(type)
-    {
-      case AND:
-        for(SCIMFilter component : components)
-        {
-          if(!matchesFilter(component))
-          {
-            return false;
-          }
-        }
-        return true;
-      case OR:
-        for(SCIMFilter component : components)
-        {
-          if(matchesFilter(component))
-          {
-            return true;
-          }
-        }
-        return false;
-    }
-
-    final String schema = filter.getFilterAttribute().getAttributeSchema();
-    final String attributeName = filter.getFilterAttribute().getAttributeName();
-
-    final SCIMAttribute attribute = getAttribute(schema, attributeName);
-    return attribute != null && attribute.matchesFilter(filter);
-
+    return filter.compile().matches(this);
   }
 
 
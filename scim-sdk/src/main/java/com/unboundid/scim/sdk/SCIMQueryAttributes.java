@@ -387,6 +387,46 @@ public class SCIMQueryAttributes
 
 
 
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public boolean equals(final Object o)
+  {
+    if (this == o)
+    {
+      return true;
+    }
+    if (!(o instanceof SCIMQueryAttributes))
+    {
+      return false;
+    }
+
+    final SCIMQueryAttributes that = (SCIMQueryAttributes) o;
+    if (allAttributesRequested != that.allAttributesRequested ||
+        debugSearchIndex != that.debugSearchIndex)
+    {
+      return false;
+    }
+
+    return allAttributesRequested || descriptors.equals(that.descriptors);
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  @Override
+  public int hashCode()
+  {
+    int result = allAttributesRequested ? 1 : descriptors.hashCode();
+    result = 31 * result + (debugSearchIndex ? 1 : 0);
+    return result;
+  }
+
+
+
   /**
    * {@inheritDoc}
    */
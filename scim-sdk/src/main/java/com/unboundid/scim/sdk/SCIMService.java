@@ -17,6 +17,7 @@
 
 package com.unboundid.scim.sdk;
 
+import com.unboundid.scim.data.BulkConfig;
 import com.unboundid.scim.data.GroupResource;
 import com.unboundid.scim.data.BaseResource;
 import com.unboundid.scim.data.ResourceFactory;
@@ -27,10 +28,11 @@ import com.unboundid.scim.schema.ResourceDescriptor;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.UsernamePasswordCredentials;
 import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.IdleConnectionEvictor;
 import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import com.unboundid.scim.facade.org.apache.wink.client.RestClient;
+import org.apache.http.pool.PoolStats;
 import org.glassfish.jersey.apache.connector.ApacheClientProperties;
-import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
 import org.glassfish.jersey.client.ClientConfig;
 
 import javax.ws.rs.client.ClientRequestContext;
@@ -50,11 +52,14 @@ import static com.unboundid.scim.schema.CoreSchema
  * The SCIMService class represents a client connection to a SCIM service
  * provider. It handles setting up and configuring the connection which will
  * be used by the SCIMEndpoints that are obtained form this SCIMService.
+ * Use {@link SCIMServiceBuilder} to configure the HTTP connection pool.
  */
 public class SCIMService
 {
   private final RestClient client;
   private final URI baseURL;
+  private final PoolingHttpClientConnectionManager connectionManager;
+  private final IdleConnectionEvictor connectionEvictor;
 
   private MediaType acceptType = MediaType.APPLICATION_JSON_TYPE;
   private MediaType contentType = MediaType.APPLICATION_JSON_TYPE;
@@ -69,9 +74,29 @@ public class SCIMService
    */
   public SCIMService(final URI baseUrl,
     final org.glassfish.jersey.client.ClientConfig clientConfig)
+  {
+    this(baseUrl, clientConfig, null);
+  }
+
+  /**
+   * Constructs a new SCIMService from a url and a jersey client config.
+   * @param baseUrl The SCIM Service Provider URL.
+   * @param clientConfig The client config object.
+   * @param connectionEvictor The thread that closes idle pooled connections,
+   *                          which is stopped when the service is closed, or
+   *                          {@code null} if there is none.
+   */
+  SCIMService(final URI baseUrl, final ClientConfig clientConfig,
+              final IdleConnectionEvictor connectionEvictor)
   {
     this.baseURL = baseUrl;
     this.client = new RestClient(clientConfig);
+    this.connectionEvictor = connectionEvictor;
+
+    final Object mgr =
+        clientConfig.getProperty(ApacheClientProperties.CONNECTION_MANAGER);
+    this.connectionManager = mgr instanceof PoolingHttpClientConnectionManager ?
+        (PoolingHttpClientConnectionManager) mgr : null;
   }
 
   /**
@@ -92,25 +117,8 @@ public class SCIMService
    * @param oAuthToken The OAuth token.
    */
   public SCIMService(final URI baseUrl, final OAuthToken oAuthToken) {
-    this(baseUrl, createDefaultClientConfig().register(
-        new ClientRequestFilter()
-        {
-          public void filter(final ClientRequestContext clientRequestContext)
-              throws IOException
-          {
-            try
-            {
-              clientRequestContext.getHeaders().add(
-                  "Authorization", oAuthToken.getFormattedValue());
-            }
-            catch (Exception ex)
-            {
-              throw new RuntimeException(
-                  "Unable to add authorization handler", ex);
-            }
-          }
-        }
-    ));
+    this(baseUrl,
+         createDefaultClientConfig().register(createOAuthFilter(oAuthToken)));
   }
 
   /**
@@ -410,6 +418,73 @@ public class SCIMService
 
 
 
+  /**
+   * Invoke a bulk request, providing each operation response to a handler as
+   * it is read instead of collecting them into a bulk response.
+   *
+   * @param operations    The operations to be performed.
+   * @param failOnErrors  The number of errors that the service provider will
+   *                      accept before the operation is terminated and an
+   *                      error response is returned. A value of -1 indicates
+   *                      the the service provider will continue to perform
+   *                      as many operations as possible without regard to
+   *                      failures.
+   * @param handler       The bulk content handler that is to be used to process
+   *                      each operation response in the bulk response.
+   *
+   * @throws SCIMException  If the request fails.
+   */
+  public void processBulkRequest(final List<BulkOperation> operations,
+                                 final int failOnErrors,
+                                 final BulkContentHandler handler)
+      throws SCIMException
+  {
+    final BulkEndpoint request = new BulkEndpoint(this, client);
+
+    request.processRequest(handler, operations, failOnErrors);
+  }
+
+
+
+  /**
+   * Create a bulk writer that sends operations to the service provider as
+   * they are added, in batches that respect the maxOperations and
+   * maxPayloadSize limits of the service provider configuration.
+   *
+   * @param handler               The bulk content handler that is to be
+   *                              used to process each operation response.
+   * @param failOnErrors          The number of errors that the service
+   *                              provider will accept in each bulk request
+   *                              before it is terminated. A value of -1
+   *                              indicates that there is no limit.
+   * @param maxConcurrentBatches  The maximum number of bulk requests to
+   *                              have outstanding at once.
+   *
+   * @return  A new bulk writer, which must be closed once all of the
+   *          operations have been added.
+   *
+   * @throws SCIMException  If the service provider configuration could not
+   *                        be retrieved, or if the service provider does not
+   *                        support bulk operations.
+   */
+  public BulkWriter createBulkWriter(final BulkContentHandler handler,
+                                     final int failOnErrors,
+                                     final int maxConcurrentBatches)
+      throws SCIMException
+  {
+    final BulkConfig bulkConfig = getServiceProviderConfig().getBulkConfig();
+    if (bulkConfig == null || !bulkConfig.isSupported())
+    {
+      throw new UnsupportedOperationException(
+          "The service provider does not support bulk operations");
+    }
+
+    return new BulkWriter(new BulkEndpoint(this, client), bulkConfig,
+                          handler, failOnErrors, maxConcurrentBatches);
+  }
+
+
+
   /**
    * Retrieves the SCIM Service Provider URL.
    *
@@ -568,21 +643,69 @@ public class SCIMService
     this.useUrlSuffix = useUrlSuffix;
   }
 
+  /**
+   * Retrieves the statistics of the HTTP connection pool, which include the
+   * number of connections that are leased and available, and the number of
+   * requests waiting for a connection.
+   *
+   * @return The statistics of the HTTP connection pool, or {@code null} if
+   *         the client config provided for this service does not use a
+   *         {@code PoolingHttpClientConnectionManager}.
+   */
+  public PoolStats getConnectionPoolStats()
+  {
+    return connectionManager == null ? null : connectionManager.getTotalStats();
+  }
+
+  /**
+   * Closes the HTTP connections used by this service. The SCIMEndpoints
+   * obtained from this service may not be used afterwards.
+   */
+  public void close()
+  {
+    if (connectionEvictor != null)
+    {
+      connectionEvictor.shutdown();
+    }
+    client.getClient().close();
+  }
+
   /**
    * Create a new ClientConfig with the default settings.
    *
    * @return A new ClientConfig with the default settings.
    */
   private static ClientConfig createDefaultClientConfig() {
-    final PoolingHttpClientConnectionManager mgr =
-        new PoolingHttpClientConnectionManager();
-    mgr.setMaxTotal(100);
-    mgr.setDefaultMaxPerRoute(100);
+    final SCIMServiceBuilder builder = new SCIMServiceBuilder(null);
+    return builder.createClientConfig(builder.createConnectionManager());
+  }
 
-    ClientConfig jerseyConfig = new ClientConfig();
-    ApacheConnectorProvider connectorProvider = new ApacheConnectorProvider();
-    jerseyConfig.connectorProvider(connectorProvider);
-    return jerseyConfig;
+  /**
+   * Create a request filter that authenticates requests with the provided
+   * OAuth token.
+   *
+   * @param oAuthToken The OAuth token.
+   * @return A new request filter.
+   */
+  static ClientRequestFilter createOAuthFilter(final OAuthToken oAuthToken)
+  {
+    return new ClientRequestFilter()
+    {
+      public void filter(final ClientRequestContext clientRequestContext)
+          throws IOException
+      {
+        try
+        {
+          clientRequestContext.getHeaders().add(
+              "Authorization", oAuthToken.getFormattedValue());
+        }
+        catch (Exception ex)
+        {
+          throw new RuntimeException(
+              "Unable to add authorization handler", ex);
+        }
+      }
+    };
   }
 
   /**
@@ -592,7 +715,7 @@ public class SCIMService
    * @param password The password.
    * @return A new BasicCredentialsProvider.
    */
-  private static BasicCredentialsProvider createBasicCredentialsProvider(
+  static BasicCredentialsProvider createBasicCredentialsProvider(
       final String username, final String password)
   {
     BasicCredentialsProvider provider = new BasicCredentialsProvider();
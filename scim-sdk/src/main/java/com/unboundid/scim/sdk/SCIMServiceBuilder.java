@@ -0,0 +1,313 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.glassfish.jersey.apache.connector.ApacheClientProperties;
+import org.glassfish.jersey.apache.connector.ApacheConnectorProvider;
+import org.glassfish.jersey.client.ClientConfig;
+import org.glassfish.jersey.client.ClientProperties;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+
+
+/**
+ * This class provides a way to create a {@link SCIMService} whose HTTP
+ * connections are pooled with the provided settings. For example:
+ * <pre>
+ *   SCIMService service = new SCIMServiceBuilder(baseUrl)
+ *       .setMaxConnections(50)
+ *       .setIdleConnectionTimeoutMillis(30000)
+ *       .setReadTimeoutMillis(60000)
+ *       .setBasicAuthentication("bjensen", "password")
+ *       .build();
+ * </pre>
+ * The connections are shared by all the SCIMEndpoints obtained from the
+ * service, so the pool should be large enough for the number of threads that
+ * use them at once. {@link SCIMService#close()} releases the connections.
+ */
+public class SCIMServiceBuilder
+{
+  /**
+   * The default maximum number of pooled connections.
+   */
+  public static final int DEFAULT_MAX_CONNECTIONS = 100;
+
+  /**
+   * The default number of milliseconds a pooled connection may be idle
+   * before it is checked before being reused.
+   */
+  public static final int DEFAULT_STALE_CONNECTION_CHECK_MILLIS = 2000;
+
+  private final URI baseUrl;
+  private int maxConnections = DEFAULT_MAX_CONNECTIONS;
+  private int maxConnectionsPerRoute = DEFAULT_MAX_CONNECTIONS;
+  private long connectionTimeToLiveMillis;
+  private long idleConnectionTimeoutMillis;
+  private int staleConnectionCheckMillis =
+      DEFAULT_STALE_CONNECTION_CHECK_MILLIS;
+  private int connectTimeoutMillis;
+  private int readTimeoutMillis;
+  private String username;
+  private String password;
+  private OAuthToken oAuthToken;
+
+
+
+  /**
+   * Create a new builder for a SCIMService with the default settings.
+   *
+   * @param baseUrl The SCIM Service Provider URL.
+   */
+  public SCIMServiceBuilder(final URI baseUrl)
+  {
+    this.baseUrl = baseUrl;
+  }
+
+
+
+  /**
+   * Sets the maximum number of connections in the pool. The default is
+   * {@link #DEFAULT_MAX_CONNECTIONS}.
+   *
+   * @param maxConnections The maximum number of connections.
+   * @return This builder.
+   */
+  public SCIMServiceBuilder setMaxConnections(final int maxConnections)
+  {
+    this.maxConnections = maxConnections;
+    return this;
+  }
+
+
+
+  /**
+   * Sets the maximum number of connections in the pool to any one host. The
+   * default is {@link #DEFAULT_MAX_CONNECTIONS}.
+   *
+   * @param maxConnectionsPerRoute The maximum number of connections to any
+   *                               one host.
+   * @return This builder.
+   */
+  public SCIMServiceBuilder setMaxConnectionsPerRoute(
+      final int maxConnectionsPerRoute)
+  {
+    this.maxConnectionsPerRoute = maxConnectionsPerRoute;
+    return this;
+  }
+
+
+
+  /**
+   * Sets the maximum number of milliseconds a connection is kept alive for,
+   * after which it is closed rather than reused. The default is zero, which
+   * keeps connections alive for as long as the service provider allows.
+   *
+   * @param connectionTimeToLiveMillis The maximum lifetime of a connection in
+   *                                   milliseconds, or zero for no limit.
+   * @return This builder.
+   */
+  public SCIMServiceBuilder setConnectionTimeToLiveMillis(
+      final long connectionTimeToLiveMillis)
+  {
+    this.connectionTimeToLiveMillis = connectionTimeToLiveMillis;
+    return this;
+  }
+
+
+
+  /**
+   * Sets the number of milliseconds a pooled connection may be idle before
+   * it is closed by a background thread. The default is zero, which leaves
+   * idle connections open.
+   *
+   * @param idleConnectionTimeoutMillis The idle timeout in milliseconds, or
+   *                                    zero to leave idle connections open.
+   * @return This builder.
+   */
+  public SCIMServiceBuilder setIdleConnectionTimeoutMillis(
+      final long idleConnectionTimeoutMillis)
+  {
+    this.idleConnectionTimeoutMillis = idleConnectionTimeoutMillis;
+    return this;
+  }
+
+
+
+  /**
+   * Sets the number of milliseconds a pooled connection may be idle before
+   * it is checked for having been closed by the service provider before it
+   * is reused. The default is
+   * {@link #DEFAULT_STALE_CONNECTION_CHECK_MILLIS}.
+   *
+   * @param staleConnectionCheckMillis The idle time in milliseconds after
+   *                                   which connections are checked, or a
+   *                                   negative value to never check them.
+   * @return This builder.
+   */
+  public SCIMServiceBuilder setStaleConnectionCheckMillis(
+      final int staleConnectionCheckMillis)
+  {
+    this.staleConnectionCheckMillis = staleConnectionCheckMillis;
+    return this;
+  }
+
+
+
+  /**
+   * Sets the number of milliseconds to wait for a connection to be
+   * established. The default is zero, which waits indefinitely.
+   *
+   * @param connectTimeoutMillis The connect timeout in milliseconds.
+   * @return This builder.
+   */
+  public SCIMServiceBuilder setConnectTimeoutMillis(
+      final int connectTimeoutMillis)
+  {
+    this.connectTimeoutMillis = connectTimeoutMillis;
+    return this;
+  }
+
+
+
+  /**
+   * Sets the number of milliseconds to wait for data from the service
+   * provider. The default is zero, which waits indefinitely.
+   *
+   * @param readTimeoutMillis The read timeout in milliseconds.
+   * @return This builder.
+   */
+  public SCIMServiceBuilder setReadTimeoutMillis(final int readTimeoutMillis)
+  {
+    this.readTimeoutMillis = readTimeoutMillis;
+    return this;
+  }
+
+
+
+  /**
+   * Authenticate requests with HTTP basic authentication using the provided
+   * credentials.
+   *
+   * @param username The username.
+   * @param password The password.
+   * @return This builder.
+   */
+  public SCIMServiceBuilder setBasicAuthentication(final String username,
+                                                   final String password)
+  {
+    this.username = username;
+    this.password = password;
+    this.oAuthToken = null;
+    return this;
+  }
+
+
+
+  /**
+   * Authenticate requests with the provided OAuth token.
+   *
+   * @param oAuthToken The OAuth token.
+   * @return This builder.
+   */
+  public SCIMServiceBuilder setOAuthToken(final OAuthToken oAuthToken)
+  {
+    this.oAuthToken = oAuthToken;
+    this.username = null;
+    this.password = null;
+    return this;
+  }
+
+
+
+  /**
+   * Create a SCIMService with the settings of this builder.
+   *
+   * @return A new SCIMService.
+   */
+  public SCIMService build()
+  {
+    final PoolingHttpClientConnectionManager mgr = createConnectionManager();
+    final ClientConfig clientConfig = createClientConfig(mgr);
+    if (username != null)
+    {
+      clientConfig.property(ApacheClientProperties.CREDENTIALS_PROVIDER,
+          SCIMService.createBasicCredentialsProvider(username, password));
+      clientConfig.property(
+          ApacheClientProperties.PREEMPTIVE_BASIC_AUTHENTICATION, true);
+    }
+    else if (oAuthToken != null)
+    {
+      clientConfig.register(SCIMService.createOAuthFilter(oAuthToken));
+    }
+
+    IdleConnectionEvictor evictor = null;
+    if (idleConnectionTimeoutMillis > 0)
+    {
+      evictor = new IdleConnectionEvictor(mgr,
+          Math.max(idleConnectionTimeoutMillis / 2, 1000L),
+          TimeUnit.MILLISECONDS,
+          idleConnectionTimeoutMillis, TimeUnit.MILLISECONDS);
+      evictor.start();
+    }
+
+    return new SCIMService(baseUrl, clientConfig, evictor);
+  }
+
+
+
+  /**
+   * Create the connection manager that pools the HTTP connections.
+   *
+   * @return A new connection manager.
+   */
+  PoolingHttpClientConnectionManager createConnectionManager()
+  {
+    final PoolingHttpClientConnectionManager mgr =
+        new PoolingHttpClientConnectionManager(
+            connectionTimeToLiveMillis > 0 ? connectionTimeToLiveMillis : -1,
+            TimeUnit.MILLISECONDS);
+    mgr.setMaxTotal(maxConnections);
+    mgr.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+    mgr.setValidateAfterInactivity(staleConnectionCheckMillis);
+    return mgr;
+  }
+
+
+
+  /**
+   * Create a Jersey client config that uses the provided connection manager
+   * and the timeouts of this builder.
+   *
+   * @param mgr The connection manager.
+   * @return A new Jersey client config.
+   */
+  ClientConfig createClientConfig(final PoolingHttpClientConnectionManager mgr)
+  {
+    final ClientConfig jerseyConfig = new ClientConfig();
+    jerseyConfig.property(ApacheClientProperties.CONNECTION_MANAGER, mgr);
+    jerseyConfig.property(ClientProperties.CONNECT_TIMEOUT,
+                          connectTimeoutMillis);
+    jerseyConfig.property(ClientProperties.READ_TIMEOUT, readTimeoutMillis);
+    jerseyConfig.connectorProvider(new ApacheConnectorProvider());
+    return jerseyConfig;
+  }
+}
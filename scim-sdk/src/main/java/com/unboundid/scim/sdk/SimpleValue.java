@@ -28,6 +28,11 @@ import java.util.TimeZone;
 /**
  * This class represents a SCIM simple value. Simple values can be String,
  * Boolean, DateTime or Binary.
+ * <p>
+ * Values other than binary values are stored in their lexical form. The
+ * typed form of the value is parsed when it is first requested and kept, so
+ * that values which are compared repeatedly, for example when evaluating
+ * filters, are only parsed once.
  */
 public class SimpleValue
 {
@@ -41,6 +46,13 @@ public class SimpleValue
    */
   private final Object value;
 
+  /**
+   * The most recently requested typed form of the value, which is a Boolean,
+   * Long, Double or ParsedDate, or {@code null} if the value has not been
+   * parsed yet.
+   */
+  private volatile Object parsedValue;
+
 
 
   /**
@@ -63,6 +75,7 @@ public class SimpleValue
   public SimpleValue(final Boolean booleanValue)
   {
     this.value = booleanValue.toString();
+    this.parsedValue = booleanValue;
   }
 
 
@@ -77,6 +90,7 @@ public class SimpleValue
     final Calendar calendar = new GregorianCalendar(utcTimeZone);
     calendar.setTime(dateValue);
     this.value = DatatypeConverter.printDateTime(calendar);
+    this.parsedValue = new ParsedDate(dateValue.getTime());
   }
 
 
@@ -88,6 +102,7 @@ public class SimpleValue
   public SimpleValue(final Long longValue)
   {
     this.value = longValue.toString();
+    this.parsedValue = longValue;
   }
 
 
@@ -99,6 +114,7 @@ public class SimpleValue
   public SimpleValue(final Integer intValue)
   {
     this.value = intValue.toString();
+    this.parsedValue = Long.valueOf(intValue.longValue());
   }
 
   /**
@@ -109,6 +125,7 @@ public class SimpleValue
   public SimpleValue(final Double doubleValue)
   {
     this.value = doubleValue.toString();
+    this.parsedValue = doubleValue;
   }
 
 
@@ -150,7 +167,15 @@ public class SimpleValue
    */
   public Boolean getBooleanValue()
   {
-    return Boolean.valueOf((String)value);
+    final Object parsed = parsedValue;
+    if (parsed instanceof Boolean)
+    {
+      return (Boolean)parsed;
+    }
+
+    final Boolean booleanValue = Boolean.valueOf((String)value);
+    parsedValue = booleanValue;
+    return booleanValue;
   }
 
 
@@ -162,7 +187,15 @@ public class SimpleValue
    */
   public Double getDoubleValue()
   {
-    return Double.valueOf((String)value);
+    final Object parsed = parsedValue;
+    if (parsed instanceof Double)
+    {
+      return (Double)parsed;
+    }
+
+    final Double doubleValue = Double.valueOf((String)value);
+    parsedValue = doubleValue;
+    return doubleValue;
   }
 
 
@@ -174,7 +207,15 @@ public class SimpleValue
    */
   public Long getLongValue()
   {
-    return Long.valueOf((String)value);
+    final Object parsed = parsedValue;
+    if (parsed instanceof Long)
+    {
+      return (Long)parsed;
+    }
+
+    final Long longValue = Long.valueOf((String)value);
+    parsedValue = longValue;
+    return longValue;
   }
 
 
@@ -186,7 +227,30 @@ public class SimpleValue
    */
   public Date getDateValue()
   {
-    return DatatypeConverter.parseDateTime((String)value).getTime();
+    return new Date(getDateMillis());
+  }
+
+
+
+  /**
+   * Retrieves the simple value as a date, in milliseconds since the epoch.
+   * Unlike {@link #getDateValue()}, this does not create a new object once
+   * the value has been parsed.
+   *
+   * @return  The simple value as a date, in milliseconds since the epoch.
+   */
+  long getDateMillis()
+  {
+    final Object parsed = parsedValue;
+    if (parsed instanceof ParsedDate)
+    {
+      return ((ParsedDate)parsed).millis;
+    }
+
+    final long millis =
+        DatatypeConverter.parseDateTime((String)value).getTimeInMillis();
+    parsedValue = new ParsedDate(millis);
+    return millis;
   }
 
 
@@ -245,4 +309,30 @@ public class SimpleValue
   public int hashCode() {
     return value.hashCode();
   }
+
+
+
+  /**
+   * A parsed date value, which unlike {@code Date} is immutable and can be
+   * shared.
+   */
+  private static final class ParsedDate
+  {
+    /**
+     * The date in milliseconds since the epoch.
+     */
+    private final long millis;
+
+
+
+    /**
+     * Create a new parsed date value.
+     *
+     * @param millis  The date in milliseconds since the epoch.
+     */
+    ParsedDate(final long millis)
+    {
+      this.millis = millis;
+    }
+  }
 }
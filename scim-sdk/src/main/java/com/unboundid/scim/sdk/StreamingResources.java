@@ -0,0 +1,165 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.marshal.Marshaller;
+import com.unboundid.scim.marshal.StreamMarshaller;
+import com.unboundid.scim.schema.ResourceDescriptor;
+
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+
+
+
+/**
+ * Implements a SCIMResponse to handle query responses without keeping the
+ * entire set of resources in memory. Backends extend this class and write
+ * each resource as soon as it is available from the
+ * {@link #streamResources()} method, which is invoked while the response is
+ * being marshalled. The totalResults, itemsPerPage and startIndex values are
+ * written after the resources.
+ * <p>
+ * Since the response status has already been sent by the time the resources
+ * are produced, an error that occurs while streaming the resources results in
+ * a truncated response rather than a SCIM error response.
+ */
+public abstract class StreamingResources implements SCIMResponse
+{
+  private final Set<String> schemaURIs;
+  private final long startIndex;
+  private StreamMarshaller streamMarshaller;
+  private int itemsPerPage;
+
+
+
+  /**
+   * Create a new streaming resources response.
+   *
+   * @param resourceDescriptor  The resource descriptor of the resources that
+   *                            will be written.
+   * @param startIndex          The 1-based index of the first result in the
+   *                            current set of search results.
+   */
+  protected StreamingResources(final ResourceDescriptor resourceDescriptor,
+                               final long startIndex)
+  {
+    this.schemaURIs =
+        new HashSet<String>(resourceDescriptor.getAttributeSchemas());
+    this.startIndex = startIndex;
+  }
+
+
+
+  /**
+   * Retrieves the 1-based index of the first result in the current set of
+   * search results.
+   *
+   * @return The 1-based index of the first result in the current set of
+   *         search results.
+   */
+  public long getStartIndex()
+  {
+    return startIndex;
+  }
+
+
+
+  /**
+   * Retrieves the number of resources written so far.
+   *
+   * @return The number of resources written so far.
+   */
+  public int getItemsPerPage()
+  {
+    return itemsPerPage;
+  }
+
+
+
+  /**
+   * {@inheritDoc}
+   */
+  public void marshal(final Marshaller marshaller,
+                      final OutputStream outputStream)
+      throws Exception
+  {
+    marshaller.marshal(this, outputStream);
+  }
+
+
+
+  /**
+   * Write the complete response to the provided stream marshaller. This
+   * produces the resources by invoking {@link #streamResources()}.
+   *
+   * @param streamMarshaller  The stream marshaller to write to.
+   *
+   * @throws SCIMException  If the resources could not be produced or the data
+   *                        could not be written.
+   */
+  public void marshal(final StreamMarshaller streamMarshaller)
+      throws SCIMException
+  {
+    this.streamMarshaller = streamMarshaller;
+    this.itemsPerPage = 0;
+
+    streamMarshaller.writeResourcesStart(schemaURIs);
+    final long totalResults = streamResources();
+    streamMarshaller.writeResourcesFinish(totalResults, itemsPerPage,
+                                          startIndex);
+  }
+
+
+
+  /**
+   * Write a resource to the response. This method may only be called from
+   * within {@link #streamResources()}.
+   *
+   * @param resource  The resource to write.
+   *
+   * @throws SCIMException  If the resource could not be written.
+   */
+  public void writeResource(final BaseResource resource)
+      throws SCIMException
+  {
+    if (streamMarshaller == null)
+    {
+      throw new ServerErrorException(
+          "Resources may only be written while the response is being " +
+          "marshalled");
+    }
+
+    streamMarshaller.writeResource(resource);
+    itemsPerPage++;
+  }
+
+
+
+  /**
+   * Produce the resources of this response, passing each one to
+   * {@link #writeResource(BaseResource)} as soon as it is available.
+   *
+   * @return  The total number of results matching the query.
+   *
+   * @throws SCIMException  If an error occurs while producing the resources.
+   */
+  protected abstract long streamResources()
+      throws SCIMException;
+}
@@ -38,6 +38,7 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -134,73 +135,61 @@ public class AbstractBulkResource
       application.acquireBulkRequestPermit();
       try
       {
-        // Write the request to a temporary file.
-        final File requestFile = File.createTempFile(
-            "scim-bulk-request-",
-            "." + requestContext.getConsumeMediaType().getSubtype(),
-            application.getTmpDataDir());
-        try
+        if (application.getBackend().getConfig().isStreamBulkRequests())
+        {
+          // Parse the request as it is received. The parser enforces the
+          // maxPayloadSize as it reads.
+          responseBuilder = processBulkRequest(
+              requestContext, unmarshaller, bulkConfig,
+              new BufferedInputStream(inputStream), null);
+        }
+        else
         {
-          requestFile.deleteOnExit();
-          final FileOutputStream fileOutputStream =
-              new FileOutputStream(requestFile);
+          // Write the request to a temporary file.
+          final File requestFile = File.createTempFile(
+              "scim-bulk-request-",
+              "." + requestContext.getConsumeMediaType().getSubtype(),
+              application.getTmpDataDir());
           try
           {
-            final byte[] buffer = new byte[8192];
-            int bytesRead;
-            long totalBytes = 0;
-            while ((bytesRead = inputStream.read(buffer)) != -1)
+            requestFile.deleteOnExit();
+            final FileOutputStream fileOutputStream =
+                new FileOutputStream(requestFile);
+            try
             {
-              totalBytes += bytesRead;
-              if (totalBytes > bulkConfig.getMaxPayloadSize())
+              final byte[] buffer = new byte[8192];
+              int bytesRead;
+              long totalBytes = 0;
+              while ((bytesRead = inputStream.read(buffer)) != -1)
               {
-                throw SCIMException.createException(
-                    413,
-                    "The size of the bulk request exceeds the maxPayloadSize " +
-                    "(" + bulkConfig.getMaxPayloadSize() + ")");
+                totalBytes += bytesRead;
+                if (totalBytes > bulkConfig.getMaxPayloadSize())
+                {
+                  throw SCIMException.createException(
+                      413,
+                      "The size of the bulk request exceeds the " +
+                      "maxPayloadSize (" + bulkConfig.getMaxPayloadSize() +
+                      ")");
+                }
+                fileOutputStream.write(buffer, 0, bytesRead);
               }
-              fileOutputStream.write(buffer, 0, bytesRead);
             }
-          }
-          finally
-          {
-            fileOutputStream.close();
-          }
-
-          // Write the response to a temporary file.
-          final BulkStreamResponse bulkStreamResponse =
-              new BulkStreamResponse(application, requestContext);
-          try
-          {
-            final BulkContentRequestHandler handler =
-                new BulkContentRequestHandler(application, requestContext,
-                                              application.getBackend(),
-                                              bulkStreamResponse,
-                                              tokenHandler);
-            unmarshaller.bulkUnmarshal(requestFile, bulkConfig, handler);
+            finally
+            {
+              fileOutputStream.close();
+            }
 
-            // Build the response.
-            responseBuilder = Response.status(Response.Status.OK);
-            setResponseEntity(responseBuilder,
-                              requestContext.getProduceMediaType(),
-                              bulkStreamResponse);
-            application.getStatsForResource(RESOURCE_NAME).incrementStat(
-                ResourceStats.POST_OK);
+            responseBuilder = processBulkRequest(
+                requestContext, unmarshaller, bulkConfig, null, requestFile);
           }
-          catch (Exception e)
-          {
-            Debug.debugException(e);
-            bulkStreamResponse.finalizeResponse();
-            throw e;
-          }
-        }
-        finally
-        {
-          if (!requestFile.delete())
+          finally
           {
-            Debug.debug(Level.WARNING, DebugType.OTHER,
-                        "Could not delete temporary file " +
-                        requestFile.getAbsolutePath());
+            if (!requestFile.delete())
+            {
+              Debug.debug(Level.WARNING, DebugType.OTHER,
+                          "Could not delete temporary file " +
+                          requestFile.getAbsolutePath());
+            }
           }
         }
       }
@@ -247,6 +236,77 @@ public class AbstractBulkResource
 
 
 
+  /**
+   * Process the operations of a bulk request and build the response.
+   *
+   * @param requestContext  The request context.
+   * @param unmarshaller    The unmarshaller for the request content.
+   * @param bulkConfig      The bulk configuration.
+   * @param inputStream     The request content to be parsed in a single pass,
+   *                        or {@code null} if the request has been written to
+   *                        a file.
+   * @param requestFile     The file containing the request content, or
+   *                        {@code null} if an input stream is provided.
+   *
+   * @return  The response builder.
+   *
+   * @throws Exception  If the bulk request could not be processed.
+   */
+  private Response.ResponseBuilder processBulkRequest(
+      final RequestContext requestContext,
+      final Unmarshaller unmarshaller,
+      final BulkConfig bulkConfig,
+      final InputStream inputStream,
+      final File requestFile)
+      throws Exception
+  {
+    // Write the response to a temporary file.
+    final BulkStreamResponse bulkStreamResponse =
+        new BulkStreamResponse(application, requestContext);
+    try
+    {
+      final BulkContentRequestHandler handler =
+          new BulkContentRequestHandler(application, requestContext,
+                                        application.getBackend(),
+                                        bulkStreamResponse,
+                                        tokenHandler);
+      try
+      {
+        if (requestFile != null)
+        {
+          unmarshaller.bulkUnmarshal(requestFile, bulkConfig, handler);
+        }
+        else
+        {
+          unmarshaller.bulkUnmarshal(inputStream, bulkConfig, handler);
+        }
+        handler.finish();
+      }
+      finally
+      {
+        handler.close();
+      }
+
+      // Build the response.
+      final Response.ResponseBuilder responseBuilder =
+          Response.status(Response.Status.OK);
+      setResponseEntity(responseBuilder,
+                        requestContext.getProduceMediaType(),
+                        bulkStreamResponse);
+      application.getStatsForResource(RESOURCE_NAME).incrementStat(
+          ResourceStats.POST_OK);
+      return responseBuilder;
+    }
+    catch (Exception e)
+    {
+      Debug.debugException(e);
+      bulkStreamResponse.finalizeResponse();
+      throw e;
+    }
+  }
+
+
+
   /**
    * Sets the response entity (content) for a SCIM bulk response.
    *
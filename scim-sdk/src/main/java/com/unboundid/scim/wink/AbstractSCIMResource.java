@@ -41,12 +41,12 @@ import com.unboundid.scim.sdk.PreconditionFailedException;
 import com.unboundid.scim.sdk.PutResourceRequest;
 import com.unboundid.scim.sdk.ResourceNotFoundException;
 import com.unboundid.scim.sdk.ResourceSchemaBackend;
-import com.unboundid.scim.sdk.Resources;
 import com.unboundid.scim.sdk.SCIMBackend;
 import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.SCIMFilter;
 import com.unboundid.scim.sdk.SCIMQueryAttributes;
 import com.unboundid.scim.sdk.SCIMRequest;
+import com.unboundid.scim.sdk.SCIMResponse;
 import com.unboundid.scim.sdk.SortParameters;
 import com.unboundid.scim.sdk.UnauthorizedException;
 
@@ -146,9 +146,11 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
   {
     logIgnoredQueryParams(requestContext, COMMON_REQUEST_PARAMS);
 
+    final long startTime = System.nanoTime();
     SCIMBackend backend;
     ResourceDescriptor resourceDescriptor = null;
     Response.ResponseBuilder responseBuilder;
+    boolean latencyRecorded = false;
     try {
       backend = getBackend(endpoint);
       resourceDescriptor = backend.getResourceDescriptor(endpoint);
@@ -182,6 +184,8 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         {
           application.getStatsForResource(resourceDescriptor.getName()).
               incrementStat("get-" + response.getStatus());
+          application.getStatsForResource(resourceDescriptor.getName()).
+              recordLatency(ResourceStats.GET_LATENCY, startTime);
           return response;
         }
         else
@@ -194,13 +198,20 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         }
       }
 
+      final long backendStartTime = System.nanoTime();
       BaseResource resource =
           backend.getResource(getResourceRequest);
+      application.getStatsForResource(resourceDescriptor.getName()).
+          recordLatency(ResourceStats.GET_BACKEND_LATENCY, backendStartTime);
 
       // Build the response.
       responseBuilder = Response.status(Response.Status.OK);
         setResponseEntity(responseBuilder, requestContext.getProduceMediaType(),
-            resource);
+            resource, application.getStatsForResource(
+                resourceDescriptor.getName()),
+            ResourceStats.GET_MARSHAL_LATENCY, ResourceStats.GET_LATENCY,
+            startTime);
+        latencyRecorded = true;
         application.getStatsForResource(resourceDescriptor.getName()).
           incrementStat(ResourceStats.GET_OK);
       responseBuilder.contentLocation(resource.getMeta().getLocation());
@@ -230,6 +241,12 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
       }
     }
 
+    if (resourceDescriptor != null && !latencyRecorded)
+    {
+      application.getStatsForResource(resourceDescriptor.getName()).
+          recordLatency(ResourceStats.GET_LATENCY, startTime);
+    }
+
     return responseBuilder.build();
   }
 
@@ -263,9 +280,11 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
   {
     logIgnoredQueryParams(requestContext, SEARCH_REQUEST_PARAMS);
 
+    final long startTime = System.nanoTime();
     SCIMBackend backend;
     ResourceDescriptor resourceDescriptor = null;
     Response.ResponseBuilder responseBuilder;
+    boolean latencyRecorded = false;
     try
     {
       backend = getBackend(endpoint);
@@ -339,16 +358,22 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
               "' is not parsable");
         }
 
-        if (count <= 0)
+        if (count < 0)
         {
           throw new InvalidResourceException(
               "The pagination count value '" + pageSize +
-              "' is invalid because it is not greater than zero");
+              "' is invalid because it is negative");
         }
       }
 
       final PageParameters pageParameters;
-      if (startIndex >= 0 && count >= 0)
+      if (count == 0)
+      {
+        // Only the total number of results is requested.
+        pageParameters =
+            PageParameters.createCountOnly(startIndex >= 0 ? startIndex : 1);
+      }
+      else if (startIndex >= 0 && count >= 0)
       {
         pageParameters = new PageParameters(startIndex, count);
       }
@@ -381,6 +406,8 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         {
           application.getStatsForResource(resourceDescriptor.getName()).
               incrementStat("query-" + response.getStatus());
+          application.getStatsForResource(resourceDescriptor.getName()).
+              recordLatency(ResourceStats.QUERY_LATENCY, startTime);
           return response;
         }
         else
@@ -394,13 +421,29 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         }
       }
 
-      final Resources resources = backend.getResources(getResourcesRequest);
+      final long backendStartTime = System.nanoTime();
+      final SCIMResponse resources;
+      if (backend.getConfig().isStreamQueryResults() &&
+          backend.supportsStreamingQuery())
+      {
+        resources = backend.getStreamingResources(getResourcesRequest);
+      }
+      else
+      {
+        resources = backend.getResources(getResourcesRequest);
+      }
+      application.getStatsForResource(resourceDescriptor.getName()).
+          recordLatency(ResourceStats.QUERY_BACKEND_LATENCY, backendStartTime);
 
       // Build the response.
       responseBuilder =
           Response.status(Response.Status.OK);
       setResponseEntity(responseBuilder, requestContext.getProduceMediaType(),
-                        resources);
+                        resources, application.getStatsForResource(
+                            resourceDescriptor.getName()),
+                        ResourceStats.QUERY_MARSHAL_LATENCY,
+                        ResourceStats.QUERY_LATENCY, startTime);
+      latencyRecorded = true;
 
       application.getStatsForResource(resourceDescriptor.getName()).
           incrementStat(ResourceStats.QUERY_OK);
@@ -430,6 +473,12 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
       }
     }
 
+    if (resourceDescriptor != null && !latencyRecorded)
+    {
+      application.getStatsForResource(resourceDescriptor.getName()).
+          recordLatency(ResourceStats.QUERY_LATENCY, startTime);
+    }
+
     return responseBuilder.build();
   }
 
@@ -449,9 +498,11 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
   {
     logIgnoredQueryParams(requestContext, COMMON_REQUEST_PARAMS);
 
+    final long startTime = System.nanoTime();
     SCIMBackend backend;
     ResourceDescriptor resourceDescriptor = null;
     Response.ResponseBuilder responseBuilder;
+    boolean latencyRecorded = false;
     try
     {
       backend = getBackend(endpoint);
@@ -506,6 +557,8 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         {
           application.getStatsForResource(resourceDescriptor.getName()).
               incrementStat("post-" + response.getStatus());
+          application.getStatsForResource(resourceDescriptor.getName()).
+              recordLatency(ResourceStats.POST_LATENCY, startTime);
           return response;
         }
         else
@@ -518,11 +571,18 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         }
       }
 
+      final long backendStartTime = System.nanoTime();
       final BaseResource resource = backend.postResource(postResourceRequest);
+      application.getStatsForResource(resourceDescriptor.getName()).
+          recordLatency(ResourceStats.POST_BACKEND_LATENCY, backendStartTime);
       // Build the response.
       responseBuilder = Response.status(Response.Status.CREATED);
       setResponseEntity(responseBuilder, requestContext.getProduceMediaType(),
-          resource);
+          resource, application.getStatsForResource(
+              resourceDescriptor.getName()),
+          ResourceStats.POST_MARSHAL_LATENCY, ResourceStats.POST_LATENCY,
+          startTime);
+      latencyRecorded = true;
       responseBuilder.location(resource.getMeta().getLocation());
       // cant use responsebuilder.tag ... it will quote the already
       // quoted string
@@ -551,6 +611,12 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
       }
     }
 
+    if (resourceDescriptor != null && !latencyRecorded)
+    {
+      application.getStatsForResource(resourceDescriptor.getName()).
+          recordLatency(ResourceStats.POST_LATENCY, startTime);
+    }
+
     return responseBuilder.build();
   }
 
@@ -573,9 +639,11 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
   {
     logIgnoredQueryParams(requestContext, COMMON_REQUEST_PARAMS);
 
+    final long startTime = System.nanoTime();
     SCIMBackend backend;
     ResourceDescriptor resourceDescriptor = null;
     Response.ResponseBuilder responseBuilder;
+    boolean latencyRecorded = false;
     try {
       backend = getBackend(endpoint);
       resourceDescriptor = backend.getResourceDescriptor(endpoint);
@@ -630,6 +698,8 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         {
           application.getStatsForResource(resourceDescriptor.getName()).
               incrementStat("put-" + response.getStatus());
+          application.getStatsForResource(resourceDescriptor.getName()).
+              recordLatency(ResourceStats.PUT_LATENCY, startTime);
           return response;
         }
         else
@@ -643,11 +713,18 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         }
       }
 
+      final long backendStartTime = System.nanoTime();
       final BaseResource scimResponse = backend.putResource(putResourceRequest);
+      application.getStatsForResource(resourceDescriptor.getName()).
+          recordLatency(ResourceStats.PUT_BACKEND_LATENCY, backendStartTime);
       // Build the response.
       responseBuilder = Response.status(Response.Status.OK);
       setResponseEntity(responseBuilder, requestContext.getProduceMediaType(),
-                        scimResponse);
+                        scimResponse, application.getStatsForResource(
+                            resourceDescriptor.getName()),
+                        ResourceStats.PUT_MARSHAL_LATENCY,
+                        ResourceStats.PUT_LATENCY, startTime);
+      latencyRecorded = true;
       responseBuilder.contentLocation(scimResponse.getMeta().getLocation());
       // cant use responsebuilder.tag ... it will quote the already
       // quoted string
@@ -677,6 +754,12 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
       }
     }
 
+    if (resourceDescriptor != null && !latencyRecorded)
+    {
+      application.getStatsForResource(resourceDescriptor.getName()).
+          recordLatency(ResourceStats.PUT_LATENCY, startTime);
+    }
+
     return responseBuilder.build();
   }
 
@@ -699,9 +782,11 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
   {
     logIgnoredQueryParams(requestContext, COMMON_REQUEST_PARAMS);
 
+    final long startTime = System.nanoTime();
     SCIMBackend backend;
     ResourceDescriptor resourceDescriptor = null;
     Response.ResponseBuilder responseBuilder;
+    boolean latencyRecorded = false;
     try {
       backend = getBackend(endpoint);
       resourceDescriptor = backend.getResourceDescriptor(endpoint);
@@ -755,6 +840,8 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         {
           application.getStatsForResource(resourceDescriptor.getName()).
               incrementStat("patch-" + response.getStatus());
+          application.getStatsForResource(resourceDescriptor.getName()).
+              recordLatency(ResourceStats.PATCH_LATENCY, startTime);
           return response;
         }
         else
@@ -768,15 +855,22 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         }
       }
 
+      final long backendStartTime = System.nanoTime();
       final BaseResource scimResponse =
               backend.patchResource(patchResourceRequest);
+      application.getStatsForResource(resourceDescriptor.getName()).
+          recordLatency(ResourceStats.PATCH_BACKEND_LATENCY, backendStartTime);
 
       // Build the response.
       if (!queryAttributes.allAttributesRequested())
       {
         responseBuilder = Response.status(Response.Status.OK);
         setResponseEntity(responseBuilder, requestContext.getProduceMediaType(),
-                scimResponse);
+                scimResponse, application.getStatsForResource(
+                    resourceDescriptor.getName()),
+                ResourceStats.PATCH_MARSHAL_LATENCY,
+                ResourceStats.PATCH_LATENCY, startTime);
+        latencyRecorded = true;
       }
       else
       {
@@ -812,6 +906,12 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
       }
     }
 
+    if (resourceDescriptor != null && !latencyRecorded)
+    {
+      application.getStatsForResource(resourceDescriptor.getName()).
+          recordLatency(ResourceStats.PATCH_LATENCY, startTime);
+    }
+
     return responseBuilder.build();
   }
 
@@ -830,10 +930,12 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
                       final String endpoint,
                       final String userID)
   {
+    final long startTime = System.nanoTime();
     SCIMBackend backend;
     ResourceDescriptor resourceDescriptor = null;
     // Process the request.
     Response.ResponseBuilder responseBuilder;
+    boolean latencyRecorded = false;
     try {
       backend = getBackend(endpoint);
       resourceDescriptor = backend.getResourceDescriptor(endpoint);
@@ -862,6 +964,8 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         {
           application.getStatsForResource(resourceDescriptor.getName()).
               incrementStat("delete-" + response.getStatus());
+          application.getStatsForResource(resourceDescriptor.getName()).
+              recordLatency(ResourceStats.DELETE_LATENCY, startTime);
           return response;
         }
         else
@@ -874,7 +978,10 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         }
       }
 
+      final long backendStartTime = System.nanoTime();
       backend.deleteResource(deleteResourceRequest);
+      application.getStatsForResource(resourceDescriptor.getName()).
+          recordLatency(ResourceStats.DELETE_BACKEND_LATENCY, backendStartTime);
       // Build the response.
       responseBuilder = Response.status(Response.Status.OK);
       application.getStatsForResource(resourceDescriptor.getName()).
@@ -889,6 +996,12 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
       }
     }
 
+    if (resourceDescriptor != null && !latencyRecorded)
+    {
+      application.getStatsForResource(resourceDescriptor.getName()).
+          recordLatency(ResourceStats.DELETE_LATENCY, startTime);
+    }
+
     return responseBuilder.build();
   }
 
@@ -921,8 +1034,37 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
                                      final AtomicReference<String> authIDRef,
                                      final OAuthTokenHandler tokenHandlerImpl)
   {
-    HttpHeaders headers = context.getHeaders();
-    List<String> headerList = headers.getRequestHeader("Authorization");
+    return validateOAuthToken(
+        context.getHeaders().getRequestHeader("Authorization"),
+        context.getProduceMediaType(), request, authIDRef, tokenHandlerImpl);
+  }
+
+
+
+  /**
+   * Validates the bearer token of a request, as described for
+   * {@link #validateOAuthToken(RequestContext, SCIMRequest, AtomicReference,
+   * OAuthTokenHandler)}, using values that were copied from the request
+   * context. This may be called on a thread other than the request thread.
+   *
+   * @param headerList       The values of the Authorization header of the
+   *                         request, or {@code null} if there are none.
+   * @param produceMediaType The media type to be produced.
+   * @param request          The unmarshalled SCIM Request for passing into the
+   *                         token handler.
+   * @param authIDRef        An output parameter to contain the DN of the
+   *                         authorization entry.
+   * @param tokenHandlerImpl The OAuthTokenHandler to use.
+   * @return                 {@code null} if the token was successfully
+   *                         validated, otherwise a Response instance
+   *                         containing the error information.
+   */
+  static Response validateOAuthToken(final List<String> headerList,
+                                     final MediaType produceMediaType,
+                                     final SCIMRequest request,
+                                     final AtomicReference<String> authIDRef,
+                                     final OAuthTokenHandler tokenHandlerImpl)
+  {
 
     if (headerList == null || headerList.isEmpty())
     {
@@ -935,7 +1077,7 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
     else if (headerList.size() > 1)
     {
       return invalidRequest("The Authorization header has too many values",
-              context.getProduceMediaType());
+              produceMediaType);
     }
 
     String header = headerList.get(0);
@@ -951,26 +1093,26 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         if (token == null)
         {
           return invalidRequest("Could not decode the access token",
-                  context.getProduceMediaType());
+                  produceMediaType);
         }
 
         if (!tokenHandlerImpl.isTokenAuthentic(token))
         {
           return invalidToken("The access token is not authentic",
-                  context.getProduceMediaType());
+                  produceMediaType);
         }
 
         if (!tokenHandlerImpl.isTokenForThisServer(token))
         {
           return invalidToken(
                   "The access token is not intended for this server",
-                  context.getProduceMediaType());
+                  produceMediaType);
         }
 
         if (tokenHandlerImpl.isTokenExpired(token))
         {
           return invalidToken("The access token is expired",
-                  context.getProduceMediaType());
+                  produceMediaType);
         }
 
         OAuthTokenStatus status =
@@ -980,7 +1122,7 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
                 OAuthTokenStatus.ErrorCode.INVALID_TOKEN))
         {
           String errorDescription = status.getErrorDescription();
-          return invalidToken(errorDescription, context.getProduceMediaType());
+          return invalidToken(errorDescription, produceMediaType);
         }
         else if (status.getErrorCode().equals(
                 OAuthTokenStatus.ErrorCode.INSUFFICIENT_SCOPE))
@@ -988,7 +1130,7 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
           String errorDescription = status.getErrorDescription();
           String scope = status.getScope();
           return insufficientScope(scope, errorDescription,
-                  context.getProduceMediaType());
+                  produceMediaType);
         }
 
         String authID = tokenHandlerImpl.getAuthzDN(token);
@@ -996,7 +1138,7 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
         {
           return invalidToken(
                   "The access token did not contain an authorization DN",
-                  context.getProduceMediaType());
+                  produceMediaType);
         }
         else
         {
@@ -1007,7 +1149,7 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
       catch(Throwable t)
       {
         Debug.debugException(t);
-        return invalidRequest(t.getMessage(), context.getProduceMediaType());
+        return invalidRequest(t.getMessage(), produceMediaType);
       }
     }
     else if(authorization.length == 2 &&
@@ -1019,13 +1161,13 @@ public abstract class AbstractSCIMResource extends AbstractStaticResource
       Response.ResponseBuilder builder = Response.status(401);
       builder.header("WWW-Authenticate", "Basic realm=\"SCIM\"");
       SCIMException exception = new UnauthorizedException(null);
-      setResponseEntity(builder, context.getProduceMediaType(), exception);
+      setResponseEntity(builder, produceMediaType, exception);
       return builder.build();
     }
     else
     {
       return invalidRequest("The Authorization header was malformed",
-              context.getProduceMediaType());
+              produceMediaType);
     }
   }
 
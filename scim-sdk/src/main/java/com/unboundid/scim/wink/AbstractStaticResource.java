@@ -48,6 +48,32 @@ public class AbstractStaticResource
   protected static void setResponseEntity(
       final Response.ResponseBuilder builder, final MediaType mediaType,
       final SCIMResponse scimResponse)
+  {
+    setResponseEntity(builder, mediaType, scimResponse, null, null, null, 0L);
+  }
+
+
+
+  /**
+   * Sets the response entity (content) for a SCIM response, and records the
+   * latencies of writing the entity and of the whole request once the entity
+   * has been written.
+   *
+   * @param builder       A JAX-RS response builder.
+   * @param mediaType     The media type to be returned.
+   * @param scimResponse  The SCIM response to be returned.
+   * @param stats         The statistics in which to record the latencies, or
+   *                      {@code null} if latencies should not be recorded.
+   * @param marshalStat   The name of the latency of writing the entity.
+   * @param latencyStat   The name of the latency of the whole request.
+   * @param startTime     The value of {@code System.nanoTime()} when
+   *                      processing of the request started.
+   */
+  protected static void setResponseEntity(
+      final Response.ResponseBuilder builder, final MediaType mediaType,
+      final SCIMResponse scimResponse, final ResourceStats stats,
+      final String marshalStat, final String latencyStat,
+      final long startTime)
   {
     final Marshaller marshaller;
     builder.type(mediaType);
@@ -65,6 +91,7 @@ public class AbstractStaticResource
       public void write(final OutputStream outputStream)
           throws IOException, WebApplicationException
       {
+        final long marshalStartTime = System.nanoTime();
         try
         {
           scimResponse.marshal(marshaller, outputStream);
@@ -75,6 +102,14 @@ public class AbstractStaticResource
           throw new WebApplicationException(
               e, Response.Status.INTERNAL_SERVER_ERROR);
         }
+        finally
+        {
+          if (stats != null)
+          {
+            stats.recordLatency(marshalStat, marshalStartTime);
+            stats.recordLatency(latencyStat, startTime);
+          }
+        }
       }
     };
     builder.entity(output);
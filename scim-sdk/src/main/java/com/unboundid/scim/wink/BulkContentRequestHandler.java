@@ -25,6 +25,7 @@ import com.unboundid.scim.sdk.BulkOperation;
 import com.unboundid.scim.sdk.BulkOperation.Method;
 import com.unboundid.scim.sdk.BulkStreamResponse;
 import com.unboundid.scim.sdk.Debug;
+import com.unboundid.scim.sdk.DebugType;
 import com.unboundid.scim.sdk.DeleteResourceRequest;
 import com.unboundid.scim.sdk.InvalidResourceException;
 import com.unboundid.scim.sdk.OAuthTokenHandler;
@@ -44,17 +45,31 @@ import com.unboundid.scim.sdk.UnauthorizedException;
 
 import static com.unboundid.scim.wink.AbstractSCIMResource.validateOAuthToken;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriBuilder;
+import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 
 
 /**
@@ -70,6 +85,21 @@ import java.util.concurrent.atomic.AtomicReference;
  * <li>It would not be possible to reject a request that exceeded the
  * maxOperations setting without processing any operations.</li>
  * </ol>
+ * When the backend is configured with more than one bulk operation thread,
+ * operations are processed concurrently except where one operation refers
+ * to a bulkId defined by an earlier operation, in which case it waits for
+ * that operation to complete. The responses are still written in request
+ * order, and no operation is started unless it would also have been
+ * processed had the operations been processed one at a time, so the
+ * failOnErrors semantics are unchanged. The {@link #finish()} and
+ * {@link #close()} methods must be called in this case.
+ * <p>
+ * Where the request is parsed in a single pass as it is received, the
+ * failOnErrors value is not known until it has been read, which may be after
+ * the operations. No operation is held in memory in that case: operations
+ * are processed as they are read, and the failOnErrors value only applies to
+ * the operations that follow it. The {@link #finish()} method must be called
+ * in this case.
  */
 public class BulkContentRequestHandler extends BulkContentHandler
 {
@@ -83,6 +113,27 @@ public class BulkContentRequestHandler extends BulkContentHandler
    */
   private final RequestContext requestContext;
 
+  /**
+   * The base URI of the request, copied from the request context on the
+   * request thread so that it may be used by the threads that process
+   * operations.
+   */
+  private final URI baseUri;
+
+  /**
+   * The values of the Authorization header of the request, copied from the
+   * request context on the request thread, or {@code null} if there are
+   * none.
+   */
+  private final List<String> authorizationHeaders;
+
+  /**
+   * The HTTP servlet request. This is the request object that was passed to
+   * the resource method rather than a context proxy, so it may be used by the
+   * threads that process operations while the request thread waits for them.
+   */
+  private final HttpServletRequest httpServletRequest;
+
   /**
    * The SCIM backend to process the operations.
    */
@@ -117,6 +168,30 @@ public class BulkContentRequestHandler extends BulkContentHandler
    */
   private final Set<String> bulkIds;
 
+  /**
+   * The executor shared by the bulk requests of the backend to process
+   * operations concurrently, or {@code null} if operations are processed one
+   * at a time.
+   */
+  private final ExecutorService executor;
+
+  /**
+   * The maximum number of operations that may be pending when operations are
+   * processed concurrently.
+   */
+  private final int maxPendingOperations;
+
+  /**
+   * The operations whose responses have not yet been written, in request
+   * order.
+   */
+  private final LinkedList<Future<BulkOperation>> pendingOperations;
+
+  /**
+   * A map from bulkId to the latest submitted operation that defines it.
+   */
+  private final Map<String,Future<BulkOperation>> bulkIdOperations;
+
 
 
   /**
@@ -152,9 +227,28 @@ public class BulkContentRequestHandler extends BulkContentHandler
     this.tokenHandler       = tokenHandler;
     this.bulkStreamResponse = bulkStreamResponse;
 
-    resourceIDs = new HashMap<String, String>();
+    baseUri = requestContext.getUriInfo().getBaseUri();
+    authorizationHeaders =
+        requestContext.getHeaders().getRequestHeader("Authorization");
+    httpServletRequest = requestContext.getRequest();
+
+    resourceIDs = new ConcurrentHashMap<String, String>();
     unresolvedBulkIdRefs = new HashSet<String>();
-    bulkIds = new HashSet<String>();
+    bulkIds = Collections.newSetFromMap(
+        new ConcurrentHashMap<String, Boolean>());
+    pendingOperations = new LinkedList<Future<BulkOperation>>();
+    bulkIdOperations = new HashMap<String, Future<BulkOperation>>();
+
+    executor = backend.getBulkOperationExecutor();
+    if (executor != null)
+    {
+      maxPendingOperations =
+          backend.getConfig().getBulkOperationThreads() * 4;
+    }
+    else
+    {
+      maxPendingOperations = 1;
+    }
   }
 
 
@@ -212,10 +306,17 @@ public class BulkContentRequestHandler extends BulkContentHandler
                               final BulkOperation bulkOperation)
       throws BulkException, SCIMException
   {
-    if (errorCount < failOnErrors)
+    final Set<String> bulkIdRefs = new HashSet<String>(unresolvedBulkIdRefs);
+    unresolvedBulkIdRefs.clear();
+
+    if (executor != null)
     {
-      final BulkOperation response = processOperation(bulkOperation);
-      unresolvedBulkIdRefs.clear();
+      submitOperation(bulkOperation, bulkIdRefs);
+    }
+    else if (errorCount < failOnErrors)
+    {
+      final BulkOperation response =
+          processOperation(bulkOperation, bulkIdRefs, null);
       bulkStreamResponse.writeBulkOperation(response);
     }
   }
@@ -228,6 +329,283 @@ public class BulkContentRequestHandler extends BulkContentHandler
   public boolean handleException(final int opIndex,
                                  final BulkException bulkException)
       throws SCIMException
+  {
+    unresolvedBulkIdRefs.clear();
+
+    return recordException(bulkException);
+  }
+
+
+
+  /**
+   * Record an operation that failed, either by writing its response or by
+   * queueing it behind the pending operations.
+   *
+   * @param bulkException  The exception encountered when processing the
+   *                       operation.
+   *
+   * @return  {@code true} if operations should continue to be processed, or
+   *          {@code false} if failOnErrors has been reached.
+   *
+   * @throws SCIMException  If an error occurs that prevents processing of the
+   *                        entire bulk content.
+   */
+  private boolean recordException(final BulkException bulkException)
+      throws SCIMException
+  {
+    if (executor != null)
+    {
+      // Queue the error so that it is written in request order.
+      if (awaitTurn())
+      {
+        final FutureTask<BulkOperation> failedOperation =
+            new FutureTask<BulkOperation>(new Callable<BulkOperation>()
+            {
+              public BulkOperation call() throws BulkException
+              {
+                throw bulkException;
+              }
+            });
+        failedOperation.run();
+        pendingOperations.add(failedOperation);
+      }
+      return errorCount < failOnErrors;
+    }
+
+    return writeException(bulkException);
+  }
+
+
+
+  /**
+   * Wait for the operations that are still being processed and write their
+   * responses. This must be called after all operations have been provided
+   * when operations are processed concurrently or the failOnErrors value may
+   * follow the operations.
+   *
+   * @throws SCIMException  If an error occurs that prevents processing of the
+   *                        entire bulk content.
+   */
+  public void finish()
+      throws SCIMException
+  {
+    while (!pendingOperations.isEmpty())
+    {
+      writeNextOperation();
+    }
+  }
+
+
+
+  /**
+   * Wait for any operations of this request that are still being processed to
+   * complete, without writing their responses. This is needed if processing
+   * of the request ended early, so that no operation is processed after the
+   * response has been returned.
+   */
+  public void close()
+  {
+    while (!pendingOperations.isEmpty())
+    {
+      final Future<BulkOperation> future = pendingOperations.removeFirst();
+      try
+      {
+        while (true)
+        {
+          try
+          {
+            future.get(1, TimeUnit.MINUTES);
+            break;
+          }
+          catch (TimeoutException e)
+          {
+            Debug.debug(Level.WARNING, DebugType.OTHER,
+                        "Waiting for bulk operations to complete");
+          }
+        }
+      }
+      catch (ExecutionException e)
+      {
+        Debug.debugException(e);
+      }
+      catch (InterruptedException e)
+      {
+        Debug.debugException(e);
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+
+
+  /**
+   * Submit an operation to be processed concurrently with the other pending
+   * operations, once any operations that define the bulkIds it refers to have
+   * completed.
+   *
+   * @param bulkOperation  The operation to be processed.
+   * @param bulkIdRefs     The bulkId data references that were unresolved
+   *                       when the operation was read.
+   *
+   * @throws SCIMException  If an error occurs that prevents processing of the
+   *                        entire bulk content.
+   */
+  private void submitOperation(final BulkOperation bulkOperation,
+                               final Set<String> bulkIdRefs)
+      throws SCIMException
+  {
+    if (!awaitTurn())
+    {
+      return;
+    }
+
+    // Only the bulkIds defined by earlier operations may be referenced, and
+    // those operations must complete first. An operation that redefines a
+    // bulkId must also wait for the earlier definition so that it is
+    // rejected as a duplicate.
+    final Set<String> references = new HashSet<String>(bulkIdRefs);
+    final String path = bulkOperation.getPath();
+    if (path != null && path.indexOf("bulkId:") != -1)
+    {
+      references.add(path.substring(path.indexOf("bulkId:") + 7));
+    }
+    final Set<String> visibleBulkIds = new HashSet<String>();
+    final List<Future<BulkOperation>> dependencies =
+        new ArrayList<Future<BulkOperation>>();
+    for (final String ref : references)
+    {
+      final Future<BulkOperation> dependency = bulkIdOperations.get(ref);
+      if (dependency != null)
+      {
+        visibleBulkIds.add(ref);
+        dependencies.add(dependency);
+      }
+    }
+    final String bulkId = bulkOperation.getBulkId();
+    if (bulkId != null && bulkIdOperations.containsKey(bulkId))
+    {
+      dependencies.add(bulkIdOperations.get(bulkId));
+    }
+
+    final Future<BulkOperation> future =
+        executor.submit(new Callable<BulkOperation>()
+        {
+          public BulkOperation call() throws Exception
+          {
+            for (final Future<BulkOperation> dependency : dependencies)
+            {
+              try
+              {
+                dependency.get();
+              }
+              catch (ExecutionException e)
+              {
+                // A failed operation does not define its bulkId, which is
+                // detected when resolving the reference.
+                Debug.debugException(e);
+              }
+            }
+            return processOperation(bulkOperation, bulkIdRefs,
+                                    visibleBulkIds);
+          }
+        });
+
+    if (bulkId != null)
+    {
+      bulkIdOperations.put(bulkId, future);
+    }
+    pendingOperations.add(future);
+  }
+
+
+
+  /**
+   * Write the responses of pending operations until another operation may be
+   * submitted. An operation may only be submitted if it would have been
+   * processed had all earlier operations been processed one at a time, which
+   * is the case if failOnErrors would not be reached even if all pending
+   * operations were to fail.
+   *
+   * @return  {@code true} if another operation may be submitted, or
+   *          {@code false} if failOnErrors has been reached.
+   *
+   * @throws SCIMException  If an error occurs that prevents processing of the
+   *                        entire bulk content.
+   */
+  private boolean awaitTurn()
+      throws SCIMException
+  {
+    while (!pendingOperations.isEmpty() &&
+           pendingOperations.getFirst().isDone())
+    {
+      writeNextOperation();
+    }
+
+    while (!pendingOperations.isEmpty() &&
+           (pendingOperations.size() >= maxPendingOperations ||
+            errorCount + pendingOperations.size() >= failOnErrors))
+    {
+      writeNextOperation();
+    }
+
+    return errorCount < failOnErrors;
+  }
+
+
+
+  /**
+   * Wait for the first pending operation to complete and write its response.
+   *
+   * @throws SCIMException  If an error occurs that prevents processing of the
+   *                        entire bulk content.
+   */
+  private void writeNextOperation()
+      throws SCIMException
+  {
+    final Future<BulkOperation> future = pendingOperations.removeFirst();
+    try
+    {
+      bulkStreamResponse.writeBulkOperation(future.get());
+    }
+    catch (ExecutionException e)
+    {
+      if (e.getCause() instanceof BulkException)
+      {
+        writeException((BulkException) e.getCause());
+      }
+      else
+      {
+        Debug.debugException(e);
+        throw new ServerErrorException(
+            "Error processing bulk operation: " + e.getCause());
+      }
+    }
+    catch (InterruptedException e)
+    {
+      Debug.debugException(e);
+      Thread.currentThread().interrupt();
+      throw new ServerErrorException(
+          "Interrupted while waiting for a bulk operation to complete");
+    }
+  }
+
+
+
+  /**
+   * Write the response for an operation that failed.
+   *
+   * @param bulkException  The exception encountered when processing the
+   *                       operation.
+   *
+   * @return  {@code true} if operations should continue to be processed, or
+   *          {@code false} if failOnErrors has been reached.
+   *
+   * @throws SCIMException  If an error occurs that prevents processing of the
+   *                        entire bulk content.
+   */
+  private boolean writeException(final BulkException bulkException)
+      throws SCIMException
   {
     Debug.debugException(bulkException);
     if (errorCount < failOnErrors)
@@ -246,7 +624,7 @@ public class BulkContentRequestHandler extends BulkContentHandler
       if (method != BulkOperation.Method.POST)
       {
         final UriBuilder locationBuilder =
-            UriBuilder.fromUri(requestContext.getUriInfo().getBaseUri());
+            UriBuilder.fromUri(baseUri);
         if (bulkException.getPath() != null)
         {
           locationBuilder.path(bulkException.getPath());
@@ -281,19 +659,26 @@ public class BulkContentRequestHandler extends BulkContentHandler
    * Process an operation from a bulk request.
    *
    * @param operation       The operation to be processed from the bulk request.
+   * @param bulkIdRefs      The bulkId references in the operation data that
+   *                        were not resolved when the operation was read.
+   * @param visibleBulkIds  The bulkIds that the operation may refer to, or
+   *                        {@code null} if it may refer to any bulkId that
+   *                        has been defined.
    *
    * @return  The operation response.
    * @throws  BulkException  If an error occurs while processing the individual
    *                         operation within the bulk operation.
    */
-  private BulkOperation processOperation(final BulkOperation operation)
+  private BulkOperation processOperation(final BulkOperation operation,
+                                         final Set<String> bulkIdRefs,
+                                         final Set<String> visibleBulkIds)
       throws BulkException
   {
     final Method method = operation.getMethod();
     final String bulkId = operation.getBulkId();
     final String path = operation.getPath();
     final String etag = operation.getVersion();
-    final BaseResource resource = operation.getData();
+    BaseResource resource = operation.getData();
 
     int statusCode = 200;
     String location = null;
@@ -373,7 +758,7 @@ public class BulkContentRequestHandler extends BulkContentHandler
           if (resourceID.startsWith("bulkId:"))
           {
             final String ref = resourceID.substring(7);
-            resourceID = resourceIDs.get(ref);
+            resourceID = getResourceID(ref, visibleBulkIds);
             if (resourceID == null)
             {
               throw SCIMException.createException(
@@ -405,7 +790,7 @@ public class BulkContentRequestHandler extends BulkContentHandler
     }
 
     final UriBuilder locationBuilder =
-        UriBuilder.fromUri(requestContext.getUriInfo().getBaseUri());
+        UriBuilder.fromUri(baseUri);
     locationBuilder.path(path);
 
     try
@@ -433,11 +818,26 @@ public class BulkContentRequestHandler extends BulkContentHandler
             "The bulk operation does not have any resource data");
       }
 
-      if (!unresolvedBulkIdRefs.isEmpty())
+      if (!bulkIdRefs.isEmpty())
       {
-        throw SCIMException.createException(
-            409, "Cannot resolve bulkId references "
-                 + unresolvedBulkIdRefs);
+        final Set<String> unresolvedRefs = new HashSet<String>();
+        for (final String ref : bulkIdRefs)
+        {
+          if (getResourceID(ref, visibleBulkIds) == null)
+          {
+            unresolvedRefs.add(ref);
+          }
+        }
+
+        if (!unresolvedRefs.isEmpty())
+        {
+          throw SCIMException.createException(
+              409, "Cannot resolve bulkId references " + unresolvedRefs);
+        }
+
+        // The references were defined by operations that completed after
+        // this operation was read.
+        resource = resolveBulkIds(resource);
       }
 
       if (requestContext.getConsumeMediaType().equals(
@@ -480,18 +880,19 @@ public class BulkContentRequestHandler extends BulkContentHandler
       {
         case POST:
           PostResourceRequest postResourceRequest =
-               new PostResourceRequest(requestContext.getUriInfo().getBaseUri(),
+               new PostResourceRequest(baseUri,
                                        requestContext.getAuthID(),
                                        descriptor,
                                        resource.getScimObject(),
                                        queryAttributes,
-                                       requestContext.getRequest());
+                                       httpServletRequest);
 
           if (requestContext.getAuthID() == null)
           {
             AtomicReference<String> authIDRef = new AtomicReference<String>();
-            Response response = validateOAuthToken(requestContext,
-                                  postResourceRequest, authIDRef, tokenHandler);
+            Response response = validateOAuthToken(
+                authorizationHeaders, requestContext.getProduceMediaType(),
+                postResourceRequest, authIDRef, tokenHandler);
             if (response != null)
             {
               throw new UnauthorizedException("Invalid credentials");
@@ -500,10 +901,10 @@ public class BulkContentRequestHandler extends BulkContentHandler
             {
               String authID = authIDRef.get();
               postResourceRequest = new PostResourceRequest(
-                              requestContext.getUriInfo().getBaseUri(),
+                              baseUri,
                               authID, descriptor, resource.getScimObject(),
                               queryAttributes,
-                              requestContext.getRequest());
+                              httpServletRequest);
             }
           }
 
@@ -519,20 +920,21 @@ public class BulkContentRequestHandler extends BulkContentHandler
 
         case PUT:
           PutResourceRequest putResourceRequest =
-                new PutResourceRequest(requestContext.getUriInfo().getBaseUri(),
+                new PutResourceRequest(baseUri,
                                        requestContext.getAuthID(),
                                        descriptor,
                                        resourceID,
                                        resource.getScimObject(),
                                        queryAttributes,
-                                       requestContext.getRequest(),
+                                       httpServletRequest,
                                        etag, null);
 
           if (requestContext.getAuthID() == null)
           {
             AtomicReference<String> authIDRef = new AtomicReference<String>();
-            Response response = validateOAuthToken(requestContext,
-                                   putResourceRequest, authIDRef, tokenHandler);
+            Response response = validateOAuthToken(
+                authorizationHeaders, requestContext.getProduceMediaType(),
+                putResourceRequest, authIDRef, tokenHandler);
             if (response != null)
             {
               throw new UnauthorizedException("Invalid credentials");
@@ -541,9 +943,9 @@ public class BulkContentRequestHandler extends BulkContentHandler
             {
               String authID = authIDRef.get();
               putResourceRequest = new PutResourceRequest(
-                      requestContext.getUriInfo().getBaseUri(),
+                      baseUri,
                       authID, descriptor, resourceID, resource.getScimObject(),
-                      queryAttributes, requestContext.getRequest(),
+                      queryAttributes, httpServletRequest,
                       etag, null);
             }
           }
@@ -555,20 +957,21 @@ public class BulkContentRequestHandler extends BulkContentHandler
 
         case PATCH:
           PatchResourceRequest patchResourceRequest =
-              new PatchResourceRequest(requestContext.getUriInfo().getBaseUri(),
+              new PatchResourceRequest(baseUri,
                                        requestContext.getAuthID(),
                                        descriptor,
                                        resourceID,
                                        resource.getScimObject(),
                                        queryAttributes,
-                                       requestContext.getRequest(),
+                                       httpServletRequest,
                                        etag, null);
 
           if (requestContext.getAuthID() == null)
           {
             AtomicReference<String> authIDRef = new AtomicReference<String>();
-            Response response = validateOAuthToken(requestContext,
-                                 patchResourceRequest, authIDRef, tokenHandler);
+            Response response = validateOAuthToken(
+                authorizationHeaders, requestContext.getProduceMediaType(),
+                patchResourceRequest, authIDRef, tokenHandler);
             if (response != null)
             {
               throw new UnauthorizedException("Invalid credentials");
@@ -577,9 +980,9 @@ public class BulkContentRequestHandler extends BulkContentHandler
             {
               String authID = authIDRef.get();
               patchResourceRequest = new PatchResourceRequest(
-                      requestContext.getUriInfo().getBaseUri(),
+                      baseUri,
                       authID, descriptor, resourceID, resource.getScimObject(),
-                      queryAttributes, requestContext.getRequest(),
+                      queryAttributes, httpServletRequest,
                       etag, null);
             }
           }
@@ -591,18 +994,19 @@ public class BulkContentRequestHandler extends BulkContentHandler
 
         case DELETE:
           DeleteResourceRequest deleteResourceRequest =
-             new DeleteResourceRequest(requestContext.getUriInfo().getBaseUri(),
+             new DeleteResourceRequest(baseUri,
                                        requestContext.getAuthID(),
                                        descriptor,
                                        resourceID,
-                                       requestContext.getRequest(),
+                                       httpServletRequest,
                                        etag, null);
 
           if (requestContext.getAuthID() == null)
           {
             AtomicReference<String> authIDRef = new AtomicReference<String>();
-            Response response = validateOAuthToken(requestContext,
-                                deleteResourceRequest, authIDRef, tokenHandler);
+            Response response = validateOAuthToken(
+                authorizationHeaders, requestContext.getProduceMediaType(),
+                deleteResourceRequest, authIDRef, tokenHandler);
             if (response != null)
             {
               throw new UnauthorizedException("Invalid credentials");
@@ -611,9 +1015,9 @@ public class BulkContentRequestHandler extends BulkContentHandler
             {
               String authID = authIDRef.get();
               deleteResourceRequest = new DeleteResourceRequest(
-                      requestContext.getUriInfo().getBaseUri(),
+                      baseUri,
                       authID, descriptor, resourceID,
-                      requestContext.getRequest(), etag, null);
+                      httpServletRequest, etag, null);
             }
           }
 
@@ -622,7 +1026,7 @@ public class BulkContentRequestHandler extends BulkContentHandler
           break;
       }
 
-      if (bulkId != null)
+      if (bulkId != null && resourceID != null)
       {
         resourceIDs.put(bulkId, resourceID);
       }
@@ -694,6 +1098,30 @@ public class BulkContentRequestHandler extends BulkContentHandler
 
 
 
+  /**
+   * Retrieve the resource ID for a bulkId reference.
+   *
+   * @param bulkId          The referenced bulkId.
+   * @param visibleBulkIds  The bulkIds that may be referenced, or {@code null}
+   *                        if any bulkId that has been defined may be
+   *                        referenced.
+   *
+   * @return  The resource ID, or {@code null} if the reference cannot be
+   *          resolved.
+   */
+  private String getResourceID(final String bulkId,
+                               final Set<String> visibleBulkIds)
+  {
+    if (visibleBulkIds != null && !visibleBulkIds.contains(bulkId))
+    {
+      return null;
+    }
+
+    return resourceIDs.get(bulkId);
+  }
+
+
+
   /**
    * Obtain a copy of the provided resource with each bulkId reference
    * resolved to a resource ID.
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.wink;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class records a distribution of latencies so that percentiles can be
+ * reported. Values are recorded in microseconds into log-linear buckets, in
+ * the manner of an HDR histogram, so that any reported percentile is within
+ * about 3% of the true value while the memory used is fixed. Recording does
+ * not lock and may be done concurrently by any number of threads.
+ */
+public final class LatencyHistogram
+{
+  /**
+   * The number of bits used to select a bucket within each power of two.
+   */
+  private static final int SUB_BUCKET_BITS = 5;
+
+  /**
+   * The number of buckets within each power of two.
+   */
+  private static final int SUB_BUCKET_HALF_COUNT = 1 << SUB_BUCKET_BITS;
+
+  /**
+   * The number of linear buckets that hold the smallest values.
+   */
+  private static final int SUB_BUCKET_COUNT = SUB_BUCKET_HALF_COUNT << 1;
+
+  /**
+   * The largest power of two of the values that are distinguished. Larger
+   * values (about 19 hours) are counted in the last bucket.
+   */
+  private static final int MAX_EXPONENT = 36;
+
+  /**
+   * The total number of buckets, including the last bucket for the largest
+   * values.
+   */
+  private static final int BUCKET_COUNT = SUB_BUCKET_COUNT +
+      (MAX_EXPONENT - SUB_BUCKET_BITS - 1) * SUB_BUCKET_HALF_COUNT + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalCount = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+
+
+  /**
+   * Record a latency.
+   *
+   * @param nanos  The latency in nanoseconds.
+   */
+  public void record(final long nanos)
+  {
+    final long micros = Math.max(0L, TimeUnit.NANOSECONDS.toMicros(nanos));
+
+    counts.incrementAndGet(getBucketIndex(micros));
+    totalCount.incrementAndGet();
+    totalMicros.addAndGet(micros);
+
+    long max = maxMicros.get();
+    while (micros > max && !maxMicros.compareAndSet(max, micros))
+    {
+      max = maxMicros.get();
+    }
+  }
+
+
+
+  /**
+   * Retrieves the number of latencies that have been recorded.
+   *
+   * @return  The number of latencies that have been recorded.
+   */
+  public long getCount()
+  {
+    return totalCount.get();
+  }
+
+
+
+  /**
+   * Retrieves the largest latency that has been recorded.
+   *
+   * @return  The largest latency in microseconds, or 0 if none have been
+   *          recorded.
+   */
+  public long getMaxMicros()
+  {
+    return maxMicros.get();
+  }
+
+
+
+  /**
+   * Retrieves the mean of the latencies that have been recorded.
+   *
+   * @return  The mean latency in microseconds, or 0 if none have been
+   *          recorded.
+   */
+  public long getMeanMicros()
+  {
+    final long count = totalCount.get();
+    return count == 0 ? 0 : totalMicros.get() / count;
+  }
+
+
+
+  /**
+   * Retrieves the latency at or below which the provided percentage of the
+   * recorded latencies fall. The value reported is the highest value that
+   * is equivalent to the recorded values in its bucket, but no more than the
+   * largest latency recorded.
+   *
+   * @param percentile  The percentile, from 0 to 100.
+   *
+   * @return  The latency in microseconds, or 0 if none have been recorded.
+   */
+  public long getValueAtPercentile(final double percentile)
+  {
+    // The counts are read without a snapshot, so use the sum of the buckets
+    // rather than the total count in case they are being updated.
+    long total = 0;
+    final long[] snapshot = new long[BUCKET_COUNT];
+    for (int i = 0; i < BUCKET_COUNT; i++)
+    {
+      snapshot[i] = counts.get(i);
+      total += snapshot[i];
+    }
+    if (total == 0)
+    {
+      return 0;
+    }
+
+    final double clamped = Math.min(100.0, Math.max(0.0, percentile));
+    final long target = Math.max(1L, (long) Math.ceil(total * clamped / 100.0));
+    long seen = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++)
+    {
+      seen += snapshot[i];
+      if (seen >= target)
+      {
+        return Math.min(getBucketHighestValue(i), maxMicros.get());
+      }
+    }
+    return maxMicros.get();
+  }
+
+
+
+  /**
+   * Retrieves the index of the bucket that counts the provided value.
+   *
+   * @param micros  The value in microseconds.
+   *
+   * @return  The index of the bucket.
+   */
+  static int getBucketIndex(final long micros)
+  {
+    if (micros < SUB_BUCKET_COUNT)
+    {
+      return (int) micros;
+    }
+
+    final int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    if (exponent >= MAX_EXPONENT)
+    {
+      return BUCKET_COUNT - 1;
+    }
+
+    final int shift = exponent - SUB_BUCKET_BITS;
+    final int subBucket = (int) (micros >>> shift) - SUB_BUCKET_HALF_COUNT;
+    return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF_COUNT + subBucket;
+  }
+
+
+
+  /**
+   * Retrieves the highest value counted by the provided bucket.
+   *
+   * @param index  The index of the bucket.
+   *
+   * @return  The highest value in microseconds.
+   */
+  static long getBucketHighestValue(final int index)
+  {
+    if (index < SUB_BUCKET_COUNT)
+    {
+      return index;
+    }
+    if (index == BUCKET_COUNT - 1)
+    {
+      return Long.MAX_VALUE;
+    }
+
+    final int shift = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF_COUNT + 1;
+    final long subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF_COUNT +
+                           SUB_BUCKET_HALF_COUNT;
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
@@ -29,6 +29,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import java.util.Map;
+import java.util.TreeMap;
 
 
 /**
@@ -112,9 +113,55 @@ public class MonitorResource
         writer.key(stat.getKey());
         writer.value(stat.getValue());
       }
+      final Map<String, LatencyHistogram> latencies = stats.getLatencies();
+      if (!latencies.isEmpty())
+      {
+        writer.key("latencies");
+        writer.object();
+        for (Map.Entry<String, LatencyHistogram> latency :
+            new TreeMap<String, LatencyHistogram>(latencies).entrySet())
+        {
+          writer.key(latency.getKey());
+          writeLatency(writer, latency.getValue());
+        }
+        writer.endObject();
+      }
       writer.endObject();
     }
     writer.endArray();
     writer.endObject();
   }
+
+
+
+  /**
+   * Write a latency histogram in JSON format. All the values other than the
+   * count are in microseconds.
+   *
+   * @param writer     A JSON writer where the latency is to be written.
+   * @param histogram  The latency histogram to be written.
+   *
+   * @throws JSONException  If an error occurs while formatting the data.
+   */
+  private static void writeLatency(final JSONWriter writer,
+                                   final LatencyHistogram histogram)
+      throws JSONException
+  {
+    writer.object();
+    writer.key("count");
+    writer.value(histogram.getCount());
+    writer.key("mean");
+    writer.value(histogram.getMeanMicros());
+    writer.key("p50");
+    writer.value(histogram.getValueAtPercentile(50.0));
+    writer.key("p90");
+    writer.value(histogram.getValueAtPercentile(90.0));
+    writer.key("p99");
+    writer.value(histogram.getValueAtPercentile(99.0));
+    writer.key("p999");
+    writer.value(histogram.getValueAtPercentile(99.9));
+    writer.key("max");
+    writer.value(histogram.getMaxMicros());
+    writer.endObject();
+  }
 }
@@ -361,9 +361,104 @@ public class ResourceStats
    */
   public static final String DELETE_NOT_IMPLEMENTED = "delete-505";
 
+  /**
+   * Latency of query requests, from the start of processing until the
+   * response has been written.
+   */
+  public static final String QUERY_LATENCY = "query-latency";
+
+  /**
+   * Latency of the backend processing of query requests. When query results
+   * are streamed, most of the backend processing happens while the response
+   * is written and is included in the marshal latency instead.
+   */
+  public static final String QUERY_BACKEND_LATENCY = "query-backend-latency";
+
+  /**
+   * Latency of writing the responses to successful query requests.
+   */
+  public static final String QUERY_MARSHAL_LATENCY = "query-marshal-latency";
+
+  /**
+   * Latency of get requests, from the start of processing until the
+   * response has been written.
+   */
+  public static final String GET_LATENCY = "get-latency";
+
+  /**
+   * Latency of the backend processing of get requests.
+   */
+  public static final String GET_BACKEND_LATENCY = "get-backend-latency";
+
+  /**
+   * Latency of writing the responses to successful get requests.
+   */
+  public static final String GET_MARSHAL_LATENCY = "get-marshal-latency";
+
+  /**
+   * Latency of put requests, from the start of processing until the
+   * response has been written.
+   */
+  public static final String PUT_LATENCY = "put-latency";
+
+  /**
+   * Latency of the backend processing of put requests.
+   */
+  public static final String PUT_BACKEND_LATENCY = "put-backend-latency";
+
+  /**
+   * Latency of writing the responses to successful put requests.
+   */
+  public static final String PUT_MARSHAL_LATENCY = "put-marshal-latency";
+
+  /**
+   * Latency of post requests, from the start of processing until the
+   * response has been written.
+   */
+  public static final String POST_LATENCY = "post-latency";
+
+  /**
+   * Latency of the backend processing of post requests.
+   */
+  public static final String POST_BACKEND_LATENCY = "post-backend-latency";
+
+  /**
+   * Latency of writing the responses to successful post requests.
+   */
+  public static final String POST_MARSHAL_LATENCY = "post-marshal-latency";
+
+  /**
+   * Latency of patch requests, from the start of processing until the
+   * response has been written.
+   */
+  public static final String PATCH_LATENCY = "patch-latency";
+
+  /**
+   * Latency of the backend processing of patch requests.
+   */
+  public static final String PATCH_BACKEND_LATENCY = "patch-backend-latency";
+
+  /**
+   * Latency of writing the responses to successful patch requests.
+   */
+  public static final String PATCH_MARSHAL_LATENCY = "patch-marshal-latency";
+
+  /**
+   * Latency of delete requests, from the start of processing until the
+   * response has been sent.
+   */
+  public static final String DELETE_LATENCY = "delete-latency";
+
+  /**
+   * Latency of the backend processing of delete requests.
+   */
+  public static final String DELETE_BACKEND_LATENCY = "delete-backend-latency";
+
   private final String name;
   private final ConcurrentHashMap<String, AtomicLong> stats =
       new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentHashMap<String, LatencyHistogram> latencies =
+      new ConcurrentHashMap<String, LatencyHistogram>();
 
   /**
    * Create a new ResourceStats instance with the provided name.
@@ -426,6 +521,51 @@ public class ResourceStats
     return map;
   }
 
+  /**
+   * Records a latency.
+   *
+   * @param stat       The name of the latency to record.
+   * @param startTime  The value of {@code System.nanoTime()} when the timed
+   *                   processing started.
+   */
+  void recordLatency(final String stat, final long startTime)
+  {
+    final long elapsed = System.nanoTime() - startTime;
+    LatencyHistogram histogram = latencies.get(stat);
+    if(histogram == null)
+    {
+      histogram = new LatencyHistogram();
+      LatencyHistogram prev = latencies.putIfAbsent(stat, histogram);
+      if(prev != null)
+      {
+        histogram = prev;
+      }
+    }
+    histogram.record(elapsed);
+  }
+
+  /**
+   * Retrieves a single latency histogram.
+   *
+   * @param stat The name of the latency to retrieve.
+   * @return The latency histogram or {@code null} if no latencies have been
+   *         recorded.
+   */
+  public LatencyHistogram getLatency(final String stat)
+  {
+    return latencies.get(stat);
+  }
+
+  /**
+   * Retrieves all latency histograms that are present.
+   *
+   * @return All latency histograms that are present.
+   */
+  public Map<String, LatencyHistogram> getLatencies()
+  {
+    return new HashMap<String, LatencyHistogram>(latencies);
+  }
+
   /**
    * Retrieves the name of this ResourceStats instance, usually the name of
    * the SCIM resource being served.
@@ -26,7 +26,10 @@ import com.unboundid.scim.data.UserResource;
 import com.unboundid.scim.marshal.Marshaller;
 import com.unboundid.scim.marshal.Unmarshaller;
 import com.unboundid.scim.schema.CoreSchema;
+import com.unboundid.scim.sdk.Resources;
+import com.unboundid.scim.sdk.SCIMException;
 import com.unboundid.scim.sdk.SCIMObject;
+import com.unboundid.scim.sdk.StreamingResources;
 import com.unboundid.scim.SCIMTestCase;
 import org.testng.annotations.Test;
 import static org.testng.Assert.assertEquals;
@@ -40,6 +43,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Iterator;
 
 import static com.unboundid.scim.sdk.SCIMConstants.*;
 
@@ -156,4 +160,62 @@ public class MarshallerTestCase
     String marshaledDescriptor = outputStream.toString();
     assertFalse(marshaledDescriptor.contains("\"schemas\":["));
   }
+
+
+
+  /**
+   * Verify that a streamed query response can be written to JSON and then
+   * read back.
+   *
+   * @throws Exception If the test fails.
+   */
+  @Test
+  public void testMarshalStreamingResources()
+    throws Exception
+  {
+    final UserResource user1 = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    user1.setId("user1");
+    user1.setUserName("bjensen");
+
+    final UserResource user2 = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    user2.setId("user2");
+    user2.setUserName("jsmith");
+
+    final StreamingResources streamingResources =
+        new StreamingResources(CoreSchema.USER_DESCRIPTOR, 3)
+        {
+          @Override
+          protected long streamResources()
+              throws SCIMException
+          {
+            writeResource(user1);
+            writeResource(user2);
+            return 10;
+          }
+        };
+
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    final Marshaller marshaller = new JsonMarshaller();
+    streamingResources.marshal(marshaller, outputStream);
+    outputStream.close();
+
+    assertEquals(streamingResources.getItemsPerPage(), 2);
+
+    final InputStream inputStream =
+        new ByteArrayInputStream(outputStream.toByteArray());
+    final Unmarshaller unmarshaller = new JsonUnmarshaller();
+    final Resources<UserResource> resources =
+        unmarshaller.unmarshalResources(inputStream,
+            CoreSchema.USER_DESCRIPTOR, UserResource.USER_RESOURCE_FACTORY);
+    inputStream.close();
+
+    assertEquals(resources.getTotalResults(), 10);
+    assertEquals(resources.getStartIndex(), 3);
+    assertEquals(resources.getItemsPerPage(), 2);
+
+    final Iterator<UserResource> iterator = resources.iterator();
+    assertEquals(iterator.next().getUserName(), "bjensen");
+    assertEquals(iterator.next().getUserName(), "jsmith");
+    assertFalse(iterator.hasNext());
+  }
 }
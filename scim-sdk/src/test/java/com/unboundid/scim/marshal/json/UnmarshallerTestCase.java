@@ -17,11 +17,16 @@
 
 package com.unboundid.scim.marshal.json;
 
+import com.unboundid.scim.data.AttributeValueResolver;
 import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.data.BulkConfig;
 import com.unboundid.scim.data.UserResource;
 import com.unboundid.scim.marshal.Unmarshaller;
 import com.unboundid.scim.schema.CoreSchema;
 import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.BulkContentHandler;
+import com.unboundid.scim.sdk.BulkException;
+import com.unboundid.scim.sdk.BulkOperation;
 import com.unboundid.scim.sdk.Debug;
 import com.unboundid.scim.sdk.InvalidResourceException;
 import com.unboundid.scim.sdk.Resources;
@@ -35,8 +40,12 @@ import org.testng.annotations.Test;
 import static com.unboundid.scim.sdk.SCIMConstants.SCHEMA_URI_CORE;
 import static org.testng.Assert.*;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 @Test
@@ -396,4 +405,129 @@ public class UnmarshallerTestCase extends SCIMTestCase {
     assertFalse(iterator.hasNext());
   }
 
+
+  /**
+   * Verify that a resource can be read when the schemas attribute follows
+   * the attributes, including the container for an extended schema.
+   *
+   * @throws Exception If the test fails.
+   */
+  @Test
+  public void testUnmarshalSchemasLast() throws Exception {
+    final String json =
+        "{'UserName':'babs'," +
+        "'urn:scim:schemas:extension:enterprise:1.0':" +
+        "{'employeeNumber':'1','manager':{'managerId':'42'}}," +
+        "'emails':[{'value':'babs@example.com','primary':true},null]," +
+        "'name':{'familyName':'Jensen','givenName':'Barbara'}," +
+        "'Schemas':['" + SCHEMA_URI_CORE + "'," +
+        "'urn:scim:schemas:extension:enterprise:1.0']}";
+    final Unmarshaller unmarshaller = new JsonUnmarshaller();
+    final SCIMObject o = unmarshaller.unmarshal(
+        new ByteArrayInputStream(json.getBytes("UTF-8")),
+        CoreSchema.USER_DESCRIPTOR,
+        BaseResource.BASE_RESOURCE_FACTORY).getScimObject();
+
+    assertEquals(o.getAttribute(SCHEMA_URI_CORE, "userName").getValue().
+        getStringValue(), "babs");
+    assertEquals(o.getAttribute(SCHEMA_URI_CORE, "name").getValue().
+        getSubAttributeValue("familyName", AttributeValueResolver.
+            STRING_RESOLVER), "Jensen");
+    assertEquals(o.getAttribute(SCHEMA_URI_CORE, "emails").getValues().length,
+        1);
+    final SCIMAttribute employeeNumber = o.getAttribute(
+        "urn:scim:schemas:extension:enterprise:1.0", "employeeNumber");
+    assertNotNull(employeeNumber);
+    assertEquals(employeeNumber.getValue().getStringValue(), "1");
+
+    // The core schema must still be declared when schemas follows the
+    // core attributes.
+    final String undeclaredCore =
+        "{'userName':'babs'," +
+        "'schemas':['urn:scim:schemas:extension:enterprise:1.0']}";
+    try
+    {
+      unmarshaller.unmarshal(
+          new ByteArrayInputStream(undeclaredCore.getBytes("UTF-8")),
+          CoreSchema.USER_DESCRIPTOR, BaseResource.BASE_RESOURCE_FACTORY);
+      fail("Expected an exception for an undeclared core schema");
+    }
+    catch (InvalidResourceException e)
+    {
+      // Expected.
+    }
+  }
+
+
+  /**
+   * Verify that bulk operations can be read whether or not the path precedes
+   * the data, and that an invalid operation does not prevent the following
+   * operations from being read.
+   *
+   * @throws Exception If the test fails.
+   */
+  @Test
+  public void testBulkUnmarshal() throws Exception {
+    final String json =
+        "{'failOnErrors':2,'Operations':[" +
+        "{'method':'POST','bulkId':'1','path':'/Users'," +
+        "'data':{'schemas':['" + SCHEMA_URI_CORE + "'],'userName':'a'}}," +
+        "{'method':'POST','bulkId':'2','path':'/Users'," +
+        "'data':{'userName':'b','name':'not complex','emails':[" +
+        "{'value':'b@example.com'}]}}," +
+        "{'Data':{'userName':'c'},'Path':'/Users','Method':'POST'}," +
+        "{'method':'POST','data':{'userName':'d'}}" +
+        "]}";
+
+    final List<BulkOperation> operations = new ArrayList<BulkOperation>();
+    final List<BulkException> exceptions = new ArrayList<BulkException>();
+    final AtomicInteger failOnErrors = new AtomicInteger();
+    final BulkContentHandler handler = new BulkContentHandler()
+    {
+      @Override
+      public void handleFailOnErrors(final int value)
+      {
+        failOnErrors.set(value);
+      }
+
+      @Override
+      public void handleOperation(final int opIndex,
+                                  final BulkOperation bulkOperation)
+      {
+        operations.add(bulkOperation);
+      }
+
+      @Override
+      public boolean handleException(final int opIndex,
+                                     final BulkException bulkException)
+      {
+        exceptions.add(bulkException);
+        return true;
+      }
+
+      @Override
+      public ResourceDescriptor getResourceDescriptor(final String endpoint)
+      {
+        return endpoint.equals("Users") ? CoreSchema.USER_DESCRIPTOR : null;
+      }
+    };
+
+    new JsonUnmarshaller().bulkUnmarshal(
+        new ByteArrayInputStream(json.getBytes("UTF-8")),
+        new BulkConfig(true, 10, 10000), handler);
+
+    assertEquals(failOnErrors.get(), 2);
+    assertEquals(operations.size(), 2);
+    assertEquals(operations.get(0).getBulkId(), "1");
+    assertEquals(operations.get(0).getData().getScimObject().getAttribute(
+        SCHEMA_URI_CORE, "userName").getValue().getStringValue(), "a");
+    assertEquals(operations.get(1).getPath(), "/Users");
+    assertEquals(operations.get(1).getData().getScimObject().getAttribute(
+        SCHEMA_URI_CORE, "userName").getValue().getStringValue(), "c");
+
+    assertEquals(exceptions.size(), 2);
+    assertEquals(exceptions.get(0).getBulkId(), "2");
+    assertEquals(exceptions.get(1).getPath(), null);
+  }
+
 }
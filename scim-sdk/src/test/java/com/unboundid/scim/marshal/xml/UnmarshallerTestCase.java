@@ -22,6 +22,7 @@ import com.unboundid.scim.marshal.Unmarshaller;
 import com.unboundid.scim.schema.CoreSchema;
 import com.unboundid.scim.schema.ResourceDescriptor;
 import com.unboundid.scim.sdk.InvalidResourceException;
+import com.unboundid.scim.sdk.Resources;
 import com.unboundid.scim.sdk.SCIMAttribute;
 import com.unboundid.scim.sdk.SCIMAttributeValue;
 import com.unboundid.scim.sdk.SCIMConstants;
@@ -29,13 +30,16 @@ import com.unboundid.scim.sdk.SCIMObject;
 import com.unboundid.scim.SCIMTestCase;
 import static com.unboundid.scim.sdk.SCIMConstants.*;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Iterator;
 
 
 
@@ -142,4 +146,68 @@ public class UnmarshallerTestCase
       // Expected.
     }
   }
+
+
+  /**
+   * Verify that a list response can be read from XML, including
+   * multi-valued attributes whose values are given as text.
+   *
+   * @throws Exception If the test fails.
+   */
+  @Test
+  public void testUnmarshalResources()
+    throws Exception
+  {
+    final String xml =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+        "<scim:Response xmlns:scim=\"" + SCHEMA_URI_CORE + "\">\n" +
+        "  <totalResults>2</totalResults>\n" +
+        "  <startIndex>3</startIndex>\n" +
+        "  <Resources>\n" +
+        "    <Resource>\n" +
+        "      <userName>babs</userName>\n" +
+        "      <name><familyName>Jensen</familyName></name>\n" +
+        "      <emails>\n" +
+        "        <email>babs@example.com</email>\n" +
+        "        <email>\n" +
+        "          <value>bjensen@example.com</value>\n" +
+        "          <primary>true</primary>\n" +
+        "        </email>\n" +
+        "      </emails>\n" +
+        "    </Resource>\n" +
+        "    <Resource>\n" +
+        "      <userName base64Encoded=\"true\">amltbXk=</userName>\n" +
+        "    </Resource>\n" +
+        "  </Resources>\n" +
+        "</scim:Response>\n";
+
+    final Unmarshaller unmarshaller = new XmlUnmarshaller();
+    final Resources<BaseResource> resources = unmarshaller.unmarshalResources(
+        new ByteArrayInputStream(xml.getBytes("UTF-8")),
+        CoreSchema.USER_DESCRIPTOR, BaseResource.BASE_RESOURCE_FACTORY);
+
+    assertEquals(resources.getTotalResults(), 2);
+    assertEquals(resources.getStartIndex(), 3);
+
+    final Iterator<BaseResource> iterator = resources.iterator();
+    final SCIMObject first = iterator.next().getScimObject();
+    assertEquals(first.getAttribute(SCHEMA_URI_CORE, "userName").getValue().
+        getStringValue(), "babs");
+    assertEquals(first.getAttribute(SCHEMA_URI_CORE, "name").getValue().
+        getAttribute("familyName").getValue().getStringValue(), "Jensen");
+    final SCIMAttributeValue[] emails =
+        first.getAttribute(SCHEMA_URI_CORE, "emails").getValues();
+    assertEquals(emails.length, 2);
+    assertEquals(emails[0].getAttribute("value").getValue().getStringValue(),
+        "babs@example.com");
+    assertEquals(emails[1].getAttribute("value").getValue().getStringValue(),
+        "bjensen@example.com");
+    assertTrue(emails[1].getAttribute("primary").getValue().getBooleanValue());
+
+    final SCIMObject second = iterator.next().getScimObject();
+    assertEquals(second.getAttribute(SCHEMA_URI_CORE, "userName").getValue().
+        getStringValue(), "jimmy");
+    assertFalse(iterator.hasNext());
+  }
+
 }
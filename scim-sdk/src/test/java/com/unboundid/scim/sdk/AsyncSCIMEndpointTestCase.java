@@ -0,0 +1,209 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.SCIMTestCase;
+import com.unboundid.scim.data.UserResource;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+
+
+/**
+ * Test coverage for the {@code AsyncSCIMEndpoint} and {@code SCIMFuture}
+ * classes.
+ */
+public class AsyncSCIMEndpointTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Test that callbacks are notified of the outcome of a request whether
+   * they are added before or after it completes.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testCallbacks()
+      throws Exception
+  {
+    final SCIMFuture<String> future = new SCIMFuture<String>(
+        new Callable<String>()
+        {
+          public String call()
+          {
+            return "result";
+          }
+        });
+    final AtomicReference<String> before = new AtomicReference<String>();
+    future.addCallback(new RecordingCallback(before));
+    future.run();
+    assertEquals(before.get(), "result");
+
+    final AtomicReference<String> after = new AtomicReference<String>();
+    future.addCallback(new RecordingCallback(after));
+    assertEquals(after.get(), "result");
+    assertEquals(future.getResult(), "result");
+
+    final ResourceNotFoundException notFound =
+        new ResourceNotFoundException("not found");
+    final SCIMFuture<String> failed = new SCIMFuture<String>(
+        new Callable<String>()
+        {
+          public String call() throws SCIMException
+          {
+            throw notFound;
+          }
+        });
+    failed.run();
+    final AtomicReference<String> failure = new AtomicReference<String>();
+    failed.addCallback(new RecordingCallback(failure));
+    assertEquals(failure.get(), "failed: not found");
+    try
+    {
+      failed.getResult();
+      fail("Expected the request to fail");
+    }
+    catch (SCIMException e)
+    {
+      assertSame(e, notFound);
+    }
+  }
+
+
+
+  /**
+   * Test that a request that cannot reach the service provider fails with the
+   * same exception as the blocking endpoint.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testConnectionFailure()
+      throws Exception
+  {
+    final SCIMService service =
+        new SCIMServiceBuilder(new URI("http://127.0.0.1:1/"))
+            .setConnectTimeoutMillis(5000)
+            .build();
+    final AsyncSCIMEndpoint<UserResource> endpoint =
+        new AsyncSCIMEndpoint<UserResource>(service.getUserEndpoint(), 2);
+    try
+    {
+      int blockingStatus = 0;
+      try
+      {
+        service.getUserEndpoint().delete("user.0");
+        fail("Expected the blocking request to fail");
+      }
+      catch (SCIMException e)
+      {
+        blockingStatus = e.getStatusCode();
+      }
+
+      final CountDownLatch latch = new CountDownLatch(3);
+      final SCIMFuture<?>[] futures = new SCIMFuture<?>[3];
+      for (int i = 0; i < futures.length; i++)
+      {
+        futures[i] = endpoint.delete("user." + i).addCallback(
+            new SCIMCallback<Void>()
+            {
+              public void completed(final Void result)
+              {
+                // The request is expected to fail.
+              }
+
+              public void failed(final SCIMException e)
+              {
+                latch.countDown();
+              }
+            });
+      }
+      assertTrue(latch.await(30, TimeUnit.SECONDS));
+
+      for (final SCIMFuture<?> future : futures)
+      {
+        try
+        {
+          future.getResult();
+          fail("Expected the request to fail");
+        }
+        catch (SCIMException e)
+        {
+          assertEquals(e.getStatusCode(), blockingStatus);
+        }
+      }
+    }
+    finally
+    {
+      endpoint.close();
+      service.close();
+    }
+  }
+
+
+
+  /**
+   * A callback that records the outcome of a request.
+   */
+  private static final class RecordingCallback implements SCIMCallback<String>
+  {
+    private final AtomicReference<String> outcome;
+
+
+
+    /**
+     * Create a new callback.
+     *
+     * @param outcome  The reference in which to record the outcome.
+     */
+    RecordingCallback(final AtomicReference<String> outcome)
+    {
+      this.outcome = outcome;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void completed(final String result)
+    {
+      outcome.set(result);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void failed(final SCIMException e)
+    {
+      outcome.set("failed: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.unboundid.scim.SCIMTestCase;
+import com.unboundid.scim.data.UserResource;
+import com.unboundid.scim.facade.org.apache.wink.client.RestClient;
+import com.unboundid.scim.marshal.json.JsonMarshaller;
+import com.unboundid.scim.schema.CoreSchema;
+import org.glassfish.jersey.client.ClientConfig;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+
+
+/**
+ * Test coverage for the processing of bulk responses with a
+ * {@code BulkContentHandler} by the {@code BulkEndpoint} class.
+ */
+public class BulkEndpointTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Test that each operation response is provided to the handler, in order,
+   * as soon as it has been received, before the rest of the bulk response
+   * has been sent.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testResponsesProvidedAsReceived()
+      throws Exception
+  {
+    final CountDownLatch firstResponseHandled = new CountDownLatch(1);
+    final BulkResponseServer server =
+        new BulkResponseServer(10, firstResponseHandled);
+    try
+    {
+      final List<Integer> opIndexes = new ArrayList<Integer>();
+      server.getService().processBulkRequest(createOperations(10), -1,
+          new BulkContentHandler()
+          {
+            @Override
+            public void handleOperation(final int opIndex,
+                                        final BulkOperation bulkOperation)
+            {
+              assertEquals(bulkOperation.getBulkId(), "bulk." + opIndex);
+              opIndexes.add(opIndex);
+              firstResponseHandled.countDown();
+            }
+          });
+
+      assertEquals(opIndexes, Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9));
+      assertTrue(server.firstResponseHandledBeforeRest,
+          "The first operation response was not provided to the handler " +
+          "until the whole bulk response had been received");
+    }
+    finally
+    {
+      server.stop();
+    }
+  }
+
+
+
+  /**
+   * Test that a SCIMException thrown by the handler stops the processing of
+   * the bulk response and is reported to the caller.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testHandlerStopsProcessing()
+      throws Exception
+  {
+    final BulkResponseServer server = new BulkResponseServer(10, null);
+    final SCIMException failure = new ServerErrorException("Stop");
+    final List<Integer> opIndexes = new ArrayList<Integer>();
+    try
+    {
+      final BulkEndpoint endpoint = new BulkEndpoint(server.getService(),
+          new RestClient(new ClientConfig()));
+      endpoint.processRequest(new BulkContentHandler()
+      {
+        @Override
+        public void handleOperation(final int opIndex,
+                                    final BulkOperation bulkOperation)
+            throws SCIMException
+        {
+          opIndexes.add(opIndex);
+          if (opIndex == 2)
+          {
+            throw failure;
+          }
+        }
+      }, createOperations(10), -1);
+      fail("Expected the handler exception to be thrown");
+    }
+    catch (SCIMException e)
+    {
+      assertSame(e, failure);
+    }
+    finally
+    {
+      server.stop();
+    }
+
+    assertEquals(opIndexes, Arrays.asList(0, 1, 2));
+  }
+
+
+
+  /**
+   * Create bulk operations to add users.
+   *
+   * @param count  The number of operations.
+   *
+   * @return  The bulk operations.
+   */
+  private static List<BulkOperation> createOperations(final int count)
+  {
+    final List<BulkOperation> operations = new ArrayList<BulkOperation>();
+    for (int i = 0; i < count; i++)
+    {
+      final UserResource user = new UserResource(CoreSchema.USER_DESCRIPTOR);
+      user.setUserName("user." + i);
+      operations.add(BulkOperation.createRequest(
+          BulkOperation.Method.POST, "bulk." + i, null, "/Users", user));
+    }
+    return operations;
+  }
+
+
+
+  /**
+   * Marshal a successful bulk response for a number of operations.
+   *
+   * @param count  The number of operations.
+   *
+   * @return  The JSON bulk response.
+   *
+   * @throws SCIMException  If the response could not be marshalled.
+   */
+  private static byte[] createResponse(final int count)
+      throws SCIMException
+  {
+    final List<BulkOperation> responses = new ArrayList<BulkOperation>();
+    for (int i = 0; i < count; i++)
+    {
+      responses.add(BulkOperation.createResponse(
+          BulkOperation.Method.POST, "bulk." + i, null, "/Users/" + i,
+          new Status("201", null)));
+    }
+
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    new JsonMarshaller().bulkMarshal(outputStream, -1, responses);
+    return outputStream.toByteArray();
+  }
+
+
+
+  /**
+   * An HTTP server that returns a successful bulk response. If a latch is
+   * provided, the server sends the first operation response and then waits
+   * for the latch before sending the rest of the bulk response.
+   */
+  private static final class BulkResponseServer implements HttpHandler
+  {
+    private final HttpServer httpServer;
+    private final byte[] response;
+    private final int firstResponseLength;
+    private final CountDownLatch firstResponseHandled;
+    private volatile boolean firstResponseHandledBeforeRest;
+
+
+
+    /**
+     * Create and start a new server.
+     *
+     * @param count                 The number of operations in the bulk
+     *                              response.
+     * @param firstResponseHandled  The latch that is counted down once the
+     *                              first operation response has been
+     *                              handled, or {@code null} if the bulk
+     *                              response is to be sent at once.
+     *
+     * @throws Exception  If the server could not be started.
+     */
+    private BulkResponseServer(final int count,
+                               final CountDownLatch firstResponseHandled)
+        throws Exception
+    {
+      this.response = createResponse(count);
+      this.firstResponseHandled = firstResponseHandled;
+
+      // The bulk response for one operation, without the closing "]}", is
+      // the part of the full bulk response up to the end of the first
+      // operation response.
+      final byte[] firstResponse = createResponse(1);
+      firstResponseLength = firstResponse.length - 2;
+      assertEquals(Arrays.copyOf(response, firstResponseLength),
+                   Arrays.copyOf(firstResponse, firstResponseLength));
+
+      httpServer = HttpServer.create(
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+      httpServer.createContext("/", this);
+      httpServer.start();
+    }
+
+
+
+    /**
+     * Retrieve a SCIM service for this server.
+     *
+     * @return  A SCIM service for this server.
+     */
+    private SCIMService getService()
+    {
+      return new SCIMService(URI.create(
+          "http://127.0.0.1:" + httpServer.getAddress().getPort() + "/"));
+    }
+
+
+
+    /**
+     * Stop the server.
+     */
+    private void stop()
+    {
+      httpServer.stop(0);
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    public void handle(final HttpExchange exchange)
+        throws IOException
+    {
+      final InputStream inputStream = exchange.getRequestBody();
+      while (inputStream.read(new byte[512]) != -1)
+      {
+        // Discard the bulk request.
+      }
+
+      exchange.getResponseHeaders().put(
+          "Content-Type", Collections.singletonList("application/json"));
+      exchange.sendResponseHeaders(200, 0);
+      final OutputStream outputStream = exchange.getResponseBody();
+      try
+      {
+        if (firstResponseHandled == null)
+        {
+          outputStream.write(response);
+        }
+        else
+        {
+          outputStream.write(response, 0, firstResponseLength);
+          outputStream.flush();
+          try
+          {
+            firstResponseHandledBeforeRest =
+                firstResponseHandled.await(10, TimeUnit.SECONDS);
+          }
+          catch (InterruptedException e)
+          {
+            Thread.currentThread().interrupt();
+          }
+          outputStream.write(response, firstResponseLength,
+                             response.length - firstResponseLength);
+        }
+      }
+      finally
+      {
+        outputStream.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,314 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.SCIMTestCase;
+import com.unboundid.scim.data.BulkConfig;
+import com.unboundid.scim.data.UserResource;
+import com.unboundid.scim.facade.org.apache.wink.client.RestClient;
+import com.unboundid.scim.schema.CoreSchema;
+import org.glassfish.jersey.client.ClientConfig;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+
+
+/**
+ * Test coverage for the {@code BulkWriter} class.
+ */
+public class BulkWriterTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Test that operations are sent in batches of at most maxOperations and
+   * that each response is provided with its overall operation index.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testMaxOperations()
+      throws Exception
+  {
+    final RecordingEndpoint endpoint = new RecordingEndpoint(-1);
+    final RecordingHandler handler = new RecordingHandler();
+    final BulkWriter writer = new BulkWriter(
+        endpoint, new BulkConfig(true, 10, Long.MAX_VALUE), handler, -1, 2);
+
+    for (int i = 0; i < 25; i++)
+    {
+      writer.add(createOperation(i));
+    }
+    writer.close();
+
+    final List<Integer> batchSizes = new ArrayList<Integer>();
+    for (final List<BulkOperation> batch : endpoint.batches)
+    {
+      batchSizes.add(batch.size());
+    }
+    Collections.sort(batchSizes);
+    assertEquals(batchSizes.toString(), "[5, 10, 10]");
+
+    assertEquals(handler.responses.length, 25);
+    for (int i = 0; i < 25; i++)
+    {
+      assertNotNull(handler.responses[i]);
+      assertEquals(handler.responses[i].getBulkId(), "bulk." + i);
+    }
+  }
+
+
+
+  /**
+   * Test that operations are sent in batches that do not exceed
+   * maxPayloadSize.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testMaxPayloadSize()
+      throws Exception
+  {
+    final RecordingEndpoint endpoint = new RecordingEndpoint(-1);
+    final long operationSize = endpoint.getPayloadSize(
+        Collections.singletonList(createOperation(0)), -1);
+    final long maxPayloadSize = operationSize * 3;
+
+    final RecordingHandler handler = new RecordingHandler();
+    final BulkWriter writer = new BulkWriter(
+        endpoint, new BulkConfig(true, 1000, maxPayloadSize), handler, -1, 1);
+    for (int i = 0; i < 10; i++)
+    {
+      writer.add(createOperation(i));
+    }
+    writer.flush();
+
+    int operations = 0;
+    for (final List<BulkOperation> batch : endpoint.batches)
+    {
+      assertTrue(endpoint.getPayloadSize(batch, -1) <= maxPayloadSize);
+      operations += batch.size();
+    }
+    assertTrue(endpoint.batches.size() > 1);
+    assertEquals(operations, 10);
+    writer.close();
+  }
+
+
+
+  /**
+   * Test that the failure of a bulk request is reported and stops further
+   * operations from being sent.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testFailure()
+      throws Exception
+  {
+    final RecordingEndpoint endpoint = new RecordingEndpoint(1);
+    final BulkWriter writer = new BulkWriter(
+        endpoint, new BulkConfig(true, 5, Long.MAX_VALUE),
+        new RecordingHandler(), -1, 1);
+
+    try
+    {
+      for (int i = 0; i < 100; i++)
+      {
+        writer.add(createOperation(i));
+      }
+      writer.flush();
+      fail("Expected the second bulk request to fail");
+    }
+    catch (SCIMException e)
+    {
+      assertSame(e, endpoint.failure);
+    }
+    assertTrue(endpoint.batches.size() < 20);
+
+    try
+    {
+      writer.close();
+      fail("Expected the failure to be reported again");
+    }
+    catch (SCIMException e)
+    {
+      assertSame(e, endpoint.failure);
+    }
+  }
+
+
+
+  /**
+   * Test that operations may not be added once the writer has been closed.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testClosed()
+      throws Exception
+  {
+    final RecordingEndpoint endpoint = new RecordingEndpoint(-1);
+    final BulkWriter writer = new BulkWriter(
+        endpoint, new BulkConfig(true, 10, Long.MAX_VALUE),
+        new RecordingHandler(), -1, 1);
+    writer.add(createOperation(0));
+    writer.close();
+    assertEquals(endpoint.batches.size(), 1);
+
+    try
+    {
+      writer.add(createOperation(1));
+      fail("Expected an operation added after close to be rejected");
+    }
+    catch (SCIMException e)
+    {
+      // Expected.
+    }
+
+    try
+    {
+      writer.flush();
+      fail("Expected a flush after close to be rejected");
+    }
+    catch (SCIMException e)
+    {
+      // Expected.
+    }
+
+    writer.close();
+    assertEquals(endpoint.batches.size(), 1);
+  }
+
+
+
+  /**
+   * Create a bulk operation to add a user.
+   *
+   * @param i  The number of the user.
+   *
+   * @return  The bulk operation.
+   */
+  private static BulkOperation createOperation(final int i)
+  {
+    final UserResource user = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    user.setUserName("user." + i);
+    return BulkOperation.createRequest(
+        BulkOperation.Method.POST, "bulk." + i, null, "/Users", user);
+  }
+
+
+
+  /**
+   * A bulk endpoint that records the requests and returns a successful
+   * response for each operation.
+   */
+  private static final class RecordingEndpoint extends BulkEndpoint
+  {
+    private final List<List<BulkOperation>> batches =
+        Collections.synchronizedList(new ArrayList<List<BulkOperation>>());
+    private final int failingBatch;
+    private final SCIMException failure =
+        new ServerErrorException("Bulk request failed");
+
+
+
+    /**
+     * Create a new endpoint.
+     *
+     * @param failingBatch  The index of the request that should fail, or -1
+     *                      if all requests should succeed.
+     */
+    private RecordingEndpoint(final int failingBatch)
+    {
+      super(new SCIMService(URI.create("http://localhost/")),
+            new RestClient(new ClientConfig()));
+      this.failingBatch = failingBatch;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void processRequest(final BulkContentHandler handler,
+                               final List<BulkOperation> operations,
+                               final int failOnErrors)
+        throws SCIMException
+    {
+      if (batches.size() == failingBatch)
+      {
+        batches.add(operations);
+        throw failure;
+      }
+      batches.add(operations);
+
+      for (int i = 0; i < operations.size(); i++)
+      {
+        final BulkOperation operation = operations.get(i);
+        try
+        {
+          handler.handleOperation(i, BulkOperation.createResponse(
+              operation.getMethod(), operation.getBulkId(), null,
+              "/Users/" + i, new Status("201", null)));
+        }
+        catch (BulkException e)
+        {
+          handler.handleException(i, e);
+        }
+      }
+    }
+  }
+
+
+
+  /**
+   * A handler that records the operation responses by index.
+   */
+  private static final class RecordingHandler extends BulkContentHandler
+  {
+    private final BulkOperation[] responses = new BulkOperation[25];
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void handleOperation(final int opIndex,
+                                final BulkOperation bulkOperation)
+    {
+      if (opIndex < responses.length)
+      {
+        assertNull(responses[opIndex]);
+        responses[opIndex] = bulkOperation;
+      }
+    }
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.SCIMTestCase;
+import com.unboundid.scim.data.UserResource;
+import com.unboundid.scim.facade.org.apache.wink.client.RestClient;
+import com.unboundid.scim.schema.CoreSchema;
+import org.glassfish.jersey.client.ClientConfig;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+
+
+/**
+ * Test coverage for the {@code QueryIterator} class.
+ */
+public class QueryIteratorTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Test that all the resources are returned in order when the service
+   * provider returns fewer resources per page than requested.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testIteration()
+      throws Exception
+  {
+    final PagedEndpoint endpoint = new PagedEndpoint(25, 7, -1);
+    final QueryIterator<UserResource> iterator =
+        new QueryIterator<UserResource>(endpoint, null, null, 10);
+
+    int i = 0;
+    while (iterator.hasNext())
+    {
+      assertEquals(iterator.next().getUserName(), "user." + i++);
+    }
+    assertEquals(i, 25);
+    assertEquals(endpoint.requestedCounts.size(), 4);
+    for (final int count : endpoint.requestedCounts)
+    {
+      assertEquals(count, 10);
+    }
+
+    try
+    {
+      iterator.next();
+      fail("Expected no more resources");
+    }
+    catch (NoSuchElementException e)
+    {
+      // Expected.
+    }
+
+    assertFalse(new QueryIterator<UserResource>(
+        new PagedEndpoint(0, 7, -1), null, null, 10).hasNext());
+  }
+
+
+
+  /**
+   * Test that a failure to retrieve a page is reported.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testFailure()
+      throws Exception
+  {
+    final PagedEndpoint endpoint = new PagedEndpoint(25, 10, 11);
+    final QueryIterator<UserResource> iterator =
+        new QueryIterator<UserResource>(endpoint, null, null, 10);
+
+    for (int i = 0; i < 10; i++)
+    {
+      iterator.next();
+    }
+
+    try
+    {
+      iterator.hasNext();
+      fail("Expected the second page to fail");
+    }
+    catch (QueryIterator.IterationException e)
+    {
+      assertSame(e.getCause(), endpoint.failure);
+    }
+    assertFalse(iterator.hasNext());
+  }
+
+
+
+  /**
+   * An endpoint that returns pages of generated users.
+   */
+  private static final class PagedEndpoint extends SCIMEndpoint<UserResource>
+  {
+    private final int totalResults;
+    private final int maxResults;
+    private final int failAtIndex;
+    private final SCIMException failure =
+        new ServerErrorException("page failed");
+    private final List<Integer> requestedCounts =
+        new ArrayList<Integer>();
+
+
+
+    /**
+     * Create a new endpoint.
+     *
+     * @param totalResults  The number of users.
+     * @param maxResults    The maximum number of users in each page.
+     * @param failAtIndex   The start index of the page that fails, or -1.
+     *
+     * @throws Exception  If the endpoint could not be created.
+     */
+    PagedEndpoint(final int totalResults, final int maxResults,
+                  final int failAtIndex)
+        throws Exception
+    {
+      super(new SCIMService(new URI("http://localhost:8080/")),
+            new RestClient(new ClientConfig()), CoreSchema.USER_DESCRIPTOR,
+            UserResource.USER_RESOURCE_FACTORY);
+      this.totalResults = totalResults;
+      this.maxResults = maxResults;
+      this.failAtIndex = failAtIndex;
+    }
+
+
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Resources<UserResource> query(final String filter,
+                                         final SortParameters sortParameters,
+                                         final PageParameters pageParameters,
+                                         final String... requestedAttributes)
+        throws SCIMException
+    {
+      final int startIndex = pageParameters.getStartIndex();
+      synchronized (requestedCounts)
+      {
+        requestedCounts.add(pageParameters.getCount());
+      }
+      if (startIndex == failAtIndex)
+      {
+        throw failure;
+      }
+
+      final List<UserResource> users = new ArrayList<UserResource>();
+      for (int i = startIndex - 1;
+           i < totalResults && users.size() < maxResults &&
+           users.size() < pageParameters.getCount(); i++)
+      {
+        final UserResource user =
+            new UserResource(CoreSchema.USER_DESCRIPTOR);
+        user.setUserName("user." + i);
+        users.add(user);
+      }
+      return new Resources<UserResource>(users, totalResults, startIndex);
+    }
+  }
+}
@@ -250,4 +250,48 @@ public class SCIMAttributeTestCase
           AttributeValueResolver.STRING_RESOLVER), "someNumber");
     }
   }
+
+
+
+  /**
+   * Tests that the typed forms of simple values are consistent with their
+   * lexical forms, whether the value was created from a string or a typed
+   * value.
+   */
+  @Test
+  public void testSimpleValueTypes()
+  {
+    final Date date = new Date(1305261754123L);
+    final SimpleValue dateValue = new SimpleValue(date);
+    final SimpleValue parsedDateValue =
+        new SimpleValue(dateValue.getStringValue());
+    assertEquals(parsedDateValue, dateValue);
+    assertEquals(dateValue.getDateValue(), date);
+    assertEquals(parsedDateValue.getDateValue(), date);
+    assertEquals(parsedDateValue.getDateMillis(), date.getTime());
+
+    // The returned date must not share state with the value.
+    parsedDateValue.getDateValue().setTime(0);
+    assertEquals(parsedDateValue.getDateValue(), date);
+
+    final SimpleValue longValue = new SimpleValue("12345");
+    assertEquals(longValue.getLongValue(), Long.valueOf(12345L));
+    assertEquals(longValue.getDoubleValue(), Double.valueOf(12345.0));
+    assertEquals(longValue.getLongValue(), Long.valueOf(12345L));
+    assertEquals(new SimpleValue(12345).getLongValue(), Long.valueOf(12345L));
+
+    assertEquals(new SimpleValue(1.5).getDoubleValue(), Double.valueOf(1.5));
+    assertEquals(new SimpleValue(Boolean.TRUE), new SimpleValue("true"));
+    assertTrue(new SimpleValue("TRUE").getBooleanValue());
+
+    try
+    {
+      new SimpleValue(Boolean.TRUE).getLongValue();
+      fail("Expected a boolean value not to be parsed as an integer");
+    }
+    catch (NumberFormatException e)
+    {
+      // Expected.
+    }
+  }
 }
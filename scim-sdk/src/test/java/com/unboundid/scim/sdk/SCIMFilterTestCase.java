@@ -18,12 +18,21 @@
 package com.unboundid.scim.sdk;
 
 import com.unboundid.scim.SCIMTestCase;
+import com.unboundid.scim.data.Entry;
+import com.unboundid.scim.data.Meta;
+import com.unboundid.scim.data.Name;
+import com.unboundid.scim.data.UserResource;
 import com.unboundid.scim.schema.AttributeDescriptor;
+import com.unboundid.scim.schema.CoreSchema;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.Arrays;
+import java.util.Date;
+
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
@@ -262,4 +271,73 @@ public class SCIMFilterTestCase
     assertFalse(filter.isQuoteFilterValue());
   }
 
+
+
+  /**
+   * Retrieves a set of filter strings and whether they match the user created
+   * by {@link #testMatchesFilter}.
+   *
+   * @return  A set of filter strings and whether they match.
+   */
+  @DataProvider(name = "testMatchingFilters")
+  public Object[][] getTestMatchingFilters()
+  {
+    return new Object[][]
+    {
+        new Object[] { "userName eq \"BJensen\"", true },
+        new Object[] { "userName eq \"jensen\"", false },
+        new Object[] { "userName co \"JEN\"", true },
+        new Object[] { "userName sw \"bj\"", true },
+        new Object[] { "userName sw \"jen\"", false },
+        new Object[] { "userName gt \"a\" and userName lt \"c\"", true },
+        new Object[] { "title pr", false },
+        new Object[] { "title pr or userName pr", true },
+        new Object[] { "name.familyName eq \"jensen\"", true },
+        new Object[] { "name.givenName eq \"jensen\"", false },
+        new Object[] { "emails co \"example.com\"", true },
+        new Object[] { "emails.type eq \"home\"", true },
+        new Object[] { "emails co \"example.org\"", false },
+        new Object[] { "active eq true", true },
+        new Object[] { "active eq false", false },
+        new Object[] { "meta.lastModified gt \"2011-05-13T04:42:34Z\"", true },
+        new Object[] { "meta.lastModified le \"2011-05-13T04:42:34Z\"", false },
+        new Object[] { "meta.lastModified gt \"not a date\"", false },
+        new Object[] { "(title pr or emails.type eq \"work\") and " +
+                       "userName eq \"bjensen\"", true },
+        new Object[] { "userName eq \"bjensen\" and " +
+                       "(title pr or emails.type eq \"other\")", false },
+    };
+  }
+
+
+
+  /**
+   * Test that filters are evaluated against a SCIM object as expected, and
+   * that the compiled form of a filter is reused.
+   *
+   * @param filterString  The string representation of the filter.
+   * @param matches       Whether the filter should match the user.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test(dataProvider = "testMatchingFilters")
+  public void testMatchesFilter(final String filterString,
+                                final boolean matches)
+      throws Exception
+  {
+    final UserResource user = new UserResource(CoreSchema.USER_DESCRIPTOR);
+    user.setUserName("bjensen");
+    user.setName(new Name("Ms. Barbara J Jensen III",
+        "Jensen", "Barbara", "J", "Ms.", "III"));
+    user.setEmails(Arrays.asList(
+        new Entry<String>("bjensen@example.com", "work", true),
+        new Entry<String>("babs@jensen.org", "home", false)));
+    user.setActive(true);
+    user.setMeta(new Meta(new Date(), new Date(), null, null));
+
+    final SCIMFilter filter = SCIMFilter.parse(filterString);
+    assertEquals(user.getScimObject().matchesFilter(filter), matches);
+    assertSame(filter.compile(), filter.compile());
+    assertEquals(filter.compile().matches(user.getScimObject()), matches);
+  }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.sdk;
+
+import com.unboundid.scim.SCIMTestCase;
+import org.apache.http.pool.PoolStats;
+import org.glassfish.jersey.client.ClientConfig;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+
+
+/**
+ * Test coverage for the {@code SCIMServiceBuilder} class.
+ */
+public class SCIMServiceBuilderTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Test that the connection pool settings are applied to the service.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testConnectionPool()
+      throws Exception
+  {
+    final SCIMService service =
+        new SCIMServiceBuilder(new URI("http://localhost:8080/"))
+            .setMaxConnections(20)
+            .setMaxConnectionsPerRoute(10)
+            .setIdleConnectionTimeoutMillis(30000)
+            .setConnectTimeoutMillis(5000)
+            .setReadTimeoutMillis(10000)
+            .setBasicAuthentication("bjensen", "password")
+            .build();
+    try
+    {
+      final PoolStats stats = service.getConnectionPoolStats();
+      assertEquals(stats.getMax(), 20);
+      assertEquals(stats.getLeased(), 0);
+      assertEquals(stats.getPending(), 0);
+    }
+    finally
+    {
+      service.close();
+    }
+
+    final SCIMService defaultService =
+        new SCIMService(new URI("http://localhost:8080/"));
+    try
+    {
+      assertNotNull(defaultService.getConnectionPoolStats());
+      assertEquals(defaultService.getConnectionPoolStats().getMax(),
+                   SCIMServiceBuilder.DEFAULT_MAX_CONNECTIONS);
+    }
+    finally
+    {
+      defaultService.close();
+    }
+
+    final SCIMService customService =
+        new SCIMService(new URI("http://localhost:8080/"), new ClientConfig());
+    assertNull(customService.getConnectionPoolStats());
+    customService.close();
+  }
+}
@@ -0,0 +1,740 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.wink;
+
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.data.GroupResource;
+import com.unboundid.scim.data.Meta;
+import com.unboundid.scim.schema.CoreSchema;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.DeleteResourceRequest;
+import com.unboundid.scim.sdk.GetResourceRequest;
+import com.unboundid.scim.sdk.GetResourcesRequest;
+import com.unboundid.scim.sdk.InvalidResourceException;
+import com.unboundid.scim.sdk.PatchResourceRequest;
+import com.unboundid.scim.sdk.PostResourceRequest;
+import com.unboundid.scim.sdk.PutResourceRequest;
+import com.unboundid.scim.sdk.ResourceNotFoundException;
+import com.unboundid.scim.sdk.Resources;
+import com.unboundid.scim.sdk.SCIMBackend;
+import com.unboundid.scim.sdk.SCIMException;
+import com.unboundid.scim.sdk.SCIMObject;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.unboundid.scim.sdk.SCIMConstants.SCHEMA_URI_CORE;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+
+/**
+ * This class provides test coverage for the processing of bulk requests,
+ * including the concurrent processing of bulk operations and the parsing of
+ * bulk requests in a single pass.
+ */
+public class BulkResourceTestCase
+    extends ResourceTestCase
+{
+  /**
+   * Tests that bulk operations are processed concurrently by the configured
+   * number of threads, and that their responses are returned in request
+   * order.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testConcurrentOperations()
+      throws Exception
+  {
+    // The first four operations can only complete once all four of them are
+    // being processed at the same time.
+    final TestBackend backend = new TestBackend(new CountDownLatch(4));
+    backend.getConfig().setBulkOperationThreads(4);
+    try
+    {
+      final StringBuilder operations = new StringBuilder();
+      for (int i = 0; i < 8; i++)
+      {
+        appendPost(operations, "b" + i, "user." + i);
+      }
+
+      final JSONArray responses = postBulk(backend, null, operations);
+      assertEquals(responses.length(), 8);
+      for (int i = 0; i < 8; i++)
+      {
+        final JSONObject response = responses.getJSONObject(i);
+        assertEquals(response.getString("bulkId"), "b" + i);
+        assertEquals(getStatusCode(response), 201);
+        assertTrue(response.getString("location").endsWith(
+            "/Users/id.user." + i));
+      }
+
+      assertEquals(backend.getMaxActive(), 4);
+      assertEquals(backend.getProcessed().size(), 8);
+    }
+    finally
+    {
+      backend.finalizeBackend();
+    }
+  }
+
+
+
+  /**
+   * Tests that operations referring to a bulkId wait for the operation that
+   * defines it when operations are processed concurrently, and that a
+   * reference to a bulkId that is only defined by a later operation is not
+   * resolved.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testBulkIdDependencies()
+      throws Exception
+  {
+    for (final int threads : new int[] { 1, 4 })
+    {
+      final TestBackend backend = new TestBackend(null);
+      backend.getConfig().setBulkOperationThreads(threads);
+      try
+      {
+        final StringBuilder operations = new StringBuilder();
+        appendPost(operations, "alice", "slow.alice");
+        operations.append(",{'method':'PUT','path':'/Users/bulkId:alice',").
+            append("'data':{'userName':'slow.alice','title':'Boss'}}");
+        operations.append(",{'method':'POST','bulkId':'group',").
+            append("'path':'/Groups','data':{'displayName':'group',").
+            append("'members':[{'value':'bulkId:alice'}]}}");
+        operations.append(",{'method':'PUT','path':'/Users/bulkId:later',").
+            append("'data':{'userName':'later'}}");
+        appendPost(operations, "later", "later");
+
+        final JSONArray responses = postBulk(backend, null, operations);
+        assertEquals(getStatusCodes(responses),
+                     Arrays.asList(201, 200, 201, 409, 201));
+
+        // The operations depending on alice were processed after it.
+        final List<String> processed = backend.getProcessed();
+        final int aliceIndex = processed.indexOf("POST slow.alice");
+        assertTrue(aliceIndex >= 0);
+        assertTrue(processed.indexOf("PUT id.slow.alice") > aliceIndex);
+        assertTrue(processed.indexOf("POST group") > aliceIndex);
+
+        final GroupResource group = new GroupResource(
+            CoreSchema.GROUP_DESCRIPTOR,
+            backend.getResource("id.group").getScimObject());
+        assertEquals(group.getMembers().size(), 1);
+        assertEquals(group.getMembers().iterator().next().getValue(),
+                     "id.slow.alice");
+      }
+      finally
+      {
+        backend.finalizeBackend();
+      }
+    }
+  }
+
+
+
+  /**
+   * Tests that no operation is processed once failOnErrors has been reached,
+   * whether or not operations are processed concurrently.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testFailOnErrors()
+      throws Exception
+  {
+    for (final int threads : new int[] { 1, 4 })
+    {
+      final TestBackend backend = new TestBackend(null);
+      backend.getConfig().setBulkOperationThreads(threads);
+      try
+      {
+        final StringBuilder operations = new StringBuilder();
+        appendPost(operations, "b0", "user.0");
+        appendPost(operations, "b1", "slow.fail.1");
+        appendPost(operations, "b2", "fail.2");
+        appendPost(operations, "b3", "user.3");
+        appendPost(operations, "b4", "user.4");
+
+        final JSONArray responses = postBulk(backend, 2, operations);
+        assertEquals(getStatusCodes(responses), Arrays.asList(201, 400, 400));
+        assertEquals(new HashSet<String>(backend.getProcessed()),
+                     new HashSet<String>(Arrays.asList(
+                         "POST user.0", "POST slow.fail.1", "POST fail.2")));
+      }
+      finally
+      {
+        backend.finalizeBackend();
+      }
+    }
+  }
+
+
+
+  /**
+   * Tests that a bulk request parsed in a single pass as it is received has
+   * the same responses as one written to a temporary file first, except that
+   * a failOnErrors value following the operations does not apply to them.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testStreamBulkRequests()
+      throws Exception
+  {
+    final StringBuilder operations = new StringBuilder();
+    appendPost(operations, "b0", "user.0");
+    appendPost(operations, "b1", "fail.1");
+    appendPost(operations, "b2", "fail.2");
+    appendPost(operations, "b3", "user.3");
+    appendPost(operations, "b4", "user.4");
+    final String failOnErrorsFirst =
+        "{'failOnErrors':2,'Operations':[" + operations + "]}";
+    final String failOnErrorsLast =
+        "{'Operations':[" + operations + "],'failOnErrors':2}";
+
+    for (final boolean streamBulkRequests : new boolean[] { false, true })
+    {
+      final TestBackend backend = new TestBackend(null);
+      backend.getConfig().setStreamBulkRequests(streamBulkRequests);
+      try
+      {
+        final JSONArray responses = postBulk(backend, failOnErrorsFirst);
+        assertEquals(getStatusCodes(responses), Arrays.asList(201, 400, 400));
+        assertEquals(responses.getJSONObject(0).getString("location"),
+                     BASE_URI + "Users/id.user.0");
+      }
+      finally
+      {
+        backend.finalizeBackend();
+      }
+    }
+
+    // The temporary file is parsed after the failOnErrors value has been
+    // found.
+    TestBackend backend = new TestBackend(null);
+    try
+    {
+      assertEquals(getStatusCodes(postBulk(backend, failOnErrorsLast)),
+                   Arrays.asList(201, 400, 400));
+    }
+    finally
+    {
+      backend.finalizeBackend();
+    }
+
+    // The operations have been processed before the failOnErrors value is
+    // read.
+    backend = new TestBackend(null);
+    backend.getConfig().setStreamBulkRequests(true);
+    try
+    {
+      assertEquals(getStatusCodes(postBulk(backend, failOnErrorsLast)),
+                   Arrays.asList(201, 400, 400, 201, 201));
+    }
+    finally
+    {
+      backend.finalizeBackend();
+    }
+  }
+
+
+
+  /**
+   * Tests that operations of a bulk request parsed in a single pass are
+   * processed before the whole request has been received, and that the
+   * maxPayloadSize is enforced as the request is read.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testStreamBulkRequestsAsReceived()
+      throws Exception
+  {
+    final StringBuilder operations = new StringBuilder();
+    for (int i = 0; i < 1000; i++)
+    {
+      appendPost(operations, "b" + i, "user." + i);
+    }
+    final byte[] content = ("{'Operations':[" + operations + "]}").
+        getBytes("UTF-8");
+
+    for (final boolean streamBulkRequests : new boolean[] { false, true })
+    {
+      final TestBackend backend = new TestBackend(null);
+      backend.getConfig().setStreamBulkRequests(streamBulkRequests);
+      try
+      {
+        // Record how many operations had been processed when the last of the
+        // request was read.
+        final AtomicInteger processedAtEnd = new AtomicInteger(-1);
+        final InputStream inputStream = new ByteArrayInputStream(content)
+        {
+          @Override
+          public synchronized int read(final byte[] b, final int off,
+                                       final int len)
+          {
+            final int bytesRead = super.read(b, off, len);
+            if (bytesRead > 0 && available() == 0)
+            {
+              processedAtEnd.set(backend.getProcessed().size());
+            }
+            return bytesRead;
+          }
+        };
+
+        final SCIMApplication application =
+            new SCIMApplication(backend, null);
+        final Response response = postBulk(application, inputStream);
+        assertEquals(response.getStatus(), 200);
+        assertEquals(new JSONObject(getContent(response)).getJSONArray(
+            "Operations").length(), 1000);
+        if (streamBulkRequests)
+        {
+          assertTrue(processedAtEnd.get() > 0);
+        }
+        else
+        {
+          assertEquals(processedAtEnd.get(), 0);
+        }
+
+        // A request that exceeds the maxPayloadSize is rejected even if it
+        // does not provide its content length.
+        application.setBulkMaxPayloadSize(content.length / 2);
+        assertEquals(postBulk(application,
+                              new ByteArrayInputStream(content)).getStatus(),
+                     413);
+      }
+      finally
+      {
+        backend.finalizeBackend();
+      }
+    }
+  }
+
+
+
+  /**
+   * Append a bulk operation to create a user.
+   *
+   * @param operations  The bulk operations.
+   * @param bulkId      The bulkId of the operation.
+   * @param userName    The userName of the user.
+   */
+  private static void appendPost(final StringBuilder operations,
+                                 final String bulkId, final String userName)
+  {
+    if (operations.length() > 0)
+    {
+      operations.append(',');
+    }
+    operations.append("{'method':'POST','bulkId':'").append(bulkId).
+        append("','path':'/Users','data':{'userName':'").append(userName).
+        append("'}}");
+  }
+
+
+
+  /**
+   * Post a bulk request in JSON format and check that it succeeded.
+   *
+   * @param backend       The backend to process the request.
+   * @param failOnErrors  The failOnErrors value of the request, or
+   *                      {@code null} if it is not specified.
+   * @param operations    The bulk operations of the request.
+   *
+   * @return  The responses to the bulk operations.
+   *
+   * @throws Exception  If the request could not be processed.
+   */
+  private static JSONArray postBulk(final TestBackend backend,
+                                    final Integer failOnErrors,
+                                    final CharSequence operations)
+      throws Exception
+  {
+    final StringBuilder content = new StringBuilder("{");
+    if (failOnErrors != null)
+    {
+      content.append("'failOnErrors':").append(failOnErrors).append(',');
+    }
+    content.append("'Operations':[").append(operations).append("]}");
+
+    return postBulk(backend, content.toString());
+  }
+
+
+
+  /**
+   * Post a bulk request in JSON format and check that it succeeded.
+   *
+   * @param backend  The backend to process the request.
+   * @param content  The content of the request.
+   *
+   * @return  The responses to the bulk operations.
+   *
+   * @throws Exception  If the request could not be processed.
+   */
+  private static JSONArray postBulk(final TestBackend backend,
+                                    final String content)
+      throws Exception
+  {
+    final Response response = postBulk(
+        new SCIMApplication(backend, null),
+        new ByteArrayInputStream(content.getBytes("UTF-8")));
+    final String responseContent = getContent(response);
+    assertEquals(response.getStatus(), 200, responseContent);
+
+    return new JSONObject(responseContent).getJSONArray("Operations");
+  }
+
+
+
+  /**
+   * Post a bulk request in JSON format.
+   *
+   * @param application  The application to process the request.
+   * @param content      The content of the request.
+   *
+   * @return  The response to the request.
+   */
+  private static Response postBulk(final SCIMApplication application,
+                                   final InputStream content)
+  {
+    final JSONBulkResource resource = new JSONBulkResource(application, null);
+    return resource.doJsonJsonPost(
+        content, createServletRequest(), createSecurityContext(),
+        createHeaders(), createUriInfo());
+  }
+
+
+
+  /**
+   * Retrieve the status codes of bulk operation responses.
+   *
+   * @param responses  The bulk operation responses.
+   *
+   * @return  The status codes of the responses.
+   *
+   * @throws Exception  If the responses could not be parsed.
+   */
+  private static List<Integer> getStatusCodes(final JSONArray responses)
+      throws Exception
+  {
+    final List<Integer> statusCodes = new ArrayList<Integer>();
+    for (int i = 0; i < responses.length(); i++)
+    {
+      statusCodes.add(getStatusCode(responses.getJSONObject(i)));
+    }
+    return statusCodes;
+  }
+
+
+
+  /**
+   * Retrieve the status code of a bulk operation response.
+   *
+   * @param response  The bulk operation response.
+   *
+   * @return  The status code of the response.
+   *
+   * @throws Exception  If the response could not be parsed.
+   */
+  private static int getStatusCode(final JSONObject response)
+      throws Exception
+  {
+    return Integer.parseInt(
+        response.getJSONObject("status").get("code").toString());
+  }
+
+
+
+  /**
+   * A backend that stores the resources it creates in memory and records the
+   * operations it processes. An operation fails if the name of its resource
+   * contains "fail", and takes longer to process if the name contains "slow".
+   */
+  private static class TestBackend
+      extends SCIMBackend
+  {
+    /**
+     * A latch that operations count down and then wait for, or {@code null}
+     * if operations do not wait for each other.
+     */
+    private final CountDownLatch latch;
+
+    /**
+     * The resources that have been created, keyed by resource ID.
+     */
+    private final Map<String, BaseResource> resources =
+        new HashMap<String, BaseResource>();
+
+    /**
+     * The operations that have been processed, in the order they started.
+     */
+    private final List<String> processed = new ArrayList<String>();
+
+    /**
+     * The number of operations being processed.
+     */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * The largest number of operations processed at the same time.
+     */
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+
+
+    /**
+     * Create a new test backend.
+     *
+     * @param latch  A latch that operations count down and then wait for, or
+     *               {@code null} if operations do not wait for each other.
+     */
+    TestBackend(final CountDownLatch latch)
+    {
+      this.latch = latch;
+    }
+
+
+
+    /**
+     * Retrieve the operations that have been processed.
+     *
+     * @return  The operations that have been processed, in the order they
+     *          started.
+     */
+    synchronized List<String> getProcessed()
+    {
+      return new ArrayList<String>(processed);
+    }
+
+
+
+    /**
+     * Retrieve the largest number of operations processed at the same time.
+     *
+     * @return  The largest number of operations processed at the same time.
+     */
+    int getMaxActive()
+    {
+      return maxActive.get();
+    }
+
+
+
+    /**
+     * Retrieve a resource that has been created.
+     *
+     * @param id  The ID of the resource.
+     *
+     * @return  The resource, or {@code null} if there is no such resource.
+     */
+    synchronized BaseResource getResource(final String id)
+    {
+      return resources.get(id);
+    }
+
+
+
+    @Override
+    public void finalizeBackend()
+    {
+      shutdownBulkOperationExecutor();
+    }
+
+
+
+    @Override
+    public BaseResource getResource(final GetResourceRequest request)
+        throws SCIMException
+    {
+      throw new UnsupportedOperationException();
+    }
+
+
+
+    @Override
+    public Resources getResources(final GetResourcesRequest request)
+        throws SCIMException
+    {
+      throw new UnsupportedOperationException();
+    }
+
+
+
+    @Override
+    public BaseResource postResource(final PostResourceRequest request)
+        throws SCIMException
+    {
+      final String name = getName(request.getResourceObject());
+      final BaseResource resource = new BaseResource(
+          request.getResourceDescriptor(), request.getResourceObject());
+      resource.setId("id." + name);
+      return process("POST " + name, name, resource);
+    }
+
+
+
+    @Override
+    public void deleteResource(final DeleteResourceRequest request)
+        throws SCIMException
+    {
+      throw new UnsupportedOperationException();
+    }
+
+
+
+    @Override
+    public BaseResource putResource(final PutResourceRequest request)
+        throws SCIMException
+    {
+      final String id = request.getResourceID();
+      if (getResource(id) == null)
+      {
+        throw new ResourceNotFoundException(
+            "Resource " + id + " does not exist");
+      }
+
+      final BaseResource resource = new BaseResource(
+          request.getResourceDescriptor(), request.getResourceObject());
+      resource.setId(id);
+      return process("PUT " + id, getName(request.getResourceObject()),
+                     resource);
+    }
+
+
+
+    @Override
+    public BaseResource patchResource(final PatchResourceRequest request)
+        throws SCIMException
+    {
+      throw new UnsupportedOperationException();
+    }
+
+
+
+    @Override
+    public Collection<ResourceDescriptor> getResourceDescriptors()
+    {
+      return Arrays.asList(CoreSchema.USER_DESCRIPTOR,
+                           CoreSchema.GROUP_DESCRIPTOR);
+    }
+
+
+
+    /**
+     * Process an operation and store the resource if it succeeds.
+     *
+     * @param operation  The description of the operation.
+     * @param name       The name of the resource.
+     * @param resource   The resource to be stored.
+     *
+     * @return  The stored resource.
+     *
+     * @throws SCIMException  If the operation fails.
+     */
+    private BaseResource process(final String operation, final String name,
+                                 final BaseResource resource)
+        throws SCIMException
+    {
+      synchronized (this)
+      {
+        processed.add(operation);
+      }
+
+      final int nowActive = active.incrementAndGet();
+      try
+      {
+        int max = maxActive.get();
+        while (nowActive > max && !maxActive.compareAndSet(max, nowActive))
+        {
+          max = maxActive.get();
+        }
+
+        if (latch != null)
+        {
+          latch.countDown();
+          latch.await(10, TimeUnit.SECONDS);
+        }
+
+        if (name.contains("slow"))
+        {
+          Thread.sleep(200);
+        }
+      }
+      catch (InterruptedException e)
+      {
+        Thread.currentThread().interrupt();
+      }
+      finally
+      {
+        active.decrementAndGet();
+      }
+
+      if (name.contains("fail"))
+      {
+        throw new InvalidResourceException(name + " is not valid");
+      }
+
+      resource.setMeta(new Meta(null, null, null, "1"));
+      synchronized (this)
+      {
+        resources.put(resource.getId(), resource);
+      }
+      return resource;
+    }
+
+
+
+    /**
+     * Retrieve the name of a user or group.
+     *
+     * @param object  The user or group.
+     *
+     * @return  The userName of the user or the displayName of the group.
+     */
+    private static String getName(final SCIMObject object)
+    {
+      final String attribute =
+          object.hasAttribute(SCHEMA_URI_CORE, "userName") ?
+          "userName" : "displayName";
+      return object.getAttribute(SCHEMA_URI_CORE, attribute).getValue().
+          getStringValue();
+    }
+  }
+}
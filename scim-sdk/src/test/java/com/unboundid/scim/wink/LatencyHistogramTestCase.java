@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.wink;
+
+import com.unboundid.scim.SCIMTestCase;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+
+
+/**
+ * This class provides test coverage for the {@code LatencyHistogram} class.
+ */
+@Test
+public class LatencyHistogramTestCase
+    extends SCIMTestCase
+{
+  /**
+   * Tests the percentiles reported for a uniform distribution of latencies.
+   */
+  @Test
+  public void testPercentiles()
+  {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    assertEquals(histogram.getCount(), 0);
+    assertEquals(histogram.getValueAtPercentile(99.0), 0);
+
+    for (int i = 1; i <= 10000; i++)
+    {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+    }
+
+    assertEquals(histogram.getCount(), 10000);
+    assertEquals(histogram.getMaxMicros(), 10000);
+    assertEquals(histogram.getMeanMicros(), 5000);
+    assertWithinError(histogram.getValueAtPercentile(50.0), 5000);
+    assertWithinError(histogram.getValueAtPercentile(90.0), 9000);
+    assertWithinError(histogram.getValueAtPercentile(99.0), 9900);
+    assertWithinError(histogram.getValueAtPercentile(99.9), 9990);
+    assertEquals(histogram.getValueAtPercentile(100.0), 10000);
+  }
+
+
+
+  /**
+   * Tests that every value maps to a bucket whose range contains it.
+   */
+  @Test
+  public void testBuckets()
+  {
+    long previousHighest = -1;
+    for (long value = 0; value < (1L << 20); value++)
+    {
+      final int index = LatencyHistogram.getBucketIndex(value);
+      final long highest = LatencyHistogram.getBucketHighestValue(index);
+      assertTrue(value <= highest);
+      if (value == previousHighest + 1)
+      {
+        // The first value of each bucket starts a new bucket.
+        assertTrue(index == 0 ||
+            LatencyHistogram.getBucketHighestValue(index - 1) < value);
+      }
+      previousHighest = Math.max(previousHighest, highest);
+    }
+
+    // Very large values are counted in the last bucket.
+    assertEquals(LatencyHistogram.getBucketHighestValue(
+        LatencyHistogram.getBucketIndex(Long.MAX_VALUE)), Long.MAX_VALUE);
+  }
+
+
+
+  /**
+   * Asserts that a reported value is within the precision of the histogram.
+   *
+   * @param actual    The value reported by the histogram.
+   * @param expected  The expected value.
+   */
+  private static void assertWithinError(final long actual, final long expected)
+  {
+    assertTrue(actual >= expected && actual <= expected + expected / 32,
+        "Expected about " + expected + " but was " + actual);
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.wink;
+
+import com.unboundid.scim.data.BaseResource;
+import com.unboundid.scim.schema.CoreSchema;
+import com.unboundid.scim.schema.ResourceDescriptor;
+import com.unboundid.scim.sdk.DeleteResourceRequest;
+import com.unboundid.scim.sdk.GetResourceRequest;
+import com.unboundid.scim.sdk.GetResourcesRequest;
+import com.unboundid.scim.sdk.PageParameters;
+import com.unboundid.scim.sdk.PatchResourceRequest;
+import com.unboundid.scim.sdk.PostResourceRequest;
+import com.unboundid.scim.sdk.PutResourceRequest;
+import com.unboundid.scim.sdk.Resources;
+import com.unboundid.scim.sdk.SCIMBackend;
+import com.unboundid.scim.sdk.SCIMException;
+import org.testng.annotations.Test;
+
+import javax.ws.rs.core.Response;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+
+
+/**
+ * This class provides test coverage for the parsing of the pagination
+ * parameters of query requests.
+ */
+public class QueryResourceTestCase
+    extends ResourceTestCase
+{
+  /**
+   * The total number of results returned by the test backend.
+   */
+  private static final int TOTAL_RESULTS = 42;
+
+
+
+  /**
+   * Verify that a query with a count of zero requests only the total number
+   * of results.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testCountOnly()
+      throws Exception
+  {
+    final TestBackend backend = new TestBackend();
+
+    Response response = query(backend, null, "0");
+    assertEquals(response.getStatus(), 200);
+    PageParameters pageParameters = backend.takeRequest().getPageParameters();
+    assertTrue(pageParameters.isCountOnly());
+    assertEquals(pageParameters.getStartIndex(), 1);
+    assertEquals(pageParameters.getCount(), 0);
+    final String content = getContent(response);
+    assertTrue(content.contains("\"totalResults\":" + TOTAL_RESULTS),
+               content);
+    assertTrue(content.contains("\"Resources\":[]"), content);
+
+    response = query(backend, "5", "0");
+    assertEquals(response.getStatus(), 200);
+    pageParameters = backend.takeRequest().getPageParameters();
+    assertTrue(pageParameters.isCountOnly());
+    assertEquals(pageParameters.getStartIndex(), 5);
+  }
+
+
+
+  /**
+   * Verify that a query with a positive count requests a page of results, and
+   * that a query with a negative count is rejected.
+   *
+   * @throws Exception  If the test fails.
+   */
+  @Test
+  public void testCount()
+      throws Exception
+  {
+    final TestBackend backend = new TestBackend();
+
+    assertEquals(query(backend, null, "10").getStatus(), 200);
+    final PageParameters pageParameters =
+        backend.takeRequest().getPageParameters();
+    assertFalse(pageParameters.isCountOnly());
+    assertEquals(pageParameters.getStartIndex(), 1);
+    assertEquals(pageParameters.getCount(), 10);
+
+    assertEquals(query(backend, null, null).getStatus(), 200);
+    assertNull(backend.takeRequest().getPageParameters());
+
+    assertEquals(query(backend, null, "-1").getStatus(), 400);
+    assertNull(backend.takeRequest());
+  }
+
+
+
+  /**
+   * Process a JSON query request for users.
+   *
+   * @param backend     The backend that is to process the query.
+   * @param startIndex  The startIndex query parameter, or {@code null}.
+   * @param count       The count query parameter, or {@code null}.
+   *
+   * @return  The response to the request.
+   */
+  private static Response query(final SCIMBackend backend,
+                                final String startIndex,
+                                final String count)
+  {
+    final JSONQueryResource resource =
+        new JSONQueryResource(new SCIMApplication(backend, null), null);
+    return resource.doJsonGet("Users", createServletRequest(),
+                              createSecurityContext(), createHeaders(),
+                              createUriInfo(), null, null, null, null, null,
+                              startIndex, count);
+  }
+
+
+
+  /**
+   * A backend that records the query requests it receives and returns no
+   * resources.
+   */
+  private static class TestBackend
+      extends SCIMBackend
+  {
+    /**
+     * The most recent query request.
+     */
+    private final AtomicReference<GetResourcesRequest> request =
+        new AtomicReference<GetResourcesRequest>();
+
+
+
+    /**
+     * Retrieve the most recent query request and forget it.
+     *
+     * @return  The most recent query request, or {@code null} if there has
+     *          not been a query since the request was last retrieved.
+     */
+    GetResourcesRequest takeRequest()
+    {
+      return request.getAndSet(null);
+    }
+
+
+
+    @Override
+    public void finalizeBackend()
+    {
+      shutdownBulkOperationExecutor();
+    }
+
+
+
+    @Override
+    public BaseResource getResource(final GetResourceRequest request)
+        throws SCIMException
+    {
+      throw new UnsupportedOperationException();
+    }
+
+
+
+    @Override
+    public Resources getResources(final GetResourcesRequest request)
+        throws SCIMException
+    {
+      this.request.set(request);
+      final int startIndex = request.getPageParameters() == null ?
+          1 : request.getPageParameters().getStartIndex();
+      return new Resources<BaseResource>(
+          Collections.<BaseResource>emptyList(), TOTAL_RESULTS, startIndex);
+    }
+
+
+
+    @Override
+    public BaseResource postResource(final PostResourceRequest request)
+        throws SCIMException
+    {
+      throw new UnsupportedOperationException();
+    }
+
+
+
+    @Override
+    public void deleteResource(final DeleteResourceRequest request)
+        throws SCIMException
+    {
+      throw new UnsupportedOperationException();
+    }
+
+
+
+    @Override
+    public BaseResource putResource(final PutResourceRequest request)
+        throws SCIMException
+    {
+      throw new UnsupportedOperationException();
+    }
+
+
+
+    @Override
+    public BaseResource patchResource(final PatchResourceRequest request)
+        throws SCIMException
+    {
+      throw new UnsupportedOperationException();
+    }
+
+
+
+    @Override
+    public Collection<ResourceDescriptor> getResourceDescriptors()
+    {
+      return Collections.singletonList(CoreSchema.USER_DESCRIPTOR);
+    }
+  }
+}
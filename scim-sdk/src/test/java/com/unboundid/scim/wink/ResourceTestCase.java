@@ -0,0 +1,165 @@
+/*
+ * Copyright 2011-2019 Ping Identity Corporation
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License (GPLv2 only)
+ * or the terms of the GNU Lesser General Public License (LGPLv2.1 only)
+ * as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, see <http://www.gnu.org/licenses>.
+ */
+
+package com.unboundid.scim.wink;
+
+import com.unboundid.scim.SCIMTestCase;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedHashMap;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+
+
+/**
+ * This class provides a base for the tests of the JAX-RS resource
+ * implementations, which invoke the resource methods directly with stand-ins
+ * for the request context provided by the container.
+ */
+public abstract class ResourceTestCase
+    extends SCIMTestCase
+{
+  /**
+   * The base URI of the requests.
+   */
+  protected static final URI BASE_URI = URI.create("http://localhost/");
+
+  /**
+   * The authenticated user of the requests.
+   */
+  protected static final String AUTH_ID = "cn=test";
+
+
+
+  /**
+   * Write the entity of a response.
+   *
+   * @param response  The response.
+   *
+   * @return  The entity of the response.
+   *
+   * @throws Exception  If the entity could not be written.
+   */
+  protected static String getContent(final Response response)
+      throws Exception
+  {
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    ((StreamingOutput) response.getEntity()).write(outputStream);
+    return outputStream.toString("UTF-8");
+  }
+
+
+
+  /**
+   * Create the servlet request of a request without headers.
+   *
+   * @return  The servlet request.
+   */
+  protected static HttpServletRequest createServletRequest()
+  {
+    return stub(HttpServletRequest.class, null);
+  }
+
+
+
+  /**
+   * Create the security context of a request authenticated as
+   * {@link #AUTH_ID}.
+   *
+   * @return  The security context.
+   */
+  protected static SecurityContext createSecurityContext()
+  {
+    final Principal principal = new Principal()
+    {
+      public String getName()
+      {
+        return AUTH_ID;
+      }
+    };
+    return stub(SecurityContext.class, Collections.<String, Object>singletonMap(
+        "getUserPrincipal", principal));
+  }
+
+
+
+  /**
+   * Create the headers of a request without headers.
+   *
+   * @return  The request headers.
+   */
+  protected static HttpHeaders createHeaders()
+  {
+    return stub(HttpHeaders.class, null);
+  }
+
+
+
+  /**
+   * Create the URI info of a request without query parameters.
+   *
+   * @return  The URI info.
+   */
+  protected static UriInfo createUriInfo()
+  {
+    final Map<String, Object> values = new HashMap<String, Object>();
+    values.put("getBaseUri", BASE_URI);
+    values.put("getQueryParameters", new MultivaluedHashMap<String, String>());
+    return stub(UriInfo.class, values);
+  }
+
+
+
+  /**
+   * Create an implementation of an interface whose methods return fixed
+   * values.
+   *
+   * @param type    The interface.
+   * @param values  The values returned by the methods, by method name, or
+   *                {@code null} if every method returns {@code null}.
+   * @param <T>     The interface.
+   *
+   * @return  The implementation of the interface.
+   */
+  protected static <T> T stub(final Class<T> type,
+                              final Map<String, Object> values)
+  {
+    return type.cast(Proxy.newProxyInstance(
+        type.getClassLoader(), new Class<?>[] { type },
+        new InvocationHandler()
+        {
+          public Object invoke(final Object proxy, final Method method,
+                               final Object[] args)
+          {
+            return values == null ? null : values.get(method.getName());
+          }
+        }));
+  }
+}